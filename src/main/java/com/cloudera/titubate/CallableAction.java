@@ -26,6 +26,7 @@ public abstract class CallableAction implements Callable<Void> {
     private Environment env;
     private State state;
     private Properties props;
+    private NodeConfig config;
 
     /**
      * Initializes this action.
@@ -38,6 +39,20 @@ public abstract class CallableAction implements Callable<Void> {
         this.env = env;
         this.state = state;
         this.props = props;
+        this.config = null;
+    }
+    /**
+     * Initializes this action.
+     *
+     * @param env environment to use
+     * @param state state to use
+     * @param config node configuration
+     */
+    public void initialize(Environment env, State state, NodeConfig config) {
+        this.env = env;
+        this.state = state;
+        this.props = config.getProperties();
+        this.config = config;
     }
 
     /**
@@ -58,4 +73,16 @@ public abstract class CallableAction implements Callable<Void> {
      * @return node properties to use
      */
     protected Properties properties() { return props; }
+    /**
+     * Gets the node configuration to use. If this action was initialized
+     * with properties rather than a configuration, they are compiled now.
+     *
+     * @return node configuration to use
+     */
+    protected NodeConfig config() {
+        if (config == null) {
+            config = NodeConfig.of(props);
+        }
+        return config;
+    }
 }
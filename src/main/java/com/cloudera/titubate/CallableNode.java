@@ -34,13 +34,33 @@ public class CallableNode extends Node implements Timed {
     @Override
     public void visit(Environment env, State state, Properties props)
         throws NodeException {
-        action.initialize(env, state, props);
+        CallableAction a = Walker.current().getAction(this);
+        a.initialize(env, state, props);
+        call(a);
+    }
+    @Override
+    public void visit(Environment env, State state, NodeConfig config)
+        throws NodeException {
+        CallableAction a = Walker.current().getAction(this);
+        a.initialize(env, state, config);
+        call(a);
+    }
+    private static void call(CallableAction a) throws NodeException {
         try {
-            action.call();
+            a.call();
         } catch (Exception e) {
             throw new NodeException(e);
         }
     }
+    /**
+     * Gets the action this node was created with. Walkers other than the
+     * default one run their own instances of the action's class.
+     *
+     * @return action
+     */
+    public CallableAction getAction() {
+        return action;
+    }
     /**
      * Gets the string representation of this node. This implementation returns
      * the name of this node's action class.
@@ -0,0 +1,395 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A checkpoint of one walker, from which its walk can be resumed. A
+ * checkpoint is taken between hops of the walker's outermost module, and
+ * holds the node it had just visited there, its hop counts and elapsed time,
+ * its source of randomness, and the objects in its state that could be
+ * written: those with a registered {@link StateCodec}, and other
+ * {@link Serializable} ones. The objects are encoded when the checkpoint is
+ * taken, by the walker's own thread, so a checkpoint holds them as they
+ * were between two hops, however they change afterwards; it is written to
+ * its file later. The file format, in big-endian order, is:
+ *
+ * <pre>
+ *   int    magic number, {@link #MAGIC}
+ *   int    format version, {@link #VERSION}
+ *   UTF    module name
+ *   UTF    node ID
+ *   long   walker hop count
+ *   long   hop count in the module
+ *   long   elapsed time in the module, in milliseconds
+ *   long   time the checkpoint was taken, in milliseconds
+ *   int    length of serialized random number generator, then its bytes
+ *   int    number of state objects, then for each:
+ *     UTF    key name
+ *     byte   kind of typed key, or -1 for a string key
+ *     UTF    name of codec class, or "" for Java serialization
+ *     int    length of encoded object, then its bytes
+ * </pre>
+ */
+final class Checkpoint {
+  private static final Logger LOG = LoggerFactory.getLogger(Checkpoint.class);
+
+  static final int MAGIC = 0x54434b50;  // "TCKP"
+  static final int VERSION = 2;
+  private static final byte STRING_KEY = -1;
+
+  private final String moduleName;
+  private final String nodeId;
+  private final long hops;
+  private final long numHops;
+  private final long elapsed;
+  private final long time;
+  private final byte[] random;
+  private final List<String> keys;
+  private final List<Byte> kinds;
+  private final List<String> codecs;
+  private final List<byte[]> values;
+  private final int skipped;
+
+  private Checkpoint(String moduleName, String nodeId, long hops,
+                     long numHops, long elapsed, long time, byte[] random,
+                     List<String> keys, List<Byte> kinds,
+                     List<String> codecs, List<byte[]> values, int skipped) {
+    this.moduleName = moduleName;
+    this.nodeId = nodeId;
+    this.hops = hops;
+    this.numHops = numHops;
+    this.elapsed = elapsed;
+    this.time = time;
+    this.random = random;
+    this.keys = keys;
+    this.kinds = kinds;
+    this.codecs = codecs;
+    this.values = values;
+    this.skipped = skipped;
+  }
+
+  /**
+   * Gets the name of a walker's checkpoint file.
+   *
+   * @param walkerId walker ID
+   * @return file name
+   */
+  static String fileName(int walkerId) {
+    return String.format("walker-%d.checkpoint", walkerId);
+  }
+
+  String getModuleName() {
+    return moduleName;
+  }
+  String getNodeId() {
+    return nodeId;
+  }
+  long getHops() {
+    return hops;
+  }
+  long getNumHops() {
+    return numHops;
+  }
+  long getElapsed() {
+    return elapsed;
+  }
+  long getTime() {
+    return time;
+  }
+  int size() {
+    return keys.size();
+  }
+  /**
+   * Gets the number of state objects left out of this checkpoint because
+   * they are neither {@link Serializable} nor have a registered codec.
+   *
+   * @return number of state objects left out
+   */
+  int getSkipped() {
+    return skipped;
+  }
+
+  /**
+   * Gets the checkpointed source of randomness.
+   *
+   * @return random number generator, in its checkpointed state
+   * @throws IOException if it cannot be deserialized
+   */
+  Random getRandom() throws IOException {
+    try {
+      return (Random) deserialize(random);
+    } catch (ClassCastException e) {
+      throw new IOException("Checkpointed random number generator is not a Random", e);
+    }
+  }
+
+  /**
+   * Restores the checkpointed objects into a state, each under a string key
+   * or a typed key, as it was taken. Objects that cannot be decoded are
+   * logged and skipped.
+   *
+   * @param state state
+   */
+  void restore(State state) {
+    for (int i = 0; i < keys.size(); i++) {
+      String key = keys.get(i);
+      try {
+        Object value = decode(codecs.get(i), values.get(i));
+        int kind = kinds.get(i);
+        if (kind == STRING_KEY) {
+          state.set(key, value);
+        } else {
+          state.setValue(StateKey.of(key, kind), value);
+        }
+      } catch (IOException e) {
+        LOG.warn("Unable to restore state object " + key + " from checkpoint", e);
+      }
+    }
+  }
+  private static Object decode(String codecName, byte[] b)
+    throws IOException {
+    if (codecName.length() == 0) {
+      return deserialize(b);
+    }
+    StateCodec<?> codec = Checkpointer.getCodec(codecName);
+    if (codec == null) {
+      throw new IOException("No codec is registered for " + codecName);
+    }
+    return codec.read(new DataInputStream(new ByteArrayInputStream(b)));
+  }
+  private static Object deserialize(byte[] b) throws IOException {
+    ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(b));
+    try {
+      return in.readObject();
+    } catch (ClassNotFoundException e) {
+      throw new IOException("Unable to deserialize checkpointed object", e);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Serializes an object with Java serialization.
+   *
+   * @param o object
+   * @return serialized object
+   * @throws IOException if the object cannot be serialized
+   */
+  static byte[] serialize(Object o) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(o);
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Takes a checkpoint, encoding the state objects. State objects that are
+   * neither {@link Serializable} nor have a registered codec are left out;
+   * any other object that cannot be encoded fails the whole checkpoint,
+   * rather than leave a checkpoint that silently lacks it.
+   *
+   * @param moduleName module name
+   * @param nodeId node ID
+   * @param hops walker hop count
+   * @param numHops hop count in the module
+   * @param elapsed elapsed time in the module, in milliseconds
+   * @param time time the checkpoint was taken, in milliseconds
+   * @param random source of randomness, serialized
+   * @param objects state objects, by string key or {@link StateKey}
+   * @return checkpoint
+   * @throws IOException if a state object cannot be encoded
+   */
+  static Checkpoint take(String moduleName, String nodeId, long hops,
+                         long numHops, long elapsed, long time, byte[] random,
+                         Map<Object, Object> objects) throws IOException {
+    List<String> keys = new ArrayList<String>();
+    List<Byte> kinds = new ArrayList<Byte>();
+    List<String> codecs = new ArrayList<String>();
+    List<byte[]> values = new ArrayList<byte[]>();
+    int skipped = 0;
+    for (Map.Entry<Object, Object> e : objects.entrySet()) {
+      Object value = e.getValue();
+      if (value == null) {
+        continue;
+      }
+      String codecName = value.getClass().getName();
+      @SuppressWarnings("unchecked")
+      StateCodec<Object> codec =
+        (StateCodec<Object>) Checkpointer.getCodec(codecName);
+      if (codec == null && !(value instanceof Serializable)) {
+        skipped++;
+        continue;
+      }
+      byte[] b;
+      try {
+        if (codec != null) {
+          ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+          DataOutputStream out = new DataOutputStream(bytes);
+          codec.write(value, out);
+          out.close();
+          b = bytes.toByteArray();
+        } else {
+          codecName = "";
+          b = serialize(value);
+        }
+      } catch (IOException ex) {
+        throw new IOException("Unable to checkpoint state object " + e.getKey(), ex);
+      } catch (RuntimeException ex) {
+        // e.g., a shared collection modified by another walker while it
+        // was serialized
+        throw new IOException("Unable to checkpoint state object " + e.getKey(), ex);
+      }
+      if (e.getKey() instanceof StateKey) {
+        StateKey<?> k = (StateKey<?>) e.getKey();
+        keys.add(k.getName());
+        kinds.add((byte) k.kind());
+      } else {
+        keys.add((String) e.getKey());
+        kinds.add(STRING_KEY);
+      }
+      codecs.add(codecName);
+      values.add(b);
+    }
+    return new Checkpoint(moduleName, nodeId, hops, numHops, elapsed, time,
+                          random, keys, kinds, codecs, values,
+                          skipped);
+  }
+
+  /**
+   * Writes this checkpoint to a file, replacing any earlier one. The file
+   * is written under a temporary name, synced, and then renamed, so a crash
+   * part way through leaves the earlier checkpoint in place.
+   *
+   * @param f checkpoint file
+   * @throws IOException if the file cannot be written
+   */
+  void write(File f) throws IOException {
+    File tmp = new File(f.getPath() + ".tmp");
+    FileOutputStream fos = new FileOutputStream(tmp);
+    try {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeUTF(moduleName);
+      out.writeUTF(nodeId);
+      out.writeLong(hops);
+      out.writeLong(numHops);
+      out.writeLong(elapsed);
+      out.writeLong(time);
+      out.writeInt(random.length);
+      out.write(random);
+      out.writeInt(keys.size());
+      for (int i = 0; i < keys.size(); i++) {
+        out.writeUTF(keys.get(i));
+        out.writeByte(kinds.get(i));
+        out.writeUTF(codecs.get(i));
+        out.writeInt(values.get(i).length);
+        out.write(values.get(i));
+      }
+      out.flush();
+      fos.getFD().sync();
+    } finally {
+      fos.close();
+    }
+    Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING,
+               StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Reads a walker's checkpoint.
+   *
+   * @param dir checkpoint directory
+   * @param walkerId walker ID
+   * @return checkpoint, or null if the walker has none
+   * @throws IOException if the checkpoint cannot be read
+   */
+  static Checkpoint read(File dir, int walkerId) throws IOException {
+    File f = new File(dir, fileName(walkerId));
+    DataInputStream in;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+    try {
+      if (in.readInt() != MAGIC) {
+        throw new IOException(f + " is not a checkpoint");
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported checkpoint version " + version + " in " + f);
+      }
+      String moduleName = in.readUTF();
+      String nodeId = in.readUTF();
+      long hops = in.readLong();
+      long numHops = in.readLong();
+      long elapsed = in.readLong();
+      long time = in.readLong();
+      byte[] random = new byte[in.readInt()];
+      in.readFully(random);
+      int n = in.readInt();
+      List<String> keys = new ArrayList<String>(n);
+      List<Byte> kinds = new ArrayList<Byte>(n);
+      List<String> codecs = new ArrayList<String>(n);
+      List<byte[]> values = new ArrayList<byte[]>(n);
+      for (int i = 0; i < n; i++) {
+        keys.add(in.readUTF());
+        byte kind = in.readByte();
+        if (kind != STRING_KEY && (kind < StateKey.OBJECT || kind > StateKey.LONG)) {
+          throw new IOException("Unknown key kind " + kind + " in " + f);
+        }
+        kinds.add(kind);
+        codecs.add(in.readUTF());
+        byte[] b = new byte[in.readInt()];
+        in.readFully(b);
+        values.add(b);
+      }
+      return new Checkpoint(moduleName, nodeId, hops, numHops, elapsed, time,
+                            random, keys, kinds, codecs, values, 0);
+    } catch (EOFException e) {
+      throw new IOException("Checkpoint " + f + " is truncated", e);
+    } finally {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically checkpoints walks, so that a long walk that is cut short,
+ * say by a host reboot, can be resumed where it left off. Each walker's
+ * latest checkpoint is kept in its own file, <code>walker-N.checkpoint</code>,
+ * in a checkpoint directory; see {@link Checkpoint} for what it holds.<p>
+ *
+ * Walkers take checkpoints between hops of their outermost modules, once
+ * each interval. Taking one costs the walker a shallow snapshot of its
+ * state and the encoding of its random number generator; the state objects
+ * are encoded, and the file written, on a background thread. For a
+ * {@link PersistentState}, whose objects are replaced rather than changed
+ * in place, the snapshot is a consistent picture of the walk between two
+ * hops. Other states' objects may change while they are being encoded, so
+ * a checkpoint of them may mix objects from before and after later hops.
+ * {@link #setEncodeOnWalker(boolean)} makes walkers encode such state
+ * objects themselves, so their checkpoints are consistent, at the cost of
+ * pausing walks for as long as that takes; with large state objects, that
+ * can be seconds. Each checkpoint logs how long it paused its walk.<p>
+ *
+ * If a walker's previous checkpoint is still being written, it skips taking
+ * another. If a state object cannot be encoded, say because it was changed
+ * while it was being serialized, the checkpoint is abandoned with a warning
+ * and the walker's earlier checkpoint is kept.
+ */
+public final class Checkpointer {
+  private static final Logger LOG = LoggerFactory.getLogger(Checkpointer.class);
+
+  /**
+   * The default interval between checkpoints, in milliseconds.
+   */
+  public static final long DEFAULT_INTERVAL = 5 * 60 * 1000L;  // 5 minutes
+
+  private static final ConcurrentHashMap<String, StateCodec<?>> CODECS =
+    new ConcurrentHashMap<String, StateCodec<?>>();
+
+  private final File dir;
+  private final long interval;
+  private volatile boolean encodeOnWalker = false;
+  private final Set<Walker> pending = ConcurrentHashMap.<Walker>newKeySet();
+  private final ExecutorService writer =
+    Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "checkpointer");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+
+  /**
+   * Creates a new checkpointer.
+   *
+   * @param dir directory for checkpoint files; created if it does not exist
+   * @param interval interval between checkpoints of each walker, in
+   * milliseconds
+   * @throws IllegalArgumentException if the interval is negative
+   * @throws IOException if the directory cannot be created
+   */
+  public Checkpointer(File dir, long interval) throws IOException {
+    if (interval < 0L) {
+      throw new IllegalArgumentException("Checkpoint interval is negative: " + interval);
+    }
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Unable to create checkpoint directory " + dir);
+    }
+    this.dir = dir;
+    this.interval = interval;
+  }
+
+  File getDirectory() {
+    return dir;
+  }
+  long getInterval() {
+    return interval;
+  }
+
+  /**
+   * Sets whether walkers encode the objects of states other than
+   * {@link PersistentState} themselves. Doing so makes their checkpoints
+   * consistent, but pauses walks while the objects are encoded.
+   *
+   * @param encodeOnWalker true to encode on walker threads, false to
+   * encode in the background
+   */
+  public void setEncodeOnWalker(boolean encodeOnWalker) {
+    this.encodeOnWalker = encodeOnWalker;
+  }
+  boolean getEncodeOnWalker() {
+    return encodeOnWalker;
+  }
+
+  /**
+   * Registers a codec for checkpointing state objects of a class. A codec
+   * must be registered before checkpoints holding such objects are taken
+   * or restored.
+   *
+   * @param type class of objects, exactly
+   * @param codec codec
+   */
+  public static <T> void registerCodec(Class<T> type, StateCodec<T> codec) {
+    CODECS.put(type.getName(), codec);
+  }
+  static StateCodec<?> getCodec(String className) {
+    return CODECS.get(className);
+  }
+
+  /**
+   * Checkpoints a walker. This is called by the walker's own thread.
+   *
+   * @param w walker
+   * @param m outermost module of the walk
+   * @param nodeId ID of node just visited
+   * @param numHops hop count in the module
+   * @param elapsed elapsed time in the module, in milliseconds
+   * @param state walk state
+   */
+  void checkpoint(final Walker w, Module m, final String nodeId,
+                  final long numHops, final long elapsed, State state) {
+    if (!pending.add(w)) {
+      return;
+    }
+    final long start = System.nanoTime();
+    final String moduleName = m.toString();
+    final long hops = w.getHops();
+    final long time = System.currentTimeMillis();
+    final Map<Object, Object> objects = state.snapshot();
+    final byte[] random;
+    final Checkpoint taken;
+    try {
+      random = Checkpoint.serialize(w.getRandom());
+      taken = encodeOnWalker && !state.isPersistent() ?
+        Checkpoint.take(moduleName, nodeId, hops, numHops, elapsed, time,
+                        random, objects) : null;
+    } catch (IOException e) {
+      pending.remove(w);
+      LOG.warn("Unable to checkpoint " + w + " at node " + nodeId + ", keeping its earlier checkpoint", e);
+      return;
+    }
+    final long pause = System.nanoTime() - start;
+    try {
+      writer.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            Checkpoint c = taken != null ? taken :
+              Checkpoint.take(moduleName, nodeId, hops, numHops, elapsed,
+                              time, random, objects);
+            c.write(new File(dir, Checkpoint.fileName(w.getId())));
+            LOG.info("Checkpointed " + w + " at node " + nodeId + " after " + hops + " hops, pausing the walk for " + TimeUnit.NANOSECONDS.toMillis(pause) + " ms" + (c.getSkipped() > 0 ? ", skipping " + c.getSkipped() + " state objects that could not be written" : ""));
+          } catch (IOException e) {
+            LOG.warn("Unable to checkpoint " + w + " at node " + nodeId + ", keeping its earlier checkpoint", e);
+          } finally {
+            pending.remove(w);
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      pending.remove(w);
+    }
+  }
+
+  /**
+   * Waits for the checkpoints taken so far to be written.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void flush() throws InterruptedException {
+    final CountDownLatch latch = new CountDownLatch(1);
+    try {
+      writer.execute(new Runnable() {
+        @Override
+        public void run() {
+          latch.countDown();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      return;
+    }
+    latch.await();
+  }
+
+  /**
+   * Writes the checkpoints taken so far and stops this checkpointer.
+   *
+   * @throws InterruptedException if interrupted while waiting for writes
+   */
+  public void close() throws InterruptedException {
+    writer.shutdown();
+    writer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * State that may be shared between threads, such as concurrent walkers and
+ * background verifiers. It is kept in a {@link ConcurrentHashMap}, so
+ * reads do not lock, writes to different keys rarely contend, and
+ * {@link #compute}, {@link #merge} and {@link #putIfAbsent} are atomic:
+ * counters and the like can be updated without synchronizing.<p>
+ *
+ * Null keys are not allowed, and setting a null value removes the key.<p>
+ *
+ * A concurrent state also keeps the set of keys that walkers share through
+ * it. A {@link WalkerState} keeps every other key to itself.
+ */
+public class ConcurrentState extends State {
+  private final Set<String> sharedKeys = ConcurrentHashMap.<String>newKeySet();
+  // IDs of shared typed keys
+  private final Set<String> sharedTypedKeys =
+    ConcurrentHashMap.<String>newKeySet();
+  private final ConcurrentHashMap<StateKey<?>, Object> typed =
+    new ConcurrentHashMap<StateKey<?>, Object>();
+
+  /**
+   * Creates a new, empty state.
+   */
+  public ConcurrentState() {
+    super(new ConcurrentHashMap<String, Object>());
+  }
+
+  /**
+   * Declares keys to be shared by all walkers using this state.
+   *
+   * @param keys keys to share
+   */
+  public void share(String... keys) {
+    for (String key : keys) {
+      sharedKeys.add(key);
+    }
+  }
+  /**
+   * Checks if a key is shared by walkers using this state.
+   *
+   * @param key key
+   * @return true if shared
+   */
+  public boolean isShared(String key) {
+    return key != null && sharedKeys.contains(key);
+  }
+  /**
+   * Declares typed keys to be shared by all walkers using this state.
+   * Typed keys are shared apart from string keys: sharing one does not
+   * share a string key with the same name, nor the other way around.
+   *
+   * @param keys keys to share
+   */
+  public void share(StateKey<?>... keys) {
+    for (StateKey<?> key : keys) {
+      sharedTypedKeys.add(key.id());
+    }
+  }
+  /**
+   * Checks if a typed key is shared by walkers using this state.
+   *
+   * @param key key
+   * @return true if shared
+   */
+  public boolean isShared(StateKey<?> key) {
+    return key != null && sharedTypedKeys.contains(key.id());
+  }
+
+  @Override
+  public void set(String key, Object value) {
+    if (value == null) {
+      getMap().remove(key);
+    } else {
+      getMap().put(key, value);
+    }
+  }
+  @Override
+  public void remove(String key) {
+    if (key != null) {
+      getMap().remove(key);
+    }
+  }
+  @Override
+  public boolean has(String key) {
+    return key != null && getMap().containsKey(key);
+  }
+  @Override
+  public Object get(String key) {
+    return key == null ? null : getMap().get(key);
+  }
+  @Override
+  public Object putIfAbsent(String key, Object value) {
+    return getMap().putIfAbsent(key, value);
+  }
+  @Override
+  public Object compute(String key,
+                        BiFunction<? super String, Object, Object> f) {
+    return getMap().compute(key, f);
+  }
+  @Override
+  public Object merge(String key, Object value,
+                      BiFunction<Object, Object, Object> f) {
+    return getMap().merge(key, value, f);
+  }
+
+  // Typed keys are kept in a map of their own, apart from string keys,
+  // so that every walker sees them, and adding to integers and longs is
+  // atomic.
+  @Override
+  protected Object getValue(StateKey<?> key) {
+    return typed.get(key);
+  }
+  @Override
+  protected void setValue(StateKey<?> key, Object value) {
+    if (value == null) {
+      typed.remove(key);
+    } else {
+      typed.put(key, value);
+    }
+  }
+  @Override
+  protected boolean hasValue(StateKey<?> key) {
+    return typed.containsKey(key);
+  }
+  @Override
+  protected void removeValue(StateKey<?> key) {
+    typed.remove(key);
+  }
+  @Override
+  protected int getIntValue(IntKey key) {
+    Integer value = (Integer) typed.get(key);
+    return value == null ? 0 : value.intValue();
+  }
+  @Override
+  protected void setIntValue(IntKey key, int value) {
+    typed.put(key, Integer.valueOf(value));
+  }
+  @Override
+  protected int addIntValue(IntKey key, int delta) {
+    return (Integer) typed.merge(key, Integer.valueOf(delta), SUM);
+  }
+  @Override
+  protected long getLongValue(LongKey key) {
+    Long value = (Long) typed.get(key);
+    return value == null ? 0L : value.longValue();
+  }
+  @Override
+  protected void setLongValue(LongKey key, long value) {
+    typed.put(key, Long.valueOf(value));
+  }
+  @Override
+  protected long addLongValue(LongKey key, long delta) {
+    return (Long) typed.merge(key, Long.valueOf(delta), SUM);
+  }
+
+  private static final BiFunction<Object, Object, Object> SUM =
+    new BiFunction<Object, Object, Object>() {
+      @Override
+      public Object apply(Object a, Object b) {
+        if (a instanceof Integer) {
+          return Integer.valueOf((Integer) a + (Integer) b);
+        }
+        return Long.valueOf((Long) a + (Long) b);
+      }
+    };
+}
@@ -16,6 +16,8 @@
  */
 package com.cloudera.titubate;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -26,7 +28,8 @@ import org.slf4j.LoggerFactory;
 
 /**
  * A read-only environment that is available for random walk tests. All keys
- * and values are strings.
+ * and values are strings. Values are parsed as numbers when the environment
+ * is created, so reading them as numbers does no parsing.
  */
 public class Environment {
   private static final Logger LOG = LoggerFactory.getLogger(Environment.class);
@@ -37,12 +40,14 @@ public class Environment {
   public static final String KEY_TEST_ID = "_test_id";
 
   private final Map<String, String> env;
+  private final Map<String, ParsedValue> parsed;
 
   /**
    * Creates an empty environment.
    */
   public Environment() {
     env = Collections.emptyMap();
+    parsed = Collections.emptyMap();
   }
   /**
    * Creates a new environment, taking data from the given map.
@@ -51,6 +56,7 @@ public class Environment {
    */
   public Environment(Map<String, String> env) {
     this.env = Collections.unmodifiableMap(new HashMap<String, String>(env));
+    parsed = parse(this.env);
   }
   /**
    * Creates a new environment, taking data from the given properties.
@@ -63,6 +69,15 @@ public class Environment {
       m.put(e.getKey().toString(), e.getValue().toString());
     }
     this.env = Collections.unmodifiableMap(m);
+    parsed = parse(this.env);
+  }
+
+  private static Map<String, ParsedValue> parse(Map<String, String> env) {
+    Map<String, ParsedValue> m = new HashMap<String, ParsedValue>();
+    for (Map.Entry<String, String> e : env.entrySet()) {
+      m.put(e.getKey(), new ParsedValue(e.getValue()));
+    }
+    return m;
   }
 
   /**
@@ -91,11 +106,23 @@ public class Environment {
    * @throws NumberFormatException if value is not an integer string
    */
   public Integer getInt(String key) {
-    String value = get(key);
+    ParsedValue value = parsed.get(key);
     if (value == null) {
       return null;
     }
-    return Integer.parseInt(value);
+    return value.getInt();
+  }
+  /**
+   * Gets a value from this environment for the given key, parsed as an int.
+   *
+   * @param key key
+   * @param defaultValue value to return if not present
+   * @return integer value
+   * @throws NumberFormatException if value is not an integer string
+   */
+  public int getInt(String key, int defaultValue) {
+    ParsedValue value = parsed.get(key);
+    return value != null ? value.getInt().intValue() : defaultValue;
   }
   /**
    * Gets a value from this environment for the given key, parsed as a long.
@@ -105,15 +132,42 @@ public class Environment {
    * @throws NumberFormatException if value is not a long string
    */
   public Long getLong(String key) {
-    String value = get(key);
+    ParsedValue value = parsed.get(key);
     if (value == null) {
       return null;
     }
-    return Long.parseLong(value);
+    return value.getLong();
+  }
+  /**
+   * Gets a value from this environment for the given key, parsed as a long.
+   *
+   * @param key key
+   * @param defaultValue value to return if not present
+   * @return long value
+   * @throws NumberFormatException if value is not a long string
+   */
+  public long getLong(String key, long defaultValue) {
+    ParsedValue value = parsed.get(key);
+    return value != null ? value.getLong().longValue() : defaultValue;
   }
 
+  /**
+   * Dumps this environment to a string, within the limits of the default
+   * {@link StateDumper}.
+   *
+   * @return dump
+   */
   public String dump() {
-    // FIXME refactor better
-    return State.dump(env);
+    return StateDumper.getDefault().dumpToString(env);
+  }
+  /**
+   * Dumps this environment to a writer, within a dumper's limits.
+   *
+   * @param w writer
+   * @param dumper dumper
+   * @throws IOException if the dump cannot be written
+   */
+  public void dump(Writer w, StateDumper dumper) throws IOException {
+    dumper.dump(env, w);
   }
 }
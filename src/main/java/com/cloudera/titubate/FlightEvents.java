@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Emits Java Flight Recorder events for walk activity: node visits, fixture
+ * setup and teardown, module entry and exit, and visits that run long. If
+ * the JVM has no JFR, or it cannot be used, the methods here do nothing.<p>
+ *
+ * The events are disabled by default, even in a running recording, so that
+ * heavy node visit traffic does not swamp ordinary recordings. Enable them
+ * in the recording settings, for example with the titubate.jfc file in the
+ * example directory. Events are passed around as plain objects so that
+ * callers need not load any JFR classes.<p>
+ *
+ * The events themselves are defined in {@link JfrEvents}, which is only
+ * loaded, by name, once the jdk.jfr classes are known to be present. So the
+ * framework still runs on JVMs without them.
+ */
+final class FlightEvents {
+  private static final Logger LOG = LoggerFactory.getLogger(FlightEvents.class);
+
+  static final String SET_UP = "setUp";
+  static final String TEAR_DOWN = "tearDown";
+
+  /**
+   * The emitter of events. {@link JfrEvents} is the only implementation.
+   */
+  interface Recorder {
+    Object beginNodeVisit();
+    void endNodeVisit(Object event, Module m, String nodeId, Walker w,
+                      long hop, boolean succeeded);
+    Object beginFixture();
+    void endFixture(Object event, Module m, String phase, Walker w,
+                    boolean succeeded);
+    Object beginModule();
+    void endModule(Object event, Module m, Walker w, int depth, long hops,
+                   boolean succeeded);
+    void longRunning(Node n, Walker w, long timeSinceProgress);
+  }
+
+  private static final Recorder RECORDER;
+  private static final boolean AVAILABLE;
+  static {
+    Recorder recorder = null;
+    try {
+      Class.forName("jdk.jfr.Event");
+      recorder = Class.forName("com.cloudera.titubate.JfrEvents")
+        .asSubclass(Recorder.class).getDeclaredConstructor().newInstance();
+      // Initializing JfrEvents registers the event types.
+      recorder.beginNodeVisit();
+    } catch (Throwable t) {
+      LOG.debug("Flight recorder events not available", t);
+      recorder = null;
+    }
+    RECORDER = recorder;
+    AVAILABLE = recorder != null;
+  }
+
+  private FlightEvents() {}
+
+  /**
+   * Checks if flight recorder events can be emitted in this JVM.
+   *
+   * @return true if events are available
+   */
+  static boolean isAvailable() {
+    return AVAILABLE;
+  }
+
+  /**
+   * Begins a node visit event.
+   *
+   * @return event, or null if node visit events are not being recorded
+   */
+  static Object beginNodeVisit() {
+    return AVAILABLE ? RECORDER.beginNodeVisit() : null;
+  }
+  /**
+   * Ends and commits a node visit event.
+   *
+   * @param event event returned by {@link #beginNodeVisit()}; if null,
+   * nothing is done
+   * @param m module containing the node
+   * @param nodeId node ID
+   * @param w visiting walker
+   * @param hop walker's hop count when the visit began
+   * @param succeeded true if the visit succeeded
+   */
+  static void endNodeVisit(Object event, Module m, String nodeId, Walker w,
+                           long hop, boolean succeeded) {
+    if (event != null) {
+      RECORDER.endNodeVisit(event, m, nodeId, w, hop, succeeded);
+    }
+  }
+
+  /**
+   * Begins a fixture event.
+   *
+   * @return event, or null if fixture events are not being recorded
+   */
+  static Object beginFixture() {
+    return AVAILABLE ? RECORDER.beginFixture() : null;
+  }
+  /**
+   * Ends and commits a fixture event.
+   *
+   * @param event event returned by {@link #beginFixture()}; if null,
+   * nothing is done
+   * @param m module whose fixture ran
+   * @param phase {@link #SET_UP} or {@link #TEAR_DOWN}
+   * @param w walker running the fixture
+   * @param succeeded true if the fixture method succeeded
+   */
+  static void endFixture(Object event, Module m, String phase, Walker w,
+                         boolean succeeded) {
+    if (event != null) {
+      RECORDER.endFixture(event, m, phase, w, succeeded);
+    }
+  }
+
+  /**
+   * Begins a module event, on entry to a module.
+   *
+   * @return event, or null if module events are not being recorded
+   */
+  static Object beginModule() {
+    return AVAILABLE ? RECORDER.beginModule() : null;
+  }
+  /**
+   * Ends and commits a module event, on exit from a module.
+   *
+   * @param event event returned by {@link #beginModule()}; if null,
+   * nothing is done
+   * @param m module
+   * @param w walker
+   * @param depth nesting depth of the module
+   * @param hops number of hops taken in the module
+   * @param succeeded true if the walk through the module succeeded
+   */
+  static void endModule(Object event, Module m, Walker w, int depth,
+                        long hops, boolean succeeded) {
+    if (event != null) {
+      RECORDER.endModule(event, m, w, depth, hops, succeeded);
+    }
+  }
+
+  /**
+   * Emits an event for a timed node visit that has gone long without
+   * progress.
+   *
+   * @param n node
+   * @param w walker visiting the node
+   * @param timeSinceProgress time since last progress, in milliseconds
+   */
+  static void longRunning(Node n, Walker w, long timeSinceProgress) {
+    if (AVAILABLE) {
+      RECORDER.longRunning(n, w, timeSinceProgress);
+    }
+  }
+}
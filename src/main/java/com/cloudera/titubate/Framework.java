@@ -16,14 +16,29 @@
  */
 package com.cloudera.titubate;
 
+import com.beust.jcommander.IParameterValidator;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,17 +48,183 @@ public class Framework {
 
   private static final String MODULE_DIR = "modules";
 
+  private static final AtomicInteger NEXT_ID = new AtomicInteger(0);
+
   private final NodeKeeper nodeKeeper;
+  private final int id;
+  private TraceRecorder traceRecorder = null;
+  private Long seed = null;
+  private boolean countCoverage = false;
+  private Checkpointer checkpointer = null;
+  private File resumeDir = null;
+  private int stateHistory = 0;
 
   public Framework(NodeKeeper nodeKeeper) {
     this.nodeKeeper = nodeKeeper;
+    id = NEXT_ID.getAndIncrement();
+  }
+
+  /**
+   * Sets the recorder for tracing walks. Each walk run afterwards writes its
+   * own trace with it.
+   *
+   * @param traceRecorder trace recorder, or null to stop tracing
+   */
+  public void setTraceRecorder(TraceRecorder traceRecorder) {
+    this.traceRecorder = traceRecorder;
+  }
+
+  /**
+   * Sets the checkpointer for walks. Each walk run afterwards is
+   * periodically checkpointed with it.
+   *
+   * @param checkpointer checkpointer, or null to stop checkpointing
+   */
+  public void setCheckpointer(Checkpointer checkpointer) {
+    this.checkpointer = checkpointer;
+  }
+  /**
+   * Sets a directory of checkpoints to resume walks from. Each walker of a
+   * run afterwards resumes from its checkpoint there, with its source of
+   * randomness, hop counts, elapsed time and state as they were, and picks
+   * up walking after the node it last visited in its outermost module. A
+   * walker with no checkpoint starts afresh.
+   *
+   * @param resumeDir checkpoint directory, or null to start walks afresh
+   */
+  public void setResumeDir(File resumeDir) {
+    this.resumeDir = resumeDir;
+  }
+
+  /**
+   * Sets the seed for choosing edges. Walker i of a run seeds its random
+   * number generator with {@link #walkerSeed(long, int)}, so running a graph
+   * again with the same seed and number of walkers takes each walker down
+   * the same edges, so long as the actions themselves behave the same. If no
+   * seed is set, each run picks one at random; the seed for a run is always
+   * logged when it starts.
+   *
+   * @param seed seed
+   */
+  public void setSeed(long seed) {
+    this.seed = Long.valueOf(seed);
+  }
+  /**
+   * Sets whether walks count node visits and edge traversals, for
+   * {@link Module#writeCoverage(Writer)}. Counting is off by default, since
+   * the counters take memory in proportion to the number of edges in the
+   * graph and the number of walkers.
+   *
+   * @param countCoverage true to count coverage
+   */
+  public void setCountCoverage(boolean countCoverage) {
+    this.countCoverage = countCoverage;
+  }
+  /**
+   * Gets the seed for a walker.
+   *
+   * @param seed seed for a run
+   * @param walkerId walker ID
+   * @return seed for the walker's random number generator
+   */
+  public static long walkerSeed(long seed, int walkerId) {
+    return seed + walkerId * 0x9E3779B97F4A7C15L;
+  }
+  /**
+   * Creates a walker for a run, resuming it from its checkpoint if there is
+   * one.
+   *
+   * @param node graph
+   * @param id walker ID
+   * @param runSeed seed for the run
+   * @param ownActions true for the walker to use its own action instances
+   * @return walker
+   * @throws IllegalStateException if the walker's checkpoint cannot be read
+   * @throws IllegalArgumentException if the walker's checkpoint is not of
+   * the graph
+   */
+  private Walker newWalker(Node node, int id, int numWalkers, long runSeed,
+                           boolean ownActions) {
+    Checkpoint checkpoint = null;
+    Random random;
+    try {
+      if (resumeDir != null) {
+        checkpoint = Checkpoint.read(resumeDir, id);
+        if (checkpoint == null) {
+          LOG.warn("No checkpoint for walker " + id + " in " + resumeDir + "; starting afresh");
+        }
+      }
+      random = checkpoint != null ? checkpoint.getRandom() :
+        new Random(walkerSeed(runSeed, id));
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to read checkpoint for walker " + id + " from " + resumeDir, e);
+    }
+    if (checkpoint != null && !checkpoint.getModuleName().equals(node.toString())) {
+      throw new IllegalArgumentException("Checkpoint in " + resumeDir + " is of " + checkpoint.getModuleName() + ", not " + node);
+    }
+    Walker w = new Walker(id, random, ownActions);
+    w.setResume(checkpoint);
+    w.setCheckpointer(checkpointer);
+    if (countCoverage) {
+      w.setCoverageWalkers(numWalkers);
+    }
+    return w;
+  }
+  private long runSeed(String graph) {
+    long s = seed != null ? seed.longValue() : new Random().nextLong();
+    LOG.info("Running " + graph + " with seed " + s);
+    return s;
+  }
+
+  /**
+   * Starts tracing a walker, if there is a trace recorder. A trace that
+   * cannot be opened is logged, and the walk goes on untraced.
+   *
+   * @param recorder trace recorder, or null
+   * @param w walker
+   * @return trace writer, or null if not tracing
+   */
+  private static TraceWriter startTrace(TraceRecorder recorder, Walker w) {
+    if (recorder == null) {
+      return null;
+    }
+    try {
+      TraceWriter trace = recorder.openWriter(w.getId());
+      w.setTrace(trace);
+      return trace;
+    } catch (IOException e) {
+      LOG.error("Unable to open trace for " + w, e);
+      return null;
+    }
+  }
+  private static void endTrace(TraceWriter trace, Walker w) {
+    if (trace != null) {
+      w.setTrace(null);
+      trace.close();
+    }
+  }
+
+  /**
+   * Sets the number of node visits to keep state snapshots for. If
+   * positive, walks that start with their own empty state get a
+   * {@link PersistentState} keeping that many snapshots, and the changes
+   * made by those visits are dumped when a node fails.
+   *
+   * @param stateHistory number of visits, or 0 for no history
+   */
+  public void setStateHistory(int stateHistory) {
+    this.stateHistory = stateHistory;
+  }
+  private State newState() {
+    return stateHistory > 0 ? new PersistentState(stateHistory) : new State();
   }
 
   public void run(String graph, Environment env) {
-    run(graph, env, new State());
+    run(graph, env, newState());
   }
   /**
-   * Runs a random walk test.
+   * Runs a random walk test. While it runs, the walker is registered with
+   * JMX; see {@link WalkerMXBean}.
    * 
    * @param graph name of graph to run
    * @param env test environment
@@ -51,10 +232,269 @@ public class Framework {
    */
   public void run(String graph, Environment env, State state) {
     Node node = nodeKeeper.getNode(graph);
+    Walker walker = newWalker(node, 0, 1, runSeed(graph), false);
+    Walker.bind(walker);
+    WalkerMonitor monitor = WalkerMonitor.register(id, walker);
+    TraceWriter trace = startTrace(traceRecorder, walker);
     try {
       node.visit(env, state, new Properties());  // no incoming properties
     } catch (NodeException e) {
       LOG.error("Error during random walk", e);
+    } finally {
+      endTrace(trace, walker);
+      if (monitor != null) {
+        monitor.unregister();
+      }
+      Walker.bind(null);
+    }
+    logLatencies(node);
+  }
+
+  /**
+   * Runs several random walks of a test at once, each on its own platform
+   * thread. The walks share the graph and the environment, but each has its
+   * own {@link Walker} and starts with its own empty state.
+   *
+   * @param graph name of graph to run
+   * @param env test environment
+   * @param numWalkers number of walks to run
+   * @return outcome of the walks
+   * @throws IllegalArgumentException if numWalkers is not positive
+   */
+  public RunResult run(String graph, Environment env, int numWalkers) {
+    return run(graph, env, numWalkers, false);
+  }
+  /**
+   * Runs several random walks of a test at once. Each walk runs either on
+   * its own platform thread or on its own virtual thread. Virtual threads
+   * are much cheaper, so many thousands of walks whose actions mostly wait
+   * on I/O can run at once. They require Java 21 or later. Each walker is
+   * registered with JMX while it runs.
+   *
+   * @param graph name of graph to run
+   * @param env test environment
+   * @param numWalkers number of walks to run
+   * @param virtualThreads true to run walks on virtual threads
+   * @return outcome of the walks
+   * @throws IllegalArgumentException if numWalkers is not positive
+   * @throws UnsupportedOperationException if virtual threads are requested
+   * but this JVM does not support them
+   */
+  public RunResult run(String graph, Environment env, int numWalkers,
+                       boolean virtualThreads) {
+    return run(graph, env, numWalkers, virtualThreads, null);
+  }
+  /**
+   * Runs several random walks of a test at once, as
+   * {@link #run(String, Environment, int, boolean)} does, but with state
+   * that the walkers may share. Each walker gets its own
+   * {@link WalkerState} over the shared state, so keys declared shared in
+   * it are seen by every walker, and all other keys are the walker's own.
+   *
+   * @param graph name of graph to run
+   * @param env test environment
+   * @param numWalkers number of walks to run
+   * @param virtualThreads true to run walks on virtual threads
+   * @param shared state shared between walkers, or null for each walker to
+   * start with its own empty state
+   * @return outcome of the walks
+   * @throws IllegalArgumentException if numWalkers is not positive
+   * @throws UnsupportedOperationException if virtual threads are requested
+   * but this JVM does not support them
+   */
+  public RunResult run(String graph, Environment env, int numWalkers,
+                       boolean virtualThreads, ConcurrentState shared) {
+    if (numWalkers < 1) {
+      throw new IllegalArgumentException("Number of walkers must be positive: " + numWalkers);
+    }
+    Node node = nodeKeeper.getNode(graph);
+    long runSeed = runSeed(graph);
+
+    ExecutorService es = virtualThreads ? newVirtualThreadExecutor() :
+      Executors.newFixedThreadPool(numWalkers, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger(0);
+        @Override
+        public Thread newThread(Runnable r) {
+          return new Thread(r, "walker-" + count.getAndIncrement());
+        }
+      });
+    List<Future<WalkResult>> futures = new ArrayList<Future<WalkResult>>();
+    try {
+      for (int i = 0; i < numWalkers; i++) {
+        Walker walker = newWalker(node, i, numWalkers, runSeed, true);
+        State state = shared != null ? new WalkerState(shared) : newState();
+        futures.add(es.submit(new Walk(id, node, env, state, walker,
+                                       traceRecorder)));
+      }
+    } finally {
+      es.shutdown();
+    }
+
+    List<WalkResult> results = new ArrayList<WalkResult>();
+    for (int i = 0; i < numWalkers; i++) {
+      WalkResult result;
+      try {
+        result = futures.get(i).get();
+      } catch (ExecutionException e) {
+        LOG.error("Error during random walk by walker " + i, e.getCause());
+        result = new WalkResult(i, 0L, 0L, e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        es.shutdownNow();
+        result = new WalkResult(i, 0L, 0L, e);
+      }
+      results.add(result);
+    }
+    logLatencies(node);
+    return new RunResult(results);
+  }
+
+  /**
+   * Replays a walk recorded by a {@link TraceRecorder}. The walk visits
+   * exactly the nodes that the recorded walker visited, in order, rather
+   * than choosing edges at random, so a failure that took hours to hit can
+   * be reproduced in the time it takes to run the actions. The replay runs
+   * on the current thread, with a new state and its own action instances,
+   * and is neither watched, monitored nor traced.
+   *
+   * @param graph name of graph that was recorded
+   * @param env test environment
+   * @param traceDir trace directory
+   * @param walkerId ID of recorded walker
+   * @return outcome of the replay
+   * @throws IOException if the trace cannot be read, or is sampled
+   * @throws IllegalArgumentException if the trace is not of the graph
+   */
+  public WalkResult replay(String graph, Environment env, File traceDir,
+                           int walkerId) throws IOException {
+    Node node = nodeKeeper.getNode(graph);
+    Replay replay = Replay.fromTrace(traceDir, walkerId);
+    if (replay.size() > 0 &&
+        !replay.getModuleNames()[replay.getModule(0)].equals(node.toString())) {
+      throw new IllegalArgumentException("Trace in " + traceDir + " is of " + replay.getModuleNames()[replay.getModule(0)] + ", not " + node);
+    }
+    LOG.info("Replaying " + replay.size() + " visits by walker " + walkerId + " from " + traceDir);
+    return replay(node, env, replay, walkerId);
+  }
+  /**
+   * Replays visits on the current thread.
+   *
+   * @param node graph
+   * @param env test environment
+   * @param replay visits to replay
+   * @param walkerId ID for the replaying walker
+   * @return outcome of the replay
+   */
+  static WalkResult replay(Node node, Environment env, Replay replay,
+                           int walkerId) {
+    Walker walker = new Walker(walkerId, new Random());
+    walker.setReplay(replay);
+    Walker.bind(walker);
+    long startTime = System.currentTimeMillis();
+    Throwable failure = null;
+    try {
+      node.visit(env, new State(), new Properties());  // no incoming properties
+    } catch (Exception e) {
+      failure = e;
+    } finally {
+      Walker.bind(null);
+    }
+    return new WalkResult(walkerId, walker.getHops(),
+                          System.currentTimeMillis() - startTime, failure);
+  }
+
+  /**
+   * Logs the latency report for a graph, if it has timed nodes.
+   *
+   * @param node graph
+   */
+  private static void logLatencies(Node node) {
+    if (!(node instanceof Module)) {
+      return;
+    }
+    String report = ((Module) node).getLatencyReport();
+    if (report.length() > 0) {
+      LOG.info("Node visit latencies:\n" + report);
+    }
+  }
+
+  /**
+   * Creates an executor that runs each task on a new virtual thread. This is
+   * done reflectively, since virtual threads are only in Java 21 and later.
+   *
+   * @return executor
+   * @throws UnsupportedOperationException if this JVM does not support
+   * virtual threads
+   */
+  static ExecutorService newVirtualThreadExecutor() {
+    try {
+      Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) m.invoke(null);
+    } catch (NoSuchMethodException e) {
+      throw new UnsupportedOperationException("Virtual threads require Java 21 or later", e);
+    } catch (Exception e) {
+      throw new UnsupportedOperationException("Unable to create virtual thread executor", e);
+    }
+  }
+
+  /**
+   * One random walk, run by its own walker.
+   */
+  static class Walk implements Callable<WalkResult> {
+    private final int frameworkId;
+    private final Node node;
+    private final Environment env;
+    private final State state;
+    private final Walker walker;
+    private final TraceRecorder traceRecorder;
+    Walk(int frameworkId, Node node, Environment env, State state,
+         Walker walker, TraceRecorder traceRecorder) {
+      this.frameworkId = frameworkId;
+      this.node = node;
+      this.env = env;
+      this.state = state;
+      this.walker = walker;
+      this.traceRecorder = traceRecorder;
+    }
+    @Override
+    public WalkResult call() {
+      Walker.bind(walker);
+      WalkerMonitor monitor = WalkerMonitor.register(frameworkId, walker);
+      TraceWriter trace = startTrace(traceRecorder, walker);
+      long startTime = System.currentTimeMillis();
+      Throwable failure = null;
+      try {
+        node.visit(env, state, new Properties());  // no incoming properties
+      } catch (Exception e) {
+        LOG.error("Error during random walk by walker " + walker.getId(), e);
+        failure = e;
+      } finally {
+        endTrace(trace, walker);
+        if (monitor != null) {
+          monitor.unregister();
+        }
+        Walker.bind(null);
+      }
+      return new WalkResult(walker.getId(), walker.getHops(),
+                            System.currentTimeMillis() - startTime, failure);
+    }
+  }
+
+  /**
+   * A validator for integer options whose value must be at least one.
+   */
+  public static class AtLeastOne implements IParameterValidator {
+    @Override
+    public void validate(String name, String value) throws ParameterException {
+      int n;
+      try {
+        n = Integer.parseInt(value);
+      } catch (NumberFormatException e) {
+        throw new ParameterException("Parameter " + name + " should be an integer (found " + value + ")");
+      }
+      if (n < 1) {
+        throw new ParameterException("Parameter " + name + " should be at least 1 (found " + value + ")");
+      }
     }
   }
 
@@ -73,6 +513,97 @@ public class Framework {
     @Parameter(names="--graph", required=true,
                description="the name of the test graph to run")
     String graph;
+    @Parameter(names="--walkers", required=false,
+               validateWith=AtLeastOne.class,
+               description="the number of random walks to run at once")
+    int walkers = 1;
+    @Parameter(names="--virtual-threads", required=false,
+               description="run each walk on a virtual thread (Java 21+)")
+    boolean virtualThreads = false;
+    @Parameter(names="--coverage-file", required=false,
+               description="file to write the transition coverage matrix to after the run")
+    String coverageFile = null;
+    @Parameter(names="--trace-dir", required=false,
+               description="directory to write binary walk traces to")
+    String traceDir = null;
+    @Parameter(names="--trace-sample-rate", required=false,
+               description="fraction of node visits to trace, in (0, 1]")
+    double traceSampleRate = 1.0;
+    @Parameter(names="--trace-segment-mb", required=false,
+               validateWith=AtLeastOne.class,
+               description="size of each trace segment file, in megabytes")
+    int traceSegmentMb = TraceRecorder.DEFAULT_SEGMENT_SIZE / (1024 * 1024);
+    @Parameter(names="--seed", required=false,
+               description="seed for choosing edges; walker i uses a seed derived from it")
+    Long seed = null;
+    @Parameter(names="--replay-dir", required=false,
+               description="replay the walk traced in this directory instead of walking at random")
+    String replayDir = null;
+    @Parameter(names="--replay-walker", required=false,
+               description="ID of the traced walker to replay")
+    int replayWalker = 0;
+    @Parameter(names="--shrink-dir", required=false,
+               description="with --replay-dir, shrink the failing walk and write a trace of the result to this directory")
+    String shrinkDir = null;
+    @Parameter(names="--shrink-threads", required=false,
+               validateWith=AtLeastOne.class,
+               description="number of candidate walks to replay at once when shrinking")
+    int shrinkThreads = Runtime.getRuntime().availableProcessors();
+    @Parameter(names="--checkpoint-dir", required=false,
+               description="directory to periodically checkpoint walks to")
+    String checkpointDir = null;
+    @Parameter(names="--checkpoint-interval", required=false,
+               validateWith=AtLeastOne.class,
+               description="interval between checkpoints of each walk, in seconds")
+    int checkpointInterval = (int) (Checkpointer.DEFAULT_INTERVAL / 1000L);
+    @Parameter(names="--checkpoint-on-walker", required=false,
+               description="encode checkpointed state objects on the walker's thread, so checkpoints are consistent without --state-history, pausing the walk while they are encoded")
+    boolean checkpointOnWalker = false;
+    @Parameter(names="--resume", required=false,
+               description="resume walks from their latest checkpoints in --checkpoint-dir")
+    boolean resume = false;
+    @Parameter(names="--state-history", required=false,
+               description="number of node visits whose state changes are dumped when a node fails")
+    int stateHistory = 0;
+    @Parameter(names="--dump-dir", required=false,
+               description="directory to write environment and state dumps to when a node fails")
+    String dumpDir = null;
+    @Parameter(names="--dump-max-value", required=false,
+               validateWith=AtLeastOne.class,
+               description="length at which each value in a dump is cut off")
+    int dumpMaxValue = StateDumper.DEFAULT_MAX_VALUE_LENGTH;
+    @Parameter(names="--dump-max-elements", required=false,
+               validateWith=AtLeastOne.class,
+               description="number of elements of each collection written in a dump")
+    int dumpMaxElements = StateDumper.DEFAULT_MAX_ELEMENTS;
+    @Parameter(names="--dump-max-kb", required=false,
+               validateWith=AtLeastOne.class,
+               description="size at which a whole dump is cut off, in kilo-characters")
+    int dumpMaxKb = (int) (StateDumper.DEFAULT_MAX_TOTAL_LENGTH / 1024);
+    @Parameter(names="--dump-thread", required=false,
+               description="write failure dumps on a separate thread")
+    boolean dumpThread = false;
+    @Parameter(names="--share", required=false,
+               description="state key shared by all walkers; may be repeated or comma-separated")
+    List<String> sharedKeys = new ArrayList<String>();
+    @Parameter(names="--module-cache", required=false,
+               description="compile modules, keeping each compiled module next to its XML file")
+    boolean moduleCache = false;
+    @Parameter(names="--module-cache-dir", required=false,
+               description="compile modules, keeping compiled modules in this directory")
+    String moduleCacheDir = null;
+
+    /**
+     * Gets the module cache these options call for.
+     *
+     * @return module cache, or null for none
+     */
+    ModuleCache getModuleCache() {
+      if (moduleCacheDir != null) {
+        return new ModuleCache(new File(moduleCacheDir));
+      }
+      return moduleCache ? new ModuleCache() : null;
+    }
 
     public boolean parseArgs(String programName, String[] args, Object ... others) {
       JCommander commander = new JCommander();
@@ -124,9 +655,114 @@ public class Framework {
     }
 
     Environment env = loadEnvironment(opts);
+    StateDumper.setDefault(new StateDumper(opts.dumpMaxValue,
+                                           opts.dumpMaxElements,
+                                           opts.dumpMaxKb * 1024L,
+                                           opts.dumpDir != null ? new File(opts.dumpDir) : null,
+                                           opts.dumpThread));
+    final ModuleCache moduleCache = opts.getModuleCache();
     NodeFactory nodeFactory =
-      new NodeFactory(null, new File(opts.configDir, MODULE_DIR));
+      new NodeFactory(null, new File(opts.configDir, MODULE_DIR), moduleCache);
     NodeKeeper nodeKeeper = new NodeKeeper(nodeFactory);
-    new Framework(nodeKeeper).run(opts.graph, env);
+    Framework framework = new Framework(nodeKeeper);
+    if (opts.replayDir != null && opts.shrinkDir != null) {
+      final File moduleDir = new File(opts.configDir, MODULE_DIR);
+      final String graph = opts.graph;
+      Shrinker shrinker = new Shrinker(new Shrinker.GraphFactory() {
+        @Override
+        public Node newGraph() {
+          return new NodeKeeper(new NodeFactory(null, moduleDir, moduleCache)).getNode(graph);
+        }
+      }, env, opts.shrinkThreads);
+      Shrinker.Result result = shrinker.shrink(new File(opts.replayDir),
+                                               opts.replayWalker,
+                                               new File(opts.shrinkDir));
+      if (result.getFailure() != null) {
+        LOG.error("Shrunken walk fails with", result.getFailure());
+      }
+      LOG.info(result.toString());
+      return;
+    }
+    if (opts.replayDir != null) {
+      WalkResult result = framework.replay(opts.graph, env,
+                                           new File(opts.replayDir),
+                                           opts.replayWalker);
+      if (result.getFailure() != null) {
+        LOG.error("Replay failed", result.getFailure());
+      }
+      LOG.info(result.toString());
+      return;
+    }
+    framework.setStateHistory(opts.stateHistory);
+    framework.setCountCoverage(opts.coverageFile != null);
+    if (opts.seed != null) {
+      framework.setSeed(opts.seed.longValue());
+    }
+    Checkpointer checkpointer = null;
+    if (opts.checkpointDir != null) {
+      checkpointer = new Checkpointer(new File(opts.checkpointDir),
+                                      opts.checkpointInterval * 1000L);
+      checkpointer.setEncodeOnWalker(opts.checkpointOnWalker);
+      framework.setCheckpointer(checkpointer);
+      if (opts.resume) {
+        framework.setResumeDir(new File(opts.checkpointDir));
+      }
+    } else if (opts.resume) {
+      System.err.println("--resume requires --checkpoint-dir");
+      return;
+    }
+    TraceRecorder traceRecorder = null;
+    if (opts.traceDir != null) {
+      traceRecorder = new TraceRecorder(new File(opts.traceDir),
+                                        opts.traceSegmentMb * 1024 * 1024,
+                                        opts.traceSampleRate);
+      framework.setTraceRecorder(traceRecorder);
+    }
+    if (opts.walkers == 1 && !opts.virtualThreads) {
+      framework.run(opts.graph, env);
+    } else {
+      ConcurrentState shared = null;
+      if (!opts.sharedKeys.isEmpty()) {
+        shared = new ConcurrentState();
+        shared.share(opts.sharedKeys.toArray(new String[0]));
+      }
+      RunResult result = framework.run(opts.graph, env, opts.walkers,
+                                       opts.virtualThreads, shared);
+      for (WalkResult r : result.getWalkResults()) {
+        LOG.info(r.toString());
+      }
+      LOG.info(result.toString());
+    }
+    if (traceRecorder != null) {
+      traceRecorder.close();
+    }
+    if (checkpointer != null) {
+      checkpointer.close();
+    }
+    if (opts.coverageFile != null) {
+      writeCoverage(nodeKeeper.getNode(opts.graph), new File(opts.coverageFile));
+    }
+  }
+
+  /**
+   * Writes the transition coverage matrix for a graph to a file.
+   *
+   * @param node graph
+   * @param f file to write
+   * @throws IOException if the file could not be written
+   * @see Module#writeCoverage(Writer)
+   */
+  static void writeCoverage(Node node, File f) throws IOException {
+    if (!(node instanceof Module)) {
+      LOG.warn("Graph " + node + " is not a module, so has no coverage to write");
+      return;
+    }
+    Writer out = new OutputStreamWriter(new FileOutputStream(f), "UTF-8");
+    try {
+      ((Module) node).writeCoverage(out);
+    } finally {
+      out.close();
+    }
+    LOG.info("Wrote transition coverage matrix to " + f);
   }
 }
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+/**
+ * Hop rates over sliding windows of time. Samples of a walker's hop count
+ * are taken periodically, by the {@link Watchdog}, into a ring; the rate
+ * over a window is figured from the current hop count and the oldest sample
+ * within the window. Neither sampling nor reading touches the walker's hop
+ * loop.
+ */
+final class HopRate {
+  private final long[] times;
+  private final long[] hops;
+  private int next = 0;
+  private int count = 0;
+
+  /**
+   * Creates a new rate tracker.
+   *
+   * @param capacity maximum number of samples kept
+   */
+  HopRate(int capacity) {
+    times = new long[capacity];
+    hops = new long[capacity];
+  }
+
+  /**
+   * Discards all samples and takes a first one.
+   *
+   * @param now current time, in milliseconds
+   * @param hopCount current hop count
+   */
+  synchronized void reset(long now, long hopCount) {
+    next = 0;
+    count = 0;
+    sample(now, hopCount);
+  }
+  /**
+   * Takes a sample, replacing the oldest one if the ring is full.
+   *
+   * @param now current time, in milliseconds
+   * @param hopCount current hop count
+   */
+  synchronized void sample(long now, long hopCount) {
+    times[next] = now;
+    hops[next] = hopCount;
+    next = (next + 1) % times.length;
+    if (count < times.length) {
+      count++;
+    }
+  }
+  /**
+   * Gets the hop rate over a window. If no sample is as old as the window,
+   * the oldest sample is used.
+   *
+   * @param now current time, in milliseconds
+   * @param hopCount current hop count
+   * @param windowMs window length, in milliseconds
+   * @return hops per second, or 0 if there are no samples old enough to
+   * tell
+   */
+  synchronized double perSecond(long now, long hopCount, long windowMs) {
+    long start = now - windowMs;
+    int base = -1;
+    // Go from newest to oldest, stopping at the oldest within the window.
+    for (int k = 1; k <= count; k++) {
+      int i = (next - k + times.length) % times.length;
+      if (times[i] < start && base >= 0) {
+        break;
+      }
+      base = i;
+    }
+    if (base < 0 || now <= times[base]) {
+      return 0.0;
+    }
+    return (hopCount - hops[base]) * 1000.0 / (now - times[base]);
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+/**
+ * A key for an integer state value, which a {@link State} keeps unboxed.
+ * The boxed {@link #get(State)} and {@link #set(State, Integer)} work too.
+ */
+public class IntKey extends StateKey<Integer> {
+  /**
+   * Creates a key for integers.
+   *
+   * @param name key name
+   */
+  public IntKey(String name) {
+    super(name, INT);
+  }
+
+  /**
+   * Gets the value for this key.
+   *
+   * @param state state
+   * @return value, or 0 if none is set
+   */
+  public int getInt(State state) {
+    return state.getIntValue(this);
+  }
+  /**
+   * Sets the value for this key.
+   *
+   * @param state state
+   * @param value value
+   */
+  public void setInt(State state, int value) {
+    state.setIntValue(this, value);
+  }
+  /**
+   * Adds to the value for this key. If none is set, it is taken to be 0.
+   *
+   * @param state state
+   * @param delta amount to add
+   * @return new value
+   */
+  public int add(State state, int delta) {
+    return state.addIntValue(this, delta);
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The Java Flight Recorder events emitted by walks. Only {@link FlightEvents}
+ * uses this class, loading it by name once it knows that JFR is present, so
+ * nothing else in the framework depends on the jdk.jfr module.<p>
+ *
+ * Every event is disabled by default. Each begin method checks whether its
+ * event type is enabled in some recording before creating an event, so when
+ * no recording has enabled them they cost a field read and allocate
+ * nothing.
+ */
+final class JfrEvents implements FlightEvents.Recorder {
+  JfrEvents() {}
+
+  @Name("com.cloudera.titubate.NodeVisit")
+  @Label("Node Visit")
+  @Description("A visit to a node during a random walk")
+  @Category("Titubate")
+  @Enabled(false)
+  @StackTrace(false)
+  static final class NodeVisitEvent extends Event {
+    @Label("Module")
+    String module;
+    @Label("Node")
+    String node;
+    @Label("Walker")
+    int walker;
+    @Label("Hop")
+    @Description("Number of hops the walker had taken when the visit began")
+    long hop;
+    @Label("Succeeded")
+    boolean succeeded;
+  }
+
+  @Name("com.cloudera.titubate.Fixture")
+  @Label("Fixture")
+  @Description("A module fixture setting up or tearing down")
+  @Category("Titubate")
+  @Enabled(false)
+  @StackTrace(false)
+  static final class FixtureEvent extends Event {
+    @Label("Module")
+    String module;
+    @Label("Phase")
+    String phase;
+    @Label("Walker")
+    int walker;
+    @Label("Succeeded")
+    boolean succeeded;
+  }
+
+  @Name("com.cloudera.titubate.Module")
+  @Label("Module")
+  @Description("A walk through a module, from entry to exit")
+  @Category("Titubate")
+  @Enabled(false)
+  @StackTrace(false)
+  static final class ModuleEvent extends Event {
+    @Label("Module")
+    String module;
+    @Label("Walker")
+    int walker;
+    @Label("Depth")
+    @Description("Nesting depth of the module; the outermost module is at 1")
+    int depth;
+    @Label("Hops")
+    @Description("Number of hops the walker took while in the module, including nested modules")
+    long hops;
+    @Label("Succeeded")
+    boolean succeeded;
+  }
+
+  @Name("com.cloudera.titubate.LongRunning")
+  @Label("Long Running Node")
+  @Description("A visit to a timed node that has gone long without progress")
+  @Category("Titubate")
+  @Enabled(false)
+  @StackTrace(false)
+  static final class LongRunningEvent extends Event {
+    @Label("Node")
+    String node;
+    @Label("Walker")
+    int walker;
+    @Label("Time Since Progress")
+    @Timespan(Timespan.MILLISECONDS)
+    long timeSinceProgress;
+  }
+
+  private static final EventType NODE_VISIT =
+    EventType.getEventType(NodeVisitEvent.class);
+  private static final EventType FIXTURE =
+    EventType.getEventType(FixtureEvent.class);
+  private static final EventType MODULE =
+    EventType.getEventType(ModuleEvent.class);
+
+  @Override
+  public Object beginNodeVisit() {
+    if (!NODE_VISIT.isEnabled()) {
+      return null;
+    }
+    NodeVisitEvent e = new NodeVisitEvent();
+    e.begin();
+    return e;
+  }
+  @Override
+  public void endNodeVisit(Object event, Module m, String nodeId, Walker w,
+                           long hop, boolean succeeded) {
+    NodeVisitEvent e = (NodeVisitEvent) event;
+    e.end();
+    if (e.shouldCommit()) {
+      e.module = m.toString();
+      e.node = nodeId;
+      e.walker = w.getId();
+      e.hop = hop;
+      e.succeeded = succeeded;
+      e.commit();
+    }
+  }
+
+  @Override
+  public Object beginFixture() {
+    if (!FIXTURE.isEnabled()) {
+      return null;
+    }
+    FixtureEvent e = new FixtureEvent();
+    e.begin();
+    return e;
+  }
+  @Override
+  public void endFixture(Object event, Module m, String phase, Walker w,
+                         boolean succeeded) {
+    FixtureEvent e = (FixtureEvent) event;
+    e.end();
+    if (e.shouldCommit()) {
+      e.module = m.toString();
+      e.phase = phase;
+      e.walker = w.getId();
+      e.succeeded = succeeded;
+      e.commit();
+    }
+  }
+
+  @Override
+  public Object beginModule() {
+    if (!MODULE.isEnabled()) {
+      return null;
+    }
+    ModuleEvent e = new ModuleEvent();
+    e.begin();
+    return e;
+  }
+  @Override
+  public void endModule(Object event, Module m, Walker w, int depth,
+                        long hops, boolean succeeded) {
+    ModuleEvent e = (ModuleEvent) event;
+    e.end();
+    if (e.shouldCommit()) {
+      e.module = m.toString();
+      e.walker = w.getId();
+      e.depth = depth;
+      e.hops = hops;
+      e.succeeded = succeeded;
+      e.commit();
+    }
+  }
+
+  @Override
+  public void longRunning(Node n, Walker w, long timeSinceProgress) {
+    LongRunningEvent e = new LongRunningEvent();
+    if (e.shouldCommit()) {
+      e.node = n.toString();
+      e.walker = w.getId();
+      e.timeSinceProgress = timeSinceProgress;
+      e.commit();
+    }
+  }
+}
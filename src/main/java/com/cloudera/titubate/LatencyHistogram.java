@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A histogram of latencies, in nanoseconds, in the log-linear style of
+ * HdrHistogram. Values below 32 each have their own bucket; above that,
+ * each power of two is split into 16 equal buckets, so a value is known to
+ * within about 6%. Every non-negative long fits, so the histogram never
+ * grows: it takes a fixed 960 counters for each stripe.<p>
+ *
+ * Recording is lock-free and allocation-free, and any number of threads may
+ * record into a histogram while others read from it. Like
+ * {@link StripedCounters}, the counters and the maximum are split into
+ * stripes, one row of them for each stripe, so that walkers recording into
+ * the same histogram do not contend; a walker records into the stripe for
+ * its ID. A row is only allocated when its stripe is first used, so a
+ * histogram only one walker records into stays small. Reads add up the
+ * stripes. They are not atomic snapshots, so a report taken during a run may
+ * be off by the few values recorded while it was taken.
+ */
+public final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;
+  private static final int BUCKET_COUNT =
+    (64 - SUB_BUCKET_BITS) * SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+
+  // Each row holds a stripe's counters, then its maximum, then padding to
+  // keep it off the next row's cache line.
+  private static final int MAX_INDEX = BUCKET_COUNT;
+  private static final int ROW_LENGTH = BUCKET_COUNT + 1 + 8;
+  private static final int STRIPES;
+  static {
+    int s = 1;
+    while (s < StripedCounters.MAX_USEFUL_STRIPES) {
+      s <<= 1;
+    }
+    STRIPES = s;
+  }
+
+  private final AtomicReferenceArray<AtomicLongArray> rows =
+    new AtomicReferenceArray<AtomicLongArray>(STRIPES);
+
+  /**
+   * Records a latency, into the stripe for the current thread. Negative
+   * values are recorded as zero.
+   *
+   * @param nanos latency, in nanoseconds
+   */
+  public void record(long nanos) {
+    record(nanos, (int) Thread.currentThread().getId());
+  }
+  /**
+   * Records a latency. Negative values are recorded as zero.
+   *
+   * @param nanos latency, in nanoseconds
+   * @param stripe stripe to record into; any int, usually the caller's
+   * walker ID
+   */
+  void record(long nanos, int stripe) {
+    if (nanos < 0L) {
+      nanos = 0L;
+    }
+    AtomicLongArray row = row(stripe & (STRIPES - 1));
+    row.incrementAndGet(index(nanos));
+    long m = row.get(MAX_INDEX);
+    while (nanos > m && !row.compareAndSet(MAX_INDEX, m, nanos)) {
+      m = row.get(MAX_INDEX);
+    }
+  }
+  private AtomicLongArray row(int s) {
+    AtomicLongArray row = rows.get(s);
+    if (row == null) {
+      rows.compareAndSet(s, null, new AtomicLongArray(ROW_LENGTH));
+      row = rows.get(s);
+    }
+    return row;
+  }
+  private long bucket(int i) {
+    long count = 0L;
+    for (int s = 0; s < STRIPES; s++) {
+      AtomicLongArray row = rows.get(s);
+      if (row != null) {
+        count += row.get(i);
+      }
+    }
+    return count;
+  }
+
+  static int index(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    // Keep the top SUB_BUCKET_BITS bits of the value.
+    int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+  }
+  static long lowestValue(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int shift = index / SUB_BUCKET_HALF - 1;
+    long sub = index % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+    return sub << shift;
+  }
+  static long highestValue(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int shift = index / SUB_BUCKET_HALF - 1;
+    return lowestValue(index) + (1L << shift) - 1L;
+  }
+
+  /**
+   * Gets the number of latencies recorded.
+   *
+   * @return count
+   */
+  public long getCount() {
+    long count = 0L;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      count += bucket(i);
+    }
+    return count;
+  }
+  /**
+   * Gets the largest latency recorded.
+   *
+   * @return maximum latency, in nanoseconds, or 0 if none were recorded
+   */
+  public long getMax() {
+    long max = 0L;
+    for (int s = 0; s < STRIPES; s++) {
+      AtomicLongArray row = rows.get(s);
+      if (row != null) {
+        max = Math.max(max, row.get(MAX_INDEX));
+      }
+    }
+    return max;
+  }
+  /**
+   * Gets the latency at a percentile: the highest value equivalent to the
+   * smallest recorded value that at least the given percentage of recorded
+   * values are less than or equal to. The result is never more than the
+   * maximum recorded.
+   *
+   * @param percentile percentile, from 0 to 100
+   * @return latency at percentile, in nanoseconds, or 0 if none were
+   * recorded
+   */
+  public long getValueAtPercentile(double percentile) {
+    long[] snapshot = new long[BUCKET_COUNT];
+    long total = 0L;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      snapshot[i] = bucket(i);
+      total += snapshot[i];
+    }
+    if (total == 0L) {
+      return 0L;
+    }
+    double p = Math.min(Math.max(percentile, 0.0), 100.0);
+    long target = Math.max(1L, (long) Math.ceil(p / 100.0 * total));
+    long seen = 0L;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += snapshot[i];
+      if (seen >= target) {
+        return Math.min(highestValue(i), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  private static String millis(long nanos) {
+    return String.format("%.3f", nanos / 1000000.0);
+  }
+
+  /**
+   * Gets a summary of this histogram: the count, then the 50th, 90th, 99th
+   * and 99.9th percentiles and the maximum, in milliseconds.
+   *
+   * @return summary
+   */
+  @Override
+  public String toString() {
+    return "count=" + getCount() +
+      " p50=" + millis(getValueAtPercentile(50.0)) +
+      " p90=" + millis(getValueAtPercentile(90.0)) +
+      " p99=" + millis(getValueAtPercentile(99.0)) +
+      " p99.9=" + millis(getValueAtPercentile(99.9)) +
+      " max=" + millis(getMax()) + " ms";
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import com.cloudera.titubate.collections.LongSet;
+
+/**
+ * A {@link ShadowModel} keyed by longs, which logs the keys changed since it
+ * was last verified in a {@link LongSet}, so that logging a change boxes
+ * nothing. Each changed key is logged once, and changed keys are checked in
+ * no particular order. As with {@link ShadowModel}, every few verifications,
+ * and any with more changes logged than the model has entries, are full
+ * checks.
+ */
+public abstract class LongShadowModel {
+  private final LongSet changes = new LongSet();
+  private long verifications = 0L;
+
+  /**
+   * Checks a shadow model keyed by longs against the system under test.
+   */
+  public interface Verifier {
+    /**
+     * Checks one key that has changed since the last verification. The key
+     * may have been removed from the model.
+     *
+     * @param key key
+     */
+    void verifyChanged(long key);
+    /**
+     * Checks the whole model.
+     */
+    void verifyAll();
+  }
+
+  /**
+   * Logs a change to a key.
+   *
+   * @param key key
+   */
+  protected void changed(long key) {
+    changes.add(key);
+  }
+
+  /**
+   * Checks if a key has changed since the last verification.
+   *
+   * @param key key
+   * @return true if changed
+   */
+  public boolean isChanged(long key) {
+    return changes.contains(key);
+  }
+  /**
+   * Gets the number of keys changed since the last verification.
+   *
+   * @return number of changed keys
+   */
+  public int getChangeCount() {
+    return changes.size();
+  }
+  /**
+   * Gets the number of entries in this model.
+   *
+   * @return size
+   */
+  public abstract int size();
+
+  /**
+   * Verifies this model. Every fullEvery-th verification, and any
+   * verification with more changes logged than the model has entries, is a
+   * full check; others check only the changed keys. Either way, the change
+   * log is cleared afterwards, unless the verifier throws.
+   *
+   * @param v verifier
+   * @param fullEvery how often to do a full check; 1 for every time
+   * @return true if a full check was done
+   * @throws IllegalArgumentException if fullEvery is not positive
+   */
+  public boolean verify(final Verifier v, int fullEvery) {
+    boolean full = ShadowModel.isFull(++verifications, fullEvery,
+                                      changes.size(), size());
+    if (full) {
+      v.verifyAll();
+    } else {
+      changes.forEach(new LongSet.Visitor() {
+        @Override
+        public void visit(long key) {
+          v.verifyChanged(key);
+        }
+      });
+    }
+    changes.clear();
+    return full;
+  }
+
+  @Override
+  public String toString() {
+    // Never the contents, which may be far too large to dump
+    return getClass().getSimpleName() + "[" + size() + " entries, " +
+      changes.size() + " changed]";
+  }
+}
@@ -0,0 +1,603 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+
+/**
+ * An oracle store kept off the heap, in a memory-mapped file, for shadow
+ * models too large to hold as Java objects. It maps long keys to values of
+ * a fixed number of bytes, in fixed-layout records addressed by open
+ * addressing with linear probing, so its size is limited by disk and address
+ * space rather than heap, and garbage collection never sees its entries. A
+ * fixture usually creates one in <code>setUp</code>, keeps it in state under
+ * a {@link StateKey}, and closes it in <code>tearDown</code>.<p>
+ *
+ * A store is kept in two files: a header in the file it is created with,
+ * and its records in a data file beside it, named after the header file and
+ * the store's generation, as in <code>oracle.3</code>. The header, in
+ * big-endian order, is:
+ *
+ * <pre>
+ *   int    magic number, {@link #MAGIC}
+ *   int    format version, {@link #VERSION}
+ *   int    value size, in bytes
+ *   int    record size, in bytes
+ *   long   capacity, in records (a power of two)
+ *   long   number of entries
+ *   long   generation of the data file
+ * </pre>
+ *
+ * padded to {@link #HEADER_SIZE} bytes. Each record in the data file is a
+ * byte that is 1 if the record is in use, padding to 8 bytes, the key, and
+ * the value, padded to a multiple of 8 bytes. Removal shifts later records
+ * back rather than leaving tombstones, so lookups stay short.<p>
+ *
+ * The store grows when it becomes three quarters full: it rehashes into a
+ * data file of the next generation with twice the capacity, switches the
+ * header to it, and deletes the old data file. No mapped file is ever
+ * replaced, and a crash part way through leaves the header pointing at the
+ * old, complete data file. Growing costs disk and address space, though:
+ * both tables are mapped while records are copied, three times the old
+ * table in all. Mapped buffers cannot be unmapped explicitly, so the address
+ * space of the old table, and on most systems its disk space, is only
+ * released when its buffers are garbage collected; on Windows, where a
+ * mapped file cannot be deleted, the old data file is deleted when the
+ * store is next opened, or when the JVM exits.<p>
+ *
+ * This class is not thread-safe. The memory of a closed store is likewise
+ * released only when its buffers are garbage collected.
+ */
+public final class MappedOracle implements Closeable {
+  static final int MAGIC = 0x544f5243;  // "TORC"
+  static final int VERSION = 2;
+  static final int HEADER_SIZE = 64;
+
+  private static final int MAGIC_OFFSET = 0;
+  private static final int VERSION_OFFSET = 4;
+  private static final int VALUE_SIZE_OFFSET = 8;
+  private static final int RECORD_SIZE_OFFSET = 12;
+  private static final int CAPACITY_OFFSET = 16;
+  private static final int SIZE_OFFSET = 24;
+  private static final int GENERATION_OFFSET = 32;
+
+  private static final int USED_OFFSET = 0;
+  private static final int KEY_OFFSET = 8;
+  private static final int VALUE_OFFSET = 16;
+
+  // Records are mapped in segments of up to 1 GB, since one buffer can
+  // reach at most 2 GB.
+  private static final long MAX_SEGMENT_SIZE = 1L << 30;
+  private static final int MIN_CAPACITY = 16;
+
+  private final File file;
+  private final int valueSize;
+  private final int recordSize;
+  private long capacity;
+  private long mask;
+  private long size;
+  private long generation;
+  private int recordsPerSegment;
+  private MappedByteBuffer header;
+  private MappedByteBuffer[] segments;
+  private boolean closed = false;
+
+  private MappedOracle(File file, int valueSize, long capacity,
+                       long generation) throws IOException {
+    this.file = file;
+    this.valueSize = valueSize;
+    this.recordSize = recordSize(valueSize);
+    this.generation = generation;
+    header = mapHeader(file);
+    recordsPerSegment = recordsPerSegment(capacity);
+    segments = mapRecords(dataFile(generation), capacity, recordsPerSegment);
+    this.capacity = capacity;
+    mask = capacity - 1L;
+  }
+
+  /**
+   * Creates a store, replacing any existing file.
+   *
+   * @param file file to keep the store in
+   * @param valueSize size of each value, in bytes
+   * @param expectedEntries number of entries expected, used to size the
+   * store initially
+   * @return new store
+   * @throws IllegalArgumentException if the value size is not positive or
+   * the expected number of entries is negative
+   * @throws IOException if the file could not be created
+   */
+  public static MappedOracle create(File file, int valueSize,
+                                    long expectedEntries)
+    throws IOException {
+    if (valueSize < 1) {
+      throw new IllegalArgumentException("Value size must be positive: " + valueSize);
+    }
+    if (expectedEntries < 0L) {
+      throw new IllegalArgumentException("Expected entries may not be negative: " + expectedEntries);
+    }
+    Files.deleteIfExists(file.toPath());
+    deleteDataFiles(file, -1L);
+    MappedOracle o = new MappedOracle(file, valueSize, capacityFor(expectedEntries), 0L);
+    o.writeHeader();
+    return o;
+  }
+
+  /**
+   * Opens an existing store.
+   *
+   * @param file file the store is kept in
+   * @return store
+   * @throws IOException if the file could not be read, or is not a store
+   */
+  public static MappedOracle open(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    int magic, version, valueSize, recordSize;
+    long capacity, size, generation;
+    try {
+      if (raf.length() < HEADER_SIZE) {
+        throw new IOException("File too short for an oracle store: " + file);
+      }
+      magic = raf.readInt();
+      version = raf.readInt();
+      valueSize = raf.readInt();
+      recordSize = raf.readInt();
+      capacity = raf.readLong();
+      size = raf.readLong();
+      generation = raf.readLong();
+    } finally {
+      raf.close();
+    }
+    if (magic != MAGIC) {
+      throw new IOException("Not an oracle store: " + file);
+    }
+    if (version != VERSION) {
+      throw new IOException("Unsupported oracle store version " + version + " in " + file);
+    }
+    if (valueSize < 1 || recordSize != recordSize(valueSize) ||
+        capacity < MIN_CAPACITY || Long.bitCount(capacity) != 1 ||
+        size < 0L || size > capacity || generation < 0L) {
+      throw new IOException("Corrupt oracle store header in " + file);
+    }
+    File data = dataFile(file, generation);
+    if (data.length() != capacity * recordSize) {
+      throw new IOException("Oracle store data file " + data + " is missing or the wrong size");
+    }
+    // Remove data files left by a grow that could not delete them
+    deleteDataFiles(file, generation);
+    MappedOracle o = new MappedOracle(file, valueSize, capacity, generation);
+    o.size = size;
+    return o;
+  }
+
+  private static int recordSize(int valueSize) {
+    return VALUE_OFFSET + ((valueSize + 7) & ~7);
+  }
+  private static long capacityFor(long entries) {
+    long capacity = MIN_CAPACITY;
+    while (capacity - (capacity >>> 2) < entries) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  private File dataFile(long gen) {
+    return dataFile(file, gen);
+  }
+  private static File dataFile(File file, long gen) {
+    return new File(file.getPath() + "." + gen);
+  }
+  // Deletes a store's data files, except the one of a given generation.
+  private static void deleteDataFiles(File file, long keep) {
+    File dir = file.getAbsoluteFile().getParentFile();
+    String[] names = dir == null ? null : dir.list();
+    if (names == null) {
+      return;
+    }
+    String prefix = file.getName() + ".";
+    for (String name : names) {
+      if (name.startsWith(prefix) && name.length() > prefix.length() &&
+          name.substring(prefix.length()).matches("[0-9]+") &&
+          Long.parseLong(name.substring(prefix.length())) != keep) {
+        new File(dir, name).delete();
+      }
+    }
+  }
+
+  private int recordsPerSegment(long newCapacity) {
+    return (int) Math.min(newCapacity, MAX_SEGMENT_SIZE / recordSize);
+  }
+  private static MappedByteBuffer mapHeader(File f) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(f, "rw");
+    try {
+      if (raf.length() < HEADER_SIZE) {
+        raf.setLength(HEADER_SIZE);
+      }
+      return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0L, HEADER_SIZE);
+    } finally {
+      raf.close();
+    }
+  }
+  private MappedByteBuffer[] mapRecords(File f, long newCapacity,
+                                        int perSegment) throws IOException {
+    int numSegments = (int) ((newCapacity + perSegment - 1) / perSegment);
+    MappedByteBuffer[] newSegments = new MappedByteBuffer[numSegments];
+    RandomAccessFile raf = new RandomAccessFile(f, "rw");
+    try {
+      raf.setLength(newCapacity * recordSize);
+      FileChannel ch = raf.getChannel();
+      for (int i = 0; i < numSegments; i++) {
+        long start = (long) i * perSegment;
+        long records = Math.min(perSegment, newCapacity - start);
+        newSegments[i] = ch.map(FileChannel.MapMode.READ_WRITE,
+                                start * recordSize, records * recordSize);
+      }
+    } finally {
+      raf.close();
+    }
+    return newSegments;
+  }
+
+  private void writeHeader() {
+    header.putInt(MAGIC_OFFSET, MAGIC);
+    header.putInt(VERSION_OFFSET, VERSION);
+    header.putInt(VALUE_SIZE_OFFSET, valueSize);
+    header.putInt(RECORD_SIZE_OFFSET, recordSize);
+    header.putLong(CAPACITY_OFFSET, capacity);
+    header.putLong(SIZE_OFFSET, size);
+    header.putLong(GENERATION_OFFSET, generation);
+  }
+
+  private static long hash(long key) {
+    // Murmur3 finalizer, so that sequential keys spread out
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return key;
+  }
+
+  private ByteBuffer segment(long slot) {
+    return segments[(int) (slot / recordsPerSegment)];
+  }
+  private int offset(long slot) {
+    return (int) (slot % recordsPerSegment) * recordSize;
+  }
+  private boolean used(long slot) {
+    return segment(slot).get(offset(slot) + USED_OFFSET) != 0;
+  }
+  private long key(long slot) {
+    return segment(slot).getLong(offset(slot) + KEY_OFFSET);
+  }
+
+  // Finds the slot holding a key, or the empty slot where it would go.
+  private long find(long key) {
+    long slot = hash(key) & mask;
+    while (used(slot) && key(slot) != key) {
+      slot = (slot + 1L) & mask;
+    }
+    return slot;
+  }
+  // Finds the slot holding a key, or -1 if it is absent.
+  private long slotOf(long key) {
+    checkOpen();
+    long slot = find(key);
+    return used(slot) ? slot : -1L;
+  }
+
+  // Finds the slot for a key, claiming an empty one if it is absent.
+  private long claim(long key) throws IOException {
+    checkOpen();
+    long slot = find(key);
+    if (used(slot)) {
+      return slot;
+    }
+    if (size + 1L > capacity - (capacity >>> 2)) {
+      grow();
+      slot = find(key);
+    }
+    ByteBuffer seg = segment(slot);
+    int off = offset(slot);
+    seg.putLong(off + KEY_OFFSET, key);
+    for (int i = VALUE_OFFSET; i < recordSize; i += 8) {
+      seg.putLong(off + i, 0L);
+    }
+    seg.put(off + USED_OFFSET, (byte) 1);
+    header.putLong(SIZE_OFFSET, ++size);
+    return slot;
+  }
+
+  private void grow() throws IOException {
+    long newCapacity = capacity << 1;
+    long newMask = newCapacity - 1L;
+    int newPerSegment = recordsPerSegment(newCapacity);
+    File oldFile = dataFile(generation);
+    MappedByteBuffer[] newSegments =
+      mapRecords(dataFile(generation + 1L), newCapacity, newPerSegment);
+    for (long slot = 0L; slot < capacity; slot++) {
+      if (!used(slot)) {
+        continue;
+      }
+      long to = hash(key(slot)) & newMask;
+      while (newSegments[(int) (to / newPerSegment)]
+             .get((int) (to % newPerSegment) * recordSize + USED_OFFSET) != 0) {
+        to = (to + 1L) & newMask;
+      }
+      copyRecord(segment(slot), offset(slot),
+                 newSegments[(int) (to / newPerSegment)],
+                 (int) (to % newPerSegment) * recordSize);
+    }
+    for (MappedByteBuffer seg : newSegments) {
+      seg.force();
+    }
+    // Switch to the new table, dropping the old buffers, and only then
+    // delete the old data file.
+    segments = newSegments;
+    recordsPerSegment = newPerSegment;
+    capacity = newCapacity;
+    mask = newMask;
+    generation++;
+    writeHeader();
+    header.force();
+    if (!oldFile.delete()) {
+      // Still mapped, on a platform that does not allow that
+      oldFile.deleteOnExit();
+    }
+  }
+
+  private void copyRecord(ByteBuffer src, int srcOff, ByteBuffer dst,
+                          int dstOff) {
+    for (int i = 0; i < recordSize; i += 8) {
+      dst.putLong(dstOff + i, src.getLong(srcOff + i));
+    }
+  }
+
+  /**
+   * Checks if a key is present.
+   *
+   * @param key key
+   * @return true if present
+   * @throws IllegalStateException if this store is closed
+   */
+  public boolean containsKey(long key) {
+    return slotOf(key) >= 0L;
+  }
+
+  /**
+   * Gets the value of a key.
+   *
+   * @param key key
+   * @param value array to copy the value into, at least the value size long
+   * @return true if the key is present; if not, the array is unchanged
+   * @throws IllegalStateException if this store is closed
+   */
+  public boolean get(long key, byte[] value) {
+    long slot = slotOf(key);
+    if (slot < 0L) {
+      return false;
+    }
+    ByteBuffer seg = segment(slot);
+    int off = offset(slot) + VALUE_OFFSET;
+    for (int i = 0; i < valueSize; i++) {
+      value[i] = seg.get(off + i);
+    }
+    return true;
+  }
+
+  /**
+   * Sets the value of a key.
+   *
+   * @param key key
+   * @param value value, exactly the value size long
+   * @throws IllegalArgumentException if the value is the wrong size
+   * @throws IllegalStateException if this store is closed
+   * @throws IOException if the store needed to grow and could not
+   */
+  public void put(long key, byte[] value) throws IOException {
+    if (value.length != valueSize) {
+      throw new IllegalArgumentException("Value is " + value.length + " bytes, expected " + valueSize);
+    }
+    long slot = claim(key);
+    ByteBuffer seg = segment(slot);
+    int off = offset(slot) + VALUE_OFFSET;
+    for (int i = 0; i < valueSize; i++) {
+      seg.put(off + i, value[i]);
+    }
+  }
+
+  /**
+   * Gets the first 8 bytes of the value of a key as a long.
+   *
+   * @param key key
+   * @param defaultValue value to return if the key is absent
+   * @return value
+   * @throws IllegalStateException if the value size is less than 8, or this
+   * store is closed
+   */
+  public long getLong(long key, long defaultValue) {
+    checkLongValues();
+    long slot = slotOf(key);
+    if (slot < 0L) {
+      return defaultValue;
+    }
+    return segment(slot).getLong(offset(slot) + VALUE_OFFSET);
+  }
+
+  /**
+   * Sets the first 8 bytes of the value of a key to a long. The rest of the
+   * value is unchanged, or zero for a new key.
+   *
+   * @param key key
+   * @param value value
+   * @throws IllegalStateException if the value size is less than 8, or this
+   * store is closed
+   * @throws IOException if the store needed to grow and could not
+   */
+  public void putLong(long key, long value) throws IOException {
+    checkLongValues();
+    long slot = claim(key);
+    segment(slot).putLong(offset(slot) + VALUE_OFFSET, value);
+  }
+
+  /**
+   * Adds to the first 8 bytes of the value of a key, as a long. A new key
+   * starts at zero.
+   *
+   * @param key key
+   * @param delta amount to add
+   * @return new value
+   * @throws IllegalStateException if the value size is less than 8, or this
+   * store is closed
+   * @throws IOException if the store needed to grow and could not
+   */
+  public long addLong(long key, long delta) throws IOException {
+    checkLongValues();
+    long slot = claim(key);
+    ByteBuffer seg = segment(slot);
+    int off = offset(slot) + VALUE_OFFSET;
+    long value = seg.getLong(off) + delta;
+    seg.putLong(off, value);
+    return value;
+  }
+
+  private void checkLongValues() {
+    if (valueSize < 8) {
+      throw new IllegalStateException("Values are " + valueSize + " bytes, too small for a long");
+    }
+  }
+
+  /**
+   * Removes a key.
+   *
+   * @param key key
+   * @return true if the key was present
+   * @throws IllegalStateException if this store is closed
+   */
+  public boolean remove(long key) {
+    long slot = slotOf(key);
+    if (slot < 0L) {
+      return false;
+    }
+    // Shift back any later record in the probe run that would no longer be
+    // reachable from its home slot across the hole.
+    long hole = slot;
+    long next = (hole + 1L) & mask;
+    while (used(next)) {
+      long home = hash(key(next)) & mask;
+      if (((next - home) & mask) >= ((next - hole) & mask)) {
+        copyRecord(segment(next), offset(next), segment(hole), offset(hole));
+        hole = next;
+      }
+      next = (next + 1L) & mask;
+    }
+    segment(hole).put(offset(hole) + USED_OFFSET, (byte) 0);
+    header.putLong(SIZE_OFFSET, --size);
+    return true;
+  }
+
+  /**
+   * Visits each key in a store.
+   */
+  public interface KeyVisitor {
+    /**
+     * Visits a key.
+     *
+     * @param key key
+     */
+    void visit(long key);
+  }
+
+  /**
+   * Visits every key in this store, in no particular order. The visitor may
+   * read values, but must not add or remove keys.
+   *
+   * @param v visitor
+   * @throws IllegalStateException if this store is closed
+   */
+  public void forEachKey(KeyVisitor v) {
+    checkOpen();
+    for (long slot = 0L; slot < capacity; slot++) {
+      if (used(slot)) {
+        v.visit(key(slot));
+      }
+    }
+  }
+
+  public long size() {
+    return size;
+  }
+  /**
+   * Gets the number of records this store has room for before it must grow.
+   *
+   * @return capacity, in records
+   */
+  public long capacity() {
+    return capacity;
+  }
+  public int getValueSize() {
+    return valueSize;
+  }
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Writes changes to this store through to disk.
+   *
+   * @throws IllegalStateException if this store is closed
+   */
+  public void force() {
+    checkOpen();
+    header.force();
+    for (MappedByteBuffer seg : segments) {
+      seg.force();
+    }
+  }
+
+  private void checkOpen() {
+    if (closed) {
+      throw new IllegalStateException("Oracle store is closed: " + file);
+    }
+  }
+
+  /**
+   * Closes this store. Its file is kept, and may be opened again.
+   */
+  @Override
+  public void close() {
+    if (!closed) {
+      force();
+      closed = true;
+      header = null;
+      segments = null;
+    }
+  }
+
+  @Override
+  public String toString() {
+    // Never the contents, which may be far too large to dump
+    return "MappedOracle[" + file + ", " + size + " entries of " + valueSize + " bytes]";
+  }
+}
@@ -16,23 +16,28 @@
  */
 package com.cloudera.titubate;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * A module is a directed graph of nodes. It is itself a node, so a module
- * may nest other modules.
+ * may nest other modules.<p>
+ *
+ * Once its graph is compiled, a module may be walked by several threads at
+ * once. Everything specific to one walk is kept in the {@link Walker} bound
+ * to the walking thread.
  */
 public class Module extends Node {
   private static final Logger LOG = LoggerFactory.getLogger(Module.class);
@@ -42,43 +47,66 @@ public class Module extends Node {
   public static final String PROPERTY_MAX_SECONDS = "maxSec";
   public static final String PROPERTY_TEARDOWN = "teardown";
 
-  private static class Edge {
-    Edge(String nodeId, int weight) {
-      if (weight <= 0) {
-        throw new IllegalArgumentException("Node " + nodeId +
-                                           " has non-positive weight " +
-                                           weight);
-      }
-      this.nodeId = nodeId;
-      this.weight = weight;
-    }
-    String nodeId;
-    int weight;
-  }
-
+  /**
+   * A list of weighted edges out of a node. Neighbors are chosen using an
+   * alias table (Vose's method), which is built the first time a neighbor
+   * is chosen after the list changes. Each choice then takes constant time,
+   * regardless of the number of edges. Edges are kept in parallel arrays,
+   * rather than as objects, so that large graphs load compactly.
+   */
   static class AdjList {
-    private Random random = new Random();
-    private List<Edge> edges = new ArrayList<Edge>();
-    private int totalWeight = 0;
+    private Random random;
+    private String[] nodeIds = new String[2];
+    private double[] weights = new double[2];
+    private int size = 0;
+    private double totalWeight = 0.0;
+
+    // alias table; null until built
+    private double[] prob;
+    private int[] alias;
+
+    AdjList() {
+      this(null);  // created if ever needed
+    }
+    AdjList(Random random) {
+      this.random = random;
+    }
 
     int size() {
-      return edges.size();
+      return size;
     }
-    int weight(String nodeId) {
-      for (Edge e : edges) {
-        if (e.nodeId.equals(nodeId)) {
-          return e.weight;
+    double weight(String nodeId) {
+      for (int i = 0; i < size; i++) {
+        if (nodeIds[i].equals(nodeId)) {
+          return weights[i];
         }
       }
       return -1;
     }
 
     /**
-     * Adds an edge to this list.
+     * Adds an edge to this list. Weights may be fractional, but must be
+     * positive and finite.
+     *
+     * @throws IllegalArgumentException if the weight is not positive and
+     * finite
      */
-    void addEdge(String nodeId, int weight) {
+    void addEdge(String nodeId, double weight) {
+      if (!(weight > 0.0) || Double.isInfinite(weight)) {
+        throw new IllegalArgumentException("Node " + nodeId +
+                                           " has non-positive or non-finite weight " +
+                                           weight);
+      }
+      if (size == nodeIds.length) {
+        nodeIds = Arrays.copyOf(nodeIds, size << 1);
+        weights = Arrays.copyOf(weights, size << 1);
+      }
+      nodeIds[size] = nodeId;
+      weights[size] = weight;
+      size++;
       totalWeight += weight;
-      edges.add(new Edge(nodeId, weight));
+      prob = null;
+      alias = null;
     }
 
     /**
@@ -88,20 +116,113 @@ public class Module extends Node {
      * @throws IllegalStateException if there are no edges in the list
      */
     String randomNeighbor() {
-      if (totalWeight == 0) {
+      if (size == 0) {
         throw new IllegalStateException("No edges in adjacency list");
       }
-      int randNum = random.nextInt(totalWeight) + 1;
-      String nodeId = null;
-      int sum = 0;
-      for (Edge e : edges) {
-        nodeId = e.nodeId;
-        sum += e.weight;
-        if (randNum <= sum) {
-          break;
+      if (prob == null) {
+        buildAliasTable();
+      }
+      if (random == null) {
+        random = new Random();
+      }
+      int i = random.nextInt(prob.length);
+      if (random.nextDouble() >= prob[i]) {
+        i = alias[i];
+      }
+      return nodeIds[i];
+    }
+
+    /**
+     * Gets the weight of an edge.
+     *
+     * @param i edge index, in the order the edges were added
+     * @return edge weight
+     */
+    double weight(int i) {
+      if (i >= size) {
+        throw new IndexOutOfBoundsException("Edge " + i + " of " + size);
+      }
+      return weights[i];
+    }
+
+    /**
+     * Gets the ID of the node at the end of an edge.
+     *
+     * @param i edge index, in the order the edges were added
+     * @return node ID
+     */
+    String nodeId(int i) {
+      if (i >= size) {
+        throw new IndexOutOfBoundsException("Edge " + i + " of " + size);
+      }
+      return nodeIds[i];
+    }
+
+    /**
+     * Copies this list's alias table into the given arrays, starting at
+     * the given offset. Alias entries are shifted by the offset as well, so
+     * that they index into the destination arrays.
+     *
+     * @param p destination for slot probabilities
+     * @param a destination for slot aliases
+     * @param offset index at which to start copying
+     */
+    void copyAliasTable(double[] p, int[] a, int offset) {
+      if (prob == null) {
+        buildAliasTable();
+      }
+      for (int i = 0; i < prob.length; i++) {
+        p[offset + i] = prob[i];
+        a[offset + i] = alias[i] + offset;
+      }
+    }
+
+    /**
+     * Builds the alias table for this list. Each slot i is split between
+     * edge i, with probability prob[i], and edge alias[i] for the rest.
+     */
+    private void buildAliasTable() {
+      int n = size;
+      double[] p = new double[n];
+      int[] a = new int[n];
+      double[] scaled = new double[n];
+      int[] small = new int[n];
+      int[] large = new int[n];
+      int numSmall = 0;
+      int numLarge = 0;
+      for (int i = 0; i < n; i++) {
+        scaled[i] = weights[i] / totalWeight * n;
+        if (scaled[i] < 1.0) {
+          small[numSmall++] = i;
+        } else {
+          large[numLarge++] = i;
         }
       }
-      return nodeId;
+      while (numSmall > 0 && numLarge > 0) {
+        int s = small[--numSmall];
+        int l = large[--numLarge];
+        p[s] = scaled[s];
+        a[s] = l;
+        scaled[l] = (scaled[l] + scaled[s]) - 1.0;
+        if (scaled[l] < 1.0) {
+          small[numSmall++] = l;
+        } else {
+          large[numLarge++] = l;
+        }
+      }
+      // Whatever is left is (up to rounding error) a full slot.
+      while (numLarge > 0) {
+        int l = large[--numLarge];
+        p[l] = 1.0;
+        a[l] = l;
+      }
+      while (numSmall > 0) {
+        int s = small[--numSmall];
+        p[s] = 1.0;
+        a[s] = s;
+      }
+      alias = a;
+      prob = p;
     }
   }
 
@@ -111,7 +232,9 @@ public class Module extends Node {
   private String initNodeId;
   private Fixture fixture = null;
   private final NodeKeeper nodeKeeper;
-  
+  private volatile ModuleGraph graph;
+  private final Lock graphLock = new ReentrantLock();
+
   Module(String source, Map<String, AdjList> adjMap, Map<String, Properties> nodeProps,
          String initNodeId, Fixture fixture, NodeKeeper nodeKeeper) {
     this.source = source;
@@ -135,171 +258,444 @@ public class Module extends Node {
     return initNodeId;
   }
 
+  /**
+   * Gets the compiled graph for this module, compiling it on first use.
+   * Changes made to the adjacency map or node properties afterwards are
+   * not seen by walks.
+   *
+   * @return compiled graph
+   */
+  ModuleGraph getGraph() {
+    ModuleGraph g = graph;
+    if (g == null) {
+      // Compiling may load nested modules from disk, so don't hold a monitor
+      // while doing it: a virtual thread would pin its carrier.
+      graphLock.lock();
+      try {
+        g = graph;
+        if (g == null) {
+          g = ModuleGraph.compile(this);
+          graph = g;
+        }
+      } finally {
+        graphLock.unlock();
+      }
+    }
+    return g;
+  }
+
   @Override
   public void visit(Environment env, State state, Properties props) throws NodeException {
+    Walker walker = Walker.current();
+    walker.enterModule(this);
+    Walker.Position outer = walker.getPosition();
+    Object event = FlightEvents.beginModule();
+    long startHops = walker.getHops();
+    boolean succeeded = false;
+    try {
+      walk(walker, env, state, props);
+      succeeded = true;
+    } finally {
+      FlightEvents.endModule(event, this, walker, walker.getDepth(),
+                             walker.getHops() - startHops, succeeded);
+      walker.setPosition(outer);
+      walker.exitModule();
+    }
+  }
+
+  private void walk(Walker walker, Environment env, State state, Properties props)
+    throws NodeException {
     int maxHops = Integer.MAX_VALUE;
     int maxSec = Integer.MAX_VALUE;
     boolean teardown = true;
+    ModuleGraph g = getGraph();
 
-    // Properties for a module are those passed in + any in the _init node
-    Properties initProps = getProps(INIT_NODE_ID);
-    initProps.putAll(props);
-
-    // Get the max hops, max seconds, and teardown flag.
+    // Get the max hops, max seconds, and teardown flag. Properties for a
+    // module are those passed in + any in the _init node.
+    Properties initProps = g.initProps();
     String prop;
-    prop = initProps.getProperty(PROPERTY_MAX_HOPS, "");
+    prop = getProperty(props, initProps, PROPERTY_MAX_HOPS, "");
     if (!("".equals(prop))) {
       maxHops = Integer.parseInt(prop);
       if (maxHops <= 0) {
         maxHops = Integer.MAX_VALUE;
       }
     }
-    prop = initProps.getProperty(PROPERTY_MAX_SECONDS, "");
+    prop = getProperty(props, initProps, PROPERTY_MAX_SECONDS, "");
     if (!("".equals(prop))) {
       maxSec = Integer.parseInt(prop);
       if (maxSec <= 0) {
         maxSec = Integer.MAX_VALUE;
       }
     }
-    prop = initProps.getProperty(PROPERTY_TEARDOWN, "true");
+    prop = getProperty(props, initProps, PROPERTY_TEARDOWN, "true");
     if (!("".equals(prop))) {
       teardown = Boolean.parseBoolean(prop);
     }
 
     // If this module has a fixture, call its setUp method now.
     if (fixture != null) {
+      Object event = FlightEvents.beginFixture();
+      boolean succeeded = false;
       try {
         LOG.debug("Setting up module");
         fixture.setUp(env, state);
+        succeeded = true;
       } catch (FixtureException e) {
         throw new NodeException("Exception in fixture setup", e);
+      } finally {
+        FlightEvents.endFixture(event, this, FlightEvents.SET_UP, walker,
+                                succeeded);
       }
     }
 
-    // Visit the initialization node.
-    doVisit(initNodeId, env, state);
-
+    Random random = walker.getRandom();
+    Replay replay = walker.getReplay();
+    PersistentState history = state instanceof PersistentState &&
+      ((PersistentState) state).getHistory() != null ?
+      (PersistentState) state : null;
+    if (history != null) {
+      history.record("start of " + this, walker.getHops());
+    }
+    Checkpoint resume = walker.getDepth() == 1 ? walker.getResume() : null;
+    int curNode;
     int numHops = 0;
+    long elapsed = 0L;
+    if (resume != null) {
+      // Pick up after the checkpointed node, which was already visited.
+      walker.setResume(null);
+      curNode = g.indexOf(resume.getNodeId());
+      if (curNode < 0) {
+        throw new NodeException("Checkpointed node " + resume.getNodeId() + " is not in module " + this);
+      }
+      resume.restore(state);
+      numHops = (int) resume.getNumHops();
+      elapsed = resume.getElapsed();
+      LOG.info("Resuming " + walker + " at node " + resume.getNodeId() + " after " + numHops + " hops");
+    } else {
+      // Visit the initialization node.
+      curNode = replay != null ? replay.next(this, g) : g.initIndex();
+      if (curNode != ModuleGraph.END) {
+        doVisit(walker, g, curNode, env, state);
+        if (history != null) {
+          history.record(g.id(curNode), walker.getHops());
+        }
+      }
+    }
+
     long maxMs = maxSec * 1000L;
-    long startTime = System.currentTimeMillis();
+    long startTime = System.currentTimeMillis() - elapsed;
+    boolean checkpointed = walker.getDepth() == 1;
 
-    String curNodeId;
-    for (curNodeId = initNodeId; !curNodeId.equalsIgnoreCase("END"); ) {
+    while (replay != null && curNode != ModuleGraph.END) {
+      // Replay visits exactly as recorded; the recording already reflects
+      // any limits.
+      numHops++;
+      walker.hop();
+      int nextNode = replay.next(this, g);
+      if (nextNode == ModuleGraph.END) {
+        break;
+      }
+      try {
+        doVisit(walker, g, nextNode, env, state);
+      } catch (Exception e) {
+        throw new NodeException("Error running node " + g.id(nextNode), e);
+      }
+      curNode = nextNode;
+    }
+
+    while (replay == null && curNode != ModuleGraph.END) {
 
       // check if maxSec was reached
       long curTime = System.currentTimeMillis();
+      if (checkpointed && curTime >= walker.getNextCheckpoint()) {
+        walker.checkpoint(this, g.id(curNode), numHops, curTime - startTime,
+                          state, curTime);
+      }
       if (curTime - startTime > maxMs) {
-        LOG.debug("Reached maxSec = " + maxSec);
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Reached maxSec = " + maxSec);
+        }
         break;
       }
       // check if maxHops was reached
       if (numHops >= maxHops) {
-        LOG.debug("Reached maxHops = " + maxHops);
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Reached maxHops = " + maxHops);
+        }
         break;
       }
       numHops++;
+      walker.hop();
 
       // Find the next node
-      if (!adjMap.containsKey(curNodeId) && !curNodeId.startsWith("alias.")) {
-        throw new NodeException("Reached node " + curNodeId + " without outgoing edges in module " + this);
+      if (!g.hasEdges(curNode)) {
+        throw new NodeException("Reached node " + g.id(curNode) + " without outgoing edges in module " + this);
       }
-      AdjList adj = adjMap.get(curNodeId);
-      String nextNodeId = adj.randomNeighbor();
-
-      // If an alias node, slide to its target
-      Node nextNode = getNode(nextNodeId);
-      if (nextNode instanceof AliasNode) {
-        nextNodeId = ((AliasNode) nextNode).getTargetId();
+      int edge = g.randomEdge(curNode, random);
+      g.countTraversal(edge, walker);
+      int nextNode = g.edgeTarget(edge);
+      if (nextNode == ModuleGraph.END) {
+        break;
       }
 
       // Visit the node.
       try {
-        doVisit(nextNodeId, env, state);
+        doVisit(walker, g, nextNode, env, state);
       } catch (Exception e) {
-        LOG.debug("Exception occurred at: " + System.currentTimeMillis());
-        LOG.debug("Properties for node: " + nextNodeId);
-        LOG.debug(getProps(nextNodeId).toString());
-        LOG.debug("Environment");
-        LOG.debug(env.dump());
-        LOG.debug("State information");
-        LOG.debug(state.dump());
-        throw new NodeException("Error running node " + nextNodeId, e);
+        if (history != null) {
+          history.record(g.id(nextNode) + " (failed)", walker.getHops());
+        }
+        StateDumper.getDefault().dumpFailure(LOG, g.id(nextNode),
+                                             g.props(nextNode), env, state);
+        throw new NodeException("Error running node " + g.id(nextNode), e);
+      }
+
+      if (history != null) {
+        history.record(g.id(nextNode), walker.getHops());
       }
 
       // Move position to the next node.
-      curNodeId = nextNodeId;
+      curNode = nextNode;
     }
 
     // If this module has a fixture, call its tearDown method now.
     if (teardown && fixture != null) {
       LOG.debug("Tearing down module");
+      Object event = FlightEvents.beginFixture();
+      boolean succeeded = false;
       try {
         fixture.tearDown(env, state);
+        succeeded = true;
       } catch (FixtureException e) {
         throw new NodeException("Exception in fixture teardown", e);
+      } finally {
+        FlightEvents.endFixture(event, this, FlightEvents.TEAR_DOWN, walker,
+                                succeeded);
       }
     }
+  }
+
+  /**
+   * Gets a property from the properties passed into a visit, falling back to
+   * the _init node's properties. This avoids merging them into a new
+   * properties object on every visit.
+   */
+  private static String getProperty(Properties props, Properties initProps,
+                                    String key, String defaultValue) {
+    String value = props.getProperty(key);
+    if (value == null) {
+      value = initProps.getProperty(key, defaultValue);
+    }
+    return value;
+  }
 
-    timerES.shutdown();
+  private void doVisit(Walker walker, ModuleGraph g, int i, Environment env,
+                       State state) throws NodeException {
+    g.countVisit(i, walker);
+    walker.countVisit(this, g, i);
+    walker.setPosition(g.position(i));
+    Object event = FlightEvents.beginNodeVisit();
+    TraceWriter trace = walker.getTrace();
+    boolean traced = trace != null && trace.sample();
+    if (event == null && !traced) {
+      doVisit(walker, g.node(i), g.isTimed(i), g.latency(i), env, state,
+              g.config(i));
+      return;
+    }
+    long hop = walker.getHops();
+    long seq = traced ? trace.getSeq() : 0L;
+    long start = traced ? System.nanoTime() : 0L;
+    boolean succeeded = false;
+    try {
+      doVisit(walker, g.node(i), g.isTimed(i), g.latency(i), env, state,
+              g.config(i));
+      succeeded = true;
+    } finally {
+      if (traced) {
+        trace.record(seq, start, System.nanoTime() - start, this, i,
+                     succeeded);
+      }
+      FlightEvents.endNodeVisit(event, this, g.id(i), walker, hop, succeeded);
+    }
   }
 
   void doVisit(String nodeId, Environment env, State state) throws NodeException {
     Node n = getNode(nodeId);
-    boolean timed = n instanceof Timed;
-    if (timed) {
-      startTimer(n);
+    doVisit(Walker.current(), n, n instanceof Timed, null, env, state,
+            NodeConfig.of(getProps(nodeId)));
+  }
+
+  /**
+   * Visits a node. The time for each visit to a timed node, successful or
+   * not, is recorded in its latency histogram, if given.
+   */
+  private static void doVisit(Walker walker, Node n, boolean timed,
+                              LatencyHistogram latency, Environment env,
+                              State state, NodeConfig config)
+    throws NodeException {
+    if (!timed) {
+      n.visit(env, state, config);
+      return;
     }
+    walker.startTimedVisit(n);
+    long start = System.nanoTime();
     try {
-      n.visit(env, state, getProps(nodeId));
+      n.visit(env, state, config);
     } finally {
-      if (timed) {
-        stopTimer(n);
+      if (latency != null) {
+        latency.record(System.nanoTime() - start, walker.getId());
       }
+      walker.endTimedVisit();
     }
   }
 
-  private static final long LONG_TIME = 5 * 60 * 1000L;  // 5 minutes
-  AtomicBoolean runningLong = new AtomicBoolean(false);
-  long timerStart;
-  ExecutorService timerES = Executors.newSingleThreadExecutor();
-  Future<?> runningTaskFuture;
-
-  class TimerTask implements Runnable {
-    private Node n;  // node being timed
-    TimerTask(Node n) {
-      this.n = n;
-    }
-    @Override
-    public void run() {
-        try {
-          timerStart = System.currentTimeMillis();
-          Thread.sleep(LONG_TIME);
-        } catch (InterruptedException ie) {
-          return;
-        }
-        long timeSinceLastProgress = System.currentTimeMillis() - n.getProgress();
-        if (timeSinceLastProgress > LONG_TIME) {
-          LOG.warn("Node " + n + " has been running for " + timeSinceLastProgress / 1000 + " seconds. You may want to look into it.");
-          runningLong.set(true);
-        }
+  /**
+   * Gets the latency histograms for the timed nodes of this module and of
+   * the modules nested in it, by node. Only modules that have been walked
+   * have histograms. Each node is named by the module it is in and its ID
+   * there, like "module.xml:ns.Action". This may be called while walks are
+   * running.
+   *
+   * @return latency histograms, by node name
+   */
+  public Map<String, LatencyHistogram> getLatencies() {
+    Map<String, LatencyHistogram> latencies =
+      new LinkedHashMap<String, LatencyHistogram>();
+    addLatencies(latencies, new IdentityHashMap<Module, Boolean>());
+    return latencies;
+  }
+  private void addLatencies(Map<String, LatencyHistogram> latencies,
+                            Map<Module, Boolean> seen) {
+    ModuleGraph g = graph;
+    if (g == null || seen.put(this, Boolean.TRUE) != null) {
+      return;
+    }
+    for (int i = 0; i < g.size(); i++) {
+      if (g.latency(i) != null) {
+        latencies.put(source + ":" + g.id(i), g.latency(i));
       }
+    }
+    for (int i = 0; i < g.size(); i++) {
+      if (g.node(i) instanceof Module) {
+        ((Module) g.node(i)).addLatencies(latencies, seen);
+      }
+    }
   }
-
-  private void startTimer(Node n) {
-    runningLong.set(false);
-    n.progress();
-    runningTaskFuture = timerES.submit(new TimerTask(n));
+  /**
+   * Gets the number of visits to each node of this module and of the modules
+   * nested in it, across all walks that count coverage (see
+   * {@link Framework#setCountCoverage(boolean)}). Nodes are named as in
+   * {@link #getLatencies()}. This may be called while walks are running.
+   *
+   * @return visit counts, by node name
+   */
+  public Map<String, Long> getVisitCounts() {
+    Map<String, Long> counts = new LinkedHashMap<String, Long>();
+    addVisitCounts(counts, new IdentityHashMap<Module, Boolean>());
+    return counts;
+  }
+  private void addVisitCounts(Map<String, Long> counts,
+                              Map<Module, Boolean> seen) {
+    ModuleGraph g = graph;
+    if (g == null || seen.put(this, Boolean.TRUE) != null) {
+      return;
+    }
+    for (int i = 0; i < g.size(); i++) {
+      counts.put(source + ":" + g.id(i), Long.valueOf(g.visitCount(i)));
+    }
+    for (int i = 0; i < g.size(); i++) {
+      if (g.node(i) instanceof Module) {
+        ((Module) g.node(i)).addVisitCounts(counts, seen);
+      }
+    }
+  }
+  /**
+   * Gets the ID of a node in this module's compiled graph.
+   *
+   * @param i node index
+   * @return node ID, or null if the index is not of a node in the graph
+   */
+  String getNodeId(int i) {
+    ModuleGraph g = graph;
+    if (g == null || i < 0 || i >= g.size()) {
+      return null;
+    }
+    return g.id(i);
   }
 
-  private void stopTimer(Node n) {
-    if (runningTaskFuture != null) {
-      runningTaskFuture.cancel(true);
+  /**
+   * Writes the transition coverage matrix for this module and the modules
+   * nested in it, as tab-separated values. There is a row for each edge out
+   * of each node reachable from a module's initial node, giving the module, the node, the
+   * number of visits to the node, the edge's target as configured, the
+   * edge's weight, the fraction of traversals out of the node expected to
+   * take the edge given the weights, the number of times the edge was
+   * traversed, and the fraction of traversals out of the node that took it.
+   * Only modules that have been walked are included, and only walks that
+   * count coverage are counted. This may be called while walks are running.
+   *
+   * @param out writer to write to
+   * @throws IOException if the matrix could not be written
+   */
+  public void writeCoverage(Writer out) throws IOException {
+    out.write("module\tnode\tvisits\tedge\tweight\texpected\ttraversals\tobserved\n");
+    writeCoverage(out, new IdentityHashMap<Module, Boolean>());
+    out.flush();
+  }
+  private void writeCoverage(Writer out, Map<Module, Boolean> seen)
+    throws IOException {
+    ModuleGraph g = graph;
+    if (g == null || seen.put(this, Boolean.TRUE) != null) {
+      return;
+    }
+    for (int i = 0; i < g.size(); i++) {
+      int degree = g.degree(i);
+      double totalWeight = 0.0;
+      long totalTraversals = 0L;
+      long[] traversals = new long[degree];
+      for (int j = 0; j < degree; j++) {
+        int e = g.edgeIndex(i, j);
+        totalWeight += g.edgeWeight(e);
+        traversals[j] = g.traversalCount(e);
+        totalTraversals += traversals[j];
+      }
+      long visits = g.visitCount(i);
+      for (int j = 0; j < degree; j++) {
+        int e = g.edgeIndex(i, j);
+        out.write(source + "\t" + g.id(i) + "\t" + visits + "\t" +
+                  g.edgeId(e) + "\t" + g.edgeWeight(e) + "\t" +
+                  String.format("%.6f", g.edgeWeight(e) / totalWeight) + "\t" +
+                  traversals[j] + "\t" +
+                  String.format("%.6f", totalTraversals == 0L ? 0.0 :
+                                traversals[j] / (double) totalTraversals) +
+                  "\n");
+      }
     }
-    if (runningLong.get()) {
-      LOG.warn("Node " + n + ", which was running long, has now completed after " + (System.currentTimeMillis() - timerStart) / 1000.0 + " seconds");
+    for (int i = 0; i < g.size(); i++) {
+      if (g.node(i) instanceof Module) {
+        ((Module) g.node(i)).writeCoverage(out, seen);
+      }
     }
   }
-  
+
+  /**
+   * Gets a report of node visit latencies, with one line for each timed
+   * node that has been visited. This may be called while walks are running.
+   *
+   * @return latency report
+   * @see #getLatencies()
+   */
+  public String getLatencyReport() {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, LatencyHistogram> e : getLatencies().entrySet()) {
+      if (e.getValue().getCount() > 0L) {
+        sb.append(e.getKey()).append(' ').append(e.getValue()).append('\n');
+      }
+    }
+    return sb.toString();
+  }
+
   @Override
   public String toString() {
     return source;
@@ -309,7 +705,7 @@ public class Module extends Node {
     return nodeKeeper.getNode(id);
   }
 
-  Properties getProps(String nodeId) {
+  synchronized Properties getProps(String nodeId) {
     if (nodeProps == null) {
       nodeProps = new HashMap<String, Properties>();
     }
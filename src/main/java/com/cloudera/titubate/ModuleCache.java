@@ -0,0 +1,372 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import com.cloudera.titubate.Module.AdjList;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache of compiled modules, so that module files need not be parsed and
+ * validated each time a test starts. A module is compiled into a binary
+ * file, kept either next to its XML file, with {@link #SUFFIX} appended to
+ * its name, or in a cache directory, named by the SHA-256 hash of its XML
+ * file's contents. Either way, the compiled file records that hash, and is
+ * used only while the XML file still has it. Each nested module is compiled
+ * and checked separately, so a change to one module file recompiles only
+ * that module.<p>
+ *
+ * A compiled file is read with a single memory-mapped read. Its format, in
+ * big-endian order, is:
+ *
+ * <pre>
+ *   int    magic number, {@link #MAGIC}
+ *   int    format version, {@link #VERSION}
+ *   byte[32] SHA-256 hash of the XML file
+ *   int    number of strings, then for each:
+ *     int    length in bytes, then its UTF-8 bytes
+ *   int    number of packages, then for each: prefix, value
+ *   string fixture ID, or -1 for none
+ *   string initial node ID
+ *   props  initial node properties
+ *   int    number of nodes, then for each:
+ *     string ID
+ *     string source
+ *     props  properties
+ *     int    number of aliases, then each alias name
+ *     int    number of edges, then for each: target ID, double weight
+ * </pre>
+ *
+ * where each string is an int index into the string table, and props are
+ * an int count followed by key and value strings.<p>
+ *
+ * A compiled file that cannot be read is ignored, and replaced once the XML
+ * file has been parsed. Failure to write one is logged, and does not stop
+ * the module from loading.
+ */
+public final class ModuleCache {
+  private static final Logger LOG = LoggerFactory.getLogger(ModuleCache.class);
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  static final int MAGIC = 0x544d4f44;  // "TMOD"
+  static final int VERSION = 1;
+  /**
+   * The suffix for compiled files kept next to module files.
+   */
+  public static final String SUFFIX = ".compiled";
+
+  private static final int HASH_LENGTH = 32;
+
+  private final File dir;
+
+  /**
+   * Creates a cache that keeps each compiled module next to its XML file.
+   */
+  public ModuleCache() {
+    this(null);
+  }
+  /**
+   * Creates a cache that keeps compiled modules in a directory, which is
+   * created if needed.
+   *
+   * @param dir cache directory, or null to keep each compiled module next to
+   * its XML file
+   */
+  public ModuleCache(File dir) {
+    this.dir = dir;
+  }
+
+  /**
+   * Gets the directory this cache keeps compiled modules in.
+   *
+   * @return cache directory, or null if they are kept next to their XML
+   * files
+   */
+  public File getDir() {
+    return dir;
+  }
+
+  /**
+   * Hashes a module file's contents.
+   *
+   * @param xmlFile module file
+   * @return SHA-256 hash
+   * @throws IOException if the file could not be read
+   */
+  static byte[] hash(File xmlFile) throws IOException {
+    MessageDigest md;
+    try {
+      md = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+    RandomAccessFile raf = new RandomAccessFile(xmlFile, "r");
+    try {
+      FileChannel ch = raf.getChannel();
+      md.update(ch.map(FileChannel.MapMode.READ_ONLY, 0L, ch.size()));
+    } finally {
+      raf.close();
+    }
+    return md.digest();
+  }
+
+  /**
+   * Gets the compiled file for a module file.
+   *
+   * @param xmlFile module file
+   * @param hash hash of module file
+   * @return compiled file
+   */
+  File compiledFile(File xmlFile, byte[] hash) {
+    if (dir == null) {
+      return new File(xmlFile.getPath() + SUFFIX);
+    }
+    StringBuilder b = new StringBuilder(HASH_LENGTH * 2 + 7);
+    for (byte x : hash) {
+      b.append(Character.forDigit((x >> 4) & 0xf, 16))
+        .append(Character.forDigit(x & 0xf, 16));
+    }
+    return new File(dir, b.append(".module").toString());
+  }
+
+  /**
+   * Loads a compiled module.
+   *
+   * @param xmlFile module file
+   * @param hash hash of module file's current contents
+   * @return module definition, or null if there is no usable compiled
+   * module for the file's current contents
+   */
+  ModuleDef load(File xmlFile, byte[] hash) {
+    File f = compiledFile(xmlFile, hash);
+    if (!f.isFile()) {
+      return null;
+    }
+    ByteBuffer buf;
+    try {
+      RandomAccessFile raf = new RandomAccessFile(f, "r");
+      try {
+        FileChannel ch = raf.getChannel();
+        buf = ch.map(FileChannel.MapMode.READ_ONLY, 0L, ch.size());
+      } finally {
+        raf.close();
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to read compiled module " + f, e);
+      return null;
+    }
+    try {
+      if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+        LOG.warn("Ignoring compiled module " + f + " of unknown format");
+        return null;
+      }
+      byte[] stored = new byte[HASH_LENGTH];
+      buf.get(stored);
+      if (!Arrays.equals(stored, hash)) {
+        LOG.debug("Compiled module " + f + " is out of date");
+        return null;
+      }
+      ModuleDef def = read(buf);
+      LOG.debug("Loaded compiled module " + f);
+      return def;
+    } catch (BufferUnderflowException e) {
+      LOG.warn("Ignoring truncated compiled module " + f);
+    } catch (RuntimeException e) {
+      LOG.warn("Ignoring corrupt compiled module " + f, e);
+    }
+    return null;
+  }
+
+  private static ModuleDef read(ByteBuffer buf) {
+    String[] strings = new String[buf.getInt()];
+    for (int i = 0; i < strings.length; i++) {
+      byte[] b = new byte[buf.getInt()];
+      buf.get(b);
+      strings[i] = new String(b, UTF8);
+    }
+    ModuleDef def = new ModuleDef();
+    int numPrefixes = buf.getInt();
+    for (int i = 0; i < numPrefixes; i++) {
+      def.prefixes.put(strings[buf.getInt()], strings[buf.getInt()]);
+    }
+    int fixture = buf.getInt();
+    def.fixtureId = fixture >= 0 ? strings[fixture] : null;
+    def.initNodeId = strings[buf.getInt()];
+    def.initProps = readProps(buf, strings);
+    int numNodes = buf.getInt();
+    for (int i = 0; i < numNodes; i++) {
+      String id = strings[buf.getInt()];
+      String src = strings[buf.getInt()];
+      ModuleDef.NodeDef node = new ModuleDef.NodeDef(id, src, readProps(buf, strings));
+      int numAliases = buf.getInt();
+      for (int j = 0; j < numAliases; j++) {
+        node.aliases.add(strings[buf.getInt()]);
+      }
+      int numEdges = buf.getInt();
+      for (int j = 0; j < numEdges; j++) {
+        String target = strings[buf.getInt()];
+        node.edges.addEdge(target, buf.getDouble());
+      }
+      def.addNode(node);
+    }
+    return def;
+  }
+  private static Properties readProps(ByteBuffer buf, String[] strings) {
+    Properties props = new Properties();
+    int n = buf.getInt();
+    for (int i = 0; i < n; i++) {
+      props.setProperty(strings[buf.getInt()], strings[buf.getInt()]);
+    }
+    return props;
+  }
+
+  /**
+   * Saves a compiled module. The file is written in full under a temporary
+   * name first, so a reader never sees part of one.
+   *
+   * @param xmlFile module file
+   * @param hash hash of module file's contents
+   * @param def module definition
+   */
+  void store(File xmlFile, byte[] hash, ModuleDef def) {
+    File f = compiledFile(xmlFile, hash);
+    File tmp = new File(f.getPath() + ".tmp");
+    try {
+      if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+        throw new IOException("Failed to create directory " + dir);
+      }
+      DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+      try {
+        write(out, hash, def);
+      } finally {
+        out.close();
+      }
+      Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                 StandardCopyOption.ATOMIC_MOVE);
+      LOG.debug("Saved compiled module " + f);
+    } catch (IOException e) {
+      LOG.warn("Failed to save compiled module " + f, e);
+      if (!tmp.delete() && tmp.exists()) {
+        LOG.warn("Failed to delete " + tmp);
+      }
+    }
+  }
+
+  private static void write(DataOutputStream out, byte[] hash, ModuleDef def)
+    throws IOException {
+    // Gather the strings first, so each is written once.
+    Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+    for (Map.Entry<String, String> e : def.prefixes.entrySet()) {
+      index(strings, e.getKey());
+      index(strings, e.getValue());
+    }
+    if (def.fixtureId != null) {
+      index(strings, def.fixtureId);
+    }
+    index(strings, def.initNodeId);
+    index(strings, def.initProps);
+    for (ModuleDef.NodeDef node : def.nodes()) {
+      index(strings, node.id);
+      index(strings, node.src);
+      index(strings, node.props);
+      for (String alias : node.aliases) {
+        index(strings, alias);
+      }
+      for (int i = 0; i < node.edges.size(); i++) {
+        index(strings, node.edges.nodeId(i));
+      }
+    }
+
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.write(hash);
+    out.writeInt(strings.size());
+    for (String s : strings.keySet()) {
+      byte[] b = s.getBytes(UTF8);
+      out.writeInt(b.length);
+      out.write(b);
+    }
+    out.writeInt(def.prefixes.size());
+    for (Map.Entry<String, String> e : def.prefixes.entrySet()) {
+      out.writeInt(strings.get(e.getKey()));
+      out.writeInt(strings.get(e.getValue()));
+    }
+    out.writeInt(def.fixtureId != null ? strings.get(def.fixtureId) : -1);
+    out.writeInt(strings.get(def.initNodeId));
+    writeProps(out, strings, def.initProps);
+    out.writeInt(def.numNodes());
+    for (ModuleDef.NodeDef node : def.nodes()) {
+      out.writeInt(strings.get(node.id));
+      out.writeInt(strings.get(node.src));
+      writeProps(out, strings, node.props);
+      out.writeInt(node.aliases.size());
+      for (String alias : node.aliases) {
+        out.writeInt(strings.get(alias));
+      }
+      AdjList edges = node.edges;
+      out.writeInt(edges.size());
+      for (int i = 0; i < edges.size(); i++) {
+        out.writeInt(strings.get(edges.nodeId(i)));
+        out.writeDouble(edges.weight(i));
+      }
+    }
+  }
+
+  private static void index(Map<String, Integer> strings, String s) {
+    if (!strings.containsKey(s)) {
+      strings.put(s, Integer.valueOf(strings.size()));
+    }
+  }
+  private static void index(Map<String, Integer> strings, Properties props) {
+    for (String key : props.stringPropertyNames()) {
+      index(strings, key);
+      index(strings, props.getProperty(key));
+    }
+  }
+  private static void writeProps(DataOutputStream out,
+                                 Map<String, Integer> strings,
+                                 Properties props) throws IOException {
+    List<String> keys = new ArrayList<String>(props.stringPropertyNames());
+    out.writeInt(keys.size());
+    for (String key : keys) {
+      out.writeInt(strings.get(key));
+      out.writeInt(strings.get(props.getProperty(key)));
+    }
+  }
+}
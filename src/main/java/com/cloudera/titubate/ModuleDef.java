@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import com.cloudera.titubate.Module.AdjList;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The definition of a module, as read from its XML file or from a
+ * {@link ModuleCache}: its packages, fixture, initial node, and nodes with
+ * their properties, aliases and edges. No node objects are created until the
+ * definition is built into a module.
+ */
+final class ModuleDef {
+  /**
+   * The definition of one node.
+   */
+  static final class NodeDef {
+    final String id;
+    final String src;
+    final Properties props;
+    final List<String> aliases = new ArrayList<String>(0);
+    final AdjList edges = new AdjList();
+
+    NodeDef(String id, String src, Properties props) {
+      this.id = id;
+      this.src = src;
+      this.props = props;
+    }
+  }
+
+  final Map<String, String> prefixes = new LinkedHashMap<String, String>();
+  String fixtureId = null;
+  String initNodeId = null;
+  Properties initProps = null;
+  private final Map<String, NodeDef> nodes = new LinkedHashMap<String, NodeDef>();
+
+  /**
+   * Adds a node.
+   *
+   * @param node node definition
+   * @throws IllegalArgumentException if the module already has a node with
+   * the same ID
+   */
+  void addNode(NodeDef node) {
+    if (nodes.containsKey(node.id)) {
+      throw new IllegalArgumentException("Module already contains node with ID " + node.id);
+    }
+    nodes.put(node.id, node);
+  }
+  /**
+   * Gets the nodes, in the order they were added.
+   *
+   * @return node definitions
+   */
+  Iterable<NodeDef> nodes() {
+    return nodes.values();
+  }
+  int numNodes() {
+    return nodes.size();
+  }
+
+  /**
+   * Builds a module from this definition, creating its fixture and nodes.
+   *
+   * @param source module source, usually its file name
+   * @param nodeFactory factory for the module's nodes, or null to make one
+   * from this definition's packages
+   * @param moduleDir directory of module files, for nested modules
+   * @param cache cache for nested modules, or null for none
+   * @return module
+   * @throws Exception if the fixture or a node could not be created
+   */
+  Module build(String source, NodeFactory nodeFactory, File moduleDir,
+               ModuleCache cache) throws Exception {
+    PrefixExpander prefixExpander = new PrefixExpander(prefixes);
+    Fixture fixture = null;
+    if (fixtureId != null) {
+      fixture = (Fixture) Class.forName(prefixExpander.expand(fixtureId))
+          .getDeclaredConstructor().newInstance();
+    }
+    if (nodeFactory == null) {
+      nodeFactory = new NodeFactory(prefixExpander, moduleDir, cache);
+    }
+    NodeKeeper nodeKeeper = new NodeKeeper(nodeFactory);
+    Map<String, AdjList> adjMap = new HashMap<String, AdjList>();
+    Map<String, Properties> nodeProps = new HashMap<String, Properties>();
+    nodeProps.put(Module.INIT_NODE_ID, initProps);
+    for (NodeDef node : nodes.values()) {
+      Node n = nodeFactory.createNode(node.src.isEmpty() ? node.id : node.src);
+      nodeKeeper.addNode(node.id, n);
+      for (String alias : node.aliases) {
+        String key = "alias." + alias;
+        AliasNode aliasNode = (AliasNode) nodeFactory.createNode(key);
+        aliasNode.setTargetId(node.id);
+        nodeKeeper.addNode(key, aliasNode);
+      }
+      nodeProps.put(node.id, node.props);
+      adjMap.put(node.id, node.edges);
+    }
+    return new Module(source, adjMap, nodeProps, initNodeId, fixture,
+                      nodeKeeper);
+  }
+}
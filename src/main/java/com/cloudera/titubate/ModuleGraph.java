@@ -0,0 +1,439 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import com.cloudera.titubate.Module.AdjList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * The compiled form of a module's graph, which is what a walk actually
+ * runs on. Each node reachable from the initial node is given an index, and
+ * the node objects and their properties are kept in arrays by index. Edges
+ * are kept in compressed sparse row form: the edges out of node i are at
+ * indexes rowStart[i] (inclusive) to rowStart[i + 1] (exclusive) of the edge
+ * arrays, along with an alias table for choosing among them. Alias nodes are
+ * resolved to their targets, and the END node is represented by the
+ * sentinel index {@link #END}. So, a hop needs no string lookups.<p>
+ *
+ * A compiled graph is immutable once built, except for the statistics kept
+ * as it is walked: latency histograms for its timed nodes, and counts of
+ * node visits and edge traversals. The counts are only kept for walkers
+ * that count coverage, and are allocated the first time one does. They are
+ * striped by walker, so concurrent walks do not contend on them.
+ */
+final class ModuleGraph {
+  /**
+   * The index used for the END node.
+   */
+  static final int END = -1;
+  /**
+   * The index returned when a node is not in a graph.
+   */
+  static final int NONE = -2;
+
+  private final String[] ids;
+  private final Node[] nodes;
+  private final Properties[] props;
+  private final NodeConfig[] configs;
+  private final Walker.Position[] positions;
+  private final boolean[] timed;
+  private final LatencyHistogram[] latencies;
+  private final boolean[] hasEdges;
+  private final int[] rowStart;
+  private final int[] targets;
+  private final double[] prob;
+  private final int[] alias;
+  private final String[] edgeIds;
+  private final double[] weights;
+  private volatile StripedCounters visitCounts;
+  private volatile StripedCounters edgeCounts;
+  private final int initIndex;
+  private final Properties initProps;
+
+  private ModuleGraph(Module m, String[] ids, Node[] nodes, Properties[] props,
+                      boolean[] hasEdges, int[] rowStart, int[] targets,
+                      double[] prob, int[] alias, String[] edgeIds,
+                      double[] weights, int initIndex, Properties initProps) {
+    this.ids = ids;
+    this.nodes = nodes;
+    this.props = props;
+    this.hasEdges = hasEdges;
+    this.rowStart = rowStart;
+    this.targets = targets;
+    this.prob = prob;
+    this.alias = alias;
+    this.edgeIds = edgeIds;
+    this.weights = weights;
+    this.initIndex = initIndex;
+    this.initProps = initProps;
+
+    configs = new NodeConfig[nodes.length];
+    positions = new Walker.Position[nodes.length];
+    for (int i = 0; i < nodes.length; i++) {
+      configs[i] = NodeConfig.of(props[i]);
+      positions[i] = new Walker.Position(m, i);
+    }
+    timed = new boolean[nodes.length];
+    latencies = new LatencyHistogram[nodes.length];
+    for (int i = 0; i < nodes.length; i++) {
+      timed[i] = nodes[i] instanceof Timed;
+      if (timed[i]) {
+        latencies[i] = new LatencyHistogram();
+      }
+    }
+  }
+
+  /**
+   * Compiles a module's graph. Every node reachable from the module's
+   * initial node is retrieved (and created, if necessary) now.
+   *
+   * @param m module to compile
+   * @return compiled graph
+   */
+  static ModuleGraph compile(Module m) {
+    Map<String, AdjList> adjMap = m.getAdjacencyMap();
+    Map<String, Integer> indexes = new HashMap<String, Integer>();
+    List<String> idList = new ArrayList<String>();
+    List<Node> nodeList = new ArrayList<Node>();
+
+    int initIndex = index(m, m.getInitNodeId(), indexes, idList, nodeList);
+
+    // Walk breadth-first from the initial node, numbering nodes as they are
+    // found. The edges for node i are all numbered before those of node
+    // i + 1, so the edge target lists can be laid out as they go.
+    List<int[]> rows = new ArrayList<int[]>();
+    int numEdges = 0;
+    for (int i = 0; i < idList.size(); i++) {
+      AdjList adj = adjMap.get(idList.get(i));
+      if (adj == null) {
+        rows.add(null);
+        continue;
+      }
+      int[] row = new int[adj.size()];
+      for (int j = 0; j < row.length; j++) {
+        row[j] = index(m, adj.nodeId(j), indexes, idList, nodeList);
+      }
+      rows.add(row);
+      numEdges += row.length;
+    }
+
+    int n = idList.size();
+    boolean[] hasEdges = new boolean[n];
+    int[] rowStart = new int[n + 1];
+    int[] targets = new int[numEdges];
+    double[] prob = new double[numEdges];
+    int[] alias = new int[numEdges];
+    String[] edgeIds = new String[numEdges];
+    double[] weights = new double[numEdges];
+    Properties[] props = new Properties[n];
+    int offset = 0;
+    for (int i = 0; i < n; i++) {
+      rowStart[i] = offset;
+      props[i] = m.getProps(idList.get(i));
+      int[] row = rows.get(i);
+      if (row == null) {
+        continue;
+      }
+      hasEdges[i] = row.length > 0;
+      System.arraycopy(row, 0, targets, offset, row.length);
+      AdjList adj = adjMap.get(idList.get(i));
+      adj.copyAliasTable(prob, alias, offset);
+      for (int j = 0; j < row.length; j++) {
+        edgeIds[offset + j] = adj.nodeId(j);
+        weights[offset + j] = adj.weight(j);
+      }
+      offset += row.length;
+    }
+    rowStart[n] = offset;
+
+    return new ModuleGraph(m, idList.toArray(new String[n]),
+                           nodeList.toArray(new Node[n]), props, hasEdges,
+                           rowStart, targets, prob, alias, edgeIds, weights,
+                           initIndex,
+                           m.getProps(Module.INIT_NODE_ID));
+  }
+
+  private static int index(Module m, String id, Map<String, Integer> indexes,
+                           List<String> idList, List<Node> nodeList) {
+    if (id.equalsIgnoreCase("END")) {
+      return END;
+    }
+    Integer index = indexes.get(id);
+    if (index != null) {
+      return index;
+    }
+
+    // If an alias node, slide to its target.
+    Node n = m.getNode(id);
+    if (n instanceof AliasNode) {
+      String targetId = ((AliasNode) n).getTargetId();
+      index = Integer.valueOf(index(m, targetId, indexes, idList, nodeList));
+    } else {
+      index = Integer.valueOf(idList.size());
+      idList.add(id);
+      nodeList.add(n);
+    }
+    indexes.put(id, index);
+    return index;
+  }
+
+  /**
+   * Gets the number of nodes in this graph, not counting END.
+   *
+   * @return number of nodes
+   */
+  int size() {
+    return nodes.length;
+  }
+  /**
+   * Gets the index of the initial node.
+   *
+   * @return initial node index
+   */
+  int initIndex() {
+    return initIndex;
+  }
+  /**
+   * Gets the properties of the module's _init node.
+   *
+   * @return init node properties
+   */
+  Properties initProps() {
+    return initProps;
+  }
+  /**
+   * Finds the index of a node by ID. This is not meant for use in a walk.
+   *
+   * @param id node ID
+   * @return node index, {@link #END} for END, or {@link #NONE} if the node
+   * is not in this graph
+   */
+  int indexOf(String id) {
+    if (id.equalsIgnoreCase("END")) {
+      return END;
+    }
+    for (int i = 0; i < ids.length; i++) {
+      if (ids[i].equals(id)) {
+        return i;
+      }
+    }
+    return NONE;
+  }
+  String id(int i) {
+    return ids[i];
+  }
+  Node node(int i) {
+    return nodes[i];
+  }
+  Properties props(int i) {
+    return props[i];
+  }
+  /**
+   * Gets the configuration of a node, compiled from its properties when
+   * this graph was.
+   *
+   * @param i node index
+   * @return node configuration
+   */
+  NodeConfig config(int i) {
+    return configs[i];
+  }
+  /**
+   * Gets the position of a node, for a walker to note that it is there.
+   *
+   * @param i node index
+   * @return node position
+   */
+  Walker.Position position(int i) {
+    return positions[i];
+  }
+  boolean isTimed(int i) {
+    return timed[i];
+  }
+  /**
+   * Gets the histogram of visit latencies for a node.
+   *
+   * @param i node index
+   * @return latency histogram, or null if the node is not timed
+   */
+  LatencyHistogram latency(int i) {
+    return latencies[i];
+  }
+  boolean hasEdges(int i) {
+    return hasEdges[i];
+  }
+  /**
+   * Gets the number of edges out of a node.
+   *
+   * @param i node index
+   * @return number of edges
+   */
+  int degree(int i) {
+    return rowStart[i + 1] - rowStart[i];
+  }
+  /**
+   * Gets the target of an edge out of a node.
+   *
+   * @param i node index
+   * @param j edge number, among the edges out of the node
+   * @return target node index
+   */
+  int target(int i, int j) {
+    return targets[rowStart[i] + j];
+  }
+
+  /**
+   * Gets the index of an edge among all the edges of this graph.
+   *
+   * @param i node index
+   * @param j edge number, among the edges out of the node
+   * @return edge index
+   */
+  int edgeIndex(int i, int j) {
+    return rowStart[i] + j;
+  }
+  /**
+   * Gets the target of an edge.
+   *
+   * @param e edge index
+   * @return target node index
+   */
+  int edgeTarget(int e) {
+    return targets[e];
+  }
+  /**
+   * Gets the ID of the target of an edge, as configured. For an edge to an
+   * alias node, this is the alias node's ID.
+   *
+   * @param e edge index
+   * @return target node ID
+   */
+  String edgeId(int e) {
+    return edgeIds[e];
+  }
+  /**
+   * Gets the configured weight of an edge.
+   *
+   * @param e edge index
+   * @return edge weight
+   */
+  double edgeWeight(int e) {
+    return weights[e];
+  }
+
+  /**
+   * Chooses a random edge out of a node.
+   *
+   * @param i node index
+   * @param random source of randomness
+   * @return edge index
+   * @throws IllegalStateException if the node has no outgoing edges
+   */
+  int randomEdge(int i, Random random) {
+    int start = rowStart[i];
+    int degree = rowStart[i + 1] - start;
+    if (degree == 0) {
+      throw new IllegalStateException("No edges out of node " + ids[i]);
+    }
+    int e = start + random.nextInt(degree);
+    if (random.nextDouble() >= prob[e]) {
+      e = alias[e];
+    }
+    return e;
+  }
+  /**
+   * Chooses a random neighbor of a node.
+   *
+   * @param i node index
+   * @param random source of randomness
+   * @return neighbor node index, possibly {@link #END}
+   * @throws IllegalStateException if the node has no outgoing edges
+   */
+  int randomNeighbor(int i, Random random) {
+    return targets[randomEdge(i, random)];
+  }
+
+  /**
+   * Counts a visit to a node, if the walker counts coverage.
+   *
+   * @param i node index
+   * @param w visiting walker
+   * @see Walker#setCoverageWalkers(int)
+   */
+  void countVisit(int i, Walker w) {
+    if (w.getCoverageWalkers() == 0) {
+      return;
+    }
+    StripedCounters c = visitCounts;
+    if (c == null) {
+      startCounting(w.getCoverageWalkers());
+      c = visitCounts;
+    }
+    c.increment(i, w.getId());
+  }
+  /**
+   * Counts a traversal of an edge, if the walker counts coverage.
+   *
+   * @param e edge index
+   * @param w traversing walker
+   * @see Walker#setCoverageWalkers(int)
+   */
+  void countTraversal(int e, Walker w) {
+    if (w.getCoverageWalkers() == 0) {
+      return;
+    }
+    StripedCounters c = edgeCounts;
+    if (c == null) {
+      startCounting(w.getCoverageWalkers());
+      c = edgeCounts;
+    }
+    c.increment(e, w.getId());
+  }
+  private synchronized void startCounting(int numWalkers) {
+    if (visitCounts == null) {
+      edgeCounts = new StripedCounters(targets.length, numWalkers);
+      visitCounts = new StripedCounters(nodes.length, numWalkers);
+    }
+  }
+  /**
+   * Gets the number of visits to a node, across all walks that count
+   * coverage.
+   *
+   * @param i node index
+   * @return visit count
+   */
+  long visitCount(int i) {
+    StripedCounters c = visitCounts;
+    return c == null ? 0L : c.get(i);
+  }
+  /**
+   * Gets the number of traversals of an edge, across all walks that count
+   * coverage.
+   *
+   * @param e edge index
+   * @return traversal count
+   */
+  long traversalCount(int e) {
+    StripedCounters c = edgeCounts;
+    return c == null ? 0L : c.get(e);
+  }
+}
@@ -26,7 +26,10 @@ import org.slf4j.LoggerFactory;
 public abstract class Node {
   private static final Logger LOG = LoggerFactory.getLogger(Node.class);
 
-  private long progress = System.currentTimeMillis();
+  private volatile long progress = System.currentTimeMillis();
+  // Progress noted by threads that no walker is bound to, such as a node's
+  // own worker threads
+  private volatile long workerProgress = 0L;
 
   /**
    * Visit this node.
@@ -39,6 +42,22 @@ public abstract class Node {
   public abstract void visit(Environment env, State state, Properties props)
     throws NodeException;
 
+  /**
+   * Visit this node with its compiled configuration. Modules visit nodes
+   * this way. This implementation calls
+   * {@link #visit(Environment, State, Properties)} with the properties the
+   * configuration was compiled from.
+   *
+   * @param env test environment
+   * @param state Random walk state passed between nodes
+   * @param config node configuration
+   * @throws NodeException if node visitation fails
+   */
+  public void visit(Environment env, State state, NodeConfig config)
+    throws NodeException {
+    visit(env, state, config.getProperties());
+  }
+
   /**
    * Checks if this node equals another. Equal nodes have the same string
    * representation.
@@ -72,17 +91,38 @@ public abstract class Node {
   }
 
   /**
-   * Notes progress on the work for this node.
+   * Notes progress on the work for this node. Called by a walker's thread,
+   * it notes progress for that walker only, since a node may be visited by
+   * several walkers at once. Called by any other thread, such as one the
+   * node started to do its work, it notes progress for every walker visiting
+   * the node. This does not lock, so it is safe to call from virtual
+   * threads.
    */
-  public synchronized void progress() {
-    progress = System.currentTimeMillis();
+  public void progress() {
+    long now = System.currentTimeMillis();
+    progress = now;
+    Walker w = Walker.bound();
+    if (w != null) {
+      w.progress();
+    } else {
+      workerProgress = now;
+    }
   }
   /**
    * Gets the last time when progress was noted for this node.
    *
    * @return progress timestamp
    */
-  public synchronized long getProgress() {
+  public long getProgress() {
     return progress;
   }
+  /**
+   * Gets the last time when progress was noted for this node by a thread
+   * that no walker is bound to.
+   *
+   * @return progress timestamp, or 0 if none was noted
+   */
+  long getWorkerProgress() {
+    return workerProgress;
+  }
 }
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * The configuration of a node: its properties, compiled once when its
+ * module is loaded. A node configuration is immutable, so reading it takes
+ * no locks, unlike the synchronized {@link Properties} it is compiled from,
+ * and its values are parsed ahead of time, so reading a number does no
+ * parsing. Actions reach it through {@link CallableAction#config()}.<p>
+ *
+ * A configuration reflects its node's properties as they were when it was
+ * compiled; later changes to the properties are not seen.
+ */
+public final class NodeConfig {
+  private final Properties props;
+  private final Map<String, ParsedValue> values;
+
+  private NodeConfig(Properties props) {
+    this.props = props;
+    Map<String, ParsedValue> m = new HashMap<String, ParsedValue>();
+    for (String key : props.stringPropertyNames()) {
+      m.put(key, new ParsedValue(props.getProperty(key)));
+    }
+    values = Collections.unmodifiableMap(m);
+  }
+
+  /**
+   * Compiles node properties into a configuration.
+   *
+   * @param props properties, may be null for none
+   * @return configuration
+   */
+  public static NodeConfig of(Properties props) {
+    return new NodeConfig(props != null ? props : new Properties());
+  }
+
+  /**
+   * Gets the properties this configuration was compiled from.
+   *
+   * @return properties
+   */
+  public Properties getProperties() {
+    return props;
+  }
+  /**
+   * Gets the keys in this configuration.
+   *
+   * @return keys
+   */
+  public Set<String> keys() {
+    return values.keySet();
+  }
+  public boolean has(String key) {
+    return values.containsKey(key);
+  }
+  /**
+   * Gets a value.
+   *
+   * @param key key
+   * @return value, or null if not present
+   */
+  public String get(String key) {
+    ParsedValue v = values.get(key);
+    return v != null ? v.getString() : null;
+  }
+  /**
+   * Gets a value.
+   *
+   * @param key key
+   * @param defaultValue value to return if not present
+   * @return value
+   */
+  public String get(String key, String defaultValue) {
+    ParsedValue v = values.get(key);
+    return v != null ? v.getString() : defaultValue;
+  }
+  /**
+   * Gets a value as an int.
+   *
+   * @param key key
+   * @param defaultValue value to return if not present
+   * @return value
+   * @throws NumberFormatException if the value is not an int string
+   */
+  public int getInt(String key, int defaultValue) {
+    ParsedValue v = values.get(key);
+    return v != null ? v.getInt().intValue() : defaultValue;
+  }
+  /**
+   * Gets a value as a long.
+   *
+   * @param key key
+   * @param defaultValue value to return if not present
+   * @return value
+   * @throws NumberFormatException if the value is not a long string
+   */
+  public long getLong(String key, long defaultValue) {
+    ParsedValue v = values.get(key);
+    return v != null ? v.getLong().longValue() : defaultValue;
+  }
+  /**
+   * Gets a value as a double.
+   *
+   * @param key key
+   * @param defaultValue value to return if not present
+   * @return value
+   * @throws NumberFormatException if the value is not a double string
+   */
+  public double getDouble(String key, double defaultValue) {
+    ParsedValue v = values.get(key);
+    return v != null ? v.getDouble().doubleValue() : defaultValue;
+  }
+  /**
+   * Gets a value as a boolean, as {@link Boolean#parseBoolean} would.
+   *
+   * @param key key
+   * @param defaultValue value to return if not present
+   * @return value
+   */
+  public boolean getBoolean(String key, boolean defaultValue) {
+    ParsedValue v = values.get(key);
+    return v != null ? v.getBoolean() : defaultValue;
+  }
+
+  @Override
+  public String toString() {
+    return String.valueOf(props);
+  }
+}
@@ -9,6 +9,7 @@ import java.io.File;
 public class NodeFactory {
     private final PrefixExpander prefixExpander;
     private final File moduleDir;
+    private final ModuleCache moduleCache;
 
     /**
      * Creates a new node factory.
@@ -17,8 +18,20 @@ public class NodeFactory {
      * @param moduleDir directory where XML module definitions reside
      */
     public NodeFactory(PrefixExpander prefixExpander, File moduleDir) {
+        this(prefixExpander, moduleDir, null);
+    }
+    /**
+     * Creates a new node factory that loads modules through a cache.
+     *
+     * @param prefixExpander prefix expander
+     * @param moduleDir directory where XML module definitions reside
+     * @param moduleCache cache of compiled modules, or null for none
+     */
+    public NodeFactory(PrefixExpander prefixExpander, File moduleDir,
+                       ModuleCache moduleCache) {
         this.prefixExpander = prefixExpander;
         this.moduleDir = moduleDir;
+        this.moduleCache = moduleCache;
     }
     /**
      * Creates a node.<p>
@@ -50,8 +63,10 @@ public class NodeFactory {
 
         if (id.endsWith(".xml")) {
             try {
-                return new XmlModuleFactory(new File(moduleDir, id), moduleDir)
-                    .getModule();
+                XmlModuleFactory xmf =
+                    new XmlModuleFactory(new File(moduleDir, id), moduleDir);
+                xmf.setModuleCache(moduleCache);
+                return xmf.getModule();
             } catch (Exception e) {  // FIXME
                 throw new NodeCreationException("Failed to load module " + id, e);
             }
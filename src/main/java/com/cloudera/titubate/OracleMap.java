@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A shadow model of a map, with a reverse index from values to keys, so
+ * that {@link #containsValue} and {@link #keysFor} take constant time
+ * rather than a scan. A value held by one key is indexed directly, and only
+ * values held by several keys need a set of keys. Values must have
+ * consistent <code>equals</code> and <code>hashCode</code> methods, and must
+ * not be changed while in the map. Null keys and values are not allowed.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class OracleMap<K, V> extends ShadowModel<K> {
+  private final Map<K, V> map = new HashMap<K, V>();
+  // Values to keys: a K for a value held by one key, or a Set<K>
+  private final Map<V, Object> index = new HashMap<V, Object>();
+
+  /**
+   * Sets the value for a key.
+   *
+   * @param key key
+   * @param value value
+   * @return previous value, or null if none
+   * @throws NullPointerException if the key or value is null
+   */
+  public V put(K key, V value) {
+    if (key == null || value == null) {
+      throw new NullPointerException("Oracle map keys and values may not be null");
+    }
+    V old = map.put(key, value);
+    if (old != null) {
+      if (old.equals(value)) {
+        return old;
+      }
+      unindex(key, old);
+    }
+    index(key, value);
+    changed(key);
+    return old;
+  }
+  /**
+   * Removes a key.
+   *
+   * @param key key
+   * @return removed value, or null if the key was not present
+   */
+  public V remove(K key) {
+    V old = map.remove(key);
+    if (old != null) {
+      unindex(key, old);
+      changed(key);
+    }
+    return old;
+  }
+  public V get(K key) {
+    return map.get(key);
+  }
+  public boolean containsKey(K key) {
+    return map.containsKey(key);
+  }
+  /**
+   * Checks if any key has a value.
+   *
+   * @param value value
+   * @return true if the value is in this map
+   */
+  public boolean containsValue(V value) {
+    return index.containsKey(value);
+  }
+  /**
+   * Gets the keys that have a value.
+   *
+   * @param value value
+   * @return keys, empty if none
+   */
+  @SuppressWarnings("unchecked")
+  public Set<K> keysFor(V value) {
+    Object keys = index.get(value);
+    if (keys == null) {
+      return Collections.emptySet();
+    }
+    if (keys instanceof KeySet) {
+      return Collections.unmodifiableSet((Set<K>) keys);
+    }
+    return Collections.singleton((K) keys);
+  }
+  @Override
+  public int size() {
+    return map.size();
+  }
+  /**
+   * Gets a read-only view of this map.
+   *
+   * @return map view
+   */
+  public Map<K, V> asMap() {
+    return Collections.unmodifiableMap(map);
+  }
+
+  @SuppressWarnings("unchecked")
+  private void index(K key, V value) {
+    Object keys = index.get(value);
+    if (keys == null) {
+      index.put(value, key);
+    } else if (keys instanceof KeySet) {
+      ((KeySet<K>) keys).add(key);
+    } else {
+      KeySet<K> set = new KeySet<K>();
+      set.add((K) keys);
+      set.add(key);
+      index.put(value, set);
+    }
+  }
+  @SuppressWarnings("unchecked")
+  private void unindex(K key, V value) {
+    Object keys = index.get(value);
+    if (keys instanceof KeySet) {
+      KeySet<K> set = (KeySet<K>) keys;
+      set.remove(key);
+      if (set.size() == 1) {
+        index.put(value, set.iterator().next());
+      }
+    } else {
+      index.remove(value);
+    }
+  }
+
+  // A distinct class, so a set of keys is never mistaken for a key that is
+  // itself a set.
+  private static final class KeySet<K> extends HashSet<K> {
+    private static final long serialVersionUID = 1L;
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A shadow model of a set. Null elements are not allowed.
+ *
+ * @param <E> element type
+ */
+public class OracleSet<E> extends ShadowModel<E> {
+  private final Set<E> set = new HashSet<E>();
+
+  /**
+   * Adds an element.
+   *
+   * @param e element
+   * @return true if the element was not already present
+   * @throws NullPointerException if the element is null
+   */
+  public boolean add(E e) {
+    if (e == null) {
+      throw new NullPointerException("Oracle set elements may not be null");
+    }
+    if (set.add(e)) {
+      changed(e);
+      return true;
+    }
+    return false;
+  }
+  /**
+   * Removes an element.
+   *
+   * @param e element
+   * @return true if the element was present
+   */
+  public boolean remove(E e) {
+    if (set.remove(e)) {
+      changed(e);
+      return true;
+    }
+    return false;
+  }
+  public boolean contains(E e) {
+    return set.contains(e);
+  }
+  @Override
+  public int size() {
+    return set.size();
+  }
+  /**
+   * Gets a read-only view of this set.
+   *
+   * @return set view
+   */
+  public Set<E> asSet() {
+    return Collections.unmodifiableSet(set);
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+/**
+ * A configuration string, parsed ahead of time as each type it might be
+ * read as, so reading it as a number costs no parsing.
+ */
+final class ParsedValue {
+  private final String string;
+  private final Integer intValue;
+  private final Long longValue;
+  private final Double doubleValue;
+  private final boolean booleanValue;
+
+  ParsedValue(String string) {
+    this.string = string;
+    Long l = null;
+    try {
+      l = Long.valueOf(string);
+    } catch (NumberFormatException e) {
+      // not a long
+    }
+    longValue = l;
+    intValue = l != null && l.longValue() == l.intValue() ?
+      Integer.valueOf(l.intValue()) : null;
+    Double d = null;
+    try {
+      d = Double.valueOf(string);
+    } catch (NumberFormatException e) {
+      // not a double
+    }
+    doubleValue = d;
+    booleanValue = Boolean.parseBoolean(string);
+  }
+
+  String getString() {
+    return string;
+  }
+  /**
+   * Gets this value as an int.
+   *
+   * @return int value
+   * @throws NumberFormatException if the value is not an int string
+   */
+  Integer getInt() {
+    if (intValue == null) {
+      return Integer.valueOf(string);  // throws
+    }
+    return intValue;
+  }
+  /**
+   * Gets this value as a long.
+   *
+   * @return long value
+   * @throws NumberFormatException if the value is not a long string
+   */
+  Long getLong() {
+    if (longValue == null) {
+      return Long.valueOf(string);  // throws
+    }
+    return longValue;
+  }
+  /**
+   * Gets this value as a double.
+   *
+   * @return double value
+   * @throws NumberFormatException if the value is not a double string
+   */
+  Double getDouble() {
+    if (doubleValue == null) {
+      return Double.valueOf(string);  // throws
+    }
+    return doubleValue;
+  }
+  /**
+   * Gets this value as a boolean, as {@link Boolean#parseBoolean} would.
+   *
+   * @return boolean value
+   */
+  boolean getBoolean() {
+    return booleanValue;
+  }
+}
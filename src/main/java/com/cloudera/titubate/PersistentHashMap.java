@@ -0,0 +1,455 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable map from strings to objects, kept as a hash array mapped
+ * trie. Adding or removing a key makes a new map that shares all but a
+ * path of O(log n) trie nodes with the old one, so old versions of a map
+ * cost little to keep, and taking a snapshot of one is just keeping a
+ * reference. Two versions of a map can be compared in time proportional to
+ * their differences, since shared subtries are skipped.<p>
+ *
+ * Each trie node covers five bits of the keys' hash codes, and holds a
+ * bitmap of which of its 32 children are present, followed by the present
+ * children as key/value pairs. A child that is itself a trie node has a
+ * null key. Keys whose hash codes are equal end up together in a collision
+ * node. The {@link Map} methods that would modify a map throw
+ * UnsupportedOperationException; use {@link #plus} and {@link #minus}.
+ */
+final class PersistentHashMap extends AbstractMap<String, Object> {
+  /**
+   * The empty map.
+   */
+  static final PersistentHashMap EMPTY = new PersistentHashMap(null, 0);
+
+  private static final Object NOT_FOUND = new Object();
+
+  private final Node root;
+  private final int size;
+
+  private PersistentHashMap(Node root, int size) {
+    this.root = root;
+    this.size = size;
+  }
+
+  private static int hash(String key) {
+    int h = key.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+  @Override
+  public boolean containsKey(Object key) {
+    return key instanceof String && root != null &&
+      root.find((String) key, hash((String) key), 0) != NOT_FOUND;
+  }
+  @Override
+  public Object get(Object key) {
+    if (!(key instanceof String) || root == null) {
+      return null;
+    }
+    Object value = root.find((String) key, hash((String) key), 0);
+    return value == NOT_FOUND ? null : value;
+  }
+
+  /**
+   * Makes a map with a key set to a value.
+   *
+   * @param key key
+   * @param value value, possibly null
+   * @return new map, or this map if the key is already set to the value
+   */
+  PersistentHashMap plus(String key, Object value) {
+    boolean[] added = new boolean[1];
+    Node r = root == null ? BitmapNode.EMPTY : root;
+    Node newRoot = r.put(key, hash(key), value, 0, added);
+    if (newRoot == root) {
+      return this;
+    }
+    return new PersistentHashMap(newRoot, added[0] ? size + 1 : size);
+  }
+  /**
+   * Makes a map without a key.
+   *
+   * @param key key
+   * @return new map, or this map if the key is not in it
+   */
+  PersistentHashMap minus(String key) {
+    if (root == null) {
+      return this;
+    }
+    Node newRoot = root.remove(key, hash(key), 0);
+    if (newRoot == root) {
+      return this;
+    }
+    return newRoot == null ? EMPTY : new PersistentHashMap(newRoot, size - 1);
+  }
+
+  @Override
+  public Set<Map.Entry<String, Object>> entrySet() {
+    return new AbstractSet<Map.Entry<String, Object>>() {
+      @Override
+      public Iterator<Map.Entry<String, Object>> iterator() {
+        List<Map.Entry<String, Object>> entries =
+          new ArrayList<Map.Entry<String, Object>>(size);
+        if (root != null) {
+          root.collect(entries);
+        }
+        return Collections.unmodifiableList(entries).iterator();
+      }
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  /**
+   * Receives the differences between two maps.
+   */
+  interface Diff {
+    void added(String key, Object value);
+    void removed(String key, Object oldValue);
+    void changed(String key, Object oldValue, Object value);
+  }
+
+  /**
+   * Finds the differences between two maps. Values are compared with
+   * <code>equals</code>. Parts of the maps that they share are skipped.
+   *
+   * @param before earlier map
+   * @param after later map
+   * @param d receiver of differences
+   */
+  static void diff(PersistentHashMap before, PersistentHashMap after,
+                   Diff d) {
+    diff(before.root, after.root, d);
+  }
+  private static void diff(Node a, Node b, Diff d) {
+    if (a == b) {
+      return;
+    }
+    if (a instanceof BitmapNode && b instanceof BitmapNode) {
+      BitmapNode x = (BitmapNode) a;
+      BitmapNode y = (BitmapNode) b;
+      int bits = x.bitmap | y.bitmap;
+      while (bits != 0) {
+        int bit = bits & -bits;
+        bits &= ~bit;
+        int xi = (x.bitmap & bit) != 0 ? 2 * Integer.bitCount(x.bitmap & (bit - 1)) : -1;
+        int yi = (y.bitmap & bit) != 0 ? 2 * Integer.bitCount(y.bitmap & (bit - 1)) : -1;
+        if (xi >= 0 && yi >= 0) {
+          Object xk = x.array[xi];
+          Object yk = y.array[yi];
+          if (xk == null && yk == null) {
+            diff((Node) x.array[xi + 1], (Node) y.array[yi + 1], d);
+            continue;
+          }
+          if (xk != null && xk.equals(yk)) {
+            Object xv = x.array[xi + 1];
+            Object yv = y.array[yi + 1];
+            if (!equal(xv, yv)) {
+              d.changed((String) xk, xv, yv);
+            }
+            continue;
+          }
+        }
+        compare(entries(x, xi), entries(y, yi), d);
+      }
+    } else {
+      compare(entries(a), entries(b), d);
+    }
+  }
+  private static Map<String, Object> entries(BitmapNode n, int i) {
+    Map<String, Object> m = new HashMap<String, Object>();
+    if (i >= 0) {
+      if (n.array[i] == null) {
+        ((Node) n.array[i + 1]).collect(m);
+      } else {
+        m.put((String) n.array[i], n.array[i + 1]);
+      }
+    }
+    return m;
+  }
+  private static Map<String, Object> entries(Node n) {
+    Map<String, Object> m = new HashMap<String, Object>();
+    if (n != null) {
+      n.collect(m);
+    }
+    return m;
+  }
+  private static void compare(Map<String, Object> x, Map<String, Object> y,
+                              Diff d) {
+    for (Map.Entry<String, Object> e : x.entrySet()) {
+      if (!y.containsKey(e.getKey())) {
+        d.removed(e.getKey(), e.getValue());
+      } else {
+        Object yv = y.get(e.getKey());
+        if (!equal(e.getValue(), yv)) {
+          d.changed(e.getKey(), e.getValue(), yv);
+        }
+      }
+    }
+    for (Map.Entry<String, Object> e : y.entrySet()) {
+      if (!x.containsKey(e.getKey())) {
+        d.added(e.getKey(), e.getValue());
+      }
+    }
+  }
+  private static boolean equal(Object a, Object b) {
+    return a == b || (a != null && a.equals(b));
+  }
+
+  private abstract static class Node {
+    abstract Object find(String key, int hash, int shift);
+    abstract Node put(String key, int hash, Object value, int shift,
+                      boolean[] added);
+    abstract Node remove(String key, int hash, int shift);
+    abstract void collect(List<Map.Entry<String, Object>> entries);
+    abstract void collect(Map<String, Object> entries);
+  }
+
+  private static Node pair(int shift, String k1, int h1, Object v1,
+                           String k2, int h2, Object v2) {
+    if (h1 == h2) {
+      return new CollisionNode(h1, new String[] { k1, k2 },
+                               new Object[] { v1, v2 });
+    }
+    boolean[] added = new boolean[1];
+    return BitmapNode.EMPTY.put(k1, h1, v1, shift, added)
+      .put(k2, h2, v2, shift, added);
+  }
+
+  private static final class BitmapNode extends Node {
+    static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+    final int bitmap;
+    final Object[] array;
+
+    BitmapNode(int bitmap, Object[] array) {
+      this.bitmap = bitmap;
+      this.array = array;
+    }
+
+    private static int bit(int hash, int shift) {
+      return 1 << ((hash >>> shift) & 31);
+    }
+    private int index(int bit) {
+      return 2 * Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    @Override
+    Object find(String key, int hash, int shift) {
+      int bit = bit(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return NOT_FOUND;
+      }
+      int i = index(bit);
+      Object k = array[i];
+      if (k == null) {
+        return ((Node) array[i + 1]).find(key, hash, shift + 5);
+      }
+      return key.equals(k) ? array[i + 1] : NOT_FOUND;
+    }
+
+    @Override
+    Node put(String key, int hash, Object value, int shift,
+             boolean[] added) {
+      int bit = bit(hash, shift);
+      int i = index(bit);
+      if ((bitmap & bit) == 0) {
+        Object[] a = new Object[array.length + 2];
+        System.arraycopy(array, 0, a, 0, i);
+        a[i] = key;
+        a[i + 1] = value;
+        System.arraycopy(array, i, a, i + 2, array.length - i);
+        added[0] = true;
+        return new BitmapNode(bitmap | bit, a);
+      }
+      Object k = array[i];
+      Object v = array[i + 1];
+      if (k == null) {
+        Node sub = ((Node) v).put(key, hash, value, shift + 5, added);
+        return sub == v ? this : with(i + 1, sub);
+      }
+      if (key.equals(k)) {
+        return v == value ? this : with(i + 1, value);
+      }
+      added[0] = true;
+      Node sub = pair(shift + 5, (String) k, hash((String) k), v, key, hash,
+                      value);
+      Object[] a = array.clone();
+      a[i] = null;
+      a[i + 1] = sub;
+      return new BitmapNode(bitmap, a);
+    }
+    private BitmapNode with(int i, Object o) {
+      Object[] a = array.clone();
+      a[i] = o;
+      return new BitmapNode(bitmap, a);
+    }
+
+    @Override
+    Node remove(String key, int hash, int shift) {
+      int bit = bit(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return this;
+      }
+      int i = index(bit);
+      Object k = array[i];
+      if (k == null) {
+        Node sub = ((Node) array[i + 1]).remove(key, hash, shift + 5);
+        if (sub == array[i + 1]) {
+          return this;
+        }
+        if (sub != null) {
+          return with(i + 1, sub);
+        }
+      } else if (!key.equals(k)) {
+        return this;
+      }
+      if (bitmap == bit) {
+        return null;
+      }
+      Object[] a = new Object[array.length - 2];
+      System.arraycopy(array, 0, a, 0, i);
+      System.arraycopy(array, i + 2, a, i, array.length - i - 2);
+      return new BitmapNode(bitmap & ~bit, a);
+    }
+
+    @Override
+    void collect(List<Map.Entry<String, Object>> entries) {
+      for (int i = 0; i < array.length; i += 2) {
+        if (array[i] == null) {
+          ((Node) array[i + 1]).collect(entries);
+        } else {
+          entries.add(new SimpleImmutableEntry<String, Object>((String) array[i], array[i + 1]));
+        }
+      }
+    }
+    @Override
+    void collect(Map<String, Object> entries) {
+      for (int i = 0; i < array.length; i += 2) {
+        if (array[i] == null) {
+          ((Node) array[i + 1]).collect(entries);
+        } else {
+          entries.put((String) array[i], array[i + 1]);
+        }
+      }
+    }
+  }
+
+  private static final class CollisionNode extends Node {
+    final int hash;
+    final String[] keys;
+    final Object[] values;
+
+    CollisionNode(int hash, String[] keys, Object[] values) {
+      this.hash = hash;
+      this.keys = keys;
+      this.values = values;
+    }
+
+    private int indexOf(String key) {
+      for (int i = 0; i < keys.length; i++) {
+        if (keys[i].equals(key)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    Object find(String key, int hash, int shift) {
+      int i = hash == this.hash ? indexOf(key) : -1;
+      return i < 0 ? NOT_FOUND : values[i];
+    }
+
+    @Override
+    Node put(String key, int hash, Object value, int shift,
+             boolean[] added) {
+      if (hash != this.hash) {
+        // Push this node down a level, under a bitmap node that can hold
+        // the new key beside it.
+        BitmapNode b = new BitmapNode(BitmapNode.bit(this.hash, shift),
+                                      new Object[] { null, this });
+        return b.put(key, hash, value, shift, added);
+      }
+      int i = indexOf(key);
+      if (i >= 0) {
+        if (values[i] == value) {
+          return this;
+        }
+        Object[] v = values.clone();
+        v[i] = value;
+        return new CollisionNode(hash, keys, v);
+      }
+      String[] k = Arrays.copyOf(keys, keys.length + 1);
+      Object[] v = Arrays.copyOf(values, values.length + 1);
+      k[keys.length] = key;
+      v[values.length] = value;
+      added[0] = true;
+      return new CollisionNode(hash, k, v);
+    }
+
+    @Override
+    Node remove(String key, int hash, int shift) {
+      int i = hash == this.hash ? indexOf(key) : -1;
+      if (i < 0) {
+        return this;
+      }
+      if (keys.length == 1) {
+        return null;
+      }
+      String[] k = new String[keys.length - 1];
+      Object[] v = new Object[values.length - 1];
+      System.arraycopy(keys, 0, k, 0, i);
+      System.arraycopy(keys, i + 1, k, i, k.length - i);
+      System.arraycopy(values, 0, v, 0, i);
+      System.arraycopy(values, i + 1, v, i, v.length - i);
+      return new CollisionNode(hash, k, v);
+    }
+
+    @Override
+    void collect(List<Map.Entry<String, Object>> entries) {
+      for (int i = 0; i < keys.length; i++) {
+        entries.add(new SimpleImmutableEntry<String, Object>(keys[i], values[i]));
+      }
+    }
+    @Override
+    void collect(Map<String, Object> entries) {
+      for (int i = 0; i < keys.length; i++) {
+        entries.put(keys[i], values[i]);
+      }
+    }
+  }
+}
@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * State kept in a persistent hash array mapped trie, so that taking a
+ * snapshot of it costs O(1): {@link #getSnapshot()} just returns the
+ * current immutable version of the map. Setting an object costs a little
+ * more than with a hash map, since it copies a path of trie nodes. Objects
+ * for typed keys are kept in a second trie, apart from those for string
+ * keys, and integers and longs for them are kept boxed, so that they are
+ * part of checkpoints and the history too. Checkpoints of a persistent state
+ * are encoded on a background thread, from a snapshot, so objects kept in it
+ * should be replaced rather than changed in place.<p>
+ *
+ * A persistent state may keep a history of the snapshots taken after each
+ * of the last few node visits. When a node fails, the changes that each of
+ * those visits made to the state are dumped along with the state itself.
+ * Like {@link State}, this class is not thread-safe.
+ */
+public class PersistentState extends State {
+  private PersistentHashMap map = PersistentHashMap.EMPTY;
+  private PersistentHashMap typed = PersistentHashMap.EMPTY;
+  private final StateHistory history;
+
+  /**
+   * Creates a new, empty state, without a history.
+   */
+  public PersistentState() {
+    this(0);
+  }
+  /**
+   * Creates a new, empty state.
+   *
+   * @param historySize number of node visits to keep snapshots for, or 0
+   * for no history
+   * @throws IllegalArgumentException if the history size is negative
+   */
+  public PersistentState(int historySize) {
+    super(Collections.<String, Object>emptyMap());
+    if (historySize < 0) {
+      throw new IllegalArgumentException("History size is negative: " + historySize);
+    }
+    history = historySize > 0 ? new StateHistory(historySize) : null;
+  }
+
+  /**
+   * Gets an immutable snapshot of the objects for string keys in this
+   * state. Later changes to this state are not seen in it.
+   *
+   * @return snapshot
+   */
+  public Map<String, Object> getSnapshot() {
+    return map;
+  }
+  @Override
+  Map<Object,Object> snapshot() {
+    Map<Object,Object> m = new HashMap<Object,Object>(map);
+    for (Map.Entry<String,Object> e : typed.entrySet()) {
+      m.put(StateKey.forId(e.getKey()), e.getValue());
+    }
+    return m;
+  }
+  @Override
+  boolean isPersistent() {
+    return true;
+  }
+  /**
+   * Gets the history of snapshots of this state.
+   *
+   * @return history, or null if none is kept
+   */
+  StateHistory getHistory() {
+    return history;
+  }
+  /**
+   * Records a snapshot in this state's history, if it keeps one.
+   *
+   * @param label what led to the snapshot
+   * @param hop walker hop count
+   */
+  void record(String label, long hop) {
+    if (history != null) {
+      history.record(label, hop, map, typed);
+    }
+  }
+
+  @Override
+  public void set(String key, Object value) {
+    map = map.plus(key, value);
+  }
+  @Override
+  public void remove(String key) {
+    if (key != null) {
+      map = map.minus(key);
+    }
+  }
+  @Override
+  public boolean has(String key) {
+    return map.containsKey(key);
+  }
+  @Override
+  public Object get(String key) {
+    return map.get(key);
+  }
+  @Override
+  public Object putIfAbsent(String key, Object value) {
+    Object old = map.get(key);
+    if (old == null) {
+      set(key, value);
+    }
+    return old;
+  }
+  @Override
+  public Object compute(String key,
+                        BiFunction<? super String, Object, Object> f) {
+    Object value = f.apply(key, map.get(key));
+    if (value == null) {
+      remove(key);
+    } else {
+      set(key, value);
+    }
+    return value;
+  }
+  @Override
+  public Object merge(String key, Object value,
+                      BiFunction<Object, Object, Object> f) {
+    Object old = map.get(key);
+    Object merged = old == null ? value : f.apply(old, value);
+    if (merged == null) {
+      remove(key);
+    } else {
+      set(key, merged);
+    }
+    return merged;
+  }
+
+  @Override
+  protected Object getValue(StateKey<?> key) {
+    return typed.get(key.id());
+  }
+  @Override
+  protected void setValue(StateKey<?> key, Object value) {
+    if (value == null) {
+      removeValue(key);
+    } else {
+      typed = typed.plus(key.id(), value);
+    }
+  }
+  @Override
+  protected boolean hasValue(StateKey<?> key) {
+    return typed.containsKey(key.id());
+  }
+  @Override
+  protected void removeValue(StateKey<?> key) {
+    typed = typed.minus(key.id());
+  }
+  @Override
+  protected int getIntValue(IntKey key) {
+    Integer value = (Integer) typed.get(key.id());
+    return value == null ? 0 : value.intValue();
+  }
+  @Override
+  protected void setIntValue(IntKey key, int value) {
+    typed = typed.plus(key.id(), Integer.valueOf(value));
+  }
+  @Override
+  protected int addIntValue(IntKey key, int delta) {
+    int value = getIntValue(key) + delta;
+    setIntValue(key, value);
+    return value;
+  }
+  @Override
+  protected long getLongValue(LongKey key) {
+    Long value = (Long) typed.get(key.id());
+    return value == null ? 0L : value.longValue();
+  }
+  @Override
+  protected void setLongValue(LongKey key, long value) {
+    typed = typed.plus(key.id(), Long.valueOf(value));
+  }
+  @Override
+  protected long addLongValue(LongKey key, long delta) {
+    long value = getLongValue(key) + delta;
+    setLongValue(key, value);
+    return value;
+  }
+
+  @Override
+  public void dump(Writer w, StateDumper dumper) throws IOException {
+    Writer out = dumper.limit(w);
+    out.write("{");
+    boolean first = true;
+    for (Map.Entry<String,Object> e : map.entrySet()) {
+      if (dumper.isFull(out)) {
+        break;
+      }
+      dumper.writeEntry(out, e.getKey(), e.getValue(), first);
+      first = false;
+    }
+    for (Map.Entry<String,Object> e : typed.entrySet()) {
+      if (dumper.isFull(out)) {
+        break;
+      }
+      dumper.writeEntry(out, StateKey.forId(e.getKey()).getName(),
+                        e.getValue(), first);
+      first = false;
+    }
+    out.write("}");
+    out.flush();
+  }
+}
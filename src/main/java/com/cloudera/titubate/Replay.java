@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * An exact sequence of node visits to replay, in place of choosing edges at
+ * random. Each visit is given by a module number and a node index in that
+ * module's compiled graph; module numbers are resolved to modules by name as
+ * the replay reaches them. A replaying walk, on asking for its next node,
+ * gets the node of the next visit if that visit is in the module it is
+ * walking, or END if not: that is how a replay leaves a nested module, and
+ * how it stops.<p>
+ *
+ * A replay is used by one walker, and is not thread-safe. Replaying the same
+ * visits again needs a new replay; see {@link #copy()}.
+ */
+final class Replay {
+  private final String[] moduleNames;
+  private final int[] modules;
+  private final int[] nodes;
+  private final Module[] resolved;
+  private int next = 0;
+
+  /**
+   * Creates a new replay.
+   *
+   * @param moduleNames module names, by module number
+   * @param modules module number for each visit
+   * @param nodes node index for each visit
+   */
+  Replay(String[] moduleNames, int[] modules, int[] nodes) {
+    if (modules.length != nodes.length) {
+      throw new IllegalArgumentException("Module and node sequences differ in length");
+    }
+    this.moduleNames = moduleNames;
+    this.modules = modules;
+    this.nodes = nodes;
+    resolved = new Module[moduleNames.length];
+  }
+
+  /**
+   * Reads the visits in a walker's trace, in the order they started. The
+   * trace must record every visit, not a sample.
+   *
+   * @param dir trace directory
+   * @param walkerId walker ID
+   * @return replay
+   * @throws IOException if the trace cannot be read, or is sampled
+   */
+  static Replay fromTrace(File dir, int walkerId) throws IOException {
+    TraceIndex index = TraceIndex.read(dir);
+    String[] moduleNames = new String[index.getModuleCount()];
+    for (int i = 0; i < moduleNames.length; i++) {
+      moduleNames[i] = index.getModule(i);
+    }
+
+    // Records are written as visits finish, so put them in start order by
+    // sequence number. Sequence numbers count every visit from 1, so a
+    // complete trace has each one exactly once.
+    int n = 0;
+    TraceReader r = new TraceReader(dir, walkerId);
+    while (r.next()) {
+      n++;
+    }
+    int[] modules = new int[n];
+    int[] nodes = new int[n];
+    boolean[] seen = new boolean[n];
+    r = new TraceReader(dir, walkerId);
+    while (r.next()) {
+      long seq = r.getSeq();
+      if (seq < 1L || seq > n || seen[(int) seq - 1]) {
+        throw new IOException("Trace for walker " + walkerId + " in " + dir + " is sampled or damaged; replay needs every visit");
+      }
+      int i = (int) seq - 1;
+      seen[i] = true;
+      modules[i] = r.getModuleId();
+      nodes[i] = r.getNodeIndex();
+    }
+    return new Replay(moduleNames, modules, nodes);
+  }
+
+  /**
+   * Gets the number of visits in this replay.
+   *
+   * @return number of visits
+   */
+  int size() {
+    return nodes.length;
+  }
+  String[] getModuleNames() {
+    return moduleNames;
+  }
+  int getModule(int i) {
+    return modules[i];
+  }
+  int getNode(int i) {
+    return nodes[i];
+  }
+  /**
+   * Creates a copy of this replay, positioned at the start.
+   *
+   * @return copy
+   */
+  Replay copy() {
+    return new Replay(moduleNames, modules, nodes);
+  }
+
+  /**
+   * Takes the next visit, if it is in the given module.
+   *
+   * @param m module being walked
+   * @param g module's compiled graph
+   * @return node index of the next visit, or {@link ModuleGraph#END} if the
+   * next visit is not in the module or there are no more
+   * @throws NodeException if the next visit is to a node not in the module's
+   * graph
+   */
+  int next(Module m, ModuleGraph g) throws NodeException {
+    if (next >= nodes.length) {
+      return ModuleGraph.END;
+    }
+    int module = modules[next];
+    if (resolved[module] != m) {
+      if (resolved[module] != null || !moduleNames[module].equals(m.toString())) {
+        return ModuleGraph.END;
+      }
+      resolved[module] = m;
+    }
+    int node = nodes[next];
+    if (node < 0 || node >= g.size()) {
+      throw new NodeException("Replayed visit " + (next + 1) + " is to node index " + node + ", which is not in module " + m);
+    }
+    next++;
+    return node;
+  }
+}
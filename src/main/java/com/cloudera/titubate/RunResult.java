@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a run of one or more concurrent random walks.
+ */
+public class RunResult {
+  private final List<WalkResult> walkResults;
+
+  /**
+   * Creates a new result.
+   *
+   * @param walkResults results of each walk, in walker ID order
+   */
+  public RunResult(List<WalkResult> walkResults) {
+    this.walkResults =
+      Collections.unmodifiableList(new ArrayList<WalkResult>(walkResults));
+  }
+
+  /**
+   * Gets the results of each walk.
+   *
+   * @return walk results, in walker ID order
+   */
+  public List<WalkResult> getWalkResults() {
+    return walkResults;
+  }
+  /**
+   * Gets the total number of hops taken across all walks.
+   *
+   * @return total hop count
+   */
+  public long getTotalHops() {
+    long total = 0L;
+    for (WalkResult r : walkResults) {
+      total += r.getHops();
+    }
+    return total;
+  }
+  /**
+   * Gets the number of walks that failed.
+   *
+   * @return failure count
+   */
+  public int getFailureCount() {
+    int count = 0;
+    for (WalkResult r : walkResults) {
+      if (!r.succeeded()) {
+        count++;
+      }
+    }
+    return count;
+  }
+  /**
+   * Checks if all walks succeeded.
+   *
+   * @return true if every walk succeeded
+   */
+  public boolean succeeded() {
+    return getFailureCount() == 0;
+  }
+
+  @Override
+  public String toString() {
+    return walkResults.size() + " walks, " + getFailureCount() +
+      " failed, " + getTotalHops() + " total hops";
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A shadow model, or oracle: the test's own record of what the system under
+ * test should hold, kept in {@link State} by a fixture or actions. A shadow
+ * model logs the keys changed since it was last verified, so that a
+ * verification node need only check those keys against the system under
+ * test, rather than rescanning the whole model on every visit. To catch
+ * what checking changes alone would miss, every few verifications are full
+ * checks instead.<p>
+ *
+ * Each changed key is logged once, in the order first changed. If more keys
+ * have changed than the model holds, a full check is done instead, since it
+ * is no more work. For models keyed by longs, {@link LongShadowModel} logs
+ * changes without boxing them.
+ *
+ * @param <K> key type
+ */
+public abstract class ShadowModel<K> {
+  private final Set<K> changes = new LinkedHashSet<K>();
+  private long verifications = 0L;
+
+  /**
+   * Checks a shadow model against the system under test.
+   *
+   * @param <K> key type
+   */
+  public interface Verifier<K> {
+    /**
+     * Checks one key that has changed since the last verification. The key
+     * may have been removed from the model.
+     *
+     * @param key key
+     */
+    void verifyChanged(K key);
+    /**
+     * Checks the whole model.
+     */
+    void verifyAll();
+  }
+
+  /**
+   * Logs a change to a key.
+   *
+   * @param key key
+   */
+  protected void changed(K key) {
+    changes.add(key);
+  }
+
+  /**
+   * Gets the keys changed since the last verification.
+   *
+   * @return changed keys, in the order first changed
+   */
+  public Set<K> getChanges() {
+    return Collections.unmodifiableSet(changes);
+  }
+  /**
+   * Gets the number of entries in this model.
+   *
+   * @return size
+   */
+  public abstract int size();
+
+  /**
+   * Verifies this model. Every fullEvery-th verification, and any
+   * verification with more changes logged than the model has entries, is a
+   * full check; others check only the changed keys. Either way, the change
+   * log is cleared afterwards, unless the verifier throws.
+   *
+   * @param v verifier
+   * @param fullEvery how often to do a full check; 1 for every time
+   * @return true if a full check was done
+   * @throws IllegalArgumentException if fullEvery is not positive
+   */
+  public boolean verify(Verifier<? super K> v, int fullEvery) {
+    boolean full = isFull(++verifications, fullEvery, changes.size(), size());
+    if (full) {
+      v.verifyAll();
+    } else {
+      for (K key : changes) {
+        v.verifyChanged(key);
+      }
+    }
+    changes.clear();
+    return full;
+  }
+
+  /**
+   * Decides whether a verification is a full check.
+   *
+   * @param verifications number of verifications, including this one
+   * @param fullEvery how often to do a full check
+   * @param changes number of changes logged
+   * @param size number of entries in the model
+   * @return true for a full check
+   * @throws IllegalArgumentException if fullEvery is not positive
+   */
+  static boolean isFull(long verifications, int fullEvery, int changes,
+                        int size) {
+    if (fullEvery < 1) {
+      throw new IllegalArgumentException("Full check interval must be positive: " + fullEvery);
+    }
+    return verifications % fullEvery == 0 || changes > size;
+  }
+
+  @Override
+  public String toString() {
+    // Never the contents, which may be far too large to dump
+    return getClass().getSimpleName() + "[" + size() + " entries, " +
+      changes.size() + " changed]";
+  }
+}
@@ -0,0 +1,397 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shrinks a failing walk to a shorter one that fails the same way, by delta
+ * debugging (ddmin). The walk to shrink is a trace recorded by a
+ * {@link TraceRecorder}. It is cut into steps, one for each visit in the
+ * outermost module together with any visits in the modules nested under
+ * it; candidate subsequences of those steps are replayed, and the shortest
+ * one whose failure has the same root cause type is kept.<p>
+ *
+ * Every candidate replay runs in isolation: against a fresh copy of the
+ * graph, so with its own nodes, actions and fixtures, with its own state and
+ * walker. So, candidates are replayed in parallel, on as many threads as
+ * asked for.
+ */
+public final class Shrinker {
+  private static final Logger LOG = LoggerFactory.getLogger(Shrinker.class);
+
+  /**
+   * A source of fresh copies of a graph.
+   */
+  public interface GraphFactory {
+    /**
+     * Creates a new copy of the graph, sharing no nodes, actions or fixtures
+     * with any other copy.
+     *
+     * @return graph
+     * @throws Exception if the graph cannot be created
+     */
+    Node newGraph() throws Exception;
+  }
+
+  /**
+   * The outcome of shrinking a walk.
+   */
+  public static final class Result {
+    private final int originalSteps;
+    private final List<String> steps;
+    private final Throwable failure;
+    private final int replays;
+    Result(int originalSteps, List<String> steps, Throwable failure,
+           int replays) {
+      this.originalSteps = originalSteps;
+      this.steps = Collections.unmodifiableList(steps);
+      this.failure = failure;
+      this.replays = replays;
+    }
+    /**
+     * Gets the number of steps in the original walk.
+     *
+     * @return original step count
+     */
+    public int getOriginalSteps() {
+      return originalSteps;
+    }
+    /**
+     * Gets the steps of the shrunken walk, each named by the node visited in
+     * the outermost module.
+     *
+     * @return steps
+     */
+    public List<String> getSteps() {
+      return steps;
+    }
+    /**
+     * Gets the failure of the shrunken walk.
+     *
+     * @return failure, or null if the original walk did not fail on replay
+     */
+    public Throwable getFailure() {
+      return failure;
+    }
+    /**
+     * Gets the number of candidate walks replayed while shrinking.
+     *
+     * @return replay count
+     */
+    public int getReplays() {
+      return replays;
+    }
+    @Override
+    public String toString() {
+      return "Shrank " + originalSteps + " steps to " + steps.size() +
+        " in " + replays + " replays: " + steps;
+    }
+  }
+
+  private final GraphFactory graphFactory;
+  private final Environment env;
+  private final int threads;
+  private final AtomicInteger replays = new AtomicInteger(0);
+
+  /**
+   * Creates a new shrinker.
+   *
+   * @param graphFactory source of fresh copies of the graph
+   * @param env test environment
+   * @param threads number of candidates to replay at once
+   * @throws IllegalArgumentException if threads is not positive
+   */
+  public Shrinker(GraphFactory graphFactory, Environment env, int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Number of threads must be positive: " + threads);
+    }
+    this.graphFactory = graphFactory;
+    this.env = env;
+    this.threads = threads;
+  }
+
+  /**
+   * Gets the type of the root cause of a failure, looking through the
+   * node exceptions that wrap it on its way out of a walk.
+   *
+   * @param t failure
+   * @return root cause type
+   */
+  static Class<? extends Throwable> failureType(Throwable t) {
+    while (t instanceof NodeException && t.getCause() != null) {
+      t = t.getCause();
+    }
+    return t.getClass();
+  }
+
+  /**
+   * Shrinks a traced walk.
+   *
+   * @param traceDir trace directory
+   * @param walkerId ID of traced walker
+   * @param outDir directory to write a trace of the shrunken walk to, so
+   * that it can be replayed; or null to not write one
+   * @return outcome
+   * @throws IOException if the trace cannot be read, or the shrunken trace
+   * cannot be written
+   * @throws InterruptedException if interrupted while waiting for replays
+   */
+  public Result shrink(File traceDir, int walkerId, File outDir)
+    throws IOException, InterruptedException {
+    Replay original = Replay.fromTrace(traceDir, walkerId);
+    int[] stepStarts = stepStarts(original);
+    List<Integer> all = new ArrayList<Integer>();
+    for (int i = 0; i < stepStarts.length; i++) {
+      all.add(Integer.valueOf(i));
+    }
+
+    ExecutorService es = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger(0);
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "shrinker-" + count.getAndIncrement());
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    try {
+      Throwable failure = test(es, Collections.singletonList(all), original,
+                               stepStarts, null).failure;
+      if (failure == null) {
+        LOG.warn("Replay of walker " + walkerId + " from " + traceDir + " did not fail; nothing to shrink");
+        return new Result(stepStarts.length, stepNames(original, stepStarts, all),
+                          null, replays.get());
+      }
+      Class<? extends Throwable> type = failureType(failure);
+      LOG.info("Shrinking " + stepStarts.length + " steps failing with " + type.getName());
+
+      List<Integer> current = all;
+      int n = 2;
+      while (current.size() >= 2) {
+        List<List<Integer>> chunks = split(current, n);
+        List<List<Integer>> candidates = new ArrayList<List<Integer>>(chunks);
+        if (n > 2) {
+          for (int i = 0; i < chunks.size(); i++) {
+            candidates.add(complement(current, chunks.get(i)));
+          }
+        }
+        Outcome o = test(es, candidates, original, stepStarts, type);
+        if (o.index >= 0 && o.index < chunks.size()) {
+          current = chunks.get(o.index);
+          failure = o.failure;
+          n = 2;
+        } else if (o.index >= chunks.size()) {
+          current = candidates.get(o.index);
+          failure = o.failure;
+          n = Math.max(n - 1, 2);
+        } else if (n < current.size()) {
+          n = Math.min(n * 2, current.size());
+        } else {
+          break;
+        }
+        LOG.info("Shrunk to " + current.size() + " steps after " + replays.get() + " replays");
+      }
+
+      if (outDir != null) {
+        TraceRecorder recorder = new TraceRecorder(outDir, TraceRecorder.DEFAULT_SEGMENT_SIZE, 1.0);
+        try {
+          replay(select(original, stepStarts, current), walkerId, recorder);
+        } catch (Exception e) {
+          throw new IOException("Unable to trace shrunken walk", e);
+        } finally {
+          recorder.close();
+        }
+      }
+      return new Result(stepStarts.length, stepNames(original, stepStarts, current),
+                        failure, replays.get());
+    } finally {
+      es.shutdownNow();
+    }
+  }
+
+  /**
+   * Finds where each step starts: at each visit in the outermost module,
+   * which is the module of the first visit.
+   */
+  private static int[] stepStarts(Replay r) {
+    List<Integer> starts = new ArrayList<Integer>();
+    if (r.size() > 0) {
+      int root = r.getModule(0);
+      for (int i = 0; i < r.size(); i++) {
+        if (r.getModule(i) == root) {
+          starts.add(Integer.valueOf(i));
+        }
+      }
+    }
+    int[] a = new int[starts.size()];
+    for (int i = 0; i < a.length; i++) {
+      a[i] = starts.get(i).intValue();
+    }
+    return a;
+  }
+
+  /**
+   * Builds a replay of the given steps, in order.
+   */
+  private static Replay select(Replay r, int[] stepStarts, List<Integer> steps) {
+    int n = 0;
+    for (Integer s : steps) {
+      n += stepEnd(r, stepStarts, s.intValue()) - stepStarts[s.intValue()];
+    }
+    int[] modules = new int[n];
+    int[] nodes = new int[n];
+    int j = 0;
+    for (Integer s : steps) {
+      for (int i = stepStarts[s.intValue()]; i < stepEnd(r, stepStarts, s.intValue()); i++) {
+        modules[j] = r.getModule(i);
+        nodes[j] = r.getNode(i);
+        j++;
+      }
+    }
+    return new Replay(r.getModuleNames(), modules, nodes);
+  }
+  private static int stepEnd(Replay r, int[] stepStarts, int step) {
+    return step + 1 < stepStarts.length ? stepStarts[step + 1] : r.size();
+  }
+
+  private List<String> stepNames(Replay r, int[] stepStarts, List<Integer> steps) {
+    List<String> names = new ArrayList<String>();
+    Node graph;
+    try {
+      graph = graphFactory.newGraph();
+    } catch (Exception e) {
+      graph = null;
+    }
+    for (Integer s : steps) {
+      int node = r.getNode(stepStarts[s.intValue()]);
+      String name = graph instanceof Module ?
+        ((Module) graph).getGraph().id(node) : null;
+      names.add(name != null ? name : "#" + node);
+    }
+    return names;
+  }
+
+  private static List<List<Integer>> split(List<Integer> l, int n) {
+    List<List<Integer>> chunks = new ArrayList<List<Integer>>();
+    int start = 0;
+    for (int i = 0; i < n; i++) {
+      int end = start + (l.size() - start) / (n - i);
+      chunks.add(l.subList(start, end));
+      start = end;
+    }
+    return chunks;
+  }
+  private static List<Integer> complement(List<Integer> l, List<Integer> chunk) {
+    List<Integer> c = new ArrayList<Integer>(l);
+    c.removeAll(chunk);
+    return c;
+  }
+
+  private static class Outcome {
+    final int index;
+    final Throwable failure;
+    Outcome(int index, Throwable failure) {
+      this.index = index;
+      this.failure = failure;
+    }
+  }
+
+  /**
+   * Replays candidates in parallel, and finds the first one that fails with
+   * the given type of root cause.
+   *
+   * @param type failure type to look for, or null for any failure
+   * @return index of first failing candidate, or -1 if none
+   */
+  private Outcome test(ExecutorService es, List<List<Integer>> candidates,
+                       final Replay original, final int[] stepStarts,
+                       Class<? extends Throwable> type)
+    throws InterruptedException {
+    List<Future<Throwable>> futures = new ArrayList<Future<Throwable>>();
+    for (final List<Integer> c : candidates) {
+      futures.add(es.submit(new Callable<Throwable>() {
+        @Override
+        public Throwable call() throws Exception {
+          return replay(select(original, stepStarts, c), 0, null);
+        }
+      }));
+    }
+    Outcome found = new Outcome(-1, null);
+    for (int i = 0; i < futures.size(); i++) {
+      Throwable failure;
+      try {
+        failure = futures.get(i).get();
+      } catch (ExecutionException e) {
+        LOG.warn("Unable to replay candidate", e.getCause());
+        continue;
+      }
+      if (failure != null && (type == null || failureType(failure) == type)) {
+        found = new Outcome(i, failure);
+        break;
+      }
+    }
+    // Later candidates are no longer needed.
+    for (Future<Throwable> f : futures) {
+      f.cancel(false);
+    }
+    return found;
+  }
+
+  /**
+   * Replays visits against a fresh copy of the graph.
+   *
+   * @return failure, or null if the replay succeeded
+   */
+  private Throwable replay(Replay r, int walkerId, TraceRecorder recorder)
+    throws Exception {
+    replays.incrementAndGet();
+    Node graph = graphFactory.newGraph();
+    Walker walker = new Walker(walkerId, new Random());
+    walker.setReplay(r);
+    TraceWriter trace = recorder != null ? recorder.openWriter(walkerId) : null;
+    walker.setTrace(trace);
+    Walker.bind(walker);
+    try {
+      graph.visit(env, new State(), new Properties());
+      return null;
+    } catch (Exception e) {
+      return e;
+    } finally {
+      Walker.bind(null);
+      if (trace != null) {
+        trace.close();
+      }
+    }
+  }
+}
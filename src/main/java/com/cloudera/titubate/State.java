@@ -16,18 +16,63 @@
  */
 package com.cloudera.titubate;
 
-import java.nio.charset.Charset;
-import java.util.Collection;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.BiFunction;
 
 /**
  * A structure for storing state kept during a test. This class is not
- * thread-safe.
+ * thread-safe; see {@link ConcurrentState} for state that may be shared
+ * between threads.<p>
+ *
+ * Objects for string keys are kept in a map. Objects for typed keys,
+ * {@link StateKey}s, are kept apart from them, in arrays by the key's slot,
+ * and integers and longs for {@link IntKey}s and {@link LongKey}s are kept
+ * unboxed. A typed key and a string key with the same name are different
+ * keys, so declaring a typed key never changes what code using string keys
+ * sees.<p>
+ *
+ * Subclasses may store state in a different kind of map, or override the
+ * methods here to route keys elsewhere. Every method here goes through
+ * {@link #get(String)}, {@link #set(String, Object)},
+ * {@link #remove(String)} or {@link #has(String)}, the typed key methods,
+ * or the backing map.
  */
 public class State {
 
-  private HashMap<String,Object> stateMap = new HashMap<String,Object>();
+  private final Map<String,Object> stateMap;
+  private Object[] objectSlots = new Object[0];
+  private int[] intSlots = new int[0];
+  private boolean[] intSet = new boolean[0];
+  private long[] longSlots = new long[0];
+  private boolean[] longSet = new boolean[0];
+
+  /**
+   * Creates a new, empty state.
+   */
+  public State() {
+    this(new HashMap<String,Object>());
+  }
+  /**
+   * Creates a new state, kept in the given map.
+   *
+   * @param stateMap map to keep state in
+   */
+  protected State(Map<String,Object> stateMap) {
+    this.stateMap = stateMap;
+  }
+  /**
+   * Gets the map this state is kept in.
+   *
+   * @return backing map
+   */
+  protected Map<String,Object> getMap() {
+    return stateMap;
+  }
 
   /**
    * Sets a state object.
@@ -68,6 +113,212 @@ public class State {
     return stateMap.get(key);
   }
 
+  /**
+   * Sets a state object, unless one is already set.
+   *
+   * @param key key for object
+   * @param value object
+   * @return object already set, or null if the given object was set
+   */
+  public Object putIfAbsent(String key, Object value) {
+    return stateMap.putIfAbsent(key, value);
+  }
+
+  /**
+   * Computes a new state object from the current one. If the function
+   * returns null, the object is removed.
+   *
+   * @param key key for object
+   * @param f function of the key and the current object, or null if there is
+   * none, giving the new object
+   * @return new object
+   */
+  public Object compute(String key,
+                        BiFunction<? super String, Object, Object> f) {
+    return stateMap.compute(key, f);
+  }
+
+  /**
+   * Sets a state object, or if one is already set, combines it with the
+   * given one. If the function returns null, the object is removed.
+   *
+   * @param key key for object
+   * @param value object to set or combine
+   * @param f function of the current and given objects, giving the new
+   * object
+   * @return new object
+   */
+  public Object merge(String key, Object value,
+                      BiFunction<Object, Object, Object> f) {
+    return stateMap.merge(key, value, f);
+  }
+
+  /**
+   * Gets the object for a typed key. Integers and longs are boxed.
+   *
+   * @param key key
+   * @return object, or null if none is set
+   */
+  protected Object getValue(StateKey<?> key) {
+    int slot = key.slot();
+    switch (key.kind()) {
+    case StateKey.INT:
+      return slot < intSet.length && intSet[slot] ?
+        Integer.valueOf(intSlots[slot]) : null;
+    case StateKey.LONG:
+      return slot < longSet.length && longSet[slot] ?
+        Long.valueOf(longSlots[slot]) : null;
+    default:
+      return slot < objectSlots.length ? objectSlots[slot] : null;
+    }
+  }
+  /**
+   * Sets the object for a typed key.
+   *
+   * @param key key
+   * @param value object, or null to remove it
+   * @throws ClassCastException if the key is for integers or longs and the
+   * object is not one
+   */
+  protected void setValue(StateKey<?> key, Object value) {
+    if (value == null) {
+      removeValue(key);
+      return;
+    }
+    switch (key.kind()) {
+    case StateKey.INT:
+      setIntValue((IntKey) key, ((Integer) value).intValue());
+      break;
+    case StateKey.LONG:
+      setLongValue((LongKey) key, ((Long) value).longValue());
+      break;
+    default:
+      int slot = key.slot();
+      if (slot >= objectSlots.length) {
+        objectSlots = Arrays.copyOf(objectSlots, newLength(slot));
+      }
+      objectSlots[slot] = value;
+    }
+  }
+  /**
+   * Checks if an object is set for a typed key.
+   *
+   * @param key key
+   * @return true if an object is set
+   */
+  protected boolean hasValue(StateKey<?> key) {
+    int slot = key.slot();
+    switch (key.kind()) {
+    case StateKey.INT:
+      return slot < intSet.length && intSet[slot];
+    case StateKey.LONG:
+      return slot < longSet.length && longSet[slot];
+    default:
+      return slot < objectSlots.length && objectSlots[slot] != null;
+    }
+  }
+  /**
+   * Removes the object for a typed key.
+   *
+   * @param key key
+   */
+  protected void removeValue(StateKey<?> key) {
+    int slot = key.slot();
+    switch (key.kind()) {
+    case StateKey.INT:
+      if (slot < intSet.length) {
+        intSet[slot] = false;
+      }
+      break;
+    case StateKey.LONG:
+      if (slot < longSet.length) {
+        longSet[slot] = false;
+      }
+      break;
+    default:
+      if (slot < objectSlots.length) {
+        objectSlots[slot] = null;
+      }
+    }
+  }
+  /**
+   * Gets the value for an integer key.
+   *
+   * @param key key
+   * @return value, or 0 if none is set
+   */
+  protected int getIntValue(IntKey key) {
+    int slot = key.slot();
+    return slot < intSet.length && intSet[slot] ? intSlots[slot] : 0;
+  }
+  /**
+   * Sets the value for an integer key.
+   *
+   * @param key key
+   * @param value value
+   */
+  protected void setIntValue(IntKey key, int value) {
+    int slot = key.slot();
+    if (slot >= intSlots.length) {
+      intSlots = Arrays.copyOf(intSlots, newLength(slot));
+      intSet = Arrays.copyOf(intSet, intSlots.length);
+    }
+    intSlots[slot] = value;
+    intSet[slot] = true;
+  }
+  /**
+   * Adds to the value for an integer key.
+   *
+   * @param key key
+   * @param delta amount to add
+   * @return new value
+   */
+  protected int addIntValue(IntKey key, int delta) {
+    int value = getIntValue(key) + delta;
+    setIntValue(key, value);
+    return value;
+  }
+  /**
+   * Gets the value for a long key.
+   *
+   * @param key key
+   * @return value, or 0 if none is set
+   */
+  protected long getLongValue(LongKey key) {
+    int slot = key.slot();
+    return slot < longSet.length && longSet[slot] ? longSlots[slot] : 0L;
+  }
+  /**
+   * Sets the value for a long key.
+   *
+   * @param key key
+   * @param value value
+   */
+  protected void setLongValue(LongKey key, long value) {
+    int slot = key.slot();
+    if (slot >= longSlots.length) {
+      longSlots = Arrays.copyOf(longSlots, newLength(slot));
+      longSet = Arrays.copyOf(longSet, longSlots.length);
+    }
+    longSlots[slot] = value;
+    longSet[slot] = true;
+  }
+  /**
+   * Adds to the value for a long key.
+   *
+   * @param key key
+   * @param delta amount to add
+   * @return new value
+   */
+  protected long addLongValue(LongKey key, long delta) {
+    long value = getLongValue(key) + delta;
+    setLongValue(key, value);
+    return value;
+  }
+  private static int newLength(int slot) {
+    return Math.max(8, Integer.highestOneBit(slot) << 1);
+  }
+
   /**
    * Gets a state object as a string.
    *
@@ -76,7 +327,7 @@ public class State {
    * @throws ClassCastException if the value object is not a string
    */
   public String getString(String key) {
-    return (String) stateMap.get(key);
+    return (String) get(key);
   }
 
   /**
@@ -87,7 +338,7 @@ public class State {
    * @throws ClassCastException if the value object is not an integer
    */
   public Integer getInt(String key) {
-    return (Integer) stateMap.get(key);
+    return (Integer) get(key);
   }
 
   /**
@@ -98,36 +349,89 @@ public class State {
    * @throws ClassCastException if the value object is not a long
    */
   public Long getLong(String key) {
-    return (Long) stateMap.get(key);
+    return (Long) get(key);
+  }
+
+  /**
+   * Takes a shallow copy of the objects in this state, for a checkpoint.
+   * Objects for string keys are keyed by their strings, and those for typed
+   * keys by their {@link StateKey}s.
+   *
+   * @return map of keys to objects
+   */
+  Map<Object,Object> snapshot() {
+    Map<Object,Object> m = new HashMap<Object,Object>(stateMap);
+    for (StateKey<?> k : StateKey.all()) {
+      if (hasValue(k)) {
+        m.put(k, getValue(k));
+      }
+    }
+    return m;
+  }
+  /**
+   * Checks if this state's snapshots are persistent, that is, if its
+   * objects are replaced rather than changed in place, so that a snapshot
+   * stays a consistent picture of the state while the walk goes on.
+   *
+   * @return true if snapshots are persistent
+   */
+  boolean isPersistent() {
+    return false;
   }
 
+  /**
+   * Dumps this state to a string, within the limits of the default
+   * {@link StateDumper}.
+   *
+   * @return dump
+   */
   public String dump() {
-    return dump(stateMap);
+    StringWriter w = new StringWriter();
+    try {
+      dump(w, StateDumper.getDefault());
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to write to string", e);
+    }
+    return w.toString();
   }
-  private static final Charset UTF8 = Charset.forName("UTF-8");
-  public static String dump(Map<String, ?> m) {
-    StringBuilder sb = new StringBuilder("{");
-    boolean rest = false;
-    for (Map.Entry<String, ?> e : m.entrySet()) {
-      String key = e.getKey();
-      Object value = e.getValue();
-      if (rest) {
-        sb.append(",");
-      } else {
-        rest = true;
+  /**
+   * Dumps this state to a writer, within a dumper's limits.
+   *
+   * @param w writer
+   * @param dumper dumper
+   * @throws IOException if the dump cannot be written
+   */
+  public void dump(Writer w, StateDumper dumper) throws IOException {
+    Writer out = dumper.limit(w);
+    out.write("{");
+    boolean first = true;
+    for (Map.Entry<String,Object> e : stateMap.entrySet()) {
+      if (dumper.isFull(out)) {
+        break;
       }
-      sb.append(key).append(" = |");
-      if (value == null) {
-        sb.append("null");
-      } else if (value instanceof String || value instanceof Collection || value instanceof Number) {
-        sb.append(value.toString());
-      } else if (value instanceof byte[]) {
-        sb.append(new String((byte[]) value, UTF8));
-      } else {
-        sb.append(value.getClass().getName()).append(" -> ").append(value.toString());
+      dumper.writeEntry(out, e.getKey(), e.getValue(), first);
+      first = false;
+    }
+    for (StateKey<?> k : StateKey.all()) {
+      if (dumper.isFull(out)) {
+        break;
+      }
+      if (hasValue(k)) {
+        dumper.writeEntry(out, k.getName(), getValue(k), first);
+        first = false;
       }
-      sb.append("|");
     }
-    return sb.append("}").toString();
+    out.write("}");
+    out.flush();
+  }
+  /**
+   * Dumps a map to a string, within the limits of the default
+   * {@link StateDumper}.
+   *
+   * @param m map
+   * @return dump
+   */
+  public static String dump(Map<String, ?> m) {
+    return StateDumper.getDefault().dumpToString(m);
   }
 }
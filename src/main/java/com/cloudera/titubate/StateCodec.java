@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes and reads state objects of one class in checkpoints. Objects that
+ * are not {@link java.io.Serializable}, or whose serialized form is too
+ * large or slow, can be checkpointed by registering a codec for their class
+ * with {@link Checkpointer#registerCodec(Class, StateCodec)}.
+ *
+ * @param <T> class of object
+ */
+public interface StateCodec<T> {
+  /**
+   * Writes an object.
+   *
+   * @param value object
+   * @param out output
+   * @throws IOException if the object cannot be written
+   */
+  void write(T value, DataOutput out) throws IOException;
+  /**
+   * Reads an object written by {@link #write(Object, DataOutput)}.
+   *
+   * @param in input
+   * @return object
+   * @throws IOException if the object cannot be read
+   */
+  T read(DataInput in) throws IOException;
+}
@@ -0,0 +1,486 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+
+/**
+ * Writes dumps of state and environment maps, such as those written when a
+ * node fails. A dump is streamed to a {@link Writer} rather than built up as
+ * one string, and is limited in size: each value is cut off after a number
+ * of characters, only the first elements of each collection, map or array
+ * are written, and the whole dump is cut off after a total number of
+ * characters. Collections, maps and arrays nested in a value are limited
+ * the same way. So, dumping a state that holds a huge collection costs little
+ * more memory than the limits, however large the collection is. (A value
+ * that is not a collection, map or array is still written with its
+ * <code>toString</code> method, which may itself build a large string.)<p>
+ *
+ * A failure dump of a {@link PersistentState} that keeps a history also
+ * holds the changes made to the state by each of the last few visits.<p>
+ *
+ * Failure dumps are written to a file in a dump directory, if one is set,
+ * and otherwise logged at debug level. They may be written on a separate
+ * dump thread, which the failing walker waits on for a limited time, so
+ * that a dump that fails or hangs cannot get in the way of reporting the
+ * failure itself.
+ */
+public final class StateDumper {
+  /**
+   * The default length at which each value is cut off.
+   */
+  public static final int DEFAULT_MAX_VALUE_LENGTH = 1024;
+  /**
+   * The default number of elements written for each collection.
+   */
+  public static final int DEFAULT_MAX_ELEMENTS = 100;
+  /**
+   * The default length at which a whole dump is cut off.
+   */
+  public static final long DEFAULT_MAX_TOTAL_LENGTH = 1024 * 1024;
+  /**
+   * How long a walker waits for a failure dump on the dump thread, in
+   * milliseconds.
+   */
+  static final long DUMP_TIMEOUT = 60 * 1000L;  // 1 minute
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+  private static final String TRUNCATED = "...";
+  private static final String DUMP_TRUNCATED = "...[dump truncated]";
+
+  private static volatile StateDumper defaultDumper = new StateDumper();
+  private static ExecutorService dumpThread = null;
+
+  private final int maxValueLength;
+  private final int maxElements;
+  private final long maxTotalLength;
+  private final File dumpDir;
+  private final boolean useThread;
+
+  /**
+   * Creates a dumper with the default limits, which logs failure dumps on
+   * the failing thread.
+   */
+  public StateDumper() {
+    this(DEFAULT_MAX_VALUE_LENGTH, DEFAULT_MAX_ELEMENTS,
+         DEFAULT_MAX_TOTAL_LENGTH, null, false);
+  }
+  /**
+   * Creates a dumper.
+   *
+   * @param maxValueLength length at which each value is cut off
+   * @param maxElements number of elements written for each collection, map
+   * or array
+   * @param maxTotalLength length at which a whole dump is cut off
+   * @param dumpDir directory to write failure dumps to, or null to log them
+   * @param useThread true to write failure dumps on a separate dump thread
+   * @throws IllegalArgumentException if a limit is not positive
+   */
+  public StateDumper(int maxValueLength, int maxElements, long maxTotalLength,
+                     File dumpDir, boolean useThread) {
+    if (maxValueLength < 1 || maxElements < 1 || maxTotalLength < 1L) {
+      throw new IllegalArgumentException("Dump limits must be positive");
+    }
+    this.maxValueLength = maxValueLength;
+    this.maxElements = maxElements;
+    this.maxTotalLength = maxTotalLength;
+    this.dumpDir = dumpDir;
+    this.useThread = useThread;
+  }
+
+  /**
+   * Gets the dumper used for failure dumps and string dumps.
+   *
+   * @return default dumper
+   */
+  public static StateDumper getDefault() {
+    return defaultDumper;
+  }
+  /**
+   * Sets the dumper used for failure dumps and string dumps.
+   *
+   * @param dumper default dumper
+   */
+  public static void setDefault(StateDumper dumper) {
+    defaultDumper = dumper;
+  }
+
+  /**
+   * Dumps a map.
+   *
+   * @param m map
+   * @param w writer to dump to
+   * @throws IOException if the dump cannot be written
+   */
+  public void dump(Map<String, ?> m, Writer w) throws IOException {
+    Writer out = limit(w);
+    out.write("{");
+    boolean first = true;
+    for (Map.Entry<String, ?> e : m.entrySet()) {
+      if (isFull(out)) {
+        break;
+      }
+      writeEntry(out, e.getKey(), e.getValue(), first);
+      first = false;
+    }
+    out.write("}");
+    out.flush();
+  }
+  /**
+   * Dumps a map to a string, within this dumper's limits.
+   *
+   * @param m map
+   * @return dump
+   */
+  public String dumpToString(Map<String, ?> m) {
+    StringWriter w = new StringWriter();
+    try {
+      dump(m, w);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to write to string", e);
+    }
+    return w.toString();
+  }
+
+  /**
+   * Limits a writer to this dumper's total length. Once the limit is
+   * reached, a marker is written and later writes are dropped. A writer
+   * that is already limited by this dumper is returned as is.
+   *
+   * @param w writer
+   * @return limited writer
+   */
+  Writer limit(Writer w) {
+    if (w instanceof LimitedWriter && ((LimitedWriter) w).dumper == this) {
+      return w;
+    }
+    return new LimitedWriter(w, this);
+  }
+  /**
+   * Checks if a writer from {@link #limit(Writer)} has reached its limit.
+   *
+   * @param w limited writer
+   * @return true if later writes are dropped
+   */
+  boolean isFull(Writer w) {
+    return w instanceof LimitedWriter && ((LimitedWriter) w).full;
+  }
+
+  /**
+   * Writes one key and value of a dump. The value is written within this
+   * dumper's limits. If getting at the value fails, for instance because
+   * another thread modifies a collection while it is written, the failure
+   * is written in its place.
+   *
+   * @param w writer from {@link #limit(Writer)}
+   * @param key key
+   * @param value value
+   * @param first true if this is the first entry in its map
+   * @throws IOException if the entry cannot be written
+   */
+  void writeEntry(Writer w, String key, Object value, boolean first)
+    throws IOException {
+    if (!first) {
+      w.write(",");
+    }
+    w.write(key);
+    w.write(" = ");
+    writeValue(w, value);
+  }
+  /**
+   * Writes one value of a dump, between bars, within this dumper's limits.
+   *
+   * @param w writer from {@link #limit(Writer)}
+   * @param value value
+   * @throws IOException if the value cannot be written
+   */
+  void writeValue(Writer w, Object value) throws IOException {
+    w.write("|");
+    ValueWriter vw = new ValueWriter(w, maxValueLength);
+    try {
+      if (value == null || value instanceof String ||
+          value instanceof Number || value instanceof Boolean ||
+          value instanceof Character || value instanceof byte[] ||
+          value instanceof Collection || value instanceof Map ||
+          value.getClass().isArray()) {
+        writeElement(vw, value);
+      } else {
+        vw.append(value.getClass().getName());
+        vw.append(" -> ");
+        vw.append(String.valueOf(value));
+      }
+    } catch (RuntimeException e) {
+      w.write(" <unavailable: " + e + ">");
+    }
+    w.write("|");
+  }
+  // Writes a value, or an element of one, through the value writer, so that
+  // nested collections, maps and arrays are limited like the outermost one.
+  private void writeElement(ValueWriter vw, Object value) throws IOException {
+    if (value == null) {
+      vw.append("null");
+    } else if (value instanceof String || value instanceof Number ||
+               value instanceof Boolean || value instanceof Character) {
+      vw.append(value.toString());
+    } else if (value instanceof byte[]) {
+      byte[] b = (byte[]) value;
+      vw.append(new String(b, 0, Math.min(b.length, maxValueLength), UTF8));
+      if (b.length > maxValueLength) {
+        vw.append(TRUNCATED);
+      }
+    } else if (value instanceof Collection) {
+      writeElements(vw, ((Collection<?>) value).iterator(),
+                    ((Collection<?>) value).size(), "[", "]");
+    } else if (value instanceof Map) {
+      writeElements(vw, ((Map<?, ?>) value).entrySet().iterator(),
+                    ((Map<?, ?>) value).size(), "{", "}");
+    } else if (value instanceof Map.Entry) {
+      writeElement(vw, ((Map.Entry<?, ?>) value).getKey());
+      vw.append("=");
+      writeElement(vw, ((Map.Entry<?, ?>) value).getValue());
+    } else if (value.getClass().isArray()) {
+      vw.append(value.getClass().getComponentType().getName() + "[] -> ");
+      writeArray(vw, value);
+    } else {
+      vw.append(String.valueOf(value));
+    }
+  }
+  private void writeElements(ValueWriter vw, Iterator<?> it, int size,
+                             String open, String close) throws IOException {
+    vw.append(open);
+    int n = 0;
+    while (it.hasNext() && !vw.done) {
+      if (n > 0) {
+        vw.append(", ");
+      }
+      if (n == maxElements) {
+        vw.append("... (" + size + " elements)");
+        break;
+      }
+      writeElement(vw, it.next());
+      n++;
+    }
+    vw.append(close);
+  }
+  private void writeArray(ValueWriter vw, Object array) throws IOException {
+    int length = Array.getLength(array);
+    vw.append("[");
+    for (int i = 0; i < length && !vw.done; i++) {
+      if (i > 0) {
+        vw.append(", ");
+      }
+      if (i == maxElements) {
+        vw.append("... (" + length + " elements)");
+        break;
+      }
+      writeElement(vw, Array.get(array, i));
+    }
+    vw.append("]");
+  }
+
+  /**
+   * Dumps the environment and state of a walk after a node fails. If this
+   * dumper has a dump directory, the dump is written to a new file there;
+   * otherwise, it is logged at debug level, if that is enabled. Problems
+   * writing the dump are logged, and never thrown.
+   *
+   * @param log log to report the dump on
+   * @param nodeId ID of failed node
+   * @param props properties of failed node
+   * @param env test environment
+   * @param state test state
+   */
+  void dumpFailure(final Logger log, final String nodeId,
+                   final Properties props, final Environment env,
+                   final State state) {
+    if (dumpDir == null && !log.isDebugEnabled()) {
+      return;
+    }
+    final long time = System.currentTimeMillis();
+    final int walkerId = Walker.current().getId();
+    Callable<Void> dump = new Callable<Void>() {
+      @Override
+      public Void call() throws IOException {
+        if (dumpDir != null) {
+          File f = new File(dumpDir, String.format("failure-walker-%d-%d.txt", walkerId, time));
+          Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), UTF8));
+          try {
+            writeFailure(w, time, nodeId, props, env, state);
+          } finally {
+            w.close();
+          }
+          log.error("Environment and state at failure of node " + nodeId + " dumped to " + f);
+        } else {
+          StringWriter w = new StringWriter();
+          writeFailure(w, time, nodeId, props, env, state);
+          log.debug(w.toString());
+        }
+        return null;
+      }
+    };
+    try {
+      if (useThread) {
+        Future<Void> f = dumpThread().submit(dump);
+        try {
+          f.get(DUMP_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+          f.cancel(true);
+          log.warn("Gave up on dump at failure of node " + nodeId + " after " + DUMP_TIMEOUT / 1000 + " seconds");
+        } catch (ExecutionException e) {
+          log.warn("Unable to dump at failure of node " + nodeId, e.getCause());
+        }
+      } else {
+        dump.call();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      log.warn("Unable to dump at failure of node " + nodeId, e);
+    }
+  }
+  private void writeFailure(Writer w, long time, String nodeId,
+                            Properties props, Environment env, State state)
+    throws IOException {
+    Writer out = limit(w);
+    out.write("Exception occurred at: " + time + "\n");
+    out.write("Properties for node: " + nodeId + "\n");
+    out.write(String.valueOf(props));
+    out.write("\nEnvironment\n");
+    env.dump(out, this);
+    out.write("\nState information\n");
+    state.dump(out, this);
+    out.write("\n");
+    if (state instanceof PersistentState &&
+        ((PersistentState) state).getHistory() != null) {
+      out.write("State changes by recent visits\n");
+      ((PersistentState) state).getHistory().write(out, this);
+    }
+    out.flush();
+  }
+
+  private static synchronized ExecutorService dumpThread() {
+    if (dumpThread == null) {
+      dumpThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "state-dumper");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+    return dumpThread;
+  }
+
+  /**
+   * A writer that stops at a dumper's total length.
+   */
+  private static final class LimitedWriter extends Writer {
+    private final Writer out;
+    private final StateDumper dumper;
+    private long written = 0L;
+    private boolean full = false;
+    LimitedWriter(Writer out, StateDumper dumper) {
+      this.out = out;
+      this.dumper = dumper;
+    }
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+      if (full) {
+        return;
+      }
+      int n = (int) Math.min(len, dumper.maxTotalLength - written);
+      out.write(cbuf, off, n);
+      written += n;
+      if (n < len) {
+        full = true;
+        out.write(DUMP_TRUNCATED);
+      }
+    }
+    @Override
+    public void write(String s, int off, int len) throws IOException {
+      if (full) {
+        return;
+      }
+      int n = (int) Math.min(len, dumper.maxTotalLength - written);
+      out.write(s, off, n);
+      written += n;
+      if (n < len) {
+        full = true;
+        out.write(DUMP_TRUNCATED);
+      }
+    }
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+  }
+
+  /**
+   * Writes one value, up to a length. Once the length is reached, a marker
+   * is written and later appends are dropped.
+   */
+  private static final class ValueWriter {
+    private final Writer out;
+    private int remaining;
+    private boolean done = false;
+    ValueWriter(Writer out, int maxLength) {
+      this.out = out;
+      this.remaining = maxLength;
+    }
+    void append(String s) throws IOException {
+      if (done) {
+        return;
+      }
+      if (s.length() <= remaining) {
+        out.write(s);
+        remaining -= s.length();
+      } else {
+        out.write(s, 0, remaining);
+        out.write(TRUNCATED);
+        remaining = 0;
+        done = true;
+      }
+    }
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * A bounded ring of snapshots of a {@link PersistentState}, one taken after
+ * each node visit, so that after a failure the changes made to the state by
+ * each of the last few visits can be dumped. Since the snapshots are
+ * persistent maps, recording one is a few array stores. Each snapshot is a
+ * pair of maps, one for string keys and one for typed keys by ID.
+ */
+final class StateHistory {
+  private final PersistentHashMap[] states;
+  private final PersistentHashMap[] typedStates;
+  private final String[] labels;
+  private final long[] hops;
+  private int next = 0;
+  private int count = 0;
+
+  /**
+   * Creates a new history.
+   *
+   * @param size number of visits to keep the changes of
+   */
+  StateHistory(int size) {
+    // One more snapshot than visits, for the state before the oldest visit.
+    states = new PersistentHashMap[size + 1];
+    typedStates = new PersistentHashMap[size + 1];
+    labels = new String[size + 1];
+    hops = new long[size + 1];
+  }
+
+  /**
+   * Records a snapshot, replacing the oldest one if the history is full.
+   *
+   * @param label what led to the snapshot, such as the ID of the node just
+   * visited
+   * @param hop walker hop count
+   * @param state snapshot of objects for string keys
+   * @param typed snapshot of objects for typed keys, by key ID
+   */
+  void record(String label, long hop, PersistentHashMap state,
+              PersistentHashMap typed) {
+    states[next] = state;
+    typedStates[next] = typed;
+    labels[next] = label;
+    hops[next] = hop;
+    next = (next + 1) % states.length;
+    if (count < states.length) {
+      count++;
+    }
+  }
+  /**
+   * Gets the number of snapshots recorded, up to one more than the size.
+   *
+   * @return number of snapshots
+   */
+  int size() {
+    return count;
+  }
+  PersistentHashMap getState(int i) {
+    return states[index(i)];
+  }
+  String getLabel(int i) {
+    return labels[index(i)];
+  }
+  private int index(int i) {
+    return (next - count + i + states.length) % states.length;
+  }
+
+  /**
+   * Writes the changes between successive snapshots, oldest first, within
+   * a dumper's limits. Each change is on its own line: "+" for an added
+   * key, "-" for a removed one, and "~" for a changed value.
+   *
+   * @param w writer
+   * @param dumper dumper
+   * @throws IOException if the changes cannot be written
+   */
+  void write(Writer w, StateDumper dumper) throws IOException {
+    final Writer out = dumper.limit(w);
+    final StateDumper d = dumper;
+    if (count < 2) {
+      out.write("No state changes recorded\n");
+      return;
+    }
+    final PersistentHashMap.Diff diff = new PersistentHashMap.Diff() {
+      @Override
+      public void added(String key, Object value) {
+        try {
+          out.write("  + ");
+          d.writeEntry(out, key, value, true);
+          out.write("\n");
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+      @Override
+      public void removed(String key, Object oldValue) {
+        try {
+          out.write("  - ");
+          d.writeEntry(out, key, oldValue, true);
+          out.write("\n");
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+      @Override
+      public void changed(String key, Object oldValue, Object value) {
+        try {
+          out.write("  ~ ");
+          d.writeEntry(out, key, oldValue, true);
+          out.write(" -> ");
+          d.writeValue(out, value);
+          out.write("\n");
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    };
+    PersistentHashMap.Diff typedDiff = new PersistentHashMap.Diff() {
+      @Override
+      public void added(String id, Object value) {
+        diff.added(StateKey.forId(id).getName(), value);
+      }
+      @Override
+      public void removed(String id, Object oldValue) {
+        diff.removed(StateKey.forId(id).getName(), oldValue);
+      }
+      @Override
+      public void changed(String id, Object oldValue, Object value) {
+        diff.changed(StateKey.forId(id).getName(), oldValue, value);
+      }
+    };
+    try {
+      for (int i = 1; i < count && !dumper.isFull(out); i++) {
+        int cur = index(i);
+        out.write("After " + labels[cur] + " (hop " + hops[cur] + "):\n");
+        PersistentHashMap.diff(states[index(i - 1)], states[cur], diff);
+        PersistentHashMap.diff(typedStates[index(i - 1)], typedStates[cur],
+                               typedDiff);
+      }
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    out.flush();
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A typed key for a state object. Each key is given a slot number, from a
+ * counter for its kind kept for the whole JVM, the first time a key of its
+ * kind and name is created; for a key declared as a constant, that is when
+ * the declaring class is initialized, not when a module using it is built.
+ * A {@link State} keeps the object for a key in an array at that slot, so
+ * getting or setting it involves no string hashing.<p>
+ *
+ * Keys of the same kind and name share a slot. Typed keys are apart from the
+ * string keys of {@link State}: <code>state.get("map")</code> does not reach
+ * the object for <code>new StateKey&lt;Map&gt;("map")</code>, so declaring a
+ * typed key never changes what code using string keys sees. Likewise, an
+ * {@link IntKey} and a {@link LongKey} with the same name are different
+ * keys. For integers and longs, use {@link IntKey} and {@link LongKey},
+ * which keep values unboxed.
+ *
+ * @param <T> type of object
+ */
+public class StateKey<T> {
+  static final int OBJECT = 0;
+  static final int INT = 1;
+  static final int LONG = 2;
+  private static final String[] ID_PREFIXES = { "o:", "i:", "l:" };
+
+  // Registered keys, by ID.
+  private static final ConcurrentHashMap<String, StateKey<?>> KEYS =
+    new ConcurrentHashMap<String, StateKey<?>>();
+  private static final int[] nextSlot = new int[3];
+
+  private final String name;
+  private final int kind;
+  private final String id;
+  private final int slot;
+
+  /**
+   * Creates a key for objects.
+   *
+   * @param name key name
+   */
+  public StateKey(String name) {
+    this(name, OBJECT);
+  }
+  StateKey(String name, int kind) {
+    if (name == null) {
+      throw new NullPointerException("Key name is null");
+    }
+    this.name = name;
+    this.kind = kind;
+    id = ID_PREFIXES[kind] + name;
+    synchronized (KEYS) {
+      StateKey<?> existing = KEYS.get(id);
+      if (existing == null) {
+        slot = nextSlot[kind]++;
+        KEYS.put(id, this);
+      } else {
+        slot = existing.slot;
+      }
+    }
+  }
+
+  /**
+   * Gets a key of a kind, creating it if none has been created yet.
+   *
+   * @param name key name
+   * @param kind key kind
+   * @return key
+   */
+  static StateKey<?> of(String name, int kind) {
+    StateKey<?> k = KEYS.get(ID_PREFIXES[kind] + name);
+    if (k != null) {
+      return k;
+    }
+    switch (kind) {
+    case INT:
+      return new IntKey(name);
+    case LONG:
+      return new LongKey(name);
+    default:
+      return new StateKey<Object>(name);
+    }
+  }
+  /**
+   * Finds a registered key by its ID.
+   *
+   * @param id key ID
+   * @return key, or null if no key has the ID
+   * @see #id()
+   */
+  static StateKey<?> forId(String id) {
+    return KEYS.get(id);
+  }
+  /**
+   * Gets all registered keys.
+   *
+   * @return keys, one for each kind and name
+   */
+  static Collection<StateKey<?>> all() {
+    return KEYS.values();
+  }
+
+  /**
+   * Gets this key's name.
+   *
+   * @return key name
+   */
+  public String getName() {
+    return name;
+  }
+  int kind() {
+    return kind;
+  }
+  /**
+   * Gets a string that identifies this key among all typed keys, made of its
+   * kind and name.
+   *
+   * @return key ID
+   */
+  String id() {
+    return id;
+  }
+  int slot() {
+    return slot;
+  }
+
+  /**
+   * Gets the object for this key.
+   *
+   * @param state state
+   * @return object, or null if none is set
+   */
+  @SuppressWarnings("unchecked")
+  public T get(State state) {
+    return (T) state.getValue(this);
+  }
+  /**
+   * Sets the object for this key.
+   *
+   * @param state state
+   * @param value object, or null to remove it
+   */
+  public void set(State state, T value) {
+    state.setValue(this, value);
+  }
+  /**
+   * Checks if an object is set for this key.
+   *
+   * @param state state
+   * @return true if an object is set
+   */
+  public boolean has(State state) {
+    return state.hasValue(this);
+  }
+  /**
+   * Removes the object for this key.
+   *
+   * @param state state
+   */
+  public void remove(State state) {
+    state.removeValue(this);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof StateKey && ((StateKey<?>) o).id.equals(id);
+  }
+  @Override
+  public int hashCode() {
+    return id.hashCode();
+  }
+  @Override
+  public String toString() {
+    return name;
+  }
+}
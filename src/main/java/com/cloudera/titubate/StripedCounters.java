@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed array of counters that many threads may increment at once without
+ * contending. Each counter is split into stripes, and each thread increments
+ * only the stripe it is given, which is usually chosen from its walker ID.
+ * The stripes for different threads are kept in separate rows, padded apart
+ * so that they do not share cache lines. Reading a counter adds up its
+ * stripes. There are no more stripes than there are threads expected to
+ * increment the counters, nor than there are processors.
+ */
+final class StripedCounters {
+  private static final int MAX_STRIPES = 16;
+  // longs per 64-byte cache line
+  private static final int LINE = 8;
+
+  static final int MAX_USEFUL_STRIPES =
+    Math.min(Runtime.getRuntime().availableProcessors(), MAX_STRIPES);
+
+  private final int size;
+  private final int stripes;
+  private final int rowLength;
+  private final AtomicLongArray counts;
+
+  /**
+   * Creates a new set of counters, all zero.
+   *
+   * @param size number of counters
+   * @param numThreads number of threads expected to increment the counters
+   */
+  StripedCounters(int size, int numThreads) {
+    this.size = size;
+    int n = Math.min(numThreads, MAX_USEFUL_STRIPES);
+    int s = 1;
+    while (s < n) {
+      s <<= 1;
+    }
+    stripes = s;
+    // Pad each row to whole cache lines, plus one line between rows.
+    rowLength = ((size + LINE - 1) / LINE + 1) * LINE;
+    counts = new AtomicLongArray(rowLength * stripes);
+  }
+
+  /**
+   * Gets the number of counters.
+   *
+   * @return number of counters
+   */
+  int size() {
+    return size;
+  }
+  /**
+   * Increments a counter.
+   *
+   * @param i counter index
+   * @param stripe stripe to increment; any int, usually the caller's walker
+   * ID
+   */
+  void increment(int i, int stripe) {
+    counts.getAndIncrement((stripe & (stripes - 1)) * rowLength + i);
+  }
+  /**
+   * Gets the value of a counter.
+   *
+   * @param i counter index
+   * @return counter value
+   */
+  long get(int i) {
+    long total = 0L;
+    for (int s = 0; s < stripes; s++) {
+      total += counts.get(s * rowLength + i);
+    }
+    return total;
+  }
+}
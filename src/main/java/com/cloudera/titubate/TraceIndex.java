@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The index of a trace directory, which names the modules and nodes that
+ * trace records refer to by number.
+ *
+ * @see TraceRecorder
+ */
+public final class TraceIndex {
+  private final Map<Integer, String> modules = new HashMap<Integer, String>();
+  private final Map<Integer, List<String>> nodes =
+    new HashMap<Integer, List<String>>();
+  private long clockMillis;
+  private long clockNanos;
+
+  private TraceIndex() {}
+
+  /**
+   * Reads the index of a trace directory.
+   *
+   * @param dir trace directory
+   * @return index
+   * @throws IOException if the index cannot be read or is malformed
+   */
+  public static TraceIndex read(File dir) throws IOException {
+    TraceIndex ti = new TraceIndex();
+    File f = new File(dir, TraceRecorder.INDEX_FILE);
+    BufferedReader r = new BufferedReader(new InputStreamReader(new FileInputStream(f), "UTF-8"));
+    try {
+      String line;
+      while ((line = r.readLine()) != null) {
+        String[] fields = line.split("\t");
+        try {
+          if (fields[0].equals("clock")) {
+            ti.clockMillis = Long.parseLong(fields[1]);
+            ti.clockNanos = Long.parseLong(fields[2]);
+          } else if (fields[0].equals("module")) {
+            Integer id = Integer.valueOf(fields[1]);
+            ti.modules.put(id, fields[2]);
+            ti.nodes.put(id, new ArrayList<String>());
+          } else if (fields[0].equals("node")) {
+            ti.nodes.get(Integer.valueOf(fields[1])).add(fields[3]);
+          }
+        } catch (RuntimeException e) {
+          throw new IOException("Malformed trace index line in " + f + ": " + line, e);
+        }
+      }
+    } finally {
+      r.close();
+    }
+    return ti;
+  }
+
+  /**
+   * Gets the name of a module.
+   *
+   * @param moduleId module ID
+   * @return module name, or null if unknown
+   */
+  public String getModule(int moduleId) {
+    return modules.get(Integer.valueOf(moduleId));
+  }
+  /**
+   * Gets the number of modules in the index.
+   *
+   * @return number of modules
+   */
+  public int getModuleCount() {
+    return modules.size();
+  }
+  /**
+   * Gets the ID of a node.
+   *
+   * @param moduleId module ID
+   * @param nodeIndex node index in the module's compiled graph
+   * @return node ID, or null if unknown
+   */
+  public String getNode(int moduleId, int nodeIndex) {
+    List<String> l = nodes.get(Integer.valueOf(moduleId));
+    if (l == null || nodeIndex < 0 || nodeIndex >= l.size()) {
+      return null;
+    }
+    return l.get(nodeIndex);
+  }
+  /**
+   * Converts a trace time, from System.nanoTime(), to wall clock time.
+   *
+   * @param nanos trace time
+   * @return wall clock time, in milliseconds since the epoch
+   */
+  public long toMillis(long nanos) {
+    return clockMillis + (nanos - clockNanos) / 1000000L;
+  }
+}
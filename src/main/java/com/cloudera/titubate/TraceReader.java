@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads one walker's trace, record by record, in the order the records were
+ * written. The reader's getters describe the current record.
+ *
+ * <pre>
+ *   TraceReader r = new TraceReader(dir, walkerId);
+ *   while (r.next()) {
+ *     ... r.getSeq(), r.getNodeIndex(), ...
+ *   }
+ * </pre>
+ *
+ * @see TraceRecorder
+ */
+public final class TraceReader {
+  private final File dir;
+  private final int walkerId;
+  private int segment = -1;
+  private MappedByteBuffer buffer = null;
+  private boolean done = false;
+
+  private long seq;
+  private long start;
+  private long duration;
+  private int moduleId;
+  private int nodeIndex;
+  private int recordWalkerId;
+  private byte outcome;
+
+  /**
+   * Creates a reader for a walker's trace.
+   *
+   * @param dir trace directory
+   * @param walkerId walker ID
+   */
+  public TraceReader(File dir, int walkerId) {
+    this.dir = dir;
+    this.walkerId = walkerId;
+  }
+
+  private boolean nextSegment() throws IOException {
+    File f = new File(dir, TraceRecorder.segmentName(walkerId, segment + 1));
+    if (!f.exists()) {
+      return false;
+    }
+    segment++;
+    RandomAccessFile raf = new RandomAccessFile(f, "r");
+    try {
+      buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0L, raf.length());
+    } finally {
+      raf.close();
+    }
+    return true;
+  }
+
+  /**
+   * Moves to the next record.
+   *
+   * @return true if there is a next record, false at the end of the trace
+   * @throws IOException if a segment cannot be read
+   */
+  public boolean next() throws IOException {
+    if (done) {
+      return false;
+    }
+    if (buffer == null || buffer.remaining() < TraceRecorder.RECORD_SIZE) {
+      if (!nextSegment()) {
+        done = true;
+        return false;
+      }
+    }
+    long s = buffer.getLong();
+    if (s == 0L) {
+      done = true;
+      return false;
+    }
+    seq = s;
+    start = buffer.getLong();
+    duration = buffer.getLong();
+    moduleId = buffer.getInt();
+    nodeIndex = buffer.getInt();
+    recordWalkerId = buffer.getInt();
+    outcome = buffer.get();
+    buffer.position(buffer.position() + 3);
+    return true;
+  }
+
+  public long getSeq() {
+    return seq;
+  }
+  public long getStart() {
+    return start;
+  }
+  public long getDuration() {
+    return duration;
+  }
+  public int getModuleId() {
+    return moduleId;
+  }
+  public int getNodeIndex() {
+    return nodeIndex;
+  }
+  public int getWalkerId() {
+    return recordWalkerId;
+  }
+  public byte getOutcome() {
+    return outcome;
+  }
+  public boolean succeeded() {
+    return outcome == TraceRecorder.OUTCOME_SUCCEEDED;
+  }
+}
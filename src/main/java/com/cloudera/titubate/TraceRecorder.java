@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.MappedByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records walks as binary traces. Each walker writes its own trace, as a
+ * series of fixed-size, memory-mapped segment files named
+ * <code>walker-N.SSSSS.trace</code>, so walkers never contend with each
+ * other and a write is just a few stores into mapped memory. Each record is
+ * {@link #RECORD_SIZE} bytes, in big-endian order:
+ *
+ * <pre>
+ *   long  sequence number of the visit, starting at 1, in start order
+ *   long  start time, from System.nanoTime()
+ *   long  duration, in nanoseconds
+ *   int   module ID
+ *   int   node index in the module's compiled graph
+ *   int   walker ID
+ *   byte  outcome: {@link #OUTCOME_SUCCEEDED} or {@link #OUTCOME_FAILED}
+ *   3 bytes padding
+ * </pre>
+ *
+ * Records are written when visits finish, so a visit to a nested module is
+ * recorded after the visits within it. The unused end of the last segment is
+ * zeroes; a record with sequence number 0 marks the end of a trace.<p>
+ *
+ * A text index file, {@link #INDEX_FILE}, in the same directory maps module
+ * IDs to module names and node indexes to node IDs, and relates the
+ * nanosecond clock to wall clock time. See {@link TraceReader} and
+ * {@link TraceIndex}.<p>
+ *
+ * When tracing every visit is too expensive, a sample rate below 1 records
+ * only that fraction of visits, chosen at random. Sequence numbers still
+ * count every visit, so gaps show where visits were skipped.<p>
+ *
+ * Segments that fill up are flushed to disk, and each walker's next segment
+ * is created and mapped ahead of time, on a background thread, so a walker
+ * never waits on the disk as it moves to a new segment.
+ */
+public final class TraceRecorder {
+  public static final int RECORD_SIZE = 40;
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+  public static final String INDEX_FILE = "trace.index";
+
+  public static final byte OUTCOME_SUCCEEDED = 0;
+  public static final byte OUTCOME_FAILED = 1;
+
+  private final File dir;
+  private final int segmentSize;
+  private final double sampleRate;
+  private final Map<Module, Integer> moduleIds =
+    new IdentityHashMap<Module, Integer>();
+  private final PrintWriter index;
+  private final ExecutorService flusher =
+    Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "trace-flusher");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+
+  /**
+   * Creates a new recorder, which writes traces into the given directory.
+   *
+   * @param dir directory for trace files; created if it does not exist
+   * @param segmentSize size of each segment file, in bytes; rounded down to
+   * a whole number of records
+   * @param sampleRate fraction of visits to record, greater than 0 and at
+   * most 1
+   * @throws IllegalArgumentException if the segment size cannot hold a
+   * record or the sample rate is out of range
+   * @throws IOException if the directory or index file cannot be created
+   */
+  public TraceRecorder(File dir, int segmentSize, double sampleRate)
+    throws IOException {
+    if (segmentSize < RECORD_SIZE) {
+      throw new IllegalArgumentException("Segment size " + segmentSize + " is too small for a record");
+    }
+    if (!(sampleRate > 0.0 && sampleRate <= 1.0)) {
+      throw new IllegalArgumentException("Sample rate must be in (0, 1]: " + sampleRate);
+    }
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Unable to create trace directory " + dir);
+    }
+    this.dir = dir;
+    this.segmentSize = segmentSize - segmentSize % RECORD_SIZE;
+    this.sampleRate = sampleRate;
+    index = new PrintWriter(new OutputStreamWriter(new FileOutputStream(new File(dir, INDEX_FILE)), "UTF-8"));
+    index.println("clock\t" + System.currentTimeMillis() + "\t" + System.nanoTime());
+    index.flush();
+  }
+
+  File getDirectory() {
+    return dir;
+  }
+  int getSegmentSize() {
+    return segmentSize;
+  }
+  double getSampleRate() {
+    return sampleRate;
+  }
+
+  /**
+   * Gets the name of a segment file.
+   *
+   * @param walkerId walker ID
+   * @param segment segment number, starting at 0
+   * @return file name
+   */
+  static String segmentName(int walkerId, int segment) {
+    return String.format("walker-%d.%05d.trace", walkerId, segment);
+  }
+
+  /**
+   * Opens a trace writer for a walker. The writer is only to be used by the
+   * walker's thread.
+   *
+   * @param walkerId walker ID
+   * @return trace writer
+   * @throws IOException if the first segment cannot be created
+   */
+  TraceWriter openWriter(int walkerId) throws IOException {
+    return new TraceWriter(this, walkerId);
+  }
+
+  /**
+   * Gets the ID for a module, assigning one and adding the module and its
+   * nodes to the index the first time. The module's graph must already be
+   * compiled.
+   *
+   * @param m module
+   * @return module ID
+   */
+  synchronized int moduleId(Module m) {
+    Integer id = moduleIds.get(m);
+    if (id == null) {
+      id = Integer.valueOf(moduleIds.size());
+      moduleIds.put(m, id);
+      ModuleGraph g = m.getGraph();
+      index.println("module\t" + id + "\t" + m);
+      for (int i = 0; i < g.size(); i++) {
+        index.println("node\t" + id + "\t" + i + "\t" + g.id(i));
+      }
+      index.flush();
+    }
+    return id.intValue();
+  }
+
+  /**
+   * Flushes a full segment to disk in the background. The segment is no
+   * longer referenced once it is flushed, so its mapping can be released.
+   *
+   * @param segment segment buffer, which its writer no longer uses
+   */
+  void retire(final MappedByteBuffer segment) {
+    inBackground(new Runnable() {
+      @Override
+      public void run() {
+        segment.force();
+      }
+    });
+  }
+
+  /**
+   * Runs a task on the background thread, or on the caller's thread if the
+   * recorder is closed.
+   *
+   * @param task task
+   */
+  void inBackground(Runnable task) {
+    try {
+      flusher.execute(task);
+    } catch (RejectedExecutionException e) {
+      task.run();  // closed
+    }
+  }
+
+  /**
+   * Waits for full segments to be flushed, and closes the index file.
+   * Writers should be closed first.
+   */
+  public synchronized void close() {
+    flusher.shutdown();
+    try {
+      flusher.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    index.close();
+  }
+}
@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes one walker's trace into memory-mapped segment files. A writer
+ * belongs to its walker and is only used by the walker's thread, so nothing
+ * here locks. If a segment cannot be created, tracing stops for the walker
+ * rather than failing its walk.<p>
+ *
+ * The next segment is mapped ahead of time, on the recorder's background
+ * thread, and handed over through a one-slot queue, so moving to a new
+ * segment only swaps buffers. The walker waits only if it fills a segment
+ * before the next one is ready.
+ *
+ * @see TraceRecorder
+ */
+final class TraceWriter {
+  private static final Logger LOG = LoggerFactory.getLogger(TraceWriter.class);
+
+  private final TraceRecorder recorder;
+  private final int walkerId;
+  private final double sampleRate;
+  private MappedByteBuffer buffer;
+  private int segment = 0;
+  // The next segment, or the IOException from mapping it
+  private final BlockingQueue<Object> spare = new ArrayBlockingQueue<Object>(1);
+  private long seq = 0L;
+  private long randomState;
+  private boolean failed = false;
+
+  // Module IDs seen by this writer, to save asking the recorder, and the
+  // last one used.
+  private final Map<Module, Integer> moduleIds =
+    new IdentityHashMap<Module, Integer>();
+  private Module lastModule = null;
+  private int lastModuleId;
+
+  TraceWriter(TraceRecorder recorder, int walkerId) throws IOException {
+    this.recorder = recorder;
+    this.walkerId = walkerId;
+    this.sampleRate = recorder.getSampleRate();
+    randomState = System.nanoTime() ^ (0x9E3779B97F4A7C15L * (walkerId + 1));
+    if (randomState == 0L) {
+      randomState = 1L;
+    }
+    buffer = map(segment);
+    mapAhead(segment + 1);
+  }
+
+  private void mapAhead(final int next) {
+    recorder.inBackground(new Runnable() {
+      @Override
+      public void run() {
+        Object mapped;
+        try {
+          mapped = map(next);
+        } catch (IOException e) {
+          mapped = e;
+        }
+        spare.add(mapped);
+      }
+    });
+  }
+  private Object takeSpare() {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return spare.take();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private MappedByteBuffer map(int segment) throws IOException {
+    File f = new File(recorder.getDirectory(),
+                      TraceRecorder.segmentName(walkerId, segment));
+    RandomAccessFile raf = new RandomAccessFile(f, "rw");
+    try {
+      raf.setLength(recorder.getSegmentSize());
+      return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0L,
+                                  recorder.getSegmentSize());
+    } finally {
+      raf.close();  // the mapping stays valid
+    }
+  }
+
+  /**
+   * Starts a visit: assigns it the next sequence number, and decides
+   * whether to record it.
+   *
+   * @return true if the visit is to be recorded
+   */
+  boolean sample() {
+    seq++;
+    if (failed) {
+      return false;
+    }
+    if (sampleRate >= 1.0) {
+      return true;
+    }
+    // xorshift64*, so as not to disturb the walker's own randomness
+    long x = randomState;
+    x ^= x >>> 12;
+    x ^= x << 25;
+    x ^= x >>> 27;
+    randomState = x;
+    return ((x * 0x2545F4914F6CDD1DL) >>> 11) * 0x1.0p-53 < sampleRate;
+  }
+  /**
+   * Gets the sequence number of the visit most recently started.
+   *
+   * @return sequence number
+   */
+  long getSeq() {
+    return seq;
+  }
+
+  /**
+   * Records a visit.
+   *
+   * @param visitSeq sequence number of the visit
+   * @param start start time, from System.nanoTime()
+   * @param duration visit duration, in nanoseconds
+   * @param m module containing the node
+   * @param nodeIndex index of the node in the module's graph
+   * @param succeeded true if the visit succeeded
+   */
+  void record(long visitSeq, long start, long duration, Module m,
+              int nodeIndex, boolean succeeded) {
+    if (failed) {
+      return;
+    }
+    if (m != lastModule) {
+      Integer id = moduleIds.get(m);
+      if (id == null) {
+        id = Integer.valueOf(recorder.moduleId(m));
+        moduleIds.put(m, id);
+      }
+      lastModuleId = id.intValue();
+      lastModule = m;
+    }
+    if (buffer.remaining() < TraceRecorder.RECORD_SIZE) {
+      recorder.retire(buffer);
+      buffer = null;
+      segment++;
+      Object next = takeSpare();
+      if (next instanceof IOException) {
+        LOG.error("Unable to create trace segment " + segment + " for walker " + walkerId + "; tracing stopped", (IOException) next);
+        failed = true;
+        return;
+      }
+      buffer = (MappedByteBuffer) next;
+      mapAhead(segment + 1);
+    }
+    MappedByteBuffer b = buffer;
+    b.putLong(visitSeq);
+    b.putLong(start);
+    b.putLong(duration);
+    b.putInt(lastModuleId);
+    b.putInt(nodeIndex);
+    b.putInt(walkerId);
+    b.put(succeeded ? TraceRecorder.OUTCOME_SUCCEEDED : TraceRecorder.OUTCOME_FAILED);
+    b.put((byte) 0);
+    b.put((byte) 0);
+    b.put((byte) 0);
+  }
+
+  /**
+   * Flushes the current segment to disk, and deletes the unused next one.
+   * The writer may not be used after this.
+   */
+  void close() {
+    if (buffer != null) {
+      buffer.force();
+      buffer = null;
+      failed = true;
+      if (takeSpare() instanceof MappedByteBuffer) {
+        new File(recorder.getDirectory(),
+                 TraceRecorder.segmentName(walkerId, segment + 1)).delete();
+      }
+    }
+  }
+}
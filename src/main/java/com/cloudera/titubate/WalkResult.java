@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+/**
+ * The outcome of one random walk.
+ */
+public class WalkResult {
+  private final int walkerId;
+  private final long hops;
+  private final long elapsedMs;
+  private final Throwable failure;
+
+  /**
+   * Creates a new result.
+   *
+   * @param walkerId ID of walker that took the walk
+   * @param hops number of hops taken
+   * @param elapsedMs duration of walk, in milliseconds
+   * @param failure cause of walk failure, or null if the walk succeeded
+   */
+  public WalkResult(int walkerId, long hops, long elapsedMs,
+                    Throwable failure) {
+    this.walkerId = walkerId;
+    this.hops = hops;
+    this.elapsedMs = elapsedMs;
+    this.failure = failure;
+  }
+
+  /**
+   * Gets the ID of the walker that took the walk.
+   *
+   * @return walker ID
+   */
+  public int getWalkerId() {
+    return walkerId;
+  }
+  /**
+   * Gets the number of hops taken in the walk.
+   *
+   * @return hop count
+   */
+  public long getHops() {
+    return hops;
+  }
+  /**
+   * Gets how long the walk took.
+   *
+   * @return duration of walk, in milliseconds
+   */
+  public long getElapsedMs() {
+    return elapsedMs;
+  }
+  /**
+   * Checks if the walk succeeded.
+   *
+   * @return true if the walk succeeded
+   */
+  public boolean succeeded() {
+    return failure == null;
+  }
+  /**
+   * Gets the cause of the walk's failure.
+   *
+   * @return failure cause, or null if the walk succeeded
+   */
+  public Throwable getFailure() {
+    return failure;
+  }
+
+  @Override
+  public String toString() {
+    return "walker " + walkerId + ": " +
+      (failure == null ? "succeeded" : "failed (" + failure + ")") +
+      " after " + hops + " hops in " + elapsedMs + " ms";
+  }
+}
@@ -0,0 +1,573 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The execution context of a single random walk. Several walks of the same
+ * module may run at once, each on its own thread; everything that may not be
+ * shared between them is kept in their walkers. This includes the source of
+ * randomness used to choose edges, the action instances run by
+ * {@link CallableNode}s, and bookkeeping such as the hop count.<p>
+ *
+ * A walker is bound to the thread running its walk. A thread that runs a
+ * walk without binding a walker gets a default one, which runs the action
+ * instances belonging to the nodes themselves. This class is not
+ * thread-safe; apart from the fields read for monitoring, by the
+ * {@link Watchdog} and through JMX, a walker is only used by its own
+ * thread. The hop count and current position are published with ordered
+ * (lazy) writes, so that monitoring sees them promptly without the hop loop
+ * paying for volatile writes.
+ */
+public class Walker {
+  private static final Logger LOG = LoggerFactory.getLogger(Walker.class);
+  private static final ThreadLocal<Walker> CURRENT = new ThreadLocal<Walker>();
+
+  private final int id;
+  private final Random random;
+  private final boolean ownActions;
+  private final Map<CallableNode, CallableAction> actions =
+    new IdentityHashMap<CallableNode, CallableAction>();
+  private int depth = 0;
+  private TraceWriter trace = null;
+  private Replay replay = null;
+  private boolean watched = false;
+  private Checkpointer checkpointer = null;
+  private long nextCheckpoint = Long.MAX_VALUE;
+  private Checkpoint resume = null;
+  private int coverageWalkers = 0;
+
+  // Monitoring fields. Those with updaters are only written lazily.
+  private static final AtomicLongFieldUpdater<Walker> HOPS =
+    AtomicLongFieldUpdater.newUpdater(Walker.class, "hops");
+  private static final AtomicReferenceFieldUpdater<Walker, Position> POSITION =
+    AtomicReferenceFieldUpdater.newUpdater(Walker.class, Position.class, "position");
+  private volatile long hops = 0L;
+  private volatile Position position = null;
+  private volatile Module rootModule = null;
+  // This walker's own visit counts, by module graph, kept while it is
+  // monitored. The array is only replaced when a module is first visited.
+  private volatile ModuleVisits[] moduleVisits = null;
+  private ModuleVisits lastVisits = null;
+  private volatile long walkStart;
+  private volatile long walkStartHops;
+  private final HopRate hopRate =
+    new HopRate((int) (MAX_RATE_WINDOW / Watchdog.SCAN_INTERVAL) + 2);
+
+  /**
+   * The longest window over which hop rates are tracked.
+   */
+  static final long MAX_RATE_WINDOW = 15 * 60 * 1000L;  // 15 minutes
+
+  // The current visit to a timed node. These are written by this walker's
+  // thread and read by the watchdog.
+  private volatile Node timedNode = null;
+  private volatile long timedStart;
+  private volatile long progress;
+  private volatile boolean runningLong;
+
+  /**
+   * Creates a new walker, which uses its own action instances.
+   *
+   * @param id walker ID
+   * @param random source of randomness for choosing edges
+   */
+  public Walker(int id, Random random) {
+    this(id, random, true);
+  }
+  /**
+   * Creates a new walker.
+   *
+   * @param id walker ID
+   * @param random source of randomness for choosing edges
+   * @param ownActions true to use its own action instances, false to use
+   * those belonging to the nodes
+   */
+  Walker(int id, Random random, boolean ownActions) {
+    this.id = id;
+    this.random = random;
+    this.ownActions = ownActions;
+  }
+
+  /**
+   * Gets the walker bound to the current thread. If none is bound, a default
+   * walker is bound and returned.
+   *
+   * @return current walker
+   */
+  public static Walker current() {
+    Walker w = CURRENT.get();
+    if (w == null) {
+      w = new Walker(0, new Random(), false);
+      CURRENT.set(w);
+    }
+    return w;
+  }
+  /**
+   * Gets the walker bound to the current thread, without binding a default
+   * one.
+   *
+   * @return current walker, or null if none is bound
+   */
+  static Walker bound() {
+    return CURRENT.get();
+  }
+  /**
+   * Binds a walker to the current thread.
+   *
+   * @param w walker to bind, or null to unbind the current walker
+   */
+  public static void bind(Walker w) {
+    if (w == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(w);
+    }
+  }
+
+  /**
+   * Gets this walker's ID.
+   *
+   * @return walker ID
+   */
+  public int getId() {
+    return id;
+  }
+  /**
+   * Gets this walker's source of randomness.
+   *
+   * @return random number generator
+   */
+  public Random getRandom() {
+    return random;
+  }
+  /**
+   * Gets the number of hops this walker has taken, across all modules.
+   *
+   * @return hop count
+   */
+  public long getHops() {
+    return hops;
+  }
+  void hop() {
+    HOPS.lazySet(this, hops + 1L);
+  }
+
+  /**
+   * A node in a module's compiled graph, where a walker may be. Positions are
+   * immutable, and each compiled graph makes one for each of its nodes, so
+   * a walker publishes where it is with a single write and a reader never
+   * sees a module paired with another module's node.
+   */
+  static final class Position {
+    private final Module module;
+    private final int nodeIndex;
+    Position(Module module, int nodeIndex) {
+      this.module = module;
+      this.nodeIndex = nodeIndex;
+    }
+    Module getModule() {
+      return module;
+    }
+    int getNodeIndex() {
+      return nodeIndex;
+    }
+  }
+
+  /**
+   * Notes the node this walker is visiting.
+   *
+   * @param p position of the node, or null if none
+   * @see ModuleGraph#position(int)
+   */
+  void setPosition(Position p) {
+    POSITION.lazySet(this, p);
+  }
+  /**
+   * Gets the node this walker is visiting, as last noted.
+   *
+   * @return current position, or null if none
+   */
+  Position getPosition() {
+    return position;
+  }
+
+  /**
+   * A walker's visit counts for the nodes of one module graph. Only the
+   * walker writes them, lazily.
+   */
+  static final class ModuleVisits {
+    private final Module module;
+    private final ModuleGraph graph;
+    private final AtomicLongArray counts;
+    ModuleVisits(Module module, ModuleGraph graph) {
+      this.module = module;
+      this.graph = graph;
+      counts = new AtomicLongArray(graph.size());
+    }
+  }
+  /**
+   * Starts counting this walker's own node visits, for monitoring. Counting
+   * costs a lazy write per hop.
+   */
+  void startCountingVisits() {
+    if (moduleVisits == null) {
+      moduleVisits = new ModuleVisits[0];
+    }
+  }
+  /**
+   * Counts a visit by this walker to a node, if it is counting visits.
+   *
+   * @param m module
+   * @param g module's graph
+   * @param i node index
+   */
+  void countVisit(Module m, ModuleGraph g, int i) {
+    ModuleVisits v = lastVisits;
+    if (v == null || v.graph != g) {
+      ModuleVisits[] all = moduleVisits;
+      if (all == null) {
+        return;
+      }
+      v = null;
+      for (ModuleVisits mv : all) {
+        if (mv.graph == g) {
+          v = mv;
+          break;
+        }
+      }
+      if (v == null) {
+        v = new ModuleVisits(m, g);
+        all = Arrays.copyOf(all, all.length + 1);
+        all[all.length - 1] = v;
+        moduleVisits = all;
+      }
+      lastVisits = v;
+    }
+    v.counts.lazySet(i, v.counts.get(i) + 1L);
+  }
+  /**
+   * Gets this walker's own visit counts, for the nodes of every module it
+   * has visited while counting visits.
+   *
+   * @return visit counts, by module and node ID, or an empty map if this
+   * walker is not counting visits
+   */
+  Map<String, Long> getVisitCounts() {
+    Map<String, Long> counts = new LinkedHashMap<String, Long>();
+    ModuleVisits[] all = moduleVisits;
+    if (all == null) {
+      return counts;
+    }
+    for (ModuleVisits v : all) {
+      for (int i = 0; i < v.counts.length(); i++) {
+        String key = v.module + ":" + v.graph.id(i);
+        Long old = counts.get(key);
+        long n = v.counts.get(i);
+        counts.put(key, Long.valueOf(old == null ? n : old.longValue() + n));
+      }
+    }
+    return counts;
+  }
+  /**
+   * Gets the outermost module of this walker's current or last walk.
+   *
+   * @return root module, or null if this walker has not walked
+   */
+  Module getRootModule() {
+    return rootModule;
+  }
+  /**
+   * Gets this walker's average hop rate over its current or last walk.
+   *
+   * @param now current time, in milliseconds
+   * @return hops per second
+   */
+  double getAverageHopRate(long now) {
+    long start = walkStart;
+    if (now <= start) {
+      return 0.0;
+    }
+    return (hops - walkStartHops) * 1000.0 / (now - start);
+  }
+  /**
+   * Gets this walker's hop rate over a window of time.
+   *
+   * @param now current time, in milliseconds
+   * @param windowMs window length, in milliseconds, up to
+   * {@link #MAX_RATE_WINDOW}
+   * @return hops per second
+   */
+  double getHopRate(long now, long windowMs) {
+    return hopRate.perSecond(now, hops, windowMs);
+  }
+  /**
+   * Samples this walker's hop count for figuring hop rates. This is called
+   * periodically by the watchdog.
+   *
+   * @param now current time, in milliseconds
+   */
+  void sampleHops(long now) {
+    hopRate.sample(now, hops);
+  }
+
+  /**
+   * Gets the trace writer for this walker's visits.
+   *
+   * @return trace writer, or null if this walker is not traced
+   */
+  TraceWriter getTrace() {
+    return trace;
+  }
+  /**
+   * Sets the trace writer for this walker's visits.
+   *
+   * @param trace trace writer, or null to stop tracing
+   */
+  void setTrace(TraceWriter trace) {
+    this.trace = trace;
+  }
+
+  /**
+   * Gets the visits this walker is replaying.
+   *
+   * @return replay, or null if this walker chooses edges at random
+   */
+  Replay getReplay() {
+    return replay;
+  }
+  /**
+   * Sets visits for this walker to replay, instead of choosing edges at
+   * random. A replaying walker is not watched by the {@link Watchdog}.
+   *
+   * @param replay replay, or null to choose edges at random
+   */
+  void setReplay(Replay replay) {
+    this.replay = replay;
+  }
+
+  /**
+   * Sets whether this walker counts node visits and edge traversals, for
+   * coverage. The counters for a graph are allocated the first time a walker
+   * counts on it, with a stripe for each of up to the given number of
+   * walkers.
+   *
+   * @param numWalkers number of walkers in the run, or 0 to not count
+   */
+  void setCoverageWalkers(int numWalkers) {
+    coverageWalkers = numWalkers;
+  }
+  int getCoverageWalkers() {
+    return coverageWalkers;
+  }
+
+  /**
+   * Sets the checkpointer for this walker's walks. The first checkpoint is
+   * due one interval from now.
+   *
+   * @param checkpointer checkpointer, or null to stop checkpointing
+   */
+  void setCheckpointer(Checkpointer checkpointer) {
+    this.checkpointer = checkpointer;
+    nextCheckpoint = checkpointer == null ? Long.MAX_VALUE :
+      System.currentTimeMillis() + checkpointer.getInterval();
+  }
+  /**
+   * Gets the time this walker's next checkpoint is due.
+   *
+   * @return due time, in milliseconds, or Long.MAX_VALUE if this walker is
+   * not checkpointed
+   */
+  long getNextCheckpoint() {
+    return nextCheckpoint;
+  }
+  /**
+   * Checkpoints this walker, between hops of its outermost module.
+   *
+   * @param m outermost module
+   * @param nodeId ID of node just visited
+   * @param numHops hop count in the module
+   * @param elapsed elapsed time in the module, in milliseconds
+   * @param state walk state
+   * @param now current time, in milliseconds
+   */
+  void checkpoint(Module m, String nodeId, long numHops, long elapsed,
+                  State state, long now) {
+    nextCheckpoint = now + checkpointer.getInterval();
+    checkpointer.checkpoint(this, m, nodeId, numHops, elapsed, state);
+  }
+
+  /**
+   * Gets the checkpoint this walker is to resume its walk from.
+   *
+   * @return checkpoint, or null if this walker starts its walk afresh
+   */
+  Checkpoint getResume() {
+    return resume;
+  }
+  /**
+   * Sets a checkpoint for this walker to resume its walk from, and restores
+   * its hop count from it. The checkpoint is used up when the walk resumes.
+   *
+   * @param resume checkpoint, or null to start afresh
+   */
+  void setResume(Checkpoint resume) {
+    this.resume = resume;
+    if (resume != null) {
+      HOPS.lazySet(this, resume.getHops());
+    }
+  }
+
+  /**
+   * Gets the number of modules this walker is currently in: 1 while in its
+   * outermost module, 2 while in a module nested in that, and so on.
+   *
+   * @return module nesting depth
+   */
+  int getDepth() {
+    return depth;
+  }
+
+  /**
+   * Notes that this walker has entered a module. When the walker enters its
+   * outermost module, it starts being watched by the {@link Watchdog}.
+   *
+   * @param m module
+   */
+  void enterModule(Module m) {
+    if (depth++ == 0) {
+      long now = System.currentTimeMillis();
+      walkStartHops = hops;
+      walkStart = now;
+      rootModule = m;
+      hopRate.reset(now, hops);
+      watched = replay == null;
+      if (watched) {
+        Watchdog.get().register(this);
+      }
+    }
+  }
+  /**
+   * Notes that this walker has exited a module. When the walker exits its
+   * outermost module, it stops being watched by the {@link Watchdog}.
+   */
+  void exitModule() {
+    if (--depth == 0 && watched) {
+      watched = false;
+      Watchdog.get().deregister(this);
+    }
+  }
+
+  /**
+   * Notes that this walker has started visiting a timed node.
+   *
+   * @param n node
+   */
+  void startTimedVisit(Node n) {
+    long now = System.currentTimeMillis();
+    timedStart = now;
+    progress = now;
+    runningLong = false;
+    timedNode = n;
+  }
+  /**
+   * Notes that this walker has finished visiting a timed node.
+   */
+  long getTimedStart() {
+    return timedStart;
+  }
+  void endTimedVisit() {
+    Node n = timedNode;
+    timedNode = null;
+    if (runningLong) {
+      LOG.warn("Node " + n + ", which was running long in " + this + ", has now completed after " + (System.currentTimeMillis() - timedStart) / 1000.0 + " seconds");
+    }
+  }
+  /**
+   * Notes progress on the work for the timed node this walker is visiting.
+   * Actions that run for a long time may call this to let the watchdog know
+   * that they are not stuck.
+   */
+  public void progress() {
+    progress = System.currentTimeMillis();
+  }
+  Node getTimedNode() {
+    return timedNode;
+  }
+  long getProgress() {
+    return progress;
+  }
+  /**
+   * Gets the last time progress was noted on the timed visit of this walker,
+   * either by the walker or by a worker thread of the node it is visiting.
+   *
+   * @param n node being visited
+   * @return progress timestamp
+   */
+  long getProgress(Node n) {
+    return Math.max(progress, n.getWorkerProgress());
+  }
+  boolean isRunningLong() {
+    return runningLong;
+  }
+  void setRunningLong() {
+    runningLong = true;
+  }
+
+  /**
+   * Gets the action instance this walker uses for a node. A walker that
+   * uses its own action instances creates one the first time it visits each
+   * node, using the no-argument constructor of the node's action class.
+   *
+   * @param n node
+   * @return action to run
+   * @throws NodeException if a new action instance cannot be created
+   */
+  CallableAction getAction(CallableNode n) throws NodeException {
+    if (!ownActions) {
+      return n.getAction();
+    }
+    CallableAction a = actions.get(n);
+    if (a == null) {
+      Class<? extends CallableAction> c = n.getAction().getClass();
+      try {
+        a = c.getDeclaredConstructor().newInstance();
+      } catch (Exception e) {
+        throw new NodeException("Failed to create action of class " +
+                                c.getName() + " for walker " + id, e);
+      }
+      actions.put(n, a);
+    }
+    return a;
+  }
+
+  @Override
+  public String toString() {
+    return "walker " + id;
+  }
+}
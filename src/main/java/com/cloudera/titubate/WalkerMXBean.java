@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.util.Map;
+
+/**
+ * Live telemetry for a walker, exposed through JMX. Each running walker is
+ * registered as
+ * <code>com.cloudera.titubate:type=Walker,framework=F,name=walker-N</code>,
+ * where F tells apart the frameworks running in the same JVM.
+ * Reading these attributes never locks or slows the walker's hop loop; the
+ * values are as last published by the walker, so may be a hop or so behind.
+ */
+public interface WalkerMXBean {
+  /**
+   * Gets the walker's ID.
+   *
+   * @return walker ID
+   */
+  int getId();
+  /**
+   * Gets the module the walker is in.
+   *
+   * @return module name, or null if not walking
+   */
+  String getModule();
+  /**
+   * Gets the node the walker is visiting, or last visited.
+   *
+   * @return node ID, or null if not walking
+   */
+  String getNode();
+  /**
+   * Gets the number of hops the walker has taken.
+   *
+   * @return hop count
+   */
+  long getHops();
+  /**
+   * Gets the walker's average hop rate since its walk started.
+   *
+   * @return hops per second
+   */
+  double getHopsPerSecond();
+  /**
+   * Gets the walker's hop rate over about the last minute.
+   *
+   * @return hops per second
+   */
+  double getHopsPerSecondLastMinute();
+  /**
+   * Gets the walker's hop rate over about the last five minutes.
+   *
+   * @return hops per second
+   */
+  double getHopsPerSecondLast5Minutes();
+  /**
+   * Gets the walker's hop rate over about the last fifteen minutes.
+   *
+   * @return hops per second
+   */
+  double getHopsPerSecondLast15Minutes();
+  /**
+   * Gets how long the walker has been in its current visit to a timed node.
+   *
+   * @return time in node, in milliseconds, or 0 if not visiting a timed node
+   */
+  long getTimeInNodeMillis();
+  /**
+   * Gets how long it has been since the walker's current visit to a timed
+   * node made progress. Only progress noted for this walker counts, not
+   * progress on the same node by other walkers.
+   *
+   * @return time since progress, in milliseconds, or 0 if not visiting a
+   * timed node
+   * @see Walker#progress()
+   */
+  long getTimeSinceProgressMillis();
+  /**
+   * Gets the number of visits this walker has made to each node of the
+   * modules it has visited since it was registered. These are the walker's
+   * own counts, kept whether or not coverage is counted.
+   *
+   * @return visit counts, by node name
+   */
+  Map<String, Long> getModuleVisitCounts();
+}
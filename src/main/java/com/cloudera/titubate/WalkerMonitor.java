@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The JMX view of a walker. Everything here is read from the walker's
+ * monitoring fields, which the walker publishes without locking.
+ */
+final class WalkerMonitor implements WalkerMXBean {
+  private static final Logger LOG = LoggerFactory.getLogger(WalkerMonitor.class);
+
+  static final String DOMAIN = "com.cloudera.titubate";
+
+  private final Walker walker;
+  private final ObjectName name;
+
+  private WalkerMonitor(Walker walker, ObjectName name) {
+    this.walker = walker;
+    this.name = name;
+  }
+
+  /**
+   * Gets the JMX name for a walker.
+   *
+   * @param frameworkId ID of the framework running the walker, unique in
+   * this JVM
+   * @param w walker
+   * @return object name
+   * @throws JMException if the name is malformed
+   */
+  static ObjectName nameFor(int frameworkId, Walker w) throws JMException {
+    return new ObjectName(DOMAIN + ":type=Walker,framework=" + frameworkId +
+                          ",name=walker-" + w.getId());
+  }
+
+  /**
+   * Registers a walker with the platform MBean server. Failure to register
+   * is logged, but does not stop the walk.
+   *
+   * @param frameworkId ID of the framework running the walker, unique in
+   * this JVM
+   * @param w walker
+   * @return monitor for the walker, or null if it could not be registered
+   */
+  static WalkerMonitor register(int frameworkId, Walker w) {
+    try {
+      WalkerMonitor monitor = new WalkerMonitor(w, nameFor(frameworkId, w));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(monitor, monitor.name);
+      w.startCountingVisits();
+      return monitor;
+    } catch (JMException e) {
+      LOG.warn("Unable to register " + w + " with JMX", e);
+      return null;
+    }
+  }
+  /**
+   * Unregisters this monitor's walker from the platform MBean server.
+   */
+  void unregister() {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      server.unregisterMBean(name);
+    } catch (JMException e) {
+      LOG.warn("Unable to unregister " + walker + " from JMX", e);
+    }
+  }
+
+  @Override
+  public int getId() {
+    return walker.getId();
+  }
+  @Override
+  public String getModule() {
+    Walker.Position p = walker.getPosition();
+    return p == null ? null : p.getModule().toString();
+  }
+  @Override
+  public String getNode() {
+    Walker.Position p = walker.getPosition();
+    return p == null ? null : p.getModule().getNodeId(p.getNodeIndex());
+  }
+  @Override
+  public long getHops() {
+    return walker.getHops();
+  }
+  @Override
+  public double getHopsPerSecond() {
+    return walker.getAverageHopRate(System.currentTimeMillis());
+  }
+  @Override
+  public double getHopsPerSecondLastMinute() {
+    return walker.getHopRate(System.currentTimeMillis(), 60 * 1000L);
+  }
+  @Override
+  public double getHopsPerSecondLast5Minutes() {
+    return walker.getHopRate(System.currentTimeMillis(), 5 * 60 * 1000L);
+  }
+  @Override
+  public double getHopsPerSecondLast15Minutes() {
+    return walker.getHopRate(System.currentTimeMillis(), Walker.MAX_RATE_WINDOW);
+  }
+  @Override
+  public long getTimeInNodeMillis() {
+    if (walker.getTimedNode() == null) {
+      return 0L;
+    }
+    return Math.max(0L, System.currentTimeMillis() - walker.getTimedStart());
+  }
+  @Override
+  public long getTimeSinceProgressMillis() {
+    Node n = walker.getTimedNode();
+    if (n == null) {
+      return 0L;
+    }
+    return Math.max(0L, System.currentTimeMillis() - walker.getProgress(n));
+  }
+  @Override
+  public Map<String, Long> getModuleVisitCounts() {
+    return walker.getVisitCounts();
+  }
+}
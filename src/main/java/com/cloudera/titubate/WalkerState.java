@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * The state of one walker among several that share a
+ * {@link ConcurrentState}. Keys declared shared in the concurrent state,
+ * with {@link #share(String...)} or {@link #share(StateKey...)} here or
+ * the same methods of the concurrent state, are read and written there, by
+ * every walker. String keys and typed keys are shared separately. All other keys are
+ * local to the walker, and kept in a plain map without any synchronization.
+ * Like {@link State}, a walker state itself is only to be used by its own
+ * walker's thread.
+ */
+public class WalkerState extends State {
+  private final ConcurrentState shared;
+
+  /**
+   * Creates a new walker state, with no local keys.
+   *
+   * @param shared state shared between walkers
+   */
+  public WalkerState(ConcurrentState shared) {
+    super(new HashMap<String, Object>());
+    this.shared = shared;
+  }
+
+  /**
+   * Gets the state shared between walkers.
+   *
+   * @return shared state
+   */
+  public ConcurrentState getShared() {
+    return shared;
+  }
+  /**
+   * Declares keys to be shared by all walkers. Any local objects for the
+   * keys are discarded.
+   *
+   * @param keys keys to share
+   */
+  public void share(String... keys) {
+    // Discard local objects first, while their keys still route here.
+    for (String key : keys) {
+      if (!shared.isShared(key)) {
+        super.remove(key);
+      }
+    }
+    shared.share(keys);
+  }
+  /**
+   * Declares typed keys to be shared by all walkers. Any local objects for
+   * the keys are discarded. String keys with the same names stay as they
+   * are.
+   *
+   * @param keys keys to share
+   */
+  public void share(StateKey<?>... keys) {
+    for (StateKey<?> key : keys) {
+      if (!shared.isShared(key)) {
+        super.removeValue(key);
+      }
+    }
+    shared.share(keys);
+  }
+
+  @Override
+  public void set(String key, Object value) {
+    if (shared.isShared(key)) {
+      shared.set(key, value);
+    } else {
+      super.set(key, value);
+    }
+  }
+  @Override
+  public void remove(String key) {
+    if (shared.isShared(key)) {
+      shared.remove(key);
+    } else {
+      super.remove(key);
+    }
+  }
+  @Override
+  public boolean has(String key) {
+    return shared.isShared(key) ? shared.has(key) : super.has(key);
+  }
+  @Override
+  public Object get(String key) {
+    return shared.isShared(key) ? shared.get(key) : super.get(key);
+  }
+  @Override
+  public Object putIfAbsent(String key, Object value) {
+    return shared.isShared(key) ? shared.putIfAbsent(key, value) :
+      super.putIfAbsent(key, value);
+  }
+  @Override
+  public Object compute(String key,
+                        BiFunction<? super String, Object, Object> f) {
+    return shared.isShared(key) ? shared.compute(key, f) :
+      super.compute(key, f);
+  }
+  @Override
+  public Object merge(String key, Object value,
+                      BiFunction<Object, Object, Object> f) {
+    return shared.isShared(key) ? shared.merge(key, value, f) :
+      super.merge(key, value, f);
+  }
+
+  @Override
+  protected Object getValue(StateKey<?> key) {
+    return shared.isShared(key) ? shared.getValue(key) :
+      super.getValue(key);
+  }
+  @Override
+  protected void setValue(StateKey<?> key, Object value) {
+    if (shared.isShared(key)) {
+      shared.setValue(key, value);
+    } else {
+      super.setValue(key, value);
+    }
+  }
+  @Override
+  protected boolean hasValue(StateKey<?> key) {
+    return shared.isShared(key) ? shared.hasValue(key) :
+      super.hasValue(key);
+  }
+  @Override
+  protected void removeValue(StateKey<?> key) {
+    if (shared.isShared(key)) {
+      shared.removeValue(key);
+    } else {
+      super.removeValue(key);
+    }
+  }
+  @Override
+  protected int getIntValue(IntKey key) {
+    return shared.isShared(key) ? shared.getIntValue(key) :
+      super.getIntValue(key);
+  }
+  @Override
+  protected void setIntValue(IntKey key, int value) {
+    if (shared.isShared(key)) {
+      shared.setIntValue(key, value);
+    } else {
+      super.setIntValue(key, value);
+    }
+  }
+  @Override
+  protected int addIntValue(IntKey key, int delta) {
+    return shared.isShared(key) ? shared.addIntValue(key, delta) :
+      super.addIntValue(key, delta);
+  }
+  @Override
+  protected long getLongValue(LongKey key) {
+    return shared.isShared(key) ? shared.getLongValue(key) :
+      super.getLongValue(key);
+  }
+  @Override
+  protected void setLongValue(LongKey key, long value) {
+    if (shared.isShared(key)) {
+      shared.setLongValue(key, value);
+    } else {
+      super.setLongValue(key, value);
+    }
+  }
+  @Override
+  protected long addLongValue(LongKey key, long delta) {
+    return shared.isShared(key) ? shared.addLongValue(key, delta) :
+      super.addLongValue(key, delta);
+  }
+
+  /**
+   * Takes a shallow copy of this walker's local objects and the shared
+   * objects.
+   *
+   * @return map of keys to objects
+   */
+  @Override
+  Map<Object,Object> snapshot() {
+    Map<Object,Object> m = super.snapshot();
+    m.putAll(shared.snapshot());
+    return m;
+  }
+
+  /**
+   * Dumps this walker's local state, then the shared state.
+   *
+   * @param w writer
+   * @param dumper dumper
+   * @throws IOException if the dump cannot be written
+   */
+  @Override
+  public void dump(Writer w, StateDumper dumper) throws IOException {
+    Writer out = dumper.limit(w);
+    out.write("local ");
+    super.dump(out, dumper);
+    out.write(" shared ");
+    shared.dump(out, dumper);
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A process-wide watchdog for visits to {@link Timed} nodes that run a long
+ * time. Rather than setting a timer for each visit, walkers note the start
+ * of each timed visit in volatile fields, and the watchdog periodically scans
+ * all walkers that are in the middle of a walk. So, timing a visit costs a
+ * few field writes and allocates nothing.<p>
+ *
+ * The watchdog thread is a daemon. It is started when the first walker
+ * registers and stopped when the last one deregisters.
+ */
+final class Watchdog {
+  private static final Logger LOG = LoggerFactory.getLogger(Watchdog.class);
+
+  static final long LONG_TIME = 5 * 60 * 1000L;  // 5 minutes
+  static final long SCAN_INTERVAL = 10 * 1000L;  // 10 seconds
+
+  private static final Watchdog INSTANCE = new Watchdog(LONG_TIME, SCAN_INTERVAL);
+
+  private final long longTime;
+  private final long scanInterval;
+  private final Set<Walker> walkers =
+    ConcurrentHashMap.<Walker>newKeySet();
+  private final Lock lifecycleLock = new ReentrantLock();
+  private ScheduledThreadPoolExecutor scanner = null;
+
+  Watchdog(long longTime, long scanInterval) {
+    this.longTime = longTime;
+    this.scanInterval = scanInterval;
+  }
+
+  /**
+   * Gets the process-wide watchdog.
+   *
+   * @return watchdog
+   */
+  static Watchdog get() {
+    return INSTANCE;
+  }
+
+  /**
+   * Starts watching a walker.
+   *
+   * @param w walker
+   */
+  void register(Walker w) {
+    lifecycleLock.lock();
+    try {
+      walkers.add(w);
+      if (scanner == null) {
+        scanner = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "titubate-watchdog");
+            t.setDaemon(true);
+            return t;
+          }
+        });
+        scanner.scheduleWithFixedDelay(new Runnable() {
+          @Override
+          public void run() {
+            scan(System.currentTimeMillis());
+          }
+        }, scanInterval, scanInterval, TimeUnit.MILLISECONDS);
+      }
+    } finally {
+      lifecycleLock.unlock();
+    }
+  }
+  /**
+   * Stops watching a walker.
+   *
+   * @param w walker
+   */
+  void deregister(Walker w) {
+    lifecycleLock.lock();
+    try {
+      walkers.remove(w);
+      if (walkers.isEmpty() && scanner != null) {
+        scanner.shutdownNow();
+        scanner = null;
+      }
+    } finally {
+      lifecycleLock.unlock();
+    }
+  }
+  /**
+   * Checks if the watchdog thread is running.
+   *
+   * @return true if running
+   */
+  boolean isRunning() {
+    lifecycleLock.lock();
+    try {
+      return scanner != null;
+    } finally {
+      lifecycleLock.unlock();
+    }
+  }
+
+  /**
+   * Samples each watched walker's hop count, and checks it for a timed visit
+   * that has gone without progress for too long, warning about any that are
+   * found. A visit is only warned about once.
+   *
+   * @param now current time, in milliseconds
+   */
+  void scan(long now) {
+    for (Walker w : walkers) {
+      w.sampleHops(now);
+      Node n = w.getTimedNode();
+      if (n == null || w.isRunningLong()) {
+        continue;
+      }
+      long timeSinceLastProgress = now - w.getProgress(n);
+      if (timeSinceLastProgress > longTime) {
+        LOG.warn("Node " + n + " in " + w + " has been running for " + timeSinceLastProgress / 1000 + " seconds. You may want to look into it.");
+        w.setRunningLong();
+        FlightEvents.longRunning(n, w, timeSinceLastProgress);
+      }
+    }
+  }
+}
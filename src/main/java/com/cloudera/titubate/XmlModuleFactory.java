@@ -16,28 +16,49 @@
  */
 package com.cloudera.titubate;
 
-import com.cloudera.titubate.Module.AdjList;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.ValidatorHandler;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.AttributesImpl;
 
+/**
+ * Reads a module from an XML file. The file is read in a single streaming
+ * pass, with each element checked against the module schema as it is read
+ * and turned straight into the module's nodes, properties and edges, so no
+ * document tree is built and memory use follows the size of the module
+ * rather than of the file. As when the file was read into a document,
+ * schema violations are reported, in the log, but do not stop the module
+ * from loading; malformed XML does.<p>
+ *
+ * If given a {@link ModuleCache}, the factory loads the module's compiled
+ * form from it instead, when the cache holds one for the file's current
+ * contents, and otherwise adds one after reading the file.
+ */
 public class XmlModuleFactory {
     private static final Logger LOG = LoggerFactory.getLogger(XmlModuleFactory.class);
     private static final Schema moduleSchema;
+    private static final XMLInputFactory inputFactory;
 
     static {
         SchemaFactory sf = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
@@ -46,156 +67,279 @@ public class XmlModuleFactory {
         } catch (SAXException e) {
             throw new ExceptionInInitializerError(e);
         }
+        inputFactory = XMLInputFactory.newInstance();
     }
 
     private final File xmlFile;
     private final File moduleDir;
-    private final DocumentBuilder db;
 
     private NodeFactory testNodeFactory;
+    private ModuleCache moduleCache;
 
+    /**
+     * Creates a new factory.
+     *
+     * @param xmlFile module file
+     * @param moduleDir directory of module files, for nested modules
+     * @throws ParserConfigurationException never; kept for compatibility
+     */
     public XmlModuleFactory(File xmlFile, File moduleDir)
         throws ParserConfigurationException {
         this.xmlFile = xmlFile;
         this.moduleDir = moduleDir;
 
-        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-        dbf.setSchema(moduleSchema);
-        db = dbf.newDocumentBuilder();
-
         testNodeFactory = null;
     }
 
     void setTestNodeFactory(NodeFactory testNodeFactory) {
         this.testNodeFactory = testNodeFactory;
     }
+    /**
+     * Sets the cache to load compiled modules from and save them to. Nested
+     * modules are loaded through the same cache.
+     *
+     * @param moduleCache module cache, or null for none
+     */
+    public void setModuleCache(ModuleCache moduleCache) {
+        this.moduleCache = moduleCache;
+    }
 
     public Module getModule() throws Exception {
-        Document d;
+        ModuleDef def = null;
+        byte[] hash = null;
+        if (moduleCache != null) {
+            hash = ModuleCache.hash(xmlFile);
+            def = moduleCache.load(xmlFile, hash);
+        }
+        if (def == null) {
+            def = read();
+            if (moduleCache != null) {
+                moduleCache.store(xmlFile, hash, def);
+            }
+        }
+        return def.build(xmlFile.toString(), testNodeFactory, moduleDir,
+                         moduleCache);
+    }
+
+    private ModuleDef read() throws Exception {
+        InputStream in = new BufferedInputStream(new FileInputStream(xmlFile));
         try {
-          d = db.parse(xmlFile);
-        } catch (Exception e) {
-          throw new Exception("Failed to parse: " + xmlFile, e);
-        }
-
-        // parse packages
-        Map<String, String> prefixes = new HashMap<String, String>();  // <======
-        NodeList nodelist = d.getDocumentElement().getElementsByTagName("package");
-        for (int i = 0; i < nodelist.getLength(); i++) {
-          Element el = (Element) nodelist.item(i);
-          prefixes.put(el.getAttribute("prefix"), el.getAttribute("value"));
-        }
-        PrefixExpander prefixExpander = new PrefixExpander(prefixes);
-
-        // parse fixture node
-        Fixture fixture = null;  // <======
-        nodelist = d.getDocumentElement().getElementsByTagName("fixture");
-        if (nodelist.getLength() > 0) {
-          Element fixtureEl = (Element) nodelist.item(0);
-          fixture = (Fixture) Class.forName(prefixExpander.expand(fixtureEl.getAttribute("id"))).newInstance();
-        }
-
-        Map<String, AdjList> adjMap = new HashMap<String, AdjList>();  // <======
-        Map<String, Properties> nodeProps = new HashMap<String, Properties>();  // <======
-
-        // parse initial node
-        Element initEl = (Element) d.getDocumentElement().getElementsByTagName("init").item(0);
-        String initNodeId = initEl.getAttribute("id");  // <======
-        Properties initProps = new Properties();
-        String attr = initEl.getAttribute("maxHops");
-        if (attr != null)
-            initProps.setProperty(Module.PROPERTY_MAX_HOPS, attr);
-        attr = initEl.getAttribute("maxSec");
-        if (attr != null)
-            initProps.setProperty(Module.PROPERTY_MAX_SECONDS, attr);
-        attr = initEl.getAttribute("teardown");
-        if (attr != null)
-            initProps.setProperty(Module.PROPERTY_TEARDOWN, attr);
-        nodeProps.put(Module.INIT_NODE_ID, initProps);
-
-        // parse all nodes
-        NodeFactory nodeFactory;
-        if (testNodeFactory != null) {
-            nodeFactory = testNodeFactory;
-        } else {
-            nodeFactory = new NodeFactory(prefixExpander, moduleDir);
-        }
-        NodeKeeper nodeKeeper = new NodeKeeper(nodeFactory);
-        nodelist = d.getDocumentElement().getElementsByTagName("node");
-        for (int i = 0; i < nodelist.getLength(); i++) {
-            Element nodeEl = (Element) nodelist.item(i);
-
-            // get id and src attributes, and create node
-            String id = nodeEl.getAttribute("id");
-            if (adjMap.containsKey(id)) {
-                // FIXME
-                throw new Exception("Module already contains node with ID " + id);
+            XMLStreamReader r;
+            synchronized (inputFactory) {
+                r = inputFactory.createXMLStreamReader(xmlFile.toURI().toString(), in);
             }
-            String src = nodeEl.getAttribute("src");
-            Node n;
-            if (src == null || src.isEmpty()) {
-                n = nodeFactory.createNode(id);
-            } else {
-                n = nodeFactory.createNode(src);
+            try {
+                return new ModuleReader(r).read();
+            } finally {
+                r.close();
             }
-            nodeKeeper.addNode(id, n);
+        } catch (XMLStreamException e) {
+            throw new Exception("Failed to parse: " + xmlFile, e);
+        } catch (SAXException e) {
+            throw new Exception("Failed to parse: " + xmlFile, e);
+        } finally {
+            in.close();
+        }
+    }
 
-            // set some attributes in properties for later use
-            Properties props = new Properties();
-            props.setProperty(Module.PROPERTY_MAX_HOPS, nodeEl.getAttribute("maxHops"));
-            props.setProperty(Module.PROPERTY_MAX_SECONDS, nodeEl.getAttribute("maxSec"));
-            props.setProperty(Module.PROPERTY_TEARDOWN, nodeEl.getAttribute("teardown"));
-
-            // parse aliases
-            NodeList aliaslist = nodeEl.getElementsByTagName("alias");
-            for (int j = 0; j < aliaslist.getLength(); j++) {
-                Element propEl = (Element) aliaslist.item(j);
-                if (!propEl.hasAttribute("name")) {
-                    throw new Exception("Node " + id + " has alias with no identifying name");
+    /**
+     * Reads one module definition, passing each event to a schema validator
+     * as well.
+     */
+    private class ModuleReader implements ErrorHandler, Locator {
+        private final XMLStreamReader r;
+        private final ValidatorHandler validator;
+        private final AttributesImpl attrs = new AttributesImpl();
+        // One copy of each ID string, however many edges name it
+        private final Map<String, String> ids = new HashMap<String, String>();
+
+        private final ModuleDef def = new ModuleDef();
+
+        // the node being read, if any
+        private ModuleDef.NodeDef node;
+
+        ModuleReader(XMLStreamReader r) {
+            this.r = r;
+            validator = moduleSchema.newValidatorHandler();
+            validator.setErrorHandler(this);
+            validator.setDocumentLocator(this);
+        }
+
+        ModuleDef read() throws Exception {
+            validator.startDocument();
+            while (r.hasNext()) {
+                switch (r.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    validateStart();
+                    startElement(r.getLocalName());
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    validateEnd();
+                    if (r.getLocalName().equals("node")) {
+                        endNode();
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    validator.characters(r.getTextCharacters(), r.getTextStart(), r.getTextLength());
+                    break;
+                default:
+                    break;
                 }
-                String key = "alias." + propEl.getAttribute("name");
-                AliasNode aliasNode = (AliasNode) nodeFactory.createNode(key);
-                aliasNode.setTargetId(id);
-                nodeKeeper.addNode(key, aliasNode);
             }
+            validator.endDocument();
+
+            if (def.initNodeId == null) {
+                throw new Exception("Module has no init element: " + xmlFile);
+            }
+            return def;
+        }
 
-            // parse properties of nodes
-            NodeList proplist = nodeEl.getElementsByTagName("property");
-            for (int j = 0; j < proplist.getLength(); j++) {
-                Element propEl = (Element) proplist.item(j);
-                if (!propEl.hasAttribute("key") || !propEl.hasAttribute("value")) {
-                    throw new Exception("Node " + id + " has property with no key or value");
+        private void startElement(String name) throws Exception {
+            if (name.equals("package")) {
+                def.prefixes.put(attr("prefix"), attr("value"));
+            } else if (name.equals("fixture")) {
+                if (def.fixtureId == null) {
+                    def.fixtureId = attr("id");
+                }
+            } else if (name.equals("init")) {
+                if (def.initNodeId == null) {
+                    def.initNodeId = attr("id");
+                    Properties initProps = new Properties();
+                    initProps.setProperty(Module.PROPERTY_MAX_HOPS, attr("maxHops"));
+                    initProps.setProperty(Module.PROPERTY_MAX_SECONDS, attr("maxSec"));
+                    initProps.setProperty(Module.PROPERTY_TEARDOWN, attr("teardown"));
+                    def.initProps = initProps;
+                }
+            } else if (name.equals("node")) {
+                startNode();
+            } else if (node == null) {
+                return;  // alias, property or edge outside a node
+            } else if (name.equals("alias")) {
+                String aliasName = r.getAttributeValue(null, "name");
+                if (aliasName == null) {
+                    throw new Exception("Node " + node.id + " has alias with no identifying name");
+                }
+                node.aliases.add(aliasName);
+            } else if (name.equals("property")) {
+                String key = r.getAttributeValue(null, "key");
+                String value = r.getAttributeValue(null, "value");
+                if (key == null || value == null) {
+                    throw new Exception("Node " + node.id + " has property with no key or value");
                 }
-                String key = propEl.getAttribute("key");
                 if (key.equals(Module.PROPERTY_MAX_HOPS) ||
                     key.equals(Module.PROPERTY_MAX_SECONDS) ||
                     key.equals(Module.PROPERTY_TEARDOWN)) {
                     throw new Exception("The following property can only be set in attributes: " + key);
                 }
-                props.setProperty(key, propEl.getAttribute("value"));
+                node.props.setProperty(key, value);
+            } else if (name.equals("edge")) {
+                String edgeID = canonical(attr("id"));
+                String weight = r.getAttributeValue(null, "weight");
+                if (weight == null) {
+                    throw new Exception("Edge with ID " + edgeID + " is missing weight");
+                }
+                node.edges.addEdge(edgeID, Double.parseDouble(weight));
             }
-            nodeProps.put(id, props);  // <======
+        }
+
+        private void startNode() throws Exception {
+            // set some attributes in properties for later use
+            Properties props = new Properties();
+            props.setProperty(Module.PROPERTY_MAX_HOPS, attr("maxHops"));
+            props.setProperty(Module.PROPERTY_MAX_SECONDS, attr("maxSec"));
+            props.setProperty(Module.PROPERTY_TEARDOWN, attr("teardown"));
+            node = new ModuleDef.NodeDef(canonical(attr("id")), attr("src"), props);
+            try {
+                def.addNode(node);
+            } catch (IllegalArgumentException e) {
+                // FIXME
+                throw new Exception(e.getMessage());
+            }
+        }
 
-            // parse edges of nodes
-            AdjList edges = new AdjList();
-            adjMap.put(id, edges);
-            NodeList edgelist = nodeEl.getElementsByTagName("edge");
-            if (edgelist.getLength() == 0) {
+        private void endNode() {
+            if (node.edges.size() == 0) {
                 // implicit single edge to END
-                edges.addEdge("END", 1);
+                node.edges.addEdge("END", 1);
             }
-            for (int j = 0; j < edgelist.getLength(); j++) {
-                Element edgeEl = (Element) edgelist.item(j);
-                String edgeID = edgeEl.getAttribute("id");
-                if (!edgeEl.hasAttribute("weight")) {
-                    throw new Exception("Edge with ID " + edgeID + " is missing weight");
-                }
-                int weight = Integer.parseInt(edgeEl.getAttribute("weight"));
-                edges.addEdge(edgeID, weight);
+            node = null;
+        }
+
+        // An attribute value, or "" if absent
+        private String attr(String name) {
+            String value = r.getAttributeValue(null, name);
+            return value != null ? value : "";
+        }
+        private String canonical(String s) {
+            String c = ids.get(s);
+            if (c == null) {
+                ids.put(s, s);
+                c = s;
+            }
+            return c;
+        }
+
+        private void validateStart() throws SAXException {
+            for (int i = 0; i < r.getNamespaceCount(); i++) {
+                String prefix = r.getNamespacePrefix(i);
+                validator.startPrefixMapping(prefix != null ? prefix : "", r.getNamespaceURI(i));
+            }
+            attrs.clear();
+            for (int i = 0; i < r.getAttributeCount(); i++) {
+                String uri = r.getAttributeNamespace(i);
+                attrs.addAttribute(uri != null ? uri : "", r.getAttributeLocalName(i),
+                                   qName(r.getAttributePrefix(i), r.getAttributeLocalName(i)),
+                                   "CDATA", r.getAttributeValue(i));
+            }
+            String uri = r.getNamespaceURI();
+            validator.startElement(uri != null ? uri : "", r.getLocalName(),
+                                   qName(r.getPrefix(), r.getLocalName()), attrs);
+        }
+        private void validateEnd() throws SAXException {
+            String uri = r.getNamespaceURI();
+            validator.endElement(uri != null ? uri : "", r.getLocalName(),
+                                 qName(r.getPrefix(), r.getLocalName()));
+            for (int i = 0; i < r.getNamespaceCount(); i++) {
+                String prefix = r.getNamespacePrefix(i);
+                validator.endPrefixMapping(prefix != null ? prefix : "");
             }
-        }  // parsing nodes
+        }
+        private String qName(String prefix, String localName) {
+            return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+        }
+
+        @Override
+        public void warning(SAXParseException e) {
+            LOG.warn(xmlFile + ":" + e.getLineNumber() + ":" + e.getColumnNumber() + ": " + e.getMessage());
+        }
+        @Override
+        public void error(SAXParseException e) {
+            LOG.error(xmlFile + ":" + e.getLineNumber() + ":" + e.getColumnNumber() + ": " + e.getMessage());
+        }
+        @Override
+        public void fatalError(SAXParseException e) throws SAXException {
+            throw e;
+        }
 
-        return new Module(xmlFile.toString(), adjMap, nodeProps, initNodeId,
-                          fixture, nodeKeeper);
+        @Override
+        public String getPublicId() {
+            return null;
+        }
+        @Override
+        public String getSystemId() {
+            return xmlFile.toURI().toString();
+        }
+        @Override
+        public int getLineNumber() {
+            Location l = r.getLocation();
+            return l != null ? l.getLineNumber() : -1;
+        }
+        @Override
+        public int getColumnNumber() {
+            Location l = r.getLocation();
+            return l != null ? l.getColumnNumber() : -1;
+        }
     }
 }
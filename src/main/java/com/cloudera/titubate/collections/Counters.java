@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate.collections;
+
+import java.util.Arrays;
+
+/**
+ * A dense array of long counters indexed from 0, which grows as counters are
+ * added to. It suits counters over a small range of ints, such as counts per
+ * value or per node; for sparse keys, use {@link IntIntMap#add} or
+ * {@link LongLongMap#add}. This class is not thread-safe.
+ */
+public class Counters {
+  private long[] counts;
+  private int length;
+  private long total;
+
+  public Counters() {
+    this(16);
+  }
+  /**
+   * Creates counters with room for indexes up to a limit.
+   *
+   * @param expectedLength number of counters
+   * @throws IllegalArgumentException if the number is negative
+   */
+  public Counters(int expectedLength) {
+    if (expectedLength < 0) {
+      throw new IllegalArgumentException("Expected length may not be negative: " + expectedLength);
+    }
+    counts = new long[expectedLength];
+  }
+
+  /**
+   * Adds one to a counter.
+   *
+   * @param index counter index
+   * @return new count
+   * @throws IndexOutOfBoundsException if the index is negative
+   */
+  public long increment(int index) {
+    return add(index, 1L);
+  }
+  /**
+   * Adds to a counter.
+   *
+   * @param index counter index
+   * @param delta amount to add
+   * @return new count
+   * @throws IndexOutOfBoundsException if the index is negative
+   */
+  public long add(int index, long delta) {
+    if (index < 0) {
+      throw new IndexOutOfBoundsException("Bad counter index: " + index);
+    }
+    if (index >= counts.length) {
+      counts = Arrays.copyOf(counts, Math.max(counts.length << 1, index + 1));
+    }
+    if (index >= length) {
+      length = index + 1;
+    }
+    total += delta;
+    return counts[index] += delta;
+  }
+  /**
+   * Gets a count.
+   *
+   * @param index counter index
+   * @return count, 0 if never added to
+   * @throws IndexOutOfBoundsException if the index is negative
+   */
+  public long get(int index) {
+    if (index < 0) {
+      throw new IndexOutOfBoundsException("Bad counter index: " + index);
+    }
+    return index < length ? counts[index] : 0L;
+  }
+  /**
+   * Gets the number of counters: one more than the highest index added to.
+   *
+   * @return number of counters
+   */
+  public int length() {
+    return length;
+  }
+  /**
+   * Gets the sum of all counts.
+   *
+   * @return total
+   */
+  public long total() {
+    return total;
+  }
+  /**
+   * Resets every counter to 0.
+   */
+  public void clear() {
+    Arrays.fill(counts, 0L);
+    length = 0;
+    total = 0L;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder b = new StringBuilder("[");
+    for (int i = 0; i < length; i++) {
+      if (!Hashing.nextElement(b, i, length)) {
+        break;
+      }
+      b.append(counts[i]);
+    }
+    return b.append(']').toString();
+  }
+}
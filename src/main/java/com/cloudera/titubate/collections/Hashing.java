@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate.collections;
+
+/**
+ * Hashing and sizing shared by the open-addressing collections. Tables have
+ * a power-of-two capacity, and are resized when they become three quarters
+ * full. String forms of all the collections here show only their first few
+ * elements, so that a huge collection in a failure dump stays small.
+ */
+final class Hashing {
+  static final int MIN_CAPACITY = 8;
+  static final int MAX_CAPACITY = 1 << 30;
+  static final int MAX_STRING_ELEMENTS = 20;
+
+  private Hashing() {}
+
+  static int mix(int key) {
+    int h = key * 0x9e3779b9;
+    return h ^ (h >>> 16);
+  }
+  static int mix(long key) {
+    // Murmur3 finalizer
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+
+  /**
+   * Gets the capacity of a table to hold a number of entries without
+   * resizing.
+   *
+   * @param expectedSize number of entries
+   * @return capacity
+   * @throws IllegalArgumentException if the number of entries is negative
+   * or too large
+   */
+  static int capacityFor(int expectedSize) {
+    if (expectedSize < 0) {
+      throw new IllegalArgumentException("Expected size may not be negative: " + expectedSize);
+    }
+    int capacity = MIN_CAPACITY;
+    while (resizeAt(capacity) < expectedSize) {
+      if (capacity == MAX_CAPACITY) {
+        throw new IllegalArgumentException("Expected size too large: " + expectedSize);
+      }
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+  /**
+   * Gets the number of entries at which a table is resized.
+   *
+   * @param capacity table capacity
+   * @return size limit
+   */
+  static int resizeAt(int capacity) {
+    return capacity == MAX_CAPACITY ? capacity - 1 : capacity - (capacity >>> 2);
+  }
+  /**
+   * Gets the capacity a full table grows to.
+   *
+   * @param capacity table capacity
+   * @return new capacity
+   * @throws IllegalStateException if the table cannot grow
+   */
+  static int grow(int capacity) {
+    if (capacity == MAX_CAPACITY) {
+      throw new IllegalStateException("Table is full");
+    }
+    return capacity << 1;
+  }
+  /**
+   * Checks if a slot should take the entry at another slot, when the first
+   * is emptied by a removal. With linear probing, it should if it lies
+   * between the entry's home slot and the entry.
+   *
+   * @param hole emptied slot
+   * @param slot slot of entry
+   * @param home home slot of entry
+   * @param mask table capacity less one
+   * @return true if the entry should move to the emptied slot
+   */
+  static boolean shouldShift(int hole, int slot, int home, int mask) {
+    return ((slot - home) & mask) >= ((slot - hole) & mask);
+  }
+
+  /**
+   * Starts the next element of a collection's string form, unless the
+   * string already shows as many elements as it may, in which case it is
+   * ended with the size of the collection.
+   *
+   * @param b string so far
+   * @param n number of elements shown so far
+   * @param size number of elements in the collection
+   * @return true if the element should be appended
+   */
+  static boolean nextElement(StringBuilder b, int n, long size) {
+    if (n > 0) {
+      b.append(", ");
+    }
+    if (n == MAX_STRING_ELEMENTS) {
+      b.append("... (").append(size).append(" elements)");
+      return false;
+    }
+    return true;
+  }
+}
@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate.collections;
+
+import java.util.Arrays;
+
+/**
+ * A map from ints to ints, which keeps its keys and values unboxed in
+ * arrays with open addressing. Absent keys have the value 0, so it also
+ * serves as a map of counters through {@link #add}. This class is not
+ * thread-safe.
+ */
+public class IntIntMap {
+  private int[] keys;
+  private int[] values;
+  private int mask;
+  private int resizeAt;
+  private int size;
+  // Key 0 marks an empty slot, so its entry is kept aside.
+  private boolean hasZeroKey;
+  private int zeroValue;
+
+  /**
+   * Visits each entry in a map.
+   */
+  public interface Visitor {
+    void visit(int key, int value);
+  }
+
+  public IntIntMap() {
+    this(0);
+  }
+  /**
+   * Creates a map with room for a number of entries.
+   *
+   * @param expectedSize number of entries
+   * @throws IllegalArgumentException if the number is negative or too large
+   */
+  public IntIntMap(int expectedSize) {
+    allocate(Hashing.capacityFor(expectedSize));
+  }
+
+  private void allocate(int capacity) {
+    keys = new int[capacity];
+    values = new int[capacity];
+    mask = capacity - 1;
+    resizeAt = Hashing.resizeAt(capacity);
+  }
+
+  // Finds the slot holding a key, or the empty slot where it would go.
+  private int slot(int key) {
+    int s = Hashing.mix(key) & mask;
+    while (keys[s] != 0 && keys[s] != key) {
+      s = (s + 1) & mask;
+    }
+    return s;
+  }
+
+  public boolean containsKey(int key) {
+    if (key == 0) {
+      return hasZeroKey;
+    }
+    return keys[slot(key)] != 0;
+  }
+  /**
+   * Gets the value of a key.
+   *
+   * @param key key
+   * @return value, or 0 if absent
+   */
+  public int get(int key) {
+    return get(key, 0);
+  }
+  /**
+   * Gets the value of a key.
+   *
+   * @param key key
+   * @param defaultValue value to return if the key is absent
+   * @return value
+   */
+  public int get(int key, int defaultValue) {
+    if (key == 0) {
+      return hasZeroKey ? zeroValue : defaultValue;
+    }
+    int s = slot(key);
+    return keys[s] != 0 ? values[s] : defaultValue;
+  }
+  /**
+   * Sets the value of a key.
+   *
+   * @param key key
+   * @param value value
+   */
+  public void put(int key, int value) {
+    if (key == 0) {
+      hasZeroKey = true;
+      zeroValue = value;
+      return;
+    }
+    int s = slot(key);
+    if (keys[s] == 0) {
+      insert(s, key, value);
+    } else {
+      values[s] = value;
+    }
+  }
+  /**
+   * Adds to the value of a key. An absent key starts at 0.
+   *
+   * @param key key
+   * @param delta amount to add
+   * @return new value
+   */
+  public int add(int key, int delta) {
+    if (key == 0) {
+      hasZeroKey = true;
+      return zeroValue += delta;
+    }
+    int s = slot(key);
+    if (keys[s] == 0) {
+      insert(s, key, delta);
+      return delta;
+    }
+    return values[s] += delta;
+  }
+  private void insert(int s, int key, int value) {
+    keys[s] = key;
+    values[s] = value;
+    if (++size > resizeAt) {
+      rehash();
+    }
+  }
+  /**
+   * Removes a key.
+   *
+   * @param key key
+   * @return true if the key was present
+   */
+  public boolean remove(int key) {
+    if (key == 0) {
+      boolean had = hasZeroKey;
+      hasZeroKey = false;
+      zeroValue = 0;
+      return had;
+    }
+    int hole = slot(key);
+    if (keys[hole] == 0) {
+      return false;
+    }
+    for (int s = (hole + 1) & mask; keys[s] != 0; s = (s + 1) & mask) {
+      if (Hashing.shouldShift(hole, s, Hashing.mix(keys[s]) & mask, mask)) {
+        keys[hole] = keys[s];
+        values[hole] = values[s];
+        hole = s;
+      }
+    }
+    keys[hole] = 0;
+    values[hole] = 0;
+    size--;
+    return true;
+  }
+
+  private void rehash() {
+    int[] oldKeys = keys;
+    int[] oldValues = values;
+    allocate(Hashing.grow(oldKeys.length));
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != 0) {
+        int s = slot(oldKeys[i]);
+        keys[s] = oldKeys[i];
+        values[s] = oldValues[i];
+      }
+    }
+  }
+
+  public int size() {
+    return hasZeroKey ? size + 1 : size;
+  }
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+  /**
+   * Removes every entry. The map keeps its capacity.
+   */
+  public void clear() {
+    Arrays.fill(keys, 0);
+    Arrays.fill(values, 0);
+    size = 0;
+    hasZeroKey = false;
+    zeroValue = 0;
+  }
+  /**
+   * Visits every entry, in no particular order. The visitor must not change
+   * this map.
+   *
+   * @param v visitor
+   */
+  public void forEach(Visitor v) {
+    if (hasZeroKey) {
+      v.visit(0, zeroValue);
+    }
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != 0) {
+        v.visit(keys[i], values[i]);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder b = new StringBuilder("{");
+    int n = 0;
+    if (hasZeroKey) {
+      b.append(0).append('=').append(zeroValue);
+      n++;
+    }
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != 0) {
+        if (!Hashing.nextElement(b, n++, size())) {
+          break;
+        }
+        b.append(keys[i]).append('=').append(values[i]);
+      }
+    }
+    return b.append('}').toString();
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate.collections;
+
+import java.util.Arrays;
+
+/**
+ * A set of bits indexed by longs, which grows as bits are set. Unlike
+ * {@link java.util.BitSet}, it can index past the range of an int, and it
+ * keeps its cardinality as it goes, so {@link #cardinality} takes constant
+ * time. This class is not thread-safe.
+ */
+public class LongBitSet {
+  // Bit indexes must fit in a long[] of at most Integer.MAX_VALUE words.
+  private static final long MAX_INDEX = ((long) Integer.MAX_VALUE << 6) - 1L;
+
+  private long[] words;
+  private long cardinality;
+
+  public LongBitSet() {
+    this(64L);
+  }
+  /**
+   * Creates a bit set with room for bits up to an index.
+   *
+   * @param numBits number of bits
+   * @throws IllegalArgumentException if the number is negative or too large
+   */
+  public LongBitSet(long numBits) {
+    if (numBits < 0L || numBits > MAX_INDEX + 1L) {
+      throw new IllegalArgumentException("Bad number of bits: " + numBits);
+    }
+    words = new long[(int) ((numBits + 63L) >>> 6)];
+  }
+
+  private static void checkIndex(long index) {
+    if (index < 0L || index > MAX_INDEX) {
+      throw new IndexOutOfBoundsException("Bad bit index: " + index);
+    }
+  }
+
+  public boolean get(long index) {
+    checkIndex(index);
+    int w = (int) (index >>> 6);
+    return w < words.length && (words[w] & (1L << index)) != 0L;
+  }
+  /**
+   * Sets a bit.
+   *
+   * @param index bit index
+   * @return true if the bit was clear
+   * @throws IndexOutOfBoundsException if the index is negative or too large
+   */
+  public boolean set(long index) {
+    checkIndex(index);
+    int w = (int) (index >>> 6);
+    if (w >= words.length) {
+      long newLength = Math.max((long) words.length << 1, w + 1L);
+      words = Arrays.copyOf(words, (int) Math.min(newLength, Integer.MAX_VALUE));
+    }
+    long bit = 1L << index;
+    if ((words[w] & bit) != 0L) {
+      return false;
+    }
+    words[w] |= bit;
+    cardinality++;
+    return true;
+  }
+  /**
+   * Clears a bit.
+   *
+   * @param index bit index
+   * @return true if the bit was set
+   * @throws IndexOutOfBoundsException if the index is negative or too large
+   */
+  public boolean clear(long index) {
+    checkIndex(index);
+    int w = (int) (index >>> 6);
+    long bit = 1L << index;
+    if (w >= words.length || (words[w] & bit) == 0L) {
+      return false;
+    }
+    words[w] &= ~bit;
+    cardinality--;
+    return true;
+  }
+  /**
+   * Gets the number of bits set.
+   *
+   * @return cardinality
+   */
+  public long cardinality() {
+    return cardinality;
+  }
+  /**
+   * Finds the first set bit at or after an index.
+   *
+   * @param from index to start from
+   * @return index of set bit, or -1 if none
+   * @throws IndexOutOfBoundsException if the index is negative
+   */
+  public long nextSetBit(long from) {
+    if (from < 0L) {
+      throw new IndexOutOfBoundsException("Bad bit index: " + from);
+    }
+    int w = (int) Math.min(from >>> 6, Integer.MAX_VALUE);
+    if (w >= words.length) {
+      return -1L;
+    }
+    long word = words[w] & (-1L << from);
+    while (word == 0L) {
+      if (++w == words.length) {
+        return -1L;
+      }
+      word = words[w];
+    }
+    return ((long) w << 6) + Long.numberOfTrailingZeros(word);
+  }
+  /**
+   * Finds the first clear bit at or after an index.
+   *
+   * @param from index to start from
+   * @return index of clear bit
+   * @throws IndexOutOfBoundsException if the index is negative
+   */
+  public long nextClearBit(long from) {
+    if (from < 0L) {
+      throw new IndexOutOfBoundsException("Bad bit index: " + from);
+    }
+    int w = (int) Math.min(from >>> 6, Integer.MAX_VALUE);
+    if (w >= words.length) {
+      return from;
+    }
+    long word = ~words[w] & (-1L << from);
+    while (word == 0L) {
+      if (++w == words.length) {
+        return (long) w << 6;
+      }
+      word = ~words[w];
+    }
+    return ((long) w << 6) + Long.numberOfTrailingZeros(word);
+  }
+  /**
+   * Clears every bit. The bit set keeps its capacity.
+   */
+  public void clear() {
+    Arrays.fill(words, 0L);
+    cardinality = 0L;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder b = new StringBuilder("{");
+    int n = 0;
+    for (long i = nextSetBit(0L); i >= 0L; i = nextSetBit(i + 1L)) {
+      if (!Hashing.nextElement(b, n++, cardinality)) {
+        break;
+      }
+      b.append(i);
+    }
+    return b.append('}').toString();
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate.collections;
+
+import java.util.Arrays;
+
+/**
+ * A map from longs to objects, which keeps its keys unboxed in an array with
+ * open addressing. Null values are not allowed, so that null can mean
+ * absent. This class is not thread-safe.
+ *
+ * @param <V> value type
+ */
+public class LongObjectMap<V> {
+  private long[] keys;
+  private Object[] values;
+  private int mask;
+  private int resizeAt;
+  private int size;
+  // Key 0 marks an empty slot, so its entry is kept aside.
+  private V zeroValue;
+
+  /**
+   * Visits each entry in a map.
+   *
+   * @param <V> value type
+   */
+  public interface Visitor<V> {
+    void visit(long key, V value);
+  }
+
+  public LongObjectMap() {
+    this(0);
+  }
+  /**
+   * Creates a map with room for a number of entries.
+   *
+   * @param expectedSize number of entries
+   * @throws IllegalArgumentException if the number is negative or too large
+   */
+  public LongObjectMap(int expectedSize) {
+    allocate(Hashing.capacityFor(expectedSize));
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new Object[capacity];
+    mask = capacity - 1;
+    resizeAt = Hashing.resizeAt(capacity);
+  }
+
+  // Finds the slot holding a key, or the empty slot where it would go.
+  private int slot(long key) {
+    int s = Hashing.mix(key) & mask;
+    while (keys[s] != 0L && keys[s] != key) {
+      s = (s + 1) & mask;
+    }
+    return s;
+  }
+
+  public boolean containsKey(long key) {
+    return get(key) != null;
+  }
+  /**
+   * Gets the value of a key.
+   *
+   * @param key key
+   * @return value, or null if absent
+   */
+  @SuppressWarnings("unchecked")
+  public V get(long key) {
+    if (key == 0L) {
+      return zeroValue;
+    }
+    return (V) values[slot(key)];
+  }
+  /**
+   * Sets the value of a key.
+   *
+   * @param key key
+   * @param value value
+   * @return previous value, or null if none
+   * @throws NullPointerException if the value is null
+   */
+  @SuppressWarnings("unchecked")
+  public V put(long key, V value) {
+    if (value == null) {
+      throw new NullPointerException("Null values are not allowed");
+    }
+    if (key == 0L) {
+      V old = zeroValue;
+      zeroValue = value;
+      return old;
+    }
+    int s = slot(key);
+    V old = (V) values[s];
+    values[s] = value;
+    if (old == null) {
+      keys[s] = key;
+      if (++size > resizeAt) {
+        rehash();
+      }
+    }
+    return old;
+  }
+  /**
+   * Removes a key.
+   *
+   * @param key key
+   * @return removed value, or null if the key was absent
+   */
+  @SuppressWarnings("unchecked")
+  public V remove(long key) {
+    if (key == 0L) {
+      V old = zeroValue;
+      zeroValue = null;
+      return old;
+    }
+    int hole = slot(key);
+    V old = (V) values[hole];
+    if (old == null) {
+      return null;
+    }
+    for (int s = (hole + 1) & mask; keys[s] != 0L; s = (s + 1) & mask) {
+      if (Hashing.shouldShift(hole, s, Hashing.mix(keys[s]) & mask, mask)) {
+        keys[hole] = keys[s];
+        values[hole] = values[s];
+        hole = s;
+      }
+    }
+    keys[hole] = 0L;
+    values[hole] = null;
+    size--;
+    return old;
+  }
+
+  private void rehash() {
+    long[] oldKeys = keys;
+    Object[] oldValues = values;
+    allocate(Hashing.grow(oldKeys.length));
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != 0L) {
+        int s = slot(oldKeys[i]);
+        keys[s] = oldKeys[i];
+        values[s] = oldValues[i];
+      }
+    }
+  }
+
+  public int size() {
+    return zeroValue != null ? size + 1 : size;
+  }
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+  /**
+   * Removes every entry. The map keeps its capacity.
+   */
+  public void clear() {
+    Arrays.fill(keys, 0L);
+    Arrays.fill(values, null);
+    size = 0;
+    zeroValue = null;
+  }
+  /**
+   * Visits every entry, in no particular order. The visitor must not change
+   * this map.
+   *
+   * @param v visitor
+   */
+  @SuppressWarnings("unchecked")
+  public void forEach(Visitor<? super V> v) {
+    if (zeroValue != null) {
+      v.visit(0L, zeroValue);
+    }
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != 0L) {
+        v.visit(keys[i], (V) values[i]);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder b = new StringBuilder("{");
+    int n = 0;
+    if (zeroValue != null) {
+      b.append(0).append('=').append(zeroValue);
+      n++;
+    }
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != 0L) {
+        if (!Hashing.nextElement(b, n++, size())) {
+          break;
+        }
+        b.append(keys[i]).append('=').append(values[i]);
+      }
+    }
+    return b.append('}').toString();
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate.collections;
+
+import java.util.Arrays;
+
+/**
+ * A set of longs, kept unboxed in an array with open addressing. This class
+ * is not thread-safe.
+ */
+public class LongSet {
+  private long[] keys;
+  private int mask;
+  private int resizeAt;
+  private int size;
+  // 0 marks an empty slot, so its membership is kept aside.
+  private boolean hasZero;
+
+  /**
+   * Visits each element in a set.
+   */
+  public interface Visitor {
+    void visit(long e);
+  }
+
+  public LongSet() {
+    this(0);
+  }
+  /**
+   * Creates a set with room for a number of elements.
+   *
+   * @param expectedSize number of elements
+   * @throws IllegalArgumentException if the number is negative or too large
+   */
+  public LongSet(int expectedSize) {
+    allocate(Hashing.capacityFor(expectedSize));
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    mask = capacity - 1;
+    resizeAt = Hashing.resizeAt(capacity);
+  }
+
+  // Finds the slot holding an element, or the empty slot where it would go.
+  private int slot(long e) {
+    int s = Hashing.mix(e) & mask;
+    while (keys[s] != 0L && keys[s] != e) {
+      s = (s + 1) & mask;
+    }
+    return s;
+  }
+
+  public boolean contains(long e) {
+    if (e == 0L) {
+      return hasZero;
+    }
+    return keys[slot(e)] != 0L;
+  }
+  /**
+   * Adds an element.
+   *
+   * @param e element
+   * @return true if the element was not already present
+   */
+  public boolean add(long e) {
+    if (e == 0L) {
+      boolean added = !hasZero;
+      hasZero = true;
+      return added;
+    }
+    int s = slot(e);
+    if (keys[s] != 0L) {
+      return false;
+    }
+    keys[s] = e;
+    if (++size > resizeAt) {
+      rehash();
+    }
+    return true;
+  }
+  /**
+   * Removes an element.
+   *
+   * @param e element
+   * @return true if the element was present
+   */
+  public boolean remove(long e) {
+    if (e == 0L) {
+      boolean had = hasZero;
+      hasZero = false;
+      return had;
+    }
+    int hole = slot(e);
+    if (keys[hole] == 0L) {
+      return false;
+    }
+    for (int s = (hole + 1) & mask; keys[s] != 0L; s = (s + 1) & mask) {
+      if (Hashing.shouldShift(hole, s, Hashing.mix(keys[s]) & mask, mask)) {
+        keys[hole] = keys[s];
+        hole = s;
+      }
+    }
+    keys[hole] = 0L;
+    size--;
+    return true;
+  }
+
+  private void rehash() {
+    long[] oldKeys = keys;
+    allocate(Hashing.grow(oldKeys.length));
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != 0L) {
+        keys[slot(oldKeys[i])] = oldKeys[i];
+      }
+    }
+  }
+
+  public int size() {
+    return hasZero ? size + 1 : size;
+  }
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+  /**
+   * Removes every element. The set keeps its capacity.
+   */
+  public void clear() {
+    Arrays.fill(keys, 0L);
+    size = 0;
+    hasZero = false;
+  }
+  /**
+   * Visits every element, in no particular order. The visitor must not
+   * change this set.
+   *
+   * @param v visitor
+   */
+  public void forEach(Visitor v) {
+    if (hasZero) {
+      v.visit(0L);
+    }
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != 0L) {
+        v.visit(keys[i]);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder b = new StringBuilder("[");
+    int n = 0;
+    if (hasZero) {
+      b.append(0);
+      n++;
+    }
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != 0L) {
+        if (!Hashing.nextElement(b, n++, size())) {
+          break;
+        }
+        b.append(keys[i]);
+      }
+    }
+    return b.append(']').toString();
+  }
+}
@@ -21,7 +21,7 @@ import com.cloudera.titubate.CallableAction;
 public class CheckPrimeAction extends CallableAction {
     @Override
     public Void call() {
-        int lastPrime = state().getInt("lastPrime");
+        int lastPrime = PrimeFinderFixture.LAST_PRIME.getInt(state());
         if (!PrimeFinder.isPrime(lastPrime)) {
             throw new IllegalStateException("Not prime: " + lastPrime);
         }
@@ -16,17 +16,19 @@
  */
 package com.cloudera.titubate.example;
 
-import java.util.Map;
-import java.util.UUID;
 import com.cloudera.titubate.CallableAction;
 
 public class MapAddAction extends CallableAction {
+    // Multiplying by an odd constant is one-to-one, so successive values
+    // make keys spread over the whole range that never collide.
+    private static final long KEY_MULTIPLIER = 0x9e3779b97f4a7c15L;
+
     @Override
     public Void call() {
-        Map<Object, Object> map = (Map<Object, Object>) state().get("map");
-        int nextvalue = state().getInt("nextvalue");
-        map.put(UUID.randomUUID().toString(), nextvalue++);
-        state().set("nextvalue", nextvalue);
+        MapModel map = MapFixture.MAP.get(state());
+        int nextvalue = MapFixture.NEXT_VALUE.getInt(state());
+        map.put(nextvalue * KEY_MULTIPLIER, nextvalue++);
+        MapFixture.NEXT_VALUE.setInt(state(), nextvalue);
         return null;
     }
 }
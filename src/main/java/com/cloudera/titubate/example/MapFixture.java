@@ -16,18 +16,22 @@
  */
 package com.cloudera.titubate.example;
 
-import java.util.Map;
 import com.cloudera.titubate.Environment;
 import com.cloudera.titubate.Fixture;
+import com.cloudera.titubate.IntKey;
 import com.cloudera.titubate.State;
+import com.cloudera.titubate.StateKey;
 
 public class MapFixture extends Fixture {
+    static final StateKey<MapModel> MAP = new StateKey<MapModel>("map");
+    static final IntKey NEXT_VALUE = new IntKey("nextvalue");
+
     @Override
     public void setUp(Environment env, State state) {
-        state.set("map", new java.util.HashMap<Object,Object>());
-        state.set("nextvalue", 0);
+        MAP.set(state, new MapModel());
+        NEXT_VALUE.setInt(state, 0);
     }
     public void tearDown(Environment env, State state) {
-        state.remove("map");
+        MAP.remove(state);
     }
 }
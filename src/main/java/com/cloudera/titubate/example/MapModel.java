@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate.example;
+
+import com.cloudera.titubate.LongShadowModel;
+import com.cloudera.titubate.collections.LongLongMap;
+
+/**
+ * The shadow model of the example map module: a map from long keys to
+ * values, kept unboxed in a {@link LongLongMap}. Keys put since the last
+ * verification are logged, also unboxed, so most verifications check only
+ * those.
+ */
+public class MapModel extends LongShadowModel {
+    private final LongLongMap map = new LongLongMap();
+
+    public void put(long key, long value) {
+        map.put(key, value);
+        changed(key);
+    }
+    public long get(long key, long defaultValue) {
+        return map.get(key, defaultValue);
+    }
+    @Override
+    public int size() {
+        return map.size();
+    }
+    public void forEach(LongLongMap.Visitor v) {
+        map.forEach(v);
+    }
+}
@@ -16,19 +16,49 @@
  */
 package com.cloudera.titubate.example;
 
-import java.util.Map;
 import com.cloudera.titubate.CallableAction;
+import com.cloudera.titubate.LongShadowModel;
+import com.cloudera.titubate.collections.LongBitSet;
+import com.cloudera.titubate.collections.LongLongMap;
 
+/**
+ * Verifies the map. Only the entries added since the last verification are
+ * checked, except that every <code>fullCheckEvery</code> verifications
+ * (default 10), every value is checked.
+ */
 public class MapVerifyAction extends CallableAction {
     @Override
     public Void call() {
-        Map<Object, Object> map = (Map<Object, Object>) state().get("map");
-        int nextvalue = state().getInt("nextvalue");
-        for (int i = 0; i < nextvalue; i++) {
-            if (!map.containsValue(i)) {
-                throw new IllegalStateException("Value " + i + " is missing");
-            }
+        final MapModel map = MapFixture.MAP.get(state());
+        final int nextvalue = MapFixture.NEXT_VALUE.getInt(state());
+        int fullEvery = config().getInt("fullCheckEvery", 10);
+        if (map.size() != nextvalue) {
+            throw new IllegalStateException("Map has " + map.size() + " entries, expected " + nextvalue);
         }
+        map.verify(new LongShadowModel.Verifier() {
+            @Override
+            public void verifyChanged(long key) {
+                long value = map.get(key, -1L);
+                if (value < 0L || value >= nextvalue) {
+                    throw new IllegalStateException("Key " + key + " has bad value " + value);
+                }
+            }
+            @Override
+            public void verifyAll() {
+                final LongBitSet values = new LongBitSet(nextvalue);
+                map.forEach(new LongLongMap.Visitor() {
+                    @Override
+                    public void visit(long key, long value) {
+                        if (value >= 0L && value < nextvalue) {
+                            values.set(value);
+                        }
+                    }
+                });
+                if (values.cardinality() != nextvalue) {
+                    throw new IllegalStateException("Value " + values.nextClearBit(0L) + " is missing");
+                }
+            }
+        }, fullEvery);
         return null;
     }
 }
@@ -21,11 +21,11 @@ import com.cloudera.titubate.CallableAction;
 public class NextPrimeAction extends CallableAction {
     @Override
     public Void call() {
-        int lastPrime = state().getInt("lastPrime");
+        int lastPrime = PrimeFinderFixture.LAST_PRIME.getInt(state());
         int nextPrime = new PrimeFinder().findNextPrime(lastPrime);
-        state().set("lastPrime", nextPrime);
-        if (state().has("count")) {
-            state().set("count", state().getInt("count") + 1);
+        PrimeFinderFixture.LAST_PRIME.setInt(state(), nextPrime);
+        if (PrimeFinderFixture.COUNT.has(state())) {
+            PrimeFinderFixture.COUNT.add(state(), 1);
         }
         System.out.println("prime = " + nextPrime);
         return null;
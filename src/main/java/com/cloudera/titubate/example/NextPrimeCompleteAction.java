@@ -21,8 +21,8 @@ import com.cloudera.titubate.CallableAction;
 public class NextPrimeCompleteAction extends CallableAction {
     @Override
     public Void call() {
-        if (state().has("count")) {
-            System.out.println("Final count = " + state().getInt("count"));
+        if (PrimeFinderFixture.COUNT.has(state())) {
+            System.out.println("Final count = " + PrimeFinderFixture.COUNT.getInt(state()));
         }
         return null;
     }
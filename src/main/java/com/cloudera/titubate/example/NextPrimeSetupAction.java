@@ -21,9 +21,9 @@ import com.cloudera.titubate.CallableAction;
 public class NextPrimeSetupAction extends CallableAction {
     @Override
     public Void call() {
-        boolean countPrimes = Boolean.parseBoolean(properties().getProperty("countPrimes", "false"));
+        boolean countPrimes = config().getBoolean("countPrimes", false);
         if (countPrimes) {
-            state().set("count", 0);
+            PrimeFinderFixture.COUNT.setInt(state(), 0);
         }
         return null;
     }
@@ -18,12 +18,16 @@ package com.cloudera.titubate.example;
 
 import com.cloudera.titubate.Environment;
 import com.cloudera.titubate.Fixture;
+import com.cloudera.titubate.IntKey;
 import com.cloudera.titubate.State;
 
 public class PrimeFinderFixture extends Fixture {
+    static final IntKey LAST_PRIME = new IntKey("lastPrime");
+    static final IntKey COUNT = new IntKey("count");
+
     @Override
     public void setUp(Environment env, State state) {
-        state.set("lastPrime", 2);
+        LAST_PRIME.setInt(state, 2);
     }
     public void tearDown(Environment env, State state) {
     }
@@ -18,6 +18,7 @@ package com.cloudera.titubate;
 
 import com.cloudera.titubate.Module.AdjList;
 import java.util.Arrays;
+import java.util.Random;
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -40,7 +41,7 @@ public class AdjListTest {
         }
         assertEquals(numEdges, l.size());
         for (int i = 1; i <= numEdges; i++) {
-            assertEquals(i, l.weight(Integer.toString(i)));
+            assertEquals(i, l.weight(Integer.toString(i)), 0.0);
         }
         boolean chosen[] = new boolean[numEdges];
         for (int i = 0; i < MAX_TRIES; i++) {
@@ -61,6 +62,44 @@ public class AdjListTest {
         }
         return true;
     }
+    @Test public void testDistribution() {
+        l = new AdjList(new Random(42L));
+        double[] weights = new double[] { 1.0, 2.5, 0.5, 6.0 };
+        for (int i = 0; i < weights.length; i++) {
+            l.addEdge(Integer.toString(i), weights[i]);
+        }
+        int[] counts = new int[weights.length];
+        for (int i = 0; i < MAX_TRIES; i++) {
+            counts[Integer.parseInt(l.randomNeighbor())]++;
+        }
+        for (int i = 0; i < weights.length; i++) {
+            double expected = weights[i] / 10.0;
+            assertEquals(expected, counts[i] / (double) MAX_TRIES, 0.005);
+        }
+    }
+    @Test public void testHugeWeights() {
+        l = new AdjList(new Random(42L));
+        // the sum of these overflows a long
+        l.addEdge("a", Long.MAX_VALUE);
+        l.addEdge("b", Long.MAX_VALUE);
+        int aCount = 0;
+        for (int i = 0; i < MAX_TRIES; i++) {
+            if ("a".equals(l.randomNeighbor())) {
+                aCount++;
+            }
+        }
+        assertEquals(0.5, aCount / (double) MAX_TRIES, 0.005);
+    }
+    @Test public void testAddAfterChoosing() {
+        l.addEdge("a", 1);
+        assertEquals("a", l.randomNeighbor());
+        l.addEdge("b", 1000000);
+        boolean sawB = false;
+        for (int i = 0; i < 100 && !sawB; i++) {
+            sawB = "b".equals(l.randomNeighbor());
+        }
+        assertTrue(sawB);
+    }
     @Test(expected=IllegalStateException.class)
     public void testNoEdges() {
         l.randomNeighbor();
@@ -73,4 +112,12 @@ public class AdjListTest {
     public void testNegativeWeightEdge() {
         l.addEdge("foo", -42);
     }
+    @Test(expected=IllegalArgumentException.class)
+    public void testNaNWeightEdge() {
+        l.addEdge("foo", Double.NaN);
+    }
+    @Test(expected=IllegalArgumentException.class)
+    public void testInfiniteWeightEdge() {
+        l.addEdge("foo", Double.POSITIVE_INFINITY);
+    }
 }
@@ -42,6 +42,21 @@ public class CallableActionTest {
         assertSame(state, a.state());
         assertSame(props, a.properties());
     }
+    @Test public void testInitialize_Config() {
+        Properties props = new Properties();
+        props.setProperty("n", "3");
+        NodeConfig config = NodeConfig.of(props);
+        a.initialize(new Environment(), new State(), config);
+        assertSame(config, a.config());
+        assertSame(props, a.properties());
+    }
+    @Test public void testConfig_FromProperties() {
+        Properties props = new Properties();
+        props.setProperty("n", "3");
+        a.initialize(new Environment(), new State(), props);
+        assertEquals(3, a.config().getInt("n", 0));
+        assertSame(a.config(), a.config());
+    }
     @Test public void testCall() throws Exception {
         assertFalse(((TestAction) a).called);
         a.call();
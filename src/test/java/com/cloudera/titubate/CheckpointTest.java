@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class CheckpointTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final IntKey COUNT = new IntKey("checkpointtest.count");
+
+    public static class CountAction extends CallableAction {
+        @Override public Void call() {
+            COUNT.add(state(), 1);
+            return null;
+        }
+    }
+    static class Point {
+        final int x;
+        Point(int x) {
+            this.x = x;
+        }
+    }
+
+    private Module buildLoopModule() {
+        String id = CountAction.class.getName();
+        NodeKeeper nk = new NodeKeeper(new NodeFactory(null, null));
+        Map<String, Module.AdjList> adjMap = new HashMap<String, Module.AdjList>();
+        Module.AdjList l = new Module.AdjList();
+        l.addEdge(id, 1);
+        adjMap.put(id, l);
+        Map<String, Properties> nodeProps = new HashMap<String, Properties>();
+        Properties initProps = new Properties();
+        initProps.setProperty(Module.PROPERTY_MAX_HOPS, "100");
+        nodeProps.put(Module.INIT_NODE_ID, initProps);
+        return new ModuleBuilder("loop.xml", nk).adjMap(adjMap)
+            .nodeProps(nodeProps).build(id);
+    }
+
+    @Test public void testWriteRead() throws Exception {
+        Checkpointer.registerCodec(Point.class, new StateCodec<Point>() {
+            @Override public void write(Point p, DataOutput out) throws IOException {
+                out.writeInt(p.x);
+            }
+            @Override public Point read(DataInput in) throws IOException {
+                return new Point(in.readInt());
+            }
+        });
+        Map<Object, Object> objects = new HashMap<Object, Object>();
+        objects.put("string", "x");
+        objects.put(COUNT, 9);
+        objects.put("checkpointtest.count", "s");
+        objects.put("int", 5);
+        objects.put("point", new Point(7));
+        objects.put("unwritable", new Object());
+        File dir = folder.newFolder("ckpt");
+        Random random = new Random(42L);
+        Checkpoint taken = Checkpoint.take("m.xml", "node", 10L, 5L, 1000L, 2000L,
+                                           Checkpoint.serialize(random), objects);
+        assertEquals(1, taken.getSkipped());
+        taken.write(new File(dir, Checkpoint.fileName(3)));
+        assertNull(Checkpoint.read(dir, 4));
+
+        Checkpoint c = Checkpoint.read(dir, 3);
+        assertEquals("m.xml", c.getModuleName());
+        assertEquals("node", c.getNodeId());
+        assertEquals(10L, c.getHops());
+        assertEquals(5L, c.getNumHops());
+        assertEquals(1000L, c.getElapsed());
+        assertEquals(2000L, c.getTime());
+        assertEquals(5, c.size());
+        assertEquals(random.nextLong(), c.getRandom().nextLong());
+
+        State state = new State();
+        c.restore(state);
+        assertEquals("x", state.get("string"));
+        assertEquals(Integer.valueOf(5), state.getInt("int"));
+        assertEquals(7, ((Point) state.get("point")).x);
+        assertFalse(state.has("unwritable"));
+        assertEquals(9, COUNT.getInt(state));
+        assertEquals("s", state.get("checkpointtest.count"));
+    }
+
+    @Test public void testTakeIsConsistent() throws Exception {
+        List<String> list = new ArrayList<String>();
+        list.add("a");
+        Map<Object, Object> objects = new HashMap<Object, Object>();
+        objects.put("list", list);
+        Checkpoint taken = Checkpoint.take("m.xml", "node", 1L, 1L, 0L, 0L,
+                                           Checkpoint.serialize(new Random(42L)), objects);
+        list.add("b");
+        File dir = folder.newFolder("consistent");
+        taken.write(new File(dir, Checkpoint.fileName(0)));
+
+        State state = new State();
+        Checkpoint.read(dir, 0).restore(state);
+        assertEquals(Collections.singletonList("a"), state.get("list"));
+    }
+
+    static class Broken {
+    }
+    @Test(expected=IOException.class)
+    public void testTakeFailsOnEncodingError() throws Exception {
+        Checkpointer.registerCodec(Broken.class, new StateCodec<Broken>() {
+            @Override public void write(Broken b, DataOutput out) {
+                throw new java.util.ConcurrentModificationException();
+            }
+            @Override public Broken read(DataInput in) {
+                return new Broken();
+            }
+        });
+        Map<Object, Object> objects = new HashMap<Object, Object>();
+        objects.put("string", "x");
+        objects.put("broken", new Broken());
+        Checkpoint.take("m.xml", "node", 1L, 1L, 0L, 0L,
+                        Checkpoint.serialize(new Random(42L)), objects);
+    }
+
+    @Test public void testEncodeOnWalker() throws Exception {
+        Module m = buildLoopModule();
+        File dir = folder.newFolder("onwalker");
+        Checkpointer cp = new Checkpointer(dir, 0L);
+        cp.setEncodeOnWalker(true);
+        Walker w = new Walker(0, new Random(42L));
+        List<String> list = new ArrayList<String>();
+        list.add("a");
+        State state = new State();
+        state.set("list", list);
+        cp.checkpoint(w, m, "node", 1L, 0L, state);
+        list.add("b");
+        cp.close();
+
+        State restored = new State();
+        Checkpoint.read(dir, 0).restore(restored);
+        assertEquals(Collections.singletonList("a"), restored.get("list"));
+    }
+
+    @Test public void testCheckpointAndResume() throws Exception {
+        Module m = buildLoopModule();
+        File dir = folder.newFolder("walk");
+        Checkpointer cp = new Checkpointer(dir, 0L);
+        Walker w = new Walker(0, new Random(42L));
+        w.setCheckpointer(cp);
+        Walker.bind(w);
+        try {
+            m.visit(new Environment(), new State(), new Properties());
+        } finally {
+            Walker.bind(null);
+        }
+        cp.close();
+
+        Checkpoint c = Checkpoint.read(dir, 0);
+        assertNotNull(c);
+        assertEquals("loop.xml", c.getModuleName());
+        assertEquals(CountAction.class.getName(), c.getNodeId());
+        State checkpointed = new State();
+        c.restore(checkpointed);
+        assertEquals(c.getNumHops() + 1L, COUNT.getInt(checkpointed));
+
+        // Resuming finishes the walk, with the random number generator
+        // where an uninterrupted walk would leave it.
+        Walker resumed = new Walker(0, c.getRandom());
+        resumed.setResume(c);
+        State state = new State();
+        Walker.bind(resumed);
+        try {
+            m.visit(new Environment(), state, new Properties());
+        } finally {
+            Walker.bind(null);
+        }
+        assertNull(resumed.getResume());
+        assertEquals(101, COUNT.getInt(state));
+        assertEquals(100L, resumed.getHops());
+        assertEquals(w.getRandom().nextLong(), resumed.getRandom().nextLong());
+    }
+}
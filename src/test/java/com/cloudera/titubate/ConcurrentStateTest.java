@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ConcurrentStateTest {
+    private static final BiFunction<Object, Object, Object> SUM =
+        new BiFunction<Object, Object, Object>() {
+            @Override public Object apply(Object a, Object b) {
+                return (Integer) a + (Integer) b;
+            }
+        };
+
+    private ConcurrentState state;
+    @Before public void setUp() {
+        state = new ConcurrentState();
+    }
+    @Test public void testObject() {
+        state.set("test", this);
+        assertTrue(state.has("test"));
+        assertSame(this, state.get("test"));
+        assertFalse(state.has("foo"));
+        assertNull(state.get("foo"));
+        assertNull(state.get(null));
+        assertFalse(state.has(null));
+    }
+    @Test public void testSetNullRemoves() {
+        state.set("test", "case");
+        state.set("test", null);
+        assertFalse(state.has("test"));
+    }
+    @Test public void testAtomicOperations() {
+        assertNull(state.putIfAbsent("test", "a"));
+        assertEquals("a", state.putIfAbsent("test", "b"));
+        assertEquals(1, state.merge("count", 1, SUM));
+        assertEquals(3, state.merge("count", 2, SUM));
+        assertNull(state.compute("count", new BiFunction<String, Object, Object>() {
+            @Override public Object apply(String key, Object value) {
+                return null;
+            }
+        }));
+        assertFalse(state.has("count"));
+    }
+    @Test public void testShare() {
+        assertFalse(state.isShared("test"));
+        state.share("test", "other");
+        assertTrue(state.isShared("test"));
+        assertTrue(state.isShared("other"));
+        assertFalse(state.isShared((String) null));
+        assertFalse(state.isShared((StateKey<?>) null));
+        assertFalse(state.isShared(new StateKey<Object>("test")));
+    }
+    @Test public void testConcurrentMerge() throws Exception {
+        int numThreads = 8;
+        final int numMerges = 10000;
+        ExecutorService es = Executors.newFixedThreadPool(numThreads);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (int i = 0; i < numThreads; i++) {
+            futures.add(es.submit(new Callable<Void>() {
+                @Override public Void call() {
+                    for (int j = 0; j < numMerges; j++) {
+                        state.merge("count", 1, SUM);
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> f : futures) {
+            f.get();
+        }
+        es.shutdown();
+        assertEquals(Integer.valueOf(numThreads * numMerges), state.getInt("count"));
+    }
+}
@@ -67,6 +67,26 @@ public class EnvironmentTest {
         assertNull(env.getInt(null));
         assertNull(env.getLong(null));
     }
+    @Test public void testNumerics_Cached() {
+        Map<String, String> m = new java.util.HashMap<String, String>();
+        m.put("integer", "100000");
+        m.put("big", "10000000000");
+        m.put("word", "ten");
+        env = new Environment(m);
+        assertSame(env.getInt("integer"), env.getInt("integer"));
+        assertEquals(100000, env.getInt("integer", 1));
+        assertEquals(1, env.getInt("zip", 1));
+        assertEquals(10000000000L, env.getLong("big", 1L));
+        assertEquals(2L, env.getLong("zip", 2L));
+        try {
+            env.getInt("big");
+            fail("Value too large for an int");
+        } catch (NumberFormatException e) {}
+        try {
+            env.getLong("word", 0L);
+            fail("Value not a number");
+        } catch (NumberFormatException e) {}
+    }
     @Test public void testEmpty() {
         env = new Environment();
         assertNull(env.get("foo"));
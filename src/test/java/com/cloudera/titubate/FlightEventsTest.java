@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import com.cloudera.titubate.Module.AdjList;
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+public class FlightEventsTest {
+    public static class NoOpAction extends CallableAction {
+        @Override
+        public Void call() {
+            return null;
+        }
+    }
+
+    private Module buildModule() {
+        NodeKeeper nk = new NodeKeeper(new NodeFactory(null, null));
+        nk.addNode("action.a", new CallableNode(new NoOpAction()));
+        Map<String, AdjList> adjMap = new HashMap<String, AdjList>();
+        AdjList l = new AdjList();
+        l.addEdge("action.a", 1);
+        adjMap.put("dummy.init", l);
+        l = new AdjList();
+        l.addEdge("END", 1);
+        adjMap.put("action.a", l);
+        return new ModuleBuilder("test.xml", nk).adjMap(adjMap)
+            .fixture(new TestFixture()).build("dummy.init");
+    }
+
+    @Test public void testDisabledByDefault() {
+        assumeTrue(FlightEvents.isAvailable());
+        assertNull(FlightEvents.beginNodeVisit());
+        assertNull(FlightEvents.beginFixture());
+        assertNull(FlightEvents.beginModule());
+    }
+
+    @Test public void testEvents() throws Exception {
+        assumeTrue(FlightEvents.isAvailable());
+        Module m = buildModule();
+        File f = File.createTempFile("titubate", ".jfr");
+        try {
+            Recording r = new Recording();
+            r.enable("com.cloudera.titubate.NodeVisit");
+            r.enable("com.cloudera.titubate.Fixture");
+            r.enable("com.cloudera.titubate.Module");
+            long startHops = Walker.current().getHops();
+            r.start();
+            m.visit(new Environment(), new State(), new Properties());
+            r.stop();
+            r.dump(f.toPath());
+            r.close();
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(f.toPath());
+            int visits = 0;
+            int fixtures = 0;
+            int modules = 0;
+            for (RecordedEvent e : events) {
+                String name = e.getEventType().getName();
+                if (name.equals("com.cloudera.titubate.NodeVisit")) {
+                    visits++;
+                    assertEquals("test.xml", e.getString("module"));
+                    assertTrue(e.getBoolean("succeeded"));
+                    if (e.getString("node").equals("action.a")) {
+                        assertEquals(startHops + 1L, e.getLong("hop"));
+                    }
+                } else if (name.equals("com.cloudera.titubate.Fixture")) {
+                    fixtures++;
+                } else if (name.equals("com.cloudera.titubate.Module")) {
+                    modules++;
+                    assertEquals(1, e.getInt("depth"));
+                    assertEquals(2L, e.getLong("hops"));
+                }
+            }
+            assertEquals(2, visits);
+            assertEquals(2, fixtures);
+            assertEquals(1, modules);
+        } finally {
+            f.delete();
+        }
+    }
+}
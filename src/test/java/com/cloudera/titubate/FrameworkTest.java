@@ -18,8 +18,14 @@ package com.cloudera.titubate;
 
 import com.cloudera.titubate.Framework.Opts;
 import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.BiFunction;
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -36,10 +42,11 @@ public class FrameworkTest {
         Environment env = new Environment();
         State state = new State();
 
-        Node n = createMock(Module.class);
+        Module n = createMock(Module.class);
         expect(nk.getNode("graph.xml")).andReturn(n);
         replay(nk);
         n.visit(env, state, new Properties());
+        expect(n.getLatencyReport()).andReturn("");
         replay(n);
         f.run("graph.xml", env, state);
         verify(n);
@@ -48,16 +55,119 @@ public class FrameworkTest {
         Environment env = new Environment();
         State state = new State();
 
-        Node n = createMock(Module.class);
+        Module n = createMock(Module.class);
         expect(nk.getNode("graph.xml")).andReturn(n);
         replay(nk);
         n.visit(env, state, new Properties());
         expectLastCall().andThrow(new NodeException());
+        expect(n.getLatencyReport()).andReturn("");
         replay(n);
         f.run("graph.xml", env, state);
         verify(n);
     }
 
+    public static class CountingAction extends CallableAction {
+        static final Set<CallableAction> instances =
+            Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<CallableAction, Boolean>()));
+        @Override public Void call() {
+            instances.add(this);
+            return null;
+        }
+    }
+    public static class SharingAction extends CallableAction {
+        static final BiFunction<Object, Object, Object> SUM =
+            new BiFunction<Object, Object, Object>() {
+                @Override public Object apply(Object a, Object b) {
+                    return (Long) a + (Long) b;
+                }
+            };
+        @Override public Void call() {
+            state().merge("hops", 1L, SUM);
+            state().merge("total", 1L, SUM);
+            return null;
+        }
+    }
+    public static class FailingAction extends CallableAction {
+        @Override public Void call() {
+            if (Walker.current().getId() == 1) {
+                throw new IllegalStateException("walker 1 fails");
+            }
+            return null;
+        }
+    }
+    private Module buildLoopModule(String actionClass) {
+        NodeKeeper mnk = new NodeKeeper(new NodeFactory(null, null));
+        Map<String, Module.AdjList> adjMap = new HashMap<String, Module.AdjList>();
+        Module.AdjList l = new Module.AdjList();
+        l.addEdge(actionClass, 1);
+        adjMap.put(actionClass, l);
+        Map<String, Properties> nodeProps = new HashMap<String, Properties>();
+        Properties initProps = new Properties();
+        initProps.setProperty(Module.PROPERTY_MAX_HOPS, "100");
+        nodeProps.put(Module.INIT_NODE_ID, initProps);
+        return new ModuleBuilder("loop.xml", mnk).adjMap(adjMap)
+            .nodeProps(nodeProps).build(actionClass);
+    }
+    @Test public void testRunWalkers() throws Exception {
+        Module m = buildLoopModule(CountingAction.class.getName());
+        expect(nk.getNode("loop.xml")).andReturn(m);
+        replay(nk);
+        CountingAction.instances.clear();
+        RunResult result = f.run("loop.xml", new Environment(), 4);
+        assertTrue(result.succeeded());
+        assertEquals(4, result.getWalkResults().size());
+        for (int i = 0; i < 4; i++) {
+            WalkResult r = result.getWalkResults().get(i);
+            assertEquals(i, r.getWalkerId());
+            assertEquals(100L, r.getHops());
+        }
+        assertEquals(400L, result.getTotalHops());
+        assertEquals(4, CountingAction.instances.size());
+    }
+    @Test public void testRunWalkers_Shared() throws Exception {
+        Module m = buildLoopModule(SharingAction.class.getName());
+        expect(nk.getNode("loop.xml")).andReturn(m);
+        replay(nk);
+        ConcurrentState shared = new ConcurrentState();
+        shared.share("total");
+        RunResult result = f.run("loop.xml", new Environment(), 4, false, shared);
+        assertTrue(result.succeeded());
+        assertEquals(Long.valueOf(result.getTotalHops() + 4L), shared.getLong("total"));
+        assertFalse(shared.has("hops"));
+    }
+    @Test public void testRunWalkers_Virtual() throws Exception {
+        Module m = buildLoopModule(CountingAction.class.getName());
+        expect(nk.getNode("loop.xml")).andReturn(m);
+        replay(nk);
+        boolean supported;
+        try {
+            Framework.newVirtualThreadExecutor().shutdown();
+            supported = true;
+        } catch (UnsupportedOperationException e) {
+            supported = false;
+        }
+        try {
+            RunResult result = f.run("loop.xml", new Environment(), 50, true);
+            assertTrue(supported);
+            assertTrue(result.succeeded());
+            assertEquals(5000L, result.getTotalHops());
+        } catch (UnsupportedOperationException e) {
+            assertFalse(supported);
+        }
+    }
+    @Test public void testRunWalkers_Fail() throws Exception {
+        Module m = buildLoopModule(FailingAction.class.getName());
+        expect(nk.getNode("loop.xml")).andReturn(m);
+        replay(nk);
+        RunResult result = f.run("loop.xml", new Environment(), 3);
+        assertFalse(result.succeeded());
+        assertEquals(1, result.getFailureCount());
+        assertTrue(result.getWalkResults().get(0).succeeded());
+        assertFalse(result.getWalkResults().get(1).succeeded());
+        assertTrue(result.getWalkResults().get(1).getFailure() instanceof NodeException);
+        assertTrue(result.getWalkResults().get(2).succeeded());
+    }
+
     @Test public void testLoadEnvironment() throws Exception {
         Opts opts = new Opts();
         File f = new File(FrameworkTest.class.getResource("/env1.properties").toURI());
@@ -98,6 +208,41 @@ public class FrameworkTest {
         assertEquals("rw.conf", opts.configFileName);
         assertEquals("mytest", opts.testId);
         assertEquals("graph.xml", opts.graph);
+        assertEquals(1, opts.walkers);
+        assertFalse(opts.virtualThreads);
+        assertNull(opts.coverageFile);
+        assertNull(opts.seed);
+        assertNull(opts.replayDir);
+        assertTrue(opts.sharedKeys.isEmpty());
+        assertNull(opts.checkpointDir);
+        assertFalse(opts.resume);
+        assertNull(opts.getModuleCache());
+    }
+    @Test public void testParseArgs_ModuleCache() {
+        Opts opts = new Opts();
+        assertTrue(opts.parseArgs("theprogram", new String[] {
+            "--config-dir", "/config/dir", "--graph", "graph.xml", "--module-cache"
+        }));
+        assertNull(opts.getModuleCache().getDir());
+        opts = new Opts();
+        assertTrue(opts.parseArgs("theprogram", new String[] {
+            "--config-dir", "/config/dir", "--graph", "graph.xml",
+            "--module-cache-dir", "/cache"
+        }));
+        assertEquals(new java.io.File("/cache"), opts.getModuleCache().getDir());
+    }
+    @Test public void testParseArgs_Walkers() {
+        Opts opts = new Opts();
+        String[] args = new String[] {
+            "--config-dir", "/config/dir",
+            "--graph", "graph.xml",
+            "--walkers", "8"
+        };
+        assertTrue(opts.parseArgs("theprogram", args));
+        assertEquals(8, opts.walkers);
+        opts = new Opts();
+        args[5] = "0";
+        assertFalse(opts.parseArgs("theprogram", args));
     }
     @Test public void testParseArgs_Bad() {
         Opts opts = new Opts();
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import com.cloudera.titubate.Module.AdjList;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the framework allocates nothing per hop when walking a graph of
+ * {@link DummyNode}s, which themselves allocate nothing. Allocation is
+ * measured with the JVM's per-thread allocation counter, so this test is
+ * skipped on JVMs that lack one. Module debug logging, which nested walks
+ * trigger each time they end, is turned off while measuring.<p>
+ *
+ * The counter also sees whatever else the JVM allocates on the thread, so
+ * this only fails at {@link #MAX_BYTES_PER_HOP}, well above noise but below
+ * a single object per hop. HopAllocationBenchmark, in titubate-benchmarks,
+ * measures allocation per hop precisely with JMH's GC profiler.
+ */
+public class HopAllocationTest {
+    private static final int NUM_NODES = 50;
+    private static final int FAN_OUT = 8;
+    private static final int WARMUP_HOPS = 200000;
+    private static final int MEASURED_HOPS = 1000000;
+    private static final double MAX_BYTES_PER_HOP = 1.0;
+
+    private com.sun.management.ThreadMXBean threadBean;
+    @Before public void setUp() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof
+                          com.sun.management.ThreadMXBean);
+        threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    private Level moduleLevel;
+    @Before public void quietModuleLog() {
+        Logger logger = Logger.getLogger(Module.class);
+        moduleLevel = logger.getLevel();
+        logger.setLevel(Level.INFO);
+    }
+    @After public void restoreModuleLog() {
+        Logger.getLogger(Module.class).setLevel(moduleLevel);
+    }
+
+    public static class NoOpAction extends CallableAction {
+        @Override public Void call() {
+            return null;
+        }
+    }
+
+    private static String nodeId(int i, boolean callable) {
+        return (callable && i % 2 == 1) ? "alias.callable" + i : "dummy." + i;
+    }
+
+    private Module buildModule(int maxHops, boolean callable, String nestedId) {
+        NodeKeeper nk = new NodeKeeper(new NodeFactory(null, null));
+        Random r = new Random(42L);
+        Map<String, AdjList> adjMap = new HashMap<String, AdjList>();
+        for (int i = 0; i < NUM_NODES; i++) {
+            AdjList l = new AdjList();
+            for (int j = 0; j < FAN_OUT; j++) {
+                l.addEdge(nodeId(r.nextInt(NUM_NODES), callable), 1 + r.nextInt(10));
+            }
+            if (nestedId != null) {
+                l.addEdge(nestedId, 1);
+            }
+            String id = nodeId(i, callable);
+            if (id.startsWith("alias")) {
+                // each callable node gets its own action instance
+                AliasNode alias = new AliasNode(id);
+                String targetId = "callable" + i;
+                alias.setTargetId(targetId);
+                nk.addNode(id, alias);
+                nk.addNode(targetId, new CallableNode(new NoOpAction()));
+                id = targetId;
+            }
+            adjMap.put(id, l);
+        }
+        if (nestedId != null) {
+            AdjList l = new AdjList();
+            l.addEdge(nodeId(0, callable), 1);
+            adjMap.put(nestedId, l);
+        }
+        Map<String, Properties> nodeProps = new HashMap<String, Properties>();
+        Properties initProps = new Properties();
+        initProps.setProperty(Module.PROPERTY_MAX_HOPS, Integer.toString(maxHops));
+        nodeProps.put(Module.INIT_NODE_ID, initProps);
+        return new ModuleBuilder("alloc.xml", nk).adjMap(adjMap)
+            .nodeProps(nodeProps).build("dummy.0");
+    }
+
+    private long allocatedBytes() {
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test public void testDummyNodes() throws Exception {
+        testNoAllocationPerHop(false, false);
+    }
+    @Test public void testCallableNodes() throws Exception {
+        testNoAllocationPerHop(true, false);
+    }
+    @Test public void testNestedModule() throws Exception {
+        testNoAllocationPerHop(false, true);
+    }
+
+    private void testNoAllocationPerHop(boolean callable, boolean nested)
+        throws Exception {
+        Environment env = new Environment();
+        State state = new State();
+        Properties props = new Properties();
+        buildModule(WARMUP_HOPS, callable, null).visit(env, state, props);
+
+        Module shortWalk = buildModule(1, callable, null);
+        Module longWalk;
+        if (nested) {
+            Module inner = buildModule(2, callable, null);
+            longWalk = buildModule(MEASURED_HOPS, callable, "inner.xml");
+            longWalk.getNodeKeeper().addNode("inner.xml", inner);
+            inner.getGraph();
+        } else {
+            longWalk = buildModule(MEASURED_HOPS, callable, null);
+        }
+        longWalk.visit(env, state, props);
+        shortWalk.visit(env, state, props);
+        allocatedBytes();
+
+        // The difference between a one-hop walk and a long walk is the cost
+        // of the extra hops; per-visit setup costs cancel out.
+        long before = allocatedBytes();
+        shortWalk.visit(env, state, props);
+        long shortBytes = allocatedBytes() - before;
+        before = allocatedBytes();
+        longWalk.visit(env, state, props);
+        long longBytes = allocatedBytes() - before;
+
+        double bytesPerHop = (longBytes - shortBytes) / (double) MEASURED_HOPS;
+        assertTrue("Walk allocated " + bytesPerHop + " bytes per hop (" +
+                   longBytes + " bytes for " + MEASURED_HOPS + " hops, " +
+                   shortBytes + " bytes for 1 hop)",
+                   bytesPerHop < MAX_BYTES_PER_HOP);
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class HopRateTest {
+    @Test public void testEmpty() {
+        HopRate r = new HopRate(4);
+        assertEquals(0.0, r.perSecond(1000L, 10L, 60000L), 0.0);
+    }
+
+    @Test public void testWindows() {
+        HopRate r = new HopRate(10);
+        r.reset(0L, 0L);
+        r.sample(10000L, 100L);
+        r.sample(20000L, 300L);
+        r.sample(30000L, 600L);
+        // whole history
+        assertEquals(1000.0 / 40, r.perSecond(40000L, 1000L, 60000L), 1e-9);
+        // from the sample at 20s
+        assertEquals(700.0 / 20, r.perSecond(40000L, 1000L, 20000L), 1e-9);
+        // window shorter than the sample interval uses the newest sample
+        assertEquals(400.0 / 10, r.perSecond(40000L, 1000L, 1000L), 1e-9);
+    }
+
+    @Test public void testRingOverwrites() {
+        HopRate r = new HopRate(3);
+        for (int i = 0; i < 10; i++) {
+            r.sample(i * 1000L, i * 10L);
+        }
+        // only samples at 7s, 8s, 9s remain
+        assertEquals(30.0 / 3, r.perSecond(10000L, 100L, 60000L), 1e-9);
+    }
+}
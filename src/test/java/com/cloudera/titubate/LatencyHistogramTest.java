@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import com.cloudera.titubate.Module.AdjList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+    @Test public void testIndex() {
+        for (long v = 0L; v < 100000L; v++) {
+            int i = LatencyHistogram.index(v);
+            assertTrue(LatencyHistogram.lowestValue(i) <= v);
+            assertTrue(LatencyHistogram.highestValue(i) >= v);
+        }
+        assertEquals(LatencyHistogram.index(31L) + 1, LatencyHistogram.index(32L));
+        int last = LatencyHistogram.index(Long.MAX_VALUE);
+        assertEquals(959, last);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValue(last));
+    }
+
+    @Test public void testEmpty() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0L, h.getCount());
+        assertEquals(0L, h.getMax());
+        assertEquals(0L, h.getValueAtPercentile(99.0));
+    }
+
+    @Test public void testPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (long v = 1L; v <= 1000L; v++) {
+            h.record(v * 1000L);
+        }
+        assertEquals(1000L, h.getCount());
+        assertEquals(1000000L, h.getMax());
+        assertEquals(500000.0, h.getValueAtPercentile(50.0), 500000.0 / 16);
+        assertEquals(990000.0, h.getValueAtPercentile(99.0), 990000.0 / 16);
+        assertEquals(1000000L, h.getValueAtPercentile(100.0));
+        assertEquals(1000L, h.getValueAtPercentile(0.0), 1000L / 16);
+    }
+
+    @Test public void testNegative() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(-5L);
+        assertEquals(1L, h.getCount());
+        assertEquals(0L, h.getValueAtPercentile(50.0));
+    }
+
+    @Test public void testConcurrentRecord() throws Exception {
+        final LatencyHistogram h = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 100000; i++) {
+                        h.record(i);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(400000L, h.getCount());
+        assertEquals(99999L, h.getMax());
+    }
+
+    @Test public void testStripes() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int stripe = 0; stripe < 40; stripe++) {
+            h.record(1000L * (stripe + 1), stripe);
+            h.record(10L, stripe);
+        }
+        assertEquals(80L, h.getCount());
+        assertEquals(40000L, h.getMax());
+        assertEquals(10L, h.getValueAtPercentile(50.0));
+        assertEquals(40000L, h.getValueAtPercentile(100.0));
+    }
+
+    public static class NoOpAction extends CallableAction {
+        @Override
+        public Void call() {
+            return null;
+        }
+    }
+
+    @Test public void testModuleLatencies() throws Exception {
+        NodeKeeper nk = new NodeKeeper(new NodeFactory(null, null));
+        nk.addNode("action.a", new CallableNode(new NoOpAction()));
+        Map<String, AdjList> adjMap = new HashMap<String, AdjList>();
+        AdjList l = new AdjList();
+        l.addEdge("action.a", 1);
+        adjMap.put("dummy.init", l);
+        l = new AdjList();
+        l.addEdge("dummy.init", 1);
+        adjMap.put("action.a", l);
+        Map<String, Properties> nodeProps = new HashMap<String, Properties>();
+        Properties initProps = new Properties();
+        initProps.setProperty(Module.PROPERTY_MAX_HOPS, "10");
+        nodeProps.put(Module.INIT_NODE_ID, initProps);
+        Module m = new ModuleBuilder("test.xml", nk).adjMap(adjMap)
+            .nodeProps(nodeProps).build("dummy.init");
+        assertTrue(m.getLatencies().isEmpty());
+
+        m.visit(new Environment(), new State(), new Properties());
+
+        Map<String, LatencyHistogram> latencies = m.getLatencies();
+        assertEquals(1, latencies.size());
+        assertEquals(5L, latencies.get("test.xml:action.a").getCount());
+        assertTrue(m.getLatencyReport().startsWith("test.xml:action.a count=5 "));
+    }
+}
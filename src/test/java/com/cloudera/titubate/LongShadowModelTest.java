@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import com.cloudera.titubate.collections.LongLongMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LongShadowModelTest {
+    private static class Model extends LongShadowModel {
+        private final LongLongMap map = new LongLongMap();
+        void put(long key, long value) {
+            map.put(key, value);
+            changed(key);
+        }
+        @Override public int size() {
+            return map.size();
+        }
+    }
+    private static class RecordingVerifier implements LongShadowModel.Verifier {
+        private final List<Long> changed = new ArrayList<Long>();
+        private int fullChecks = 0;
+        @Override public void verifyChanged(long key) {
+            changed.add(key);
+        }
+        @Override public void verifyAll() {
+            fullChecks++;
+        }
+    }
+
+    private Model model;
+    private RecordingVerifier v;
+    @Before public void setUp() {
+        model = new Model();
+        v = new RecordingVerifier();
+    }
+
+    @Test public void testVerifyChanges() {
+        model.put(1L, 10L);
+        model.put(2L, 20L);
+        model.put(1L, 11L);
+        assertEquals(2, model.getChangeCount());
+        assertTrue(model.isChanged(1L));
+        assertFalse(model.verify(v, 100));
+        Collections.sort(v.changed);
+        assertEquals(java.util.Arrays.asList(1L, 2L), v.changed);
+        assertEquals(0, model.getChangeCount());
+        assertEquals("Model[2 entries, 0 changed]", model.toString());
+    }
+
+    @Test public void testVerifyFull() {
+        model.put(1L, 10L);
+        assertFalse(model.verify(v, 2));
+        model.put(1L, 11L);
+        assertTrue(model.verify(v, 2));
+        assertEquals(1, v.fullChecks);
+        assertEquals(Collections.singletonList(1L), v.changed);
+    }
+
+    @Test public void testVerifyFailure() {
+        model.put(5L, 1L);
+        try {
+            model.verify(new LongShadowModel.Verifier() {
+                @Override public void verifyChanged(long key) {
+                    throw new IllegalStateException(Long.toString(key));
+                }
+                @Override public void verifyAll() {
+                }
+            }, 100);
+            fail("Verifier should have thrown");
+        } catch (IllegalStateException e) {
+            assertTrue(model.isChanged(5L));
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testBadInterval() {
+        model.verify(v, 0);
+    }
+}
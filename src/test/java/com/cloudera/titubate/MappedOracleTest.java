@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class MappedOracleTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+    private File file;
+    private MappedOracle oracle;
+
+    @Before public void setUp() throws Exception {
+        file = new File(folder.getRoot(), "oracle");
+        oracle = MappedOracle.create(file, 12, 10L);
+    }
+    @After public void tearDown() {
+        oracle.close();
+    }
+
+    @Test public void testPutGet() throws Exception {
+        byte[] value = "hello world!".getBytes("US-ASCII");
+        oracle.put(42L, value);
+        byte[] read = new byte[12];
+        assertTrue(oracle.get(42L, read));
+        assertArrayEquals(value, read);
+        assertFalse(oracle.get(43L, read));
+        assertTrue(oracle.containsKey(42L));
+        assertEquals(1L, oracle.size());
+
+        oracle.putLong(0L, -5L);
+        assertEquals(-5L, oracle.getLong(0L, 7L));
+        assertEquals(7L, oracle.getLong(1L, 7L));
+        assertEquals(5L, oracle.addLong(0L, 10L));
+        assertEquals(3L, oracle.addLong(2L, 3L));
+        assertEquals(3L, oracle.size());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testPut_WrongSize() throws Exception {
+        oracle.put(1L, new byte[3]);
+    }
+
+    @Test public void testAgainstHashMap() throws Exception {
+        Map<Long, Long> expected = new HashMap<Long, Long>();
+        Random random = new Random(17L);
+        for (int i = 0; i < 20000; i++) {
+            long key = random.nextInt(2000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key) != null, oracle.remove(key));
+            } else {
+                long value = random.nextLong();
+                expected.put(key, value);
+                oracle.putLong(key, value);
+            }
+        }
+        assertEquals(expected.size(), oracle.size());
+        assertTrue(oracle.capacity() > 16L);
+        for (long key = 0L; key < 2000L; key++) {
+            Long value = expected.get(key);
+            assertEquals(value != null, oracle.containsKey(key));
+            if (value != null) {
+                assertEquals(value.longValue(), oracle.getLong(key, 0L));
+            }
+        }
+        final Set<Long> keys = new HashSet<Long>();
+        oracle.forEachKey(new MappedOracle.KeyVisitor() {
+            @Override public void visit(long key) {
+                assertTrue(keys.add(key));
+            }
+        });
+        assertEquals(expected.keySet(), keys);
+    }
+
+    @Test public void testReopen() throws Exception {
+        for (long key = 0L; key < 100L; key++) {
+            oracle.putLong(key, key * 2L);
+        }
+        oracle.remove(50L);
+        oracle.close();
+        oracle = MappedOracle.open(file);
+        assertEquals(99L, oracle.size());
+        assertEquals(12, oracle.getValueSize());
+        assertEquals(98L, oracle.getLong(49L, -1L));
+        assertFalse(oracle.containsKey(50L));
+    }
+
+    @Test public void testRepeatedGrowth() throws Exception {
+        long capacity = oracle.capacity();
+        int growths = 0;
+        for (long key = 0L; key < 5000L; key++) {
+            oracle.putLong(key, -key);
+            if (oracle.capacity() != capacity) {
+                capacity = oracle.capacity();
+                growths++;
+                // Only the current generation's data file is left
+                assertEquals(2, folder.getRoot().list().length);
+                assertTrue(new File(file.getPath() + "." + growths).exists());
+            }
+        }
+        assertTrue(growths >= 5);
+        for (long key = 0L; key < 5000L; key++) {
+            assertEquals(-key, oracle.getLong(key, 1L));
+        }
+        oracle.close();
+        oracle = MappedOracle.open(file);
+        assertEquals(5000L, oracle.size());
+        assertEquals(capacity, oracle.capacity());
+        assertEquals(-4999L, oracle.getLong(4999L, 1L));
+        oracle.putLong(5000L, 5L);
+        assertEquals(5L, oracle.getLong(5000L, 1L));
+    }
+
+    @Test public void testOpen_RemovesStaleDataFiles() throws Exception {
+        oracle.putLong(1L, 1L);
+        oracle.close();
+        File stale = new File(file.getPath() + ".7");
+        assertTrue(stale.createNewFile());
+        oracle = MappedOracle.open(file);
+        assertFalse(stale.exists());
+        assertEquals(1L, oracle.getLong(1L, 0L));
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testClosed() {
+        oracle.close();
+        oracle.containsKey(1L);
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testLong_SmallValues() throws Exception {
+        MappedOracle small = MappedOracle.create(folder.newFile("small"), 4, 0L);
+        try {
+            small.putLong(1L, 1L);
+        } finally {
+            small.close();
+        }
+    }
+
+    @Test(expected=IOException.class)
+    public void testOpen_NotAStore() throws Exception {
+        File f = folder.newFile("junk");
+        FileOutputStream out = new FileOutputStream(f);
+        try {
+            out.write(new byte[MappedOracle.HEADER_SIZE]);
+        } finally {
+            out.close();
+        }
+        MappedOracle.open(f);
+    }
+
+    @Test public void testInState() throws Exception {
+        StateKey<MappedOracle> key = new StateKey<MappedOracle>("mappedoracletest.oracle");
+        State state = new State();
+        key.set(state, oracle);
+        key.get(state).putLong(1L, 2L);
+        assertEquals(2L, oracle.getLong(1L, 0L));
+        assertTrue(state.dump().contains("MappedOracle[" + file + ", 1 entries of 12 bytes]"));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import com.cloudera.titubate.Module.AdjList;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class ModuleCacheTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+    private File moduleDir;
+    private File xmlFile;
+
+    private static final String MAIN =
+        "<module>" +
+        "<package prefix=\"t\" value=\"com.cloudera.titubate\"/>" +
+        "<fixture id=\"t.TestFixture\"/>" +
+        "<init id=\"dummy.a\" maxHops=\"50\"/>" +
+        "<node id=\"dummy.a\" teardown=\"false\">" +
+        "<alias name=\"first\"/>" +
+        "<property key=\"k\" value=\"v\u00e9\"/>" +
+        "<edge id=\"dummy.b\" weight=\"1.5\"/><edge id=\"nested.xml\" weight=\"%s\"/>" +
+        "</node>" +
+        "<node id=\"dummy.b\"/>" +
+        "<node id=\"nested.xml\"/>" +
+        "</module>";
+    private static final String NESTED =
+        "<module><init id=\"dummy.c\"/><node id=\"dummy.c\"/></module>";
+
+    private static void write(File f, String xml) throws Exception {
+        Writer w = new OutputStreamWriter(new FileOutputStream(f), "UTF-8");
+        try {
+            w.write(xml);
+        } finally {
+            w.close();
+        }
+    }
+
+    @Before public void setUp() throws Exception {
+        moduleDir = folder.newFolder("modules");
+        xmlFile = new File(moduleDir, "main.xml");
+        write(xmlFile, String.format(MAIN, "2"));
+        write(new File(moduleDir, "nested.xml"), NESTED);
+    }
+
+    private Module load(ModuleCache cache) throws Exception {
+        XmlModuleFactory xmf = new XmlModuleFactory(xmlFile, moduleDir);
+        xmf.setModuleCache(cache);
+        return xmf.getModule();
+    }
+
+    private static void assertSameModule(Module expected, Module actual) {
+        assertEquals(expected.getInitNodeId(), actual.getInitNodeId());
+        assertEquals(expected.getFixture().getClass(), actual.getFixture().getClass());
+        assertEquals(expected.getProps(Module.INIT_NODE_ID), actual.getProps(Module.INIT_NODE_ID));
+        Map<String, AdjList> e = expected.getAdjacencyMap();
+        Map<String, AdjList> a = actual.getAdjacencyMap();
+        assertEquals(e.keySet(), a.keySet());
+        for (String id : e.keySet()) {
+            assertEquals(expected.getProps(id), actual.getProps(id));
+            assertEquals(e.get(id).size(), a.get(id).size());
+            for (int i = 0; i < e.get(id).size(); i++) {
+                assertEquals(e.get(id).nodeId(i), a.get(id).nodeId(i));
+                assertEquals(e.get(id).weight(i), a.get(id).weight(i), 0.0);
+            }
+        }
+        assertTrue(actual.getNodeKeeper().hasNode("alias.first"));
+        assertTrue(actual.getNode("nested.xml") instanceof Module);
+    }
+
+    @Test public void testCacheDir() throws Exception {
+        File dir = new File(folder.getRoot(), "cache");
+        ModuleCache cache = new ModuleCache(dir);
+        Module uncached = load(null);
+        Module first = load(cache);
+        assertSameModule(uncached, first);
+
+        byte[] hash = ModuleCache.hash(xmlFile);
+        File compiled = cache.compiledFile(xmlFile, hash);
+        assertEquals(dir, compiled.getParentFile());
+        assertTrue(compiled.isFile());
+        assertEquals(2, dir.list().length);  // main and nested
+        assertNotNull(cache.load(xmlFile, hash));
+
+        assertSameModule(uncached, load(cache));
+        assertEquals("v\u00e9", first.getProps("dummy.a").getProperty("k"));
+    }
+
+    @Test public void testNextToXml() throws Exception {
+        ModuleCache cache = new ModuleCache();
+        Module m = load(cache);
+        assertTrue(new File(moduleDir, "main.xml" + ModuleCache.SUFFIX).isFile());
+        assertTrue(new File(moduleDir, "nested.xml" + ModuleCache.SUFFIX).isFile());
+        assertSameModule(m, load(cache));
+    }
+
+    @Test public void testStale() throws Exception {
+        ModuleCache cache = new ModuleCache();
+        load(cache);
+        byte[] oldHash = ModuleCache.hash(xmlFile);
+        write(xmlFile, String.format(MAIN, "7"));
+        byte[] newHash = ModuleCache.hash(xmlFile);
+        assertNull(cache.load(xmlFile, newHash));
+
+        Module m = load(cache);
+        assertEquals(7.0, m.getAdjacencyMap().get("dummy.a").weight("nested.xml"), 0.0);
+        assertNotNull(cache.load(xmlFile, newHash));
+        assertNull(cache.load(xmlFile, oldHash));
+    }
+
+    @Test public void testCorrupt() throws Exception {
+        ModuleCache cache = new ModuleCache();
+        Module m = load(cache);
+        File compiled = new File(moduleDir, "main.xml" + ModuleCache.SUFFIX);
+        RandomAccessFile raf = new RandomAccessFile(compiled, "rw");
+        try {
+            raf.setLength(raf.length() / 2);
+        } finally {
+            raf.close();
+        }
+        byte[] hash = ModuleCache.hash(xmlFile);
+        assertNull(cache.load(xmlFile, hash));
+        assertSameModule(m, load(cache));
+        assertNotNull(cache.load(xmlFile, hash));
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import com.cloudera.titubate.Module.AdjList;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ModuleGraphTest {
+    private NodeKeeper nk;
+    private Map<String, AdjList> adjMap;
+    private ModuleBuilder mb;
+    @Before public void setUp() {
+        nk = new NodeKeeper(new NodeFactory(null, null));
+        adjMap = new HashMap<String, AdjList>();
+        mb = new ModuleBuilder("test.xml", nk).adjMap(adjMap);
+    }
+
+    private void addEdges(String id, String... targets) {
+        AdjList l = new AdjList();
+        for (String t : targets) {
+            l.addEdge(t, 1);
+        }
+        adjMap.put(id, l);
+    }
+
+    @Test public void testCompile() {
+        addEdges("dummy.a", "dummy.b", "END");
+        addEdges("dummy.b", "dummy.a", "dummy.c");
+        addEdges("dummy.unreachable", "dummy.a");
+        Module m = mb.build("dummy.a");
+        ModuleGraph g = m.getGraph();
+
+        assertEquals(3, g.size());
+        int a = g.initIndex();
+        assertEquals("dummy.a", g.id(a));
+        int b = g.indexOf("dummy.b");
+        int c = g.indexOf("dummy.c");
+        assertEquals(ModuleGraph.NONE, g.indexOf("dummy.unreachable"));
+        assertEquals(ModuleGraph.END, g.indexOf("END"));
+
+        assertEquals(2, g.degree(a));
+        assertEquals(b, g.target(a, 0));
+        assertEquals(ModuleGraph.END, g.target(a, 1));
+        assertEquals(2, g.degree(b));
+        assertEquals(a, g.target(b, 0));
+        assertEquals(c, g.target(b, 1));
+        assertTrue(g.hasEdges(b));
+        assertFalse(g.hasEdges(c));
+
+        assertSame(nk.getNode("dummy.b"), g.node(b));
+        assertSame(m.getProps("dummy.b"), g.props(b));
+        assertFalse(g.isTimed(b));
+        assertSame(g, m.getGraph());
+    }
+
+    @Test public void testAliasResolved() {
+        AliasNode alias = new AliasNode("alias.aka");
+        alias.setTargetId("dummy.b");
+        nk.addNode("alias.aka", alias);
+        addEdges("dummy.a", "alias.aka");
+        addEdges("dummy.b", "END");
+        ModuleGraph g = mb.build("dummy.a").getGraph();
+
+        assertEquals(2, g.size());
+        assertEquals(g.indexOf("dummy.b"), g.target(g.initIndex(), 0));
+        assertEquals(ModuleGraph.NONE, g.indexOf("alias.aka"));
+    }
+
+    @Test public void testRandomNeighbor() {
+        AdjList l = new AdjList();
+        l.addEdge("dummy.b", 1);
+        l.addEdge("dummy.c", 3);
+        adjMap.put("dummy.a", l);
+        ModuleGraph g = mb.build("dummy.a").getGraph();
+
+        int c = g.indexOf("dummy.c");
+        Random random = new Random(42L);
+        int numTries = 100000;
+        int cCount = 0;
+        for (int i = 0; i < numTries; i++) {
+            if (g.randomNeighbor(g.initIndex(), random) == c) {
+                cCount++;
+            }
+        }
+        assertEquals(0.75, cCount / (double) numTries, 0.01);
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testRandomNeighbor_NoEdges() {
+        addEdges("dummy.a", "dummy.b");
+        ModuleGraph g = mb.build("dummy.a").getGraph();
+        g.randomNeighbor(g.indexOf("dummy.b"), new Random());
+    }
+
+    private Module buildCoverageModule() {
+        AliasNode alias = new AliasNode("alias.aka");
+        alias.setTargetId("dummy.b");
+        nk.addNode("alias.aka", alias);
+        AdjList l = new AdjList();
+        l.addEdge("alias.aka", 1);
+        l.addEdge("dummy.c", 3);
+        adjMap.put("dummy.a", l);
+        addEdges("dummy.b", "dummy.a");
+        addEdges("dummy.c", "dummy.a");
+        Map<String, Properties> nodeProps = new HashMap<String, Properties>();
+        Properties initProps = new Properties();
+        initProps.setProperty(Module.PROPERTY_MAX_HOPS, "1000");
+        nodeProps.put(Module.INIT_NODE_ID, initProps);
+        return mb.nodeProps(nodeProps).build("dummy.a");
+    }
+
+    @Test public void testCoverage_NotCounted() throws Exception {
+        Module m = buildCoverageModule();
+        m.visit(new Environment(), new State(), new Properties());
+        ModuleGraph g = m.getGraph();
+        assertEquals(0L, g.visitCount(g.initIndex()));
+        assertEquals(0L, g.traversalCount(0));
+    }
+
+    @Test public void testCoverage() throws Exception {
+        Module m = buildCoverageModule();
+        Walker walker = new Walker(0, new Random());
+        walker.setCoverageWalkers(1);
+        Walker.bind(walker);
+        try {
+            m.visit(new Environment(), new State(), new Properties());
+        } finally {
+            Walker.bind(null);
+        }
+
+        ModuleGraph g = m.getGraph();
+        int a = g.initIndex();
+        int b = g.indexOf("dummy.b");
+        int c = g.indexOf("dummy.c");
+        assertEquals(501L, g.visitCount(a));
+        assertEquals(1001L, g.visitCount(a) + g.visitCount(b) + g.visitCount(c));
+        long ab = g.traversalCount(g.edgeIndex(a, 0));
+        long ac = g.traversalCount(g.edgeIndex(a, 1));
+        assertEquals(500L, ab + ac);
+        assertEquals(g.visitCount(b), ab);
+        assertEquals("alias.aka", g.edgeId(g.edgeIndex(a, 0)));
+        assertEquals(3.0, g.edgeWeight(g.edgeIndex(a, 1)), 0.0);
+
+        StringWriter w = new StringWriter();
+        m.writeCoverage(w);
+        String[] lines = w.toString().split("\n");
+        assertEquals(5, lines.length);
+        assertEquals("module\tnode\tvisits\tedge\tweight\texpected\ttraversals\tobserved", lines[0]);
+        assertTrue(lines[1].startsWith("test.xml\tdummy.a\t501\talias.aka\t1.0\t0.250000\t" + ab + "\t"));
+        assertTrue(lines[2].startsWith("test.xml\tdummy.a\t501\tdummy.c\t3.0\t0.750000\t" + ac + "\t"));
+    }
+}
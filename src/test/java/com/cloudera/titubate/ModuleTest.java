@@ -65,7 +65,7 @@ public class ModuleTest {
         Node n = createMock(Node.class);
         expect(nk.getNode("x")).andReturn(n);
         replay(nk);
-        n.visit(eq(env), eq(state), anyObject(Properties.class));
+        n.visit(eq(env), eq(state), anyObject(NodeConfig.class));
         replay(n);
         mb.build(INIT_NODE_ID).doVisit("x", env, state);
         verify(n);
@@ -74,8 +74,7 @@ public class ModuleTest {
         Node n = createMock(CallableNode.class);
         expect(nk.getNode("x")).andReturn(n);
         replay(nk);
-        n.progress();
-        n.visit(eq(env), eq(state), anyObject(Properties.class));
+        n.visit(eq(env), eq(state), anyObject(NodeConfig.class));
         replay(n);
         mb.build(INIT_NODE_ID).doVisit("x", env, state);
         verify(n);
@@ -138,10 +137,10 @@ public class ModuleTest {
         }
         replay(nk);
 
-        n0.visit(eq(env), eq(state), anyObject(Properties.class));
+        n0.visit(eq(env), eq(state), anyObject(NodeConfig.class));
         replay(n0);
         if (!limitTime) {
-            n1.visit(eq(env), eq(state), anyObject(Properties.class));
+            n1.visit(eq(env), eq(state), anyObject(NodeConfig.class));
             if (failNode) {
                 expectLastCall().andThrow(new IllegalStateException());
             }
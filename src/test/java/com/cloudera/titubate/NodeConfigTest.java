@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NodeConfigTest {
+    private Properties props;
+    private NodeConfig config;
+
+    @Before public void setUp() {
+        props = new Properties();
+        props.setProperty("int", "42");
+        props.setProperty("long", "-5000000000");
+        props.setProperty("double", "2.5");
+        props.setProperty("bool", "TRUE");
+        props.setProperty("word", "hello");
+        config = NodeConfig.of(props);
+    }
+
+    @Test public void testGet() {
+        assertEquals("hello", config.get("word"));
+        assertNull(config.get("zip"));
+        assertEquals("dflt", config.get("zip", "dflt"));
+        assertTrue(config.has("int"));
+        assertFalse(config.has("zip"));
+        assertEquals(new HashSet<String>(Arrays.asList("int", "long", "double", "bool", "word")),
+                     config.keys());
+        assertSame(props, config.getProperties());
+    }
+
+    @Test public void testTyped() {
+        assertEquals(42, config.getInt("int", 0));
+        assertEquals(7, config.getInt("zip", 7));
+        assertEquals(42L, config.getLong("int", 0L));
+        assertEquals(-5000000000L, config.getLong("long", 0L));
+        assertEquals(2.5, config.getDouble("double", 0.0), 0.0);
+        assertEquals(42.0, config.getDouble("int", 0.0), 0.0);
+        assertTrue(config.getBoolean("bool", false));
+        assertFalse(config.getBoolean("word", true));
+        assertTrue(config.getBoolean("zip", true));
+    }
+
+    @Test(expected=NumberFormatException.class)
+    public void testTyped_IntTooLarge() {
+        config.getInt("long", 0);
+    }
+
+    @Test(expected=NumberFormatException.class)
+    public void testTyped_NotANumber() {
+        config.getLong("word", 0L);
+    }
+
+    @Test public void testSnapshot() {
+        props.setProperty("int", "43");
+        assertEquals(42, config.getInt("int", 0));
+    }
+
+    @Test public void testNull() {
+        assertTrue(NodeConfig.of(null).keys().isEmpty());
+    }
+
+    @Test public void testModuleGraph() {
+        NodeKeeper nk = new NodeKeeper(new NodeFactory(null, null));
+        java.util.Map<String, Module.AdjList> adjMap = new java.util.HashMap<String, Module.AdjList>();
+        Module.AdjList l = new Module.AdjList();
+        l.addEdge("END", 1);
+        adjMap.put("dummy.a", l);
+        java.util.Map<String, Properties> nodeProps = new java.util.HashMap<String, Properties>();
+        nodeProps.put("dummy.a", props);
+        ModuleGraph g = new ModuleBuilder("test.xml", nk).adjMap(adjMap).nodeProps(nodeProps)
+            .build("dummy.a").getGraph();
+        NodeConfig c = g.config(g.initIndex());
+        assertSame(props, c.getProperties());
+        assertEquals(42, c.getInt("int", 0));
+    }
+}
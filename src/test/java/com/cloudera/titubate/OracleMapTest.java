@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class OracleMapTest {
+    private OracleMap<String, Integer> map;
+    private RecordingVerifier v;
+
+    private static class RecordingVerifier implements ShadowModel.Verifier<String> {
+        private final List<String> changed = new ArrayList<String>();
+        private int fullChecks = 0;
+        @Override public void verifyChanged(String key) {
+            changed.add(key);
+        }
+        @Override public void verifyAll() {
+            fullChecks++;
+        }
+    }
+
+    @Before public void setUp() {
+        map = new OracleMap<String, Integer>();
+        v = new RecordingVerifier();
+    }
+
+    @Test public void testReverseIndex() {
+        assertNull(map.put("a", 1));
+        map.put("b", 2);
+        map.put("c", 1);
+        assertTrue(map.containsValue(1));
+        assertEquals(new HashSet<String>(Arrays.asList("a", "c")), map.keysFor(1));
+        assertEquals(Collections.singleton("b"), map.keysFor(2));
+        assertEquals(Collections.emptySet(), map.keysFor(3));
+
+        assertEquals(Integer.valueOf(1), map.put("a", 2));
+        assertEquals(Collections.singleton("c"), map.keysFor(1));
+        assertEquals(new HashSet<String>(Arrays.asList("a", "b")), map.keysFor(2));
+
+        assertEquals(Integer.valueOf(1), map.remove("c"));
+        assertFalse(map.containsValue(1));
+        assertNull(map.remove("c"));
+        assertEquals(2, map.size());
+        assertEquals(Integer.valueOf(2), map.get("a"));
+    }
+
+    @Test public void testKeyThatIsASet() {
+        OracleMap<Object, String> m = new OracleMap<Object, String>();
+        HashSet<String> key = new HashSet<String>(Arrays.asList("x"));
+        m.put(key, "v");
+        assertEquals(Collections.singleton(key), m.keysFor("v"));
+    }
+
+    @Test public void testToString() {
+        map.put("a", 1);
+        map.put("b", 2);
+        assertEquals("OracleMap[2 entries, 2 changed]", map.toString());
+    }
+
+    @Test(expected=NullPointerException.class)
+    public void testNullValue() {
+        map.put("a", null);
+    }
+
+    @Test public void testVerifyChanges() {
+        map.put("a", 1);
+        map.put("b", 2);
+        map.put("c", 3);
+        assertFalse(map.verify(v, 100));
+        assertEquals(Arrays.asList("a", "b", "c"), v.changed);
+        assertTrue(map.getChanges().isEmpty());
+
+        v.changed.clear();
+        map.put("b", 4);
+        map.put("b", 4);
+        map.remove("a");
+        map.remove("z");
+        assertFalse(map.verify(v, 100));
+        assertEquals(Arrays.asList("b", "a"), v.changed);
+        assertEquals(0, v.fullChecks);
+    }
+
+    @Test public void testVerifyFull() {
+        for (int i = 0; i < 10; i++) {
+            map.put("k" + i, i);
+        }
+        map.verify(v, 3);
+        v.changed.clear();
+        map.put("k0", 100);
+        assertFalse(map.verify(v, 3));
+        assertTrue(map.verify(v, 3));
+        assertEquals(1, v.fullChecks);
+        assertEquals(Arrays.asList("k0"), v.changed);
+    }
+
+    @Test public void testVerifyFull_MoreChangesThanEntries() {
+        map.put("a", 1);
+        map.put("b", 2);
+        map.remove("a");
+        assertTrue(map.verify(v, 100));
+        assertEquals(1, v.fullChecks);
+        assertTrue(v.changed.isEmpty());
+    }
+
+    @Test public void testVerifyFailure() {
+        map.put("a", 1);
+        try {
+            map.verify(new ShadowModel.Verifier<String>() {
+                @Override public void verifyChanged(String key) {
+                    throw new IllegalStateException(key);
+                }
+                @Override public void verifyAll() {
+                }
+            }, 100);
+            fail("Verifier should have thrown");
+        } catch (IllegalStateException e) {
+            assertEquals(Collections.singleton("a"), map.getChanges());
+        }
+    }
+
+    @Test public void testSet() {
+        OracleSet<String> set = new OracleSet<String>();
+        assertTrue(set.add("a"));
+        assertFalse(set.add("a"));
+        assertTrue(set.add("b"));
+        assertTrue(set.remove("a"));
+        assertFalse(set.remove("a"));
+        assertTrue(set.contains("b"));
+        assertEquals(1, set.size());
+        assertEquals(new HashSet<String>(Arrays.asList("a", "b")), set.getChanges());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testVerify_BadInterval() {
+        map.verify(v, 0);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PersistentHashMapTest {
+    private static class RecordingDiff implements PersistentHashMap.Diff {
+        final List<String> changes = new ArrayList<String>();
+        @Override public void added(String key, Object value) {
+            changes.add("+" + key + "=" + value);
+        }
+        @Override public void removed(String key, Object oldValue) {
+            changes.add("-" + key + "=" + oldValue);
+        }
+        @Override public void changed(String key, Object oldValue, Object value) {
+            changes.add("~" + key + "=" + oldValue + "->" + value);
+        }
+    }
+
+    @Test public void testPutGetRemove() {
+        PersistentHashMap m0 = PersistentHashMap.EMPTY;
+        PersistentHashMap m1 = m0.plus("a", 1);
+        PersistentHashMap m2 = m1.plus("b", 2).plus("a", 3);
+        assertEquals(0, m0.size());
+        assertEquals(1, m1.size());
+        assertEquals(2, m2.size());
+        assertEquals(1, m1.get("a"));
+        assertEquals(3, m2.get("a"));
+        assertFalse(m1.containsKey("b"));
+        assertSame(m2, m2.minus("c"));
+        PersistentHashMap m3 = m2.minus("a");
+        assertEquals(1, m3.size());
+        assertFalse(m3.containsKey("a"));
+        assertEquals(3, m2.get("a"));
+        assertNull(m3.get(null));
+    }
+    @Test public void testNullValue() {
+        PersistentHashMap m = PersistentHashMap.EMPTY.plus("a", null);
+        assertTrue(m.containsKey("a"));
+        assertNull(m.get("a"));
+        assertEquals(1, m.size());
+    }
+    @Test public void testCollisions() {
+        // "Aa" and "BB" have the same hash code.
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        PersistentHashMap m = PersistentHashMap.EMPTY.plus("Aa", 1).plus("BB", 2).plus("AaAa", 3).plus("BBBB", 4);
+        assertEquals(4, m.size());
+        assertEquals(1, m.get("Aa"));
+        assertEquals(2, m.get("BB"));
+        assertEquals(4, m.get("BBBB"));
+        m = m.minus("Aa");
+        assertEquals(3, m.size());
+        assertNull(m.get("Aa"));
+        assertEquals(2, m.get("BB"));
+    }
+    @Test public void testAgainstHashMap() {
+        Random random = new Random(42L);
+        Map<String, Object> model = new HashMap<String, Object>();
+        PersistentHashMap m = PersistentHashMap.EMPTY;
+        for (int i = 0; i < 20000; i++) {
+            String key = "k" + random.nextInt(2000);
+            if (random.nextInt(3) == 0) {
+                model.remove(key);
+                m = m.minus(key);
+            } else {
+                model.put(key, i);
+                m = m.plus(key, i);
+            }
+        }
+        assertEquals(model.size(), m.size());
+        assertEquals(model, m);
+        assertEquals(model, new HashMap<String, Object>(m));
+    }
+    @Test public void testDiff() {
+        PersistentHashMap before = PersistentHashMap.EMPTY;
+        for (int i = 0; i < 1000; i++) {
+            before = before.plus("k" + i, i);
+        }
+        PersistentHashMap after = before.plus("k1", 100).minus("k2").plus("new", "x").plus("k3", 3);
+        RecordingDiff d = new RecordingDiff();
+        PersistentHashMap.diff(before, after, d);
+        assertEquals(3, d.changes.size());
+        assertTrue(d.changes.contains("~k1=1->100"));
+        assertTrue(d.changes.contains("-k2=2"));
+        assertTrue(d.changes.contains("+new=x"));
+
+        d = new RecordingDiff();
+        PersistentHashMap.diff(after, after, d);
+        assertTrue(d.changes.isEmpty());
+        PersistentHashMap.diff(PersistentHashMap.EMPTY, PersistentHashMap.EMPTY.plus("a", 1), d);
+        assertEquals("[+a=1]", d.changes.toString());
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.io.StringWriter;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PersistentStateTest {
+    private static final IntKey COUNT = new IntKey("persistentstatetest.count");
+
+    @Test public void testSnapshot() {
+        PersistentState state = new PersistentState();
+        state.set("a", "x");
+        COUNT.setInt(state, 1);
+        Map<String, Object> snapshot = state.getSnapshot();
+        state.set("a", "y");
+        COUNT.add(state, 1);
+        state.remove("b");
+        assertEquals("x", snapshot.get("a"));
+        assertFalse(snapshot.containsKey("persistentstatetest.count"));
+        assertEquals("y", state.get("a"));
+        assertEquals(2, COUNT.getInt(state));
+        assertNull(state.get("persistentstatetest.count"));
+        assertEquals(2, state.snapshot().get(COUNT));
+    }
+    @Test public void testHistory() throws Exception {
+        PersistentState state = new PersistentState(2);
+        state.record("start", 0L);
+        state.set("a", 1);
+        state.record("one", 1L);
+        state.set("a", 2);
+        state.set("b", "x");
+        COUNT.setInt(state, 1);
+        state.record("two", 2L);
+        state.remove("a");
+        state.record("three", 3L);
+
+        StateHistory h = state.getHistory();
+        assertEquals(3, h.size());
+        assertEquals("one", h.getLabel(0));
+        StringWriter w = new StringWriter();
+        h.write(w, new StateDumper());
+        assertEquals("After two (hop 2):\n" +
+                     "  ~ a = |1| -> |2|\n" +
+                     "  + b = |x|\n" +
+                     "  + persistentstatetest.count = |1|\n" +
+                     "After three (hop 3):\n" +
+                     "  - a = |2|\n", w.toString());
+    }
+    @Test public void testNoHistory() {
+        assertNull(new PersistentState().getHistory());
+    }
+    @Test public void testWalkHistory() throws Exception {
+        NodeKeeper nk = new NodeKeeper(new NodeFactory(null, null));
+        Map<String, Module.AdjList> adjMap = new java.util.HashMap<String, Module.AdjList>();
+        Module.AdjList l = new Module.AdjList();
+        l.addEdge("END", 1);
+        adjMap.put("dummy.a", l);
+        Module m = new ModuleBuilder("test.xml", nk).adjMap(adjMap).build("dummy.a");
+        PersistentState state = new PersistentState(4);
+        m.visit(new Environment(), state, new java.util.Properties());
+        StateHistory h = state.getHistory();
+        assertEquals(2, h.size());
+        assertEquals("start of test.xml", h.getLabel(0));
+        assertEquals("dummy.a", h.getLabel(1));
+    }
+}
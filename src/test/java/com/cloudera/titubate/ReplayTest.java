@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import com.cloudera.titubate.Module.AdjList;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class ReplayTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Notes each visit to it in a shared log, and fails on a given visit.
+     */
+    private static class LoggingNode extends Node {
+        private final String id;
+        private final List<String> log;
+        private final int failOn;
+        private int visits = 0;
+        LoggingNode(String id, List<String> log, int failOn) {
+            this.id = id;
+            this.log = log;
+            this.failOn = failOn;
+        }
+        @Override
+        public void visit(Environment env, State state, Properties props)
+            throws NodeException {
+            synchronized (log) {
+                log.add(id);
+            }
+            if (++visits == failOn) {
+                throw new NodeException("visit " + visits + " to " + id);
+            }
+        }
+    }
+
+    private List<String> log;
+    private NodeKeeper nk;
+    private Framework f;
+    @Before public void setUp() {
+        log = new ArrayList<String>();
+        nk = new NodeKeeper(new NodeFactory(null, null));
+        f = new Framework(nk);
+    }
+
+    private static AdjList edges(String... targets) {
+        AdjList l = new AdjList();
+        for (String t : targets) {
+            l.addEdge(t, 1);
+        }
+        return l;
+    }
+
+    /**
+     * Builds a root module of nodes a, b and c, where c is a nested module
+     * of nodes x and y.
+     */
+    private void buildGraph(int maxHops, int failBOn) {
+        nk.addNode("a", new LoggingNode("a", log, 0));
+        nk.addNode("b", new LoggingNode("b", log, failBOn));
+        nk.addNode("x", new LoggingNode("x", log, 0));
+        nk.addNode("y", new LoggingNode("y", log, 0));
+
+        Map<String, AdjList> inner = new HashMap<String, AdjList>();
+        inner.put("x", edges("y", "END"));
+        inner.put("y", edges("x", "END"));
+        nk.addNode("c", new ModuleBuilder("inner.xml", nk).adjMap(inner).build("x"));
+
+        Map<String, AdjList> outer = new HashMap<String, AdjList>();
+        outer.put("a", edges("b", "c"));
+        outer.put("b", edges("a", "c"));
+        outer.put("c", edges("a", "b"));
+        Map<String, Properties> nodeProps = new HashMap<String, Properties>();
+        Properties initProps = new Properties();
+        initProps.setProperty(Module.PROPERTY_MAX_HOPS, Integer.toString(maxHops));
+        nodeProps.put(Module.INIT_NODE_ID, initProps);
+        nk.addNode("outer.xml", new ModuleBuilder("outer.xml", nk).adjMap(outer)
+                   .nodeProps(nodeProps).build("a"));
+    }
+
+    private List<String> record(File dir) throws Exception {
+        TraceRecorder recorder = new TraceRecorder(dir, TraceRecorder.DEFAULT_SEGMENT_SIZE / 64, 1.0);
+        f.setTraceRecorder(recorder);
+        f.run("outer.xml", new Environment(), 1);
+        f.setTraceRecorder(null);
+        recorder.close();
+        List<String> recorded = new ArrayList<String>(log);
+        log.clear();
+        return recorded;
+    }
+
+    @Test public void testReplay() throws Exception {
+        buildGraph(500, 0);
+        File dir = folder.newFolder("trace");
+        List<String> recorded = record(dir);
+        assertTrue(recorded.contains("x"));
+
+        WalkResult result = f.replay("outer.xml", new Environment(), dir, 0);
+        assertTrue(result.succeeded());
+        assertEquals(recorded, log);
+    }
+
+    @Test public void testReplayFailure() throws Exception {
+        buildGraph(0, 50);
+        File dir = folder.newFolder("trace");
+        List<String> recorded = record(dir);
+        assertEquals("b", recorded.get(recorded.size() - 1));
+
+        ((LoggingNode) nk.getNode("b")).visits = 0;
+        WalkResult result = f.replay("outer.xml", new Environment(), dir, 0);
+        assertFalse(result.succeeded());
+        assertTrue(result.getFailure() instanceof NodeException);
+        assertEquals(recorded, log);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testReplay_WrongGraph() throws Exception {
+        buildGraph(10, 0);
+        File dir = folder.newFolder("trace");
+        record(dir);
+        f.replay("c", new Environment(), dir, 0);
+    }
+
+    @Test(expected=java.io.IOException.class)
+    public void testReplay_Sampled() throws Exception {
+        buildGraph(1000, 0);
+        File dir = folder.newFolder("trace");
+        TraceRecorder recorder = new TraceRecorder(dir, TraceRecorder.DEFAULT_SEGMENT_SIZE / 64, 0.5);
+        f.setTraceRecorder(recorder);
+        f.run("outer.xml", new Environment(), 1);
+        recorder.close();
+        f.replay("outer.xml", new Environment(), dir, 0);
+    }
+
+    @Test public void testSeed() throws Exception {
+        buildGraph(200, 0);
+        f.setSeed(1234L);
+        f.run("outer.xml", new Environment(), 3);
+        List<String> first = new ArrayList<String>(log);
+        log.clear();
+        f.run("outer.xml", new Environment(), 1);
+        List<String> walker0 = new ArrayList<String>(log);
+        log.clear();
+        f.run("outer.xml", new Environment(), 1);
+        assertEquals(walker0, log);
+        assertTrue(first.size() > walker0.size());
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import com.cloudera.titubate.Module.AdjList;
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class ShrinkerTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String[] IDS = { "n1", "n2", "n3", "arm", "bad" };
+
+    /**
+     * Counts visits to it in the state.
+     */
+    private static class ArmNode extends Node {
+        @Override
+        public void visit(Environment env, State state, Properties props) {
+            Integer armed = state.getInt("armed");
+            state.set("armed", armed == null ? 1 : armed + 1);
+        }
+    }
+    /**
+     * Fails once the arm node has been visited three times.
+     */
+    private static class BadNode extends Node {
+        @Override
+        public void visit(Environment env, State state, Properties props)
+            throws NodeException {
+            Integer armed = state.getInt("armed");
+            if (armed != null && armed >= 3) {
+                throw new NodeException(new IllegalStateException("armed " + armed));
+            }
+        }
+    }
+
+    private static class Factory implements Shrinker.GraphFactory {
+        private final int maxHops;
+        Factory(int maxHops) {
+            this.maxHops = maxHops;
+        }
+        @Override
+        public Node newGraph() {
+            NodeKeeper nk = new NodeKeeper(new NodeFactory(null, null));
+            nk.addNode("arm", new ArmNode());
+            nk.addNode("bad", new BadNode());
+            Map<String, AdjList> adjMap = new HashMap<String, AdjList>();
+            for (String id : IDS) {
+                if (!id.equals("arm") && !id.equals("bad")) {
+                    nk.addNode(id, new DummyNode(id));
+                }
+                AdjList l = new AdjList();
+                for (String t : IDS) {
+                    l.addEdge(t, t.equals("arm") || t.equals("bad") ? 1 : 5);
+                }
+                adjMap.put(id, l);
+            }
+            Map<String, Properties> nodeProps = new HashMap<String, Properties>();
+            Properties initProps = new Properties();
+            initProps.setProperty(Module.PROPERTY_MAX_HOPS, Integer.toString(maxHops));
+            nodeProps.put(Module.INIT_NODE_ID, initProps);
+            Module m = new ModuleBuilder("shrink.xml", nk).adjMap(adjMap)
+                .nodeProps(nodeProps).build("n1");
+            nk.addNode("shrink.xml", m);
+            return m;
+        }
+    }
+
+    private File dir;
+    @Before public void setUp() throws Exception {
+        dir = folder.newFolder("trace");
+    }
+
+    private void record(int maxHops) throws Exception {
+        final Node graph = new Factory(maxHops).newGraph();
+        NodeKeeper nk = new NodeKeeper(new NodeFactory(null, null)) {
+            @Override
+            public Node getNode(String id) {
+                return graph;
+            }
+        };
+        Framework f = new Framework(nk);
+        f.setSeed(42L);
+        TraceRecorder recorder = new TraceRecorder(dir, TraceRecorder.DEFAULT_SEGMENT_SIZE / 64, 1.0);
+        f.setTraceRecorder(recorder);
+        f.run("shrink.xml", new Environment(), 1);
+        recorder.close();
+    }
+
+    @Test public void testShrink() throws Exception {
+        record(0);
+        File outDir = new File(folder.getRoot(), "shrunk");
+        Shrinker s = new Shrinker(new Factory(0), new Environment(), 4);
+        Shrinker.Result r = s.shrink(dir, 0, outDir);
+
+        assertTrue(r.getOriginalSteps() > 4);
+        assertEquals(Arrays.asList("arm", "arm", "arm", "bad"), r.getSteps());
+        assertSame(IllegalStateException.class, Shrinker.failureType(r.getFailure()));
+        assertTrue(r.getReplays() > 1);
+
+        // The shrunken trace replays to the same failure.
+        Replay replay = Replay.fromTrace(outDir, 0);
+        assertEquals(4, replay.size());
+        WalkResult w = Framework.replay(new Factory(0).newGraph(), new Environment(), replay, 0);
+        assertSame(IllegalStateException.class, Shrinker.failureType(w.getFailure()));
+    }
+
+    @Test public void testNoFailure() throws Exception {
+        record(2);
+        Shrinker s = new Shrinker(new Factory(2), new Environment(), 2);
+        Shrinker.Result r = s.shrink(dir, 0, null);
+        assertNull(r.getFailure());
+        assertEquals(3, r.getOriginalSteps());
+        assertEquals(3, r.getSteps().size());
+    }
+
+    @Test public void testFailureType() {
+        Exception cause = new IllegalArgumentException();
+        assertSame(IllegalArgumentException.class,
+                   Shrinker.failureType(new NodeException(new NodeException(cause))));
+        assertSame(NodeException.class, Shrinker.failureType(new NodeException("x")));
+    }
+}
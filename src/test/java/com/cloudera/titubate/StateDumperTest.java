@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.LoggerFactory;
+import static org.junit.Assert.*;
+
+public class StateDumperTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private String dump(StateDumper d, String key, Object value) throws Exception {
+        StringWriter w = new StringWriter();
+        d.dump(Collections.singletonMap(key, value), w);
+        return w.toString();
+    }
+
+    @Test public void testSimple() throws Exception {
+        StateDumper d = new StateDumper();
+        assertEquals("{a = |1|}", dump(d, "a", 1));
+        assertEquals("{a = |null|}", dump(d, "a", null));
+        assertEquals("{a = |x|}", dump(d, "a", "x".getBytes("UTF-8")));
+        assertEquals("{a = |[1, 2]|}", dump(d, "a", java.util.Arrays.asList(1, 2)));
+        assertEquals("{a = |int[] -> [1, 2]|}", dump(d, "a", new int[] { 1, 2 }));
+    }
+    @Test public void testValueLength() throws Exception {
+        StateDumper d = new StateDumper(4, 100, 1000L, null, false);
+        assertEquals("{a = |abcd...|}", dump(d, "a", "abcdefg"));
+        assertEquals("{a = |abcd...|}", dump(d, "a", "abcdefg".getBytes("UTF-8")));
+    }
+    @Test public void testElements() throws Exception {
+        StateDumper d = new StateDumper(1000, 2, 1000L, null, false);
+        assertEquals("{a = |[1, 2, ... (3 elements)]|}", dump(d, "a", java.util.Arrays.asList(1, 2, 3)));
+        Map<String, Integer> m = new HashMap<String, Integer>();
+        m.put("x", 1);
+        assertEquals("{a = |{x=1}|}", dump(d, "a", m));
+    }
+    @Test public void testHugeCollection() throws Exception {
+        // A list far too large to build a string of.
+        List<Integer> huge = new AbstractList<Integer>() {
+            @Override public Integer get(int i) {
+                return i;
+            }
+            @Override public int size() {
+                return Integer.MAX_VALUE;
+            }
+        };
+        String s = dump(new StateDumper(), "a", huge);
+        assertTrue(s, s.endsWith(", 99, ... (" + Integer.MAX_VALUE + " elements)]|}"));
+    }
+    @Test public void testHugeNestedCollection() throws Exception {
+        List<Integer> huge = new AbstractList<Integer>() {
+            @Override public Integer get(int i) {
+                return i;
+            }
+            @Override public int size() {
+                return Integer.MAX_VALUE;
+            }
+        };
+        StateDumper d = new StateDumper(1000, 3, 10000L, null, false);
+        Map<String, List<Integer>> m = new HashMap<String, List<Integer>>();
+        m.put("x", huge);
+        assertEquals("{a = |{x=[0, 1, 2, ... (" + Integer.MAX_VALUE + " elements)]}|}",
+                     dump(d, "a", m));
+        Object[] nested = { Collections.singletonList(huge) };
+        assertEquals("{a = |java.lang.Object[] -> [[[0, 1, 2, ... (" + Integer.MAX_VALUE + " elements)]]]|}",
+                     dump(d, "a", nested));
+        String s = dump(new StateDumper(), "a", Collections.nCopies(1000, huge));
+        assertTrue(s, s.length() < StateDumper.DEFAULT_MAX_VALUE_LENGTH + 100);
+    }
+    @Test public void testTotalLength() throws Exception {
+        StateDumper d = new StateDumper(1000, 100, 10L, null, false);
+        Map<String, String> m = new HashMap<String, String>();
+        for (int i = 0; i < 100; i++) {
+            m.put("key" + i, "value" + i);
+        }
+        StringWriter w = new StringWriter();
+        d.dump(m, w);
+        assertEquals(10 + "...[dump truncated]".length(), w.toString().length());
+        assertTrue(w.toString().endsWith("...[dump truncated]"));
+    }
+    @Test public void testFailingValue() throws Exception {
+        List<Integer> bad = new ArrayList<Integer>() {
+            @Override public java.util.Iterator<Integer> iterator() {
+                throw new IllegalStateException("bad");
+            }
+        };
+        String s = dump(new StateDumper(), "a", bad);
+        assertTrue(s, s.contains("<unavailable: java.lang.IllegalStateException: bad>"));
+    }
+    @Test public void testStateDump() throws Exception {
+        State state = new State();
+        state.set("a", "x");
+        StringWriter w = new StringWriter();
+        state.dump(w, new StateDumper());
+        assertEquals("{a = |x|}", w.toString());
+        assertEquals("{a = |x|}", state.dump());
+    }
+    @Test public void testDumpFailure() throws Exception {
+        testDumpFailure(false);
+    }
+    @Test public void testDumpFailure_Thread() throws Exception {
+        testDumpFailure(true);
+    }
+    private void testDumpFailure(boolean useThread) throws Exception {
+        File dir = folder.newFolder("dumps" + useThread);
+        StateDumper d = new StateDumper(1000, 100, 1000L, dir, useThread);
+        State state = new State();
+        state.set("a", "x");
+        Properties props = new Properties();
+        props.setProperty("p", "q");
+        d.dumpFailure(LoggerFactory.getLogger(StateDumperTest.class), "node",
+                      props, new Environment(), state);
+        File[] files = dir.listFiles();
+        assertEquals(1, files.length);
+        assertTrue(files[0].getName().startsWith("failure-walker-"));
+        String s = new String(Files.readAllBytes(files[0].toPath()), "UTF-8");
+        assertTrue(s, s.contains("Properties for node: node\n{p=q}\n"));
+        assertTrue(s, s.contains("\nState information\n{a = |x|}\n"));
+    }
+}
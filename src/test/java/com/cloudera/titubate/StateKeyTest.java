@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class StateKeyTest {
+    private static final StateKey<List<String>> LIST =
+        new StateKey<List<String>>("statekeytest.list");
+    private static final StateKey<String> STRING =
+        new StateKey<String>("statekeytest.string");
+    private static final IntKey INT = new IntKey("statekeytest.int");
+    private static final LongKey LONG = new LongKey("statekeytest.long");
+
+    private State state;
+    @Before public void setUp() {
+        state = new State();
+    }
+    @Test public void testObject() {
+        List<String> l = java.util.Collections.singletonList("x");
+        assertFalse(LIST.has(state));
+        assertNull(LIST.get(state));
+        LIST.set(state, l);
+        assertTrue(LIST.has(state));
+        assertSame(l, LIST.get(state));
+        assertFalse(state.has("statekeytest.list"));
+        LIST.remove(state);
+        assertFalse(LIST.has(state));
+    }
+    @Test public void testInt() {
+        assertFalse(INT.has(state));
+        assertEquals(0, INT.getInt(state));
+        INT.setInt(state, 41);
+        assertEquals(42, INT.add(state, 1));
+        assertEquals(Integer.valueOf(42), INT.get(state));
+        INT.remove(state);
+        assertFalse(INT.has(state));
+    }
+    @Test public void testStringKeyApart() {
+        INT.setInt(state, 42);
+        assertNull(state.get("statekeytest.int"));
+        state.set("statekeytest.int", 7L);
+        assertEquals(Long.valueOf(7L), state.getLong("statekeytest.int"));
+        assertEquals(42, INT.getInt(state));
+        state.remove("statekeytest.int");
+        assertTrue(INT.has(state));
+    }
+    @Test public void testLong() {
+        LONG.setLong(state, 1L << 40);
+        assertEquals((1L << 40) + 1L, LONG.add(state, 1L));
+        assertEquals((1L << 40) + 1L, LONG.getLong(state));
+        assertTrue(state.dump().contains("statekeytest.long = |1099511627777|"));
+    }
+    @Test public void testSameName() {
+        IntKey other = new IntKey("statekeytest.int");
+        assertEquals(INT, other);
+        INT.setInt(state, 5);
+        assertEquals(5, other.getInt(state));
+    }
+    @Test public void testNameOfOtherKind() {
+        LongKey other = new LongKey("statekeytest.int");
+        assertFalse(other.equals(INT));
+        INT.setInt(state, 5);
+        assertFalse(other.has(state));
+        other.setLong(state, 6L);
+        assertEquals(5, INT.getInt(state));
+    }
+    @Test public void testConcurrentState() {
+        ConcurrentState shared = new ConcurrentState();
+        INT.setInt(shared, 1);
+        assertEquals(3, INT.add(shared, 2));
+        assertNull(shared.get("statekeytest.int"));
+
+        WalkerState local = new WalkerState(shared);
+        assertFalse(INT.has(local));
+        local.share(INT);
+        assertEquals(4, INT.add(local, 1));
+        assertEquals(4, INT.getInt(shared));
+    }
+    @Test public void testShareStringKeyOnly() {
+        ConcurrentState shared = new ConcurrentState();
+        WalkerState local = new WalkerState(shared);
+        local.share("statekeytest.string");
+        assertFalse(shared.isShared(STRING));
+        STRING.set(local, "local");
+        local.set("statekeytest.string", "shared");
+        assertEquals("local", STRING.get(local));
+        assertFalse(STRING.has(shared));
+        assertEquals("shared", shared.get("statekeytest.string"));
+
+        WalkerState other = new WalkerState(shared);
+        assertFalse(STRING.has(other));
+        assertEquals("shared", other.get("statekeytest.string"));
+    }
+}
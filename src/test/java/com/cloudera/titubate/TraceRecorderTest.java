@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import com.cloudera.titubate.Module.AdjList;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class TraceRecorderTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+    private Module m;
+    @Before public void setUp() {
+        dir = new File(folder.getRoot(), "trace");
+        NodeKeeper nk = new NodeKeeper(new NodeFactory(null, null));
+        Map<String, AdjList> adjMap = new HashMap<String, AdjList>();
+        AdjList l = new AdjList();
+        l.addEdge("dummy.b", 1);
+        adjMap.put("dummy.a", l);
+        l = new AdjList();
+        l.addEdge("dummy.a", 1);
+        adjMap.put("dummy.b", l);
+        Map<String, Properties> nodeProps = new HashMap<String, Properties>();
+        Properties initProps = new Properties();
+        initProps.setProperty(Module.PROPERTY_MAX_HOPS, "99");
+        nodeProps.put(Module.INIT_NODE_ID, initProps);
+        m = new ModuleBuilder("test.xml", nk).adjMap(adjMap)
+            .nodeProps(nodeProps).build("dummy.a");
+    }
+    @After public void tearDown() {
+        Walker.bind(null);
+    }
+
+    private void walk(TraceRecorder recorder, int walkerId) throws Exception {
+        Walker w = new Walker(walkerId, new Random());
+        Walker.bind(w);
+        TraceWriter trace = recorder.openWriter(walkerId);
+        w.setTrace(trace);
+        m.visit(new Environment(), new State(), new Properties());
+        trace.close();
+    }
+
+    @Test public void testRecordAndRead() throws Exception {
+        // 100 visits, 7 records per segment
+        TraceRecorder recorder =
+            new TraceRecorder(dir, 7 * TraceRecorder.RECORD_SIZE + 3, 1.0);
+        walk(recorder, 3);
+        recorder.close();
+        assertTrue(new File(dir, TraceRecorder.segmentName(3, 14)).exists());
+        assertFalse(new File(dir, TraceRecorder.segmentName(3, 15)).exists());
+
+        TraceIndex index = TraceIndex.read(dir);
+        assertEquals(1, index.getModuleCount());
+        assertEquals("test.xml", index.getModule(0));
+
+        TraceReader r = new TraceReader(dir, 3);
+        long count = 0L;
+        while (r.next()) {
+            count++;
+            assertEquals(count, r.getSeq());
+            assertEquals(3, r.getWalkerId());
+            assertEquals(0, r.getModuleId());
+            assertTrue(r.succeeded());
+            assertTrue(r.getDuration() >= 0L);
+            String expected = count % 2 == 1 ? "dummy.a" : "dummy.b";
+            assertEquals(expected, index.getNode(0, r.getNodeIndex()));
+        }
+        assertEquals(100L, count);
+        assertFalse(r.next());
+    }
+
+    @Test public void testSampling() throws Exception {
+        TraceRecorder recorder = new TraceRecorder(dir, TraceRecorder.DEFAULT_SEGMENT_SIZE / 64, 0.5);
+        for (int i = 0; i < 10; i++) {
+            walk(recorder, i);
+        }
+        recorder.close();
+        long count = 0L;
+        for (int i = 0; i < 10; i++) {
+            TraceReader r = new TraceReader(dir, i);
+            long lastSeq = 0L;
+            while (r.next()) {
+                assertTrue(r.getSeq() > lastSeq);
+                assertTrue(r.getSeq() <= 100L);
+                lastSeq = r.getSeq();
+                count++;
+            }
+        }
+        assertEquals(500.0, count, 100.0);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testBadSampleRate() throws Exception {
+        new TraceRecorder(dir, TraceRecorder.DEFAULT_SEGMENT_SIZE, 0.0);
+    }
+
+    @Test public void testFramework() throws Exception {
+        NodeKeeper nk = new NodeKeeper(new NodeFactory(null, null));
+        nk.addNode("test.xml", m);
+        Framework f = new Framework(nk);
+        TraceRecorder recorder = new TraceRecorder(dir, 1024 * TraceRecorder.RECORD_SIZE, 1.0);
+        f.setTraceRecorder(recorder);
+        RunResult result = f.run("test.xml", new Environment(), 2);
+        recorder.close();
+        assertTrue(result.succeeded());
+        for (int i = 0; i < 2; i++) {
+            TraceReader r = new TraceReader(dir, i);
+            long count = 0L;
+            while (r.next()) {
+                count++;
+            }
+            assertEquals(100L, count);
+        }
+    }
+}
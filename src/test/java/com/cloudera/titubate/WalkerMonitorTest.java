@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import com.cloudera.titubate.Module.AdjList;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class WalkerMonitorTest {
+    @After public void tearDown() {
+        Walker.bind(null);
+    }
+
+    private static class Probe extends Node {
+        private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        private final ObjectName name;
+        WalkerMXBean seen;
+        String node;
+        String module;
+        long hops;
+        Probe(ObjectName name) {
+            this.name = name;
+        }
+        @Override
+        public void visit(Environment env, State state, Properties props) {
+            if (seen == null) {
+                seen = JMX.newMXBeanProxy(server, name, WalkerMXBean.class);
+                node = seen.getNode();
+                module = seen.getModule();
+                hops = seen.getHops();
+            }
+        }
+    }
+
+    @Test public void testRegistration() throws Exception {
+        Walker w = new Walker(7, new Random());
+        Walker.bind(w);
+        ObjectName name = WalkerMonitor.nameFor(0, w);
+        Probe probe = new Probe(name);
+
+        NodeKeeper nk = new NodeKeeper(new NodeFactory(null, null));
+        nk.addNode("probe", probe);
+        Map<String, AdjList> adjMap = new HashMap<String, AdjList>();
+        AdjList l = new AdjList();
+        l.addEdge("probe", 1);
+        adjMap.put("dummy.a", l);
+        l = new AdjList();
+        l.addEdge("END", 1);
+        adjMap.put("probe", l);
+        Module m = new ModuleBuilder("test.xml", nk).adjMap(adjMap)
+            .build("dummy.a");
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        WalkerMonitor monitor = WalkerMonitor.register(0, w);
+        assertNotNull(monitor);
+        try {
+            assertTrue(server.isRegistered(name));
+            m.visit(new Environment(), new State(), new Properties());
+            assertEquals("probe", probe.node);
+            assertEquals("test.xml", probe.module);
+            assertEquals(1L, probe.hops);
+
+            WalkerMXBean bean = JMX.newMXBeanProxy(server, name, WalkerMXBean.class);
+            assertEquals(7, bean.getId());
+            assertEquals(2L, bean.getHops());
+            assertNull(bean.getModule());  // walk is over
+            assertEquals(0L, bean.getTimeInNodeMillis());
+            Map<String, Long> counts = bean.getModuleVisitCounts();
+            assertEquals(Long.valueOf(1L), counts.get("test.xml:dummy.a"));
+            assertEquals(Long.valueOf(1L), counts.get("test.xml:probe"));
+
+            // Another walker's visits are not counted for this one
+            Walker other = new Walker(8, new Random());
+            Walker.bind(other);
+            try {
+                m.visit(new Environment(), new State(), new Properties());
+            } finally {
+                Walker.bind(w);
+            }
+            assertEquals(Long.valueOf(1L), bean.getModuleVisitCounts().get("test.xml:probe"));
+        } finally {
+            monitor.unregister();
+        }
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test public void testRegistration_TwoFrameworks() throws Exception {
+        Walker w = new Walker(3, new Random());
+        WalkerMonitor first = WalkerMonitor.register(0, w);
+        WalkerMonitor second = WalkerMonitor.register(1, w);
+        try {
+            assertNotNull(first);
+            assertNotNull(second);
+            assertFalse(WalkerMonitor.nameFor(0, w).equals(WalkerMonitor.nameFor(1, w)));
+        } finally {
+            if (first != null) {
+                first.unregister();
+            }
+            if (second != null) {
+                second.unregister();
+            }
+        }
+    }
+}
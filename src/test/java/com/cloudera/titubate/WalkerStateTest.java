@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class WalkerStateTest {
+    private ConcurrentState shared;
+    private WalkerState state1;
+    private WalkerState state2;
+    @Before public void setUp() {
+        shared = new ConcurrentState();
+        state1 = new WalkerState(shared);
+        state2 = new WalkerState(shared);
+    }
+    @Test public void testLocal() {
+        state1.set("test", "one");
+        state2.set("test", "two");
+        assertEquals("one", state1.getString("test"));
+        assertEquals("two", state2.getString("test"));
+        assertFalse(shared.has("test"));
+        state1.remove("test");
+        assertFalse(state1.has("test"));
+        assertTrue(state2.has("test"));
+    }
+    @Test public void testShared() {
+        state1.share("test");
+        assertSame(shared, state1.getShared());
+        state1.set("test", "one");
+        assertEquals("one", state2.getString("test"));
+        assertEquals("one", shared.getString("test"));
+        assertEquals("one", state2.putIfAbsent("test", "two"));
+        state2.remove("test");
+        assertFalse(state1.has("test"));
+    }
+    @Test public void testShareDiscardsLocal() {
+        state1.set("test", "local");
+        state1.share("test");
+        assertFalse(state1.has("test"));
+        assertNull(state1.get("test"));
+    }
+    @Test public void testDump() {
+        shared.share("s");
+        state1.set("s", "shared");
+        state1.set("l", "local");
+        String dump = state1.dump();
+        assertTrue(dump, dump.startsWith("local "));
+        assertTrue(dump, dump.indexOf("local") < dump.indexOf("shared "));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class WalkerTest {
+    public static class TestAction extends CallableAction {
+        @Override public Void call() {
+            return null;
+        }
+    }
+    private static class NoDefaultConstructorAction extends CallableAction {
+        NoDefaultConstructorAction(int x) {}
+        @Override public Void call() {
+            return null;
+        }
+    }
+
+    @After public void tearDown() {
+        Walker.bind(null);
+    }
+
+    @Test public void testCurrent_Default() throws Exception {
+        Walker w = Walker.current();
+        assertNotNull(w);
+        assertSame(w, Walker.current());
+        CallableNode n = new CallableNode(new TestAction());
+        assertSame(n.getAction(), w.getAction(n));
+    }
+    @Test public void testBind() {
+        Random r = new Random();
+        Walker w = new Walker(3, r);
+        Walker.bind(w);
+        assertSame(w, Walker.current());
+        assertEquals(3, w.getId());
+        assertSame(r, w.getRandom());
+        Walker.bind(null);
+        assertNotSame(w, Walker.current());
+    }
+    @Test public void testOwnActions() throws Exception {
+        CallableNode n = new CallableNode(new TestAction());
+        Walker w1 = new Walker(1, new Random());
+        Walker w2 = new Walker(2, new Random());
+        CallableAction a1 = w1.getAction(n);
+        CallableAction a2 = w2.getAction(n);
+        assertTrue(a1 instanceof TestAction);
+        assertTrue(a2 instanceof TestAction);
+        assertNotSame(n.getAction(), a1);
+        assertNotSame(a1, a2);
+        assertSame(a1, w1.getAction(n));
+    }
+    @Test(expected=NodeException.class)
+    public void testOwnActions_NoDefaultConstructor() throws Exception {
+        CallableNode n = new CallableNode(new NoDefaultConstructorAction(1));
+        new Walker(1, new Random()).getAction(n);
+    }
+    @Test public void testHops() throws Exception {
+        Walker w = new Walker(1, new Random());
+        Walker.bind(w);
+        NodeKeeper nk = new NodeKeeper(new NodeFactory(null, null));
+        Map<String, Module.AdjList> adjMap = new HashMap<String, Module.AdjList>();
+        Module.AdjList l = new Module.AdjList();
+        l.addEdge("dummy.a", 1);
+        adjMap.put("dummy.a", l);
+        Map<String, Properties> nodeProps = new HashMap<String, Properties>();
+        Properties initProps = new Properties();
+        initProps.setProperty(Module.PROPERTY_MAX_HOPS, "25");
+        nodeProps.put(Module.INIT_NODE_ID, initProps);
+        new ModuleBuilder("test.xml", nk).adjMap(adjMap).nodeProps(nodeProps)
+            .build("dummy.a").visit(new Environment(), new State(), new Properties());
+        assertEquals(25L, w.getHops());
+    }
+}
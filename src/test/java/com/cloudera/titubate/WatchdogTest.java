@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class WatchdogTest {
+    private static final long LONG_TIME = 1000L;
+
+    private Watchdog wd;
+    private Walker w;
+    private Node n;
+    @Before public void setUp() {
+        wd = new Watchdog(LONG_TIME, 60000L);
+        w = new Walker(1, new Random());
+        n = new DummyNode("dummy");
+    }
+
+    @Test public void testLifecycle() {
+        assertFalse(wd.isRunning());
+        Walker w2 = new Walker(2, new Random());
+        wd.register(w);
+        assertTrue(wd.isRunning());
+        wd.register(w2);
+        wd.deregister(w);
+        assertTrue(wd.isRunning());
+        wd.deregister(w2);
+        assertFalse(wd.isRunning());
+        wd.register(w);
+        assertTrue(wd.isRunning());
+        wd.deregister(w);
+        assertFalse(wd.isRunning());
+    }
+
+    @Test public void testScan() {
+        wd.register(w);
+        try {
+            long now = System.currentTimeMillis();
+            wd.scan(now + 2 * LONG_TIME);
+            assertFalse(w.isRunningLong());  // not visiting anything
+
+            w.startTimedVisit(n);
+            wd.scan(now + LONG_TIME / 2);
+            assertFalse(w.isRunningLong());
+            wd.scan(now + 2 * LONG_TIME);
+            assertTrue(w.isRunningLong());
+            w.endTimedVisit();
+            assertNull(w.getTimedNode());
+
+            w.startTimedVisit(n);
+            assertFalse(w.isRunningLong());
+        } finally {
+            wd.deregister(w);
+        }
+    }
+
+    @Test public void testScan_Progress() {
+        wd.register(w);
+        try {
+            w.startTimedVisit(n);
+            long start = System.currentTimeMillis();
+            w.progress();
+            wd.scan(w.getProgress() + LONG_TIME / 2);
+            assertFalse(w.isRunningLong());
+            Walker.bind(w);
+            try {
+                n.progress();
+            } finally {
+                Walker.bind(null);
+            }
+            wd.scan(Math.max(start, w.getProgress()) + LONG_TIME / 2);
+            assertFalse(w.isRunningLong());
+        } finally {
+            wd.deregister(w);
+        }
+    }
+
+    @Test public void testScan_OtherWalkerProgress() {
+        wd.register(w);
+        try {
+            w.startTimedVisit(n);
+            long start = w.getProgress();
+            Walker other = new Walker(2, new Random());
+            Walker.bind(other);
+            try {
+                other.startTimedVisit(n);
+                n.progress();  // progress by another walker on the same node
+            } finally {
+                Walker.bind(null);
+            }
+            wd.scan(start + 2 * LONG_TIME);
+            assertTrue(w.isRunningLong());
+        } finally {
+            wd.deregister(w);
+        }
+    }
+
+    @Test public void testScan_WorkerThreadProgress() throws Exception {
+        wd.register(w);
+        try {
+            w.startTimedVisit(n);
+            final long start = w.getProgress();
+            Thread worker = new Thread(new Runnable() {
+                @Override public void run() {
+                    while (System.currentTimeMillis() == start) {
+                        Thread.yield();
+                    }
+                    n.progress();
+                }
+            });
+            worker.start();
+            worker.join();
+            assertEquals(start, w.getProgress());
+            assertTrue(n.getWorkerProgress() > start);
+            wd.scan(start + LONG_TIME + 1L);
+            assertFalse(w.isRunningLong());
+            wd.scan(n.getWorkerProgress() + 2 * LONG_TIME);
+            assertTrue(w.isRunningLong());
+        } finally {
+            wd.deregister(w);
+        }
+    }
+
+    @Test public void testScan_Unregistered() {
+        w.startTimedVisit(n);
+        wd.scan(System.currentTimeMillis() + 2 * LONG_TIME);
+        assertFalse(w.isRunningLong());
+    }
+
+    @Test public void testWalkerRegistration() throws Exception {
+        Walker.bind(w);
+        try {
+            assertFalse(Watchdog.get().isRunning());
+            w.enterModule(null);
+            assertTrue(Watchdog.get().isRunning());
+            w.enterModule(null);
+            w.exitModule();
+            assertTrue(Watchdog.get().isRunning());
+            w.exitModule();
+            assertFalse(Watchdog.get().isRunning());
+        } finally {
+            Walker.bind(null);
+        }
+    }
+}
@@ -2,12 +2,16 @@ package com.cloudera.titubate;
 
 import com.cloudera.titubate.Module.AdjList;
 import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
 import java.net.URISyntaxException;
 import java.util.Map;
 import java.util.Properties;
 import org.junit.Before;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import static org.junit.Assert.*;
 import org.easymock.Capture;
 import static org.easymock.EasyMock.*;
@@ -23,8 +27,20 @@ public class XmlModuleFactoryTest {
             new File(XmlModuleFactoryTest.class.getResource("/").toURI());
     }
 
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
     private NodeFactory nf;
     private XmlModuleFactory xmf;
+
+    private File writeModule(String name, String xml) throws Exception {
+        File f = folder.newFile(name);
+        Writer w = new FileWriter(f);
+        try {
+            w.write(xml);
+        } finally {
+            w.close();
+        }
+        return f;
+    }
     @Before public void setUp() {
         nf = createMock(NodeFactory.class);
     }
@@ -48,10 +64,10 @@ public class XmlModuleFactoryTest {
         assertEquals(2, adjMap.size());
         AdjList l = adjMap.get("dummy.node0");
         assertEquals(1, l.size());
-        assertEquals(1, l.weight("dummy.node1"));
+        assertEquals(1, l.weight("dummy.node1"), 0.0);
         l = adjMap.get("dummy.node1");
         assertEquals(1, l.size());
-        assertEquals(2, l.weight("END"));
+        assertEquals(2, l.weight("END"), 0.0);
     }
 
     @Test public void testPrefixes() throws Exception {
@@ -73,10 +89,10 @@ public class XmlModuleFactoryTest {
         assertEquals(2, adjMap.size());
         AdjList l = adjMap.get("dummy.node0");
         assertEquals(1, l.size());
-        assertEquals(1, l.weight("a.Node1"));
+        assertEquals(1, l.weight("a.Node1"), 0.0);
         l = adjMap.get("a.Node1");
         assertEquals(1, l.size());
-        assertEquals(2, l.weight("END"));
+        assertEquals(2, l.weight("END"), 0.0);
     }
 
     private Module readDummyNode0Module(String resource) throws Exception {
@@ -152,14 +168,14 @@ public class XmlModuleFactoryTest {
         assertEquals(3, adjMap.size());
         AdjList l = adjMap.get("dummy.node0");
         assertEquals(2, l.size());
-        assertEquals(1, l.weight("dummy.node1a"));
-        assertEquals(2, l.weight("dummy.node1b"));
+        assertEquals(1, l.weight("dummy.node1a"), 0.0);
+        assertEquals(2, l.weight("dummy.node1b"), 0.0);
         l = adjMap.get("dummy.node1a");
         assertEquals(1, l.size());
-        assertEquals(3, l.weight("END"));
+        assertEquals(3, l.weight("END"), 0.0);
         l = adjMap.get("dummy.node1b");
         assertEquals(1, l.size());
-        assertEquals(4, l.weight("END"));
+        assertEquals(4, l.weight("END"), 0.0);
     }
     @Test public void testImplicitEND() throws Exception {
         File f = getFile("/implicitend.xml");
@@ -176,13 +192,69 @@ public class XmlModuleFactoryTest {
         assertEquals(2, adjMap.size());
         AdjList l = adjMap.get("dummy.node0");
         assertEquals(1, l.size());
-        assertEquals(1, l.weight("dummy.node1"));
+        assertEquals(1, l.weight("dummy.node1"), 0.0);
         l = adjMap.get("dummy.node1");
         assertEquals(1, l.size());
-        assertEquals(1, l.weight("END"));
+        assertEquals(1, l.weight("END"), 0.0);
+    }
+    @Test public void testRepeatedId() throws Exception {
+        File f = writeModule("repeated.xml",
+            "<module><init id=\"dummy.node0\"/>" +
+            "<node id=\"dummy.node0\"/><node id=\"dummy.node0\"/></module>");
+        xmf = new XmlModuleFactory(f, moduleDir);
+        xmf.setTestNodeFactory(nf);
+        expect(nf.createNode("dummy.node0")).andReturn(createMock(Node.class));
+        replay(nf);
+        try {
+            xmf.getModule();
+            fail("Repeated node ID should be rejected");
+        } catch (Exception e) {
+            assertEquals("Module already contains node with ID dummy.node0", e.getMessage());
+        }
+    }
+    @Test public void testMalformed() throws Exception {
+        File f = writeModule("malformed.xml",
+            "<module><init id=\"dummy.node0\"/><node id=\"dummy.node0\"></module>");
+        xmf = new XmlModuleFactory(f, moduleDir);
+        xmf.setTestNodeFactory(nf);
+        expect(nf.createNode("dummy.node0")).andReturn(createMock(Node.class));
+        replay(nf);
+        try {
+            xmf.getModule();
+            fail("Malformed XML should be rejected");
+        } catch (Exception e) {
+            assertEquals("Failed to parse: " + f, e.getMessage());
+        }
+    }
+    @Test public void testSchemaViolationTolerated() throws Exception {
+        // an attribute the schema does not allow is logged, not fatal
+        File f = writeModule("invalid.xml",
+            "<module><init id=\"dummy.node0\" color=\"red\"/>" +
+            "<node id=\"dummy.node0\"><edge id=\"END\" weight=\"2\"/></node></module>");
+        xmf = new XmlModuleFactory(f, moduleDir);
+        xmf.setTestNodeFactory(nf);
+        expect(nf.createNode("dummy.node0")).andReturn(createMock(Node.class));
+        replay(nf);
+        Module m = xmf.getModule();
+        assertEquals(2, m.getAdjacencyMap().get("dummy.node0").weight("END"), 0.0);
+        assertEquals("", m.getProps(Module.INIT_NODE_ID).getProperty(Module.PROPERTY_MAX_HOPS));
+    }
+    @Test public void testEdgeIdsShared() throws Exception {
+        File f = getFile("/multipleedges.xml");
+        xmf = new XmlModuleFactory(f, moduleDir);
+        NodeFactory nf2 = createMock(NodeFactory.class);
+        xmf.setTestNodeFactory(nf2);
+        expect(nf2.createNode(anyObject(String.class))).andReturn(createMock(Node.class)).times(3);
+        replay(nf2);
+        Module m = xmf.getModule();
+        String target = m.getAdjacencyMap().get("dummy.node0").nodeId(0);
+        for (String id : m.getAdjacencyMap().keySet()) {
+            if (id.equals(target)) {
+                assertSame(id, target);
+            }
+        }
     }
     // error conditions to test:
-    // - repeated ID
     // - malformed alias
     // - malformed node property
     // - forbidden node properties
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate.collections;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PrimitiveMapTest {
+    @Test public void testLongLongMap() {
+        LongLongMap map = new LongLongMap();
+        final Map<Long, Long> expected = new HashMap<Long, Long>();
+        Random random = new Random(1L);
+        for (int i = 0; i < 50000; i++) {
+            long key = random.nextInt(3000) - 100;
+            switch (random.nextInt(4)) {
+            case 0:
+                assertEquals(expected.remove(key) != null, map.remove(key));
+                break;
+            case 1:
+                long sum = (expected.containsKey(key) ? expected.get(key) : 0L) + 3L;
+                expected.put(key, sum);
+                assertEquals(sum, map.add(key, 3L));
+                break;
+            default:
+                long value = random.nextLong();
+                expected.put(key, value);
+                map.put(key, value);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (long key = -100L; key < 2900L; key++) {
+            assertEquals(expected.containsKey(key), map.containsKey(key));
+            Long value = expected.get(key);
+            assertEquals(value != null ? value : -1L, map.get(key, -1L));
+        }
+        map.forEach(new LongLongMap.Visitor() {
+            @Override public void visit(long key, long value) {
+                assertEquals(Long.valueOf(value), expected.remove(key));
+            }
+        });
+        assertTrue(expected.isEmpty());
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertFalse(map.containsKey(0L));
+    }
+
+    @Test public void testIntIntMap() {
+        IntIntMap map = new IntIntMap(4);
+        assertEquals(0, map.get(7));
+        assertEquals(9, map.get(7, 9));
+        map.put(0, 5);
+        map.put(7, 6);
+        assertEquals(7, map.add(0, 2));
+        assertEquals(1, map.add(8, 1));
+        assertEquals(3, map.size());
+        for (int i = 100; i < 200; i++) {
+            map.put(i, -i);
+        }
+        assertEquals(103, map.size());
+        assertEquals(-150, map.get(150));
+        assertTrue(map.remove(0));
+        assertFalse(map.remove(0));
+        assertFalse(map.containsKey(0));
+        assertEquals("{7=6}", removeAllBut(map, 7).toString());
+    }
+    private static IntIntMap removeAllBut(IntIntMap map, int keep) {
+        final Set<Integer> keys = new HashSet<Integer>();
+        map.forEach(new IntIntMap.Visitor() {
+            @Override public void visit(int key, int value) {
+                keys.add(key);
+            }
+        });
+        for (int key : keys) {
+            if (key != keep) {
+                assertTrue(map.remove(key));
+            }
+        }
+        return map;
+    }
+
+    @Test public void testLongObjectMap() {
+        LongObjectMap<String> map = new LongObjectMap<String>();
+        Map<Long, String> expected = new HashMap<Long, String>();
+        Random random = new Random(2L);
+        for (int i = 0; i < 50000; i++) {
+            long key = random.nextInt(3000) - 100;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                String value = Integer.toString(i);
+                assertEquals(expected.put(key, value), map.put(key, value));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (long key = -100L; key < 2900L; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+    }
+
+    @Test(expected=NullPointerException.class)
+    public void testLongObjectMap_NullValue() {
+        new LongObjectMap<String>().put(1L, null);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testNegativeSize() {
+        new LongLongMap(-1);
+    }
+
+    @Test public void testToStringIsBounded() {
+        LongLongMap map = new LongLongMap();
+        LongObjectMap<String> objects = new LongObjectMap<String>();
+        for (long i = 0L; i < 1000L; i++) {
+            map.put(i, i);
+            objects.put(i, "x");
+        }
+        assertTrue(map.toString().endsWith(", ... (1000 elements)}"));
+        assertTrue(objects.toString().endsWith(", ... (1000 elements)}"));
+        assertTrue(map.toString().length() < 400);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate.collections;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PrimitiveSetTest {
+    @Test public void testLongSet() {
+        LongSet set = new LongSet();
+        final Set<Long> expected = new HashSet<Long>();
+        Random random = new Random(3L);
+        for (int i = 0; i < 50000; i++) {
+            long e = random.nextInt(3000) - 100;
+            if (random.nextBoolean()) {
+                assertEquals(expected.remove(e), set.remove(e));
+            } else {
+                assertEquals(expected.add(e), set.add(e));
+            }
+        }
+        assertEquals(expected.size(), set.size());
+        for (long e = -100L; e < 2900L; e++) {
+            assertEquals(expected.contains(e), set.contains(e));
+        }
+        set.forEach(new LongSet.Visitor() {
+            @Override public void visit(long e) {
+                assertTrue(expected.remove(e));
+            }
+        });
+        assertTrue(expected.isEmpty());
+    }
+
+    @Test public void testIntSet() {
+        IntSet set = new IntSet();
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        assertTrue(set.add(-5));
+        assertTrue(set.contains(0));
+        assertEquals(2, set.size());
+        assertTrue(set.remove(0));
+        assertEquals("[-5]", set.toString());
+        set.clear();
+        assertTrue(set.isEmpty());
+    }
+
+    @Test public void testLongBitSet() {
+        LongBitSet bits = new LongBitSet(0L);
+        assertFalse(bits.get(1000L));
+        assertTrue(bits.set(3L));
+        assertFalse(bits.set(3L));
+        assertTrue(bits.set(1L << 20));
+        assertTrue(bits.set(64L));
+        assertEquals(3L, bits.cardinality());
+        assertTrue(bits.get(1L << 20));
+        assertEquals(3L, bits.nextSetBit(0L));
+        assertEquals(64L, bits.nextSetBit(4L));
+        assertEquals(1L << 20, bits.nextSetBit(65L));
+        assertEquals(-1L, bits.nextSetBit((1L << 20) + 1L));
+        assertEquals(0L, bits.nextClearBit(0L));
+        assertEquals(4L, bits.nextClearBit(3L));
+        assertTrue(bits.clear(64L));
+        assertFalse(bits.clear(64L));
+        assertFalse(bits.clear(1L << 30));
+        assertEquals(2L, bits.cardinality());
+        bits.clear();
+        assertEquals(-1L, bits.nextSetBit(0L));
+    }
+
+    @Test public void testLongBitSet_NextClearBitFull() {
+        LongBitSet bits = new LongBitSet(128L);
+        for (long i = 0L; i < 128L; i++) {
+            bits.set(i);
+        }
+        assertEquals(128L, bits.nextClearBit(5L));
+        assertEquals("{1, 2}", bitsOf(1L, 2L).toString());
+    }
+    private static LongBitSet bitsOf(long... indexes) {
+        LongBitSet bits = new LongBitSet();
+        for (long i : indexes) {
+            bits.set(i);
+        }
+        return bits;
+    }
+
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void testLongBitSet_Negative() {
+        new LongBitSet().set(-1L);
+    }
+
+    @Test public void testCounters() {
+        Counters c = new Counters(2);
+        assertEquals(1L, c.increment(5));
+        assertEquals(4L, c.add(5, 3L));
+        assertEquals(2L, c.add(0, 2L));
+        assertEquals(0L, c.get(3));
+        assertEquals(0L, c.get(100));
+        assertEquals(6, c.length());
+        assertEquals(6L, c.total());
+        assertEquals("[2, 0, 0, 0, 0, 4]", c.toString());
+        c.clear();
+        assertEquals(0, c.length());
+        assertEquals(0L, c.get(5));
+    }
+
+    @Test public void testToStringIsBounded() {
+        Counters c = new Counters();
+        c.increment(999);
+        assertEquals("[0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, ... (1000 elements)]",
+                     c.toString());
+        LongSet set = new LongSet();
+        for (long i = 0L; i < 1000L; i++) {
+            set.add(i);
+        }
+        assertTrue(set.toString().endsWith(", ... (1000 elements)]"));
+        LongBitSet bits = new LongBitSet();
+        for (long i = 0L; i < 1000L; i++) {
+            bits.set(i);
+        }
+        assertEquals("{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, ... (1000 elements)}",
+                     bits.toString());
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import com.cloudera.titubate.Module.AdjList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of choosing the next node, by fan-out, both on an
+ * {@link AdjList} and on a compiled {@link ModuleGraph}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AdjListBenchmark {
+  @Param({"2", "16", "128", "1024"})
+  int fanOut;
+
+  private AdjList adjList;
+  private ModuleGraph graph;
+  private Random random;
+
+  @Setup
+  public void setUp() {
+    random = new Random(42L);
+    adjList = new AdjList(new Random(42L));
+    for (int i = 0; i < fanOut; i++) {
+      adjList.addEdge("dummy." + i, 1 + random.nextInt(100));
+    }
+    adjList.randomNeighbor();  // builds the alias table
+
+    SyntheticGraphs.Spec spec = new SyntheticGraphs.Spec();
+    spec.numNodes = Math.max(fanOut, 16);
+    spec.fanOut = fanOut;
+    graph = SyntheticGraphs.buildModule(spec).getGraph();
+  }
+
+  @Benchmark
+  public String adjListRandomNeighbor() {
+    return adjList.randomNeighbor();
+  }
+
+  @Benchmark
+  public int graphRandomNeighbor() {
+    return graph.randomNeighbor(graph.initIndex(), random);
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Checks that the framework allocates nothing per hop when walking graphs of
+ * {@link DummyNode}s, which themselves allocate nothing, flat or nested, and
+ * of timed callable nodes that do nothing. Run as a benchmark with
+ * <code>-prof gc</code>, it reports allocation per hop as
+ * <code>gc.alloc.rate.norm</code>; run through {@link #main}, it runs with the
+ * GC profiler itself and exits with status 1 if any walk allocates
+ * {@link #MAX_BYTES_PER_HOP} bytes or more per hop. What starting a walk
+ * allocates, for the outer walk and each nested one, is spread over the
+ * hops, so it stays well under that, while a single object per hop would
+ * not.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HopAllocationBenchmark {
+  static final int HOPS = 100000;
+  static final double MAX_BYTES_PER_HOP = 0.5;
+
+  @Param({"0", "1"})
+  int depth;
+  @Param({"false", "true"})
+  boolean timed;
+
+  private Module module;
+  private Environment env;
+  private com.cloudera.titubate.State state;
+  private Properties props;
+
+  @Setup
+  public void setUp() {
+    SyntheticGraphs.Spec spec = new SyntheticGraphs.Spec();
+    spec.fanOut = 8;
+    spec.depth = depth;
+    spec.timed = timed;
+    spec.maxHops = HOPS;
+    module = SyntheticGraphs.buildModule(spec);
+    module.getGraph();
+    env = new Environment();
+    state = new com.cloudera.titubate.State();
+    props = new Properties();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(HOPS)
+  public void hop() throws NodeException {
+    module.visit(env, state, props);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options opts = new OptionsBuilder()
+      .include(HopAllocationBenchmark.class.getSimpleName())
+      .addProfiler(GCProfiler.class)
+      .build();
+    Collection<RunResult> results = new Runner(opts).run();
+    boolean failed = false;
+    for (RunResult r : results) {
+      BenchmarkParams params = r.getParams();
+      Double bytesPerHop = null;
+      for (Map.Entry<String, Result> e :
+             r.getSecondaryResults().entrySet()) {
+        if (e.getKey().endsWith("gc.alloc.rate.norm")) {
+          bytesPerHop = e.getValue().getScore();
+        }
+      }
+      if (bytesPerHop == null) {
+        System.err.println("No allocation rate reported for " + params.getParam("depth") + "/" + params.getParam("timed"));
+        failed = true;
+      } else if (bytesPerHop >= MAX_BYTES_PER_HOP) {
+        System.err.println("Walk with depth=" + params.getParam("depth") + ", timed=" + params.getParam("timed") + " allocated " + bytesPerHop + " bytes per hop");
+        failed = true;
+      }
+    }
+    System.exit(failed ? 1 : 0);
+  }
+}
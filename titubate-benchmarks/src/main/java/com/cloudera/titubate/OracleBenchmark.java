@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import com.cloudera.titubate.collections.LongBitSet;
+import com.cloudera.titubate.collections.LongLongMap;
+import com.cloudera.titubate.example.MapModel;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares two shadow models for the example map module: an
+ * {@link OracleMap} of UUID strings to boxed integers, and the example's
+ * {@link MapModel} of long keys to values, whose full check marks values
+ * in a {@link LongBitSet}. The <code>build</code> benchmark fills a model
+ * from empty; run with <code>-prof gc</code>, its normalized allocation is a
+ * measure of each model's memory use.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OracleBenchmark {
+  @Param({"1000", "10000"})
+  int numEntries;
+
+  @Param({"oracle", "primitive"})
+  String impl;
+
+  private String[] stringKeys;
+  private long[] longKeys;
+  private OracleMap<String, Integer> oracle;
+  private MapModel primitive;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42L);
+    stringKeys = new String[numEntries];
+    longKeys = new long[numEntries];
+    for (int i = 0; i < numEntries; i++) {
+      UUID uuid = new UUID(random.nextLong(), random.nextLong());
+      stringKeys[i] = uuid.toString();
+      longKeys[i] = uuid.getMostSignificantBits();
+    }
+    oracle = buildOracle();
+    primitive = buildPrimitive();
+  }
+
+  private OracleMap<String, Integer> buildOracle() {
+    OracleMap<String, Integer> map = new OracleMap<String, Integer>();
+    for (int i = 0; i < numEntries; i++) {
+      map.put(stringKeys[i], i);
+    }
+    return map;
+  }
+  private MapModel buildPrimitive() {
+    MapModel map = new MapModel();
+    for (int i = 0; i < numEntries; i++) {
+      map.put(longKeys[i], i);
+    }
+    return map;
+  }
+
+  @Benchmark
+  public Object build() {
+    return impl.equals("oracle") ? buildOracle() : buildPrimitive();
+  }
+
+  @Benchmark
+  public boolean verifyAll() {
+    if (impl.equals("oracle")) {
+      for (int i = 0; i < numEntries; i++) {
+        if (!oracle.containsValue(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    final LongBitSet values = new LongBitSet(numEntries);
+    primitive.forEach(new LongLongMap.Visitor() {
+      @Override
+      public void visit(long key, long value) {
+        if (value >= 0L && value < numEntries) {
+          values.set(value);
+        }
+      }
+    });
+    return values.cardinality() == numEntries;
+  }
+
+  @Benchmark
+  public long get() {
+    long sum = 0L;
+    if (impl.equals("oracle")) {
+      for (int i = 0; i < numEntries; i++) {
+        sum += oracle.get(stringKeys[i]);
+      }
+    } else {
+      for (int i = 0; i < numEntries; i++) {
+        sum += primitive.get(longKeys[i], 0L);
+      }
+    }
+    return sum;
+  }
+}
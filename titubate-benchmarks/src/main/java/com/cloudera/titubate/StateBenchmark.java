@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link com.cloudera.titubate.State} gets and sets, including the
+ * read-increment-write pattern that counter-keeping actions use, by string
+ * key and by typed key, for both the hash map and persistent backends.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StateBenchmark {
+  @Param({"10", "1000"})
+  int numKeys;
+
+  @Param({"hash", "persistent"})
+  String backend;
+
+  private com.cloudera.titubate.State state;
+  private String[] keys;
+  private IntKey[] intKeys;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    state = backend.equals("persistent") ? new PersistentState() :
+      new com.cloudera.titubate.State();
+    keys = new String[numKeys];
+    for (int i = 0; i < numKeys; i++) {
+      keys[i] = "key" + i;
+      state.set(keys[i], Integer.valueOf(i));
+    }
+    intKeys = new IntKey[numKeys];
+    for (int i = 0; i < numKeys; i++) {
+      intKeys[i] = new IntKey("intkey" + i);
+      intKeys[i].setInt(state, i);
+    }
+  }
+
+  private String nextKey() {
+    next = (next + 1) % numKeys;
+    return keys[next];
+  }
+  private IntKey nextIntKey() {
+    next = (next + 1) % numKeys;
+    return intKeys[next];
+  }
+
+  @Benchmark
+  public Object get() {
+    return state.get(nextKey());
+  }
+
+  @Benchmark
+  public void set() {
+    state.set(nextKey(), "value");
+  }
+
+  @Benchmark
+  public void incrementInt() {
+    String key = nextKey();
+    state.set(key, state.getInt(key) + 1);
+  }
+
+  @Benchmark
+  public int getIntKey() {
+    return nextIntKey().getInt(state);
+  }
+
+  @Benchmark
+  public int incrementIntKey() {
+    return nextIntKey().add(state, 1);
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import com.cloudera.titubate.Module.AdjList;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Builds random graphs for benchmarks. Node i of a graph is
+ * "dummy.i", or, for timed graphs, a {@link CallableNode} running a
+ * {@link NoOpAction}. Every node has the same number of edges to randomly
+ * chosen nodes, with random weights.
+ */
+final class SyntheticGraphs {
+  private SyntheticGraphs() {}
+
+  /**
+   * An action that does nothing.
+   */
+  public static class NoOpAction extends CallableAction {
+    @Override
+    public Void call() {
+      return null;
+    }
+  }
+
+  /**
+   * Options for a synthetic graph.
+   */
+  static class Spec {
+    int numNodes = 100;
+    int fanOut = 4;
+    int maxHops = 0;
+    boolean timed = false;
+    boolean aliases = false;
+    int depth = 0;
+    int nestedMaxHops = 16;
+    long seed = 42L;
+  }
+
+  private static String nodeId(int i) {
+    return "dummy." + i;
+  }
+
+  /**
+   * Builds a module. If the spec has a positive depth, each node of the
+   * module also has an edge to a nested module built from the same spec
+   * with one less depth, and that nested module has an edge back.
+   *
+   * @param spec graph options
+   * @return module
+   */
+  static Module buildModule(Spec spec) {
+    NodeKeeper nk = new NodeKeeper(new NodeFactory(null, null));
+    Random r = new Random(spec.seed + spec.depth);
+    Map<String, AdjList> adjMap = new HashMap<String, AdjList>();
+    String nestedId = null;
+    if (spec.depth > 0) {
+      Spec nestedSpec = new Spec();
+      nestedSpec.numNodes = spec.numNodes;
+      nestedSpec.fanOut = spec.fanOut;
+      nestedSpec.maxHops = spec.nestedMaxHops;
+      nestedSpec.timed = spec.timed;
+      nestedSpec.aliases = spec.aliases;
+      nestedSpec.depth = spec.depth - 1;
+      nestedSpec.nestedMaxHops = spec.nestedMaxHops;
+      nestedSpec.seed = spec.seed;
+      nestedId = "nested" + spec.depth + ".xml";
+      nk.addNode(nestedId, buildModule(nestedSpec));
+      AdjList l = new AdjList();
+      l.addEdge(nodeId(0), 1);
+      adjMap.put(nestedId, l);
+    }
+    for (int i = 0; i < spec.numNodes; i++) {
+      if (spec.timed) {
+        nk.addNode(nodeId(i), new CallableNode(new NoOpAction()));
+      }
+      if (spec.aliases) {
+        AliasNode alias = new AliasNode("alias." + i);
+        alias.setTargetId(nodeId(i));
+        nk.addNode("alias." + i, alias);
+      }
+      AdjList l = new AdjList();
+      for (int j = 0; j < spec.fanOut; j++) {
+        int target = r.nextInt(spec.numNodes);
+        l.addEdge(spec.aliases ? "alias." + target : nodeId(target),
+                  1 + r.nextInt(100));
+      }
+      if (nestedId != null) {
+        l.addEdge(nestedId, 1);
+      }
+      adjMap.put(nodeId(i), l);
+    }
+    Map<String, Properties> nodeProps = new HashMap<String, Properties>();
+    Properties initProps = new Properties();
+    initProps.setProperty(Module.PROPERTY_MAX_HOPS, Integer.toString(spec.maxHops));
+    nodeProps.put(Module.INIT_NODE_ID, initProps);
+    return new ModuleBuilder("synthetic" + spec.depth + ".xml", nk)
+      .adjMap(adjMap).nodeProps(nodeProps).build(nodeId(0));
+  }
+
+  /**
+   * Writes a flat graph of dummy nodes as an XML module file.
+   *
+   * @param f file to write
+   * @param spec graph options; only numNodes, fanOut, maxHops and seed are
+   * used
+   * @throws IOException if the file could not be written
+   */
+  static void writeXmlModule(File f, Spec spec) throws IOException {
+    Random r = new Random(spec.seed);
+    PrintWriter w = new PrintWriter(new OutputStreamWriter(new FileOutputStream(f), "UTF-8"));
+    try {
+      w.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+      w.println("<module>");
+      w.println("  <init id=\"" + nodeId(0) + "\" maxHops=\"" + spec.maxHops + "\"/>");
+      for (int i = 0; i < spec.numNodes; i++) {
+        w.println("  <node id=\"" + nodeId(i) + "\">");
+        w.println("    <property key=\"index\" value=\"" + i + "\"/>");
+        for (int j = 0; j < spec.fanOut; j++) {
+          w.println("    <edge id=\"" + nodeId(r.nextInt(spec.numNodes)) +
+                    "\" weight=\"" + (1 + r.nextInt(100)) + "\"/>");
+        }
+        w.println("  </node>");
+      }
+      w.println("</module>");
+    } finally {
+      w.close();
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures framework overhead per hop of {@link Module#visit} on synthetic
+ * graphs: by fan-out, by nesting depth, with and without alias indirection,
+ * and with untimed dummy nodes versus timed callable nodes that do nothing.
+ * Each invocation is a walk of {@link #HOPS} hops of the outermost module;
+ * hops taken inside nested modules are extra, so scores for nested graphs
+ * include them. Run with <code>-prof gc</code> to see allocation per hop.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WalkBenchmark {
+  static final int HOPS = 10000;
+
+  @Param({"2", "16", "128"})
+  int fanOut;
+  @Param({"0", "1", "2"})
+  int depth;
+  @Param({"false", "true"})
+  boolean aliases;
+  @Param({"false", "true"})
+  boolean timed;
+
+  private Module module;
+  private Environment env;
+  private com.cloudera.titubate.State state;
+  private Properties props;
+
+  @Setup
+  public void setUp() {
+    SyntheticGraphs.Spec spec = new SyntheticGraphs.Spec();
+    spec.fanOut = fanOut;
+    spec.depth = depth;
+    spec.aliases = aliases;
+    spec.timed = timed;
+    spec.maxHops = HOPS;
+    module = SyntheticGraphs.buildModule(spec);
+    module.getGraph();
+    env = new Environment();
+    state = new com.cloudera.titubate.State();
+    props = new Properties();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(HOPS)
+  public void visit() throws NodeException {
+    module.visit(env, state, props);
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import com.cloudera.titubate.Module.AdjList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how walk throughput scales with the number of concurrent
+ * walkers, on platform threads and on virtual threads. Each invocation is a
+ * {@link Framework#run(String, Environment, int, boolean)} of that many
+ * walkers, each taking {@link #HOPS_PER_WALK} hops; each hop runs an action
+ * that sleeps briefly, standing in for an action that waits on the system
+ * under test. The <code>hops</code> counter gives hops per second across
+ * all walkers. Virtual thread runs fail on Java before 21.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class WalkerScalingBenchmark {
+  static final int HOPS_PER_WALK = 100;
+
+  @Param({"1", "10", "100", "1000"})
+  int walkers;
+  @Param({"platform", "virtual"})
+  String threads;
+  @Param({"1"})
+  long sleepMs;
+
+  static volatile long actionSleepMs;
+
+  /**
+   * An action that sleeps for {@link #actionSleepMs}.
+   */
+  public static class SleepAction extends CallableAction {
+    @Override
+    public Void call() throws InterruptedException {
+      Thread.sleep(actionSleepMs);
+      return null;
+    }
+  }
+
+  /**
+   * Counts hops taken, so JMH reports them per second.
+   */
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class Hops {
+    public long hops;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      hops = 0L;
+    }
+  }
+
+  private Framework framework;
+  private boolean virtual;
+
+  @Setup
+  public void setUp() {
+    actionSleepMs = sleepMs;
+    virtual = "virtual".equals(threads);
+    if (virtual) {
+      // fails this benchmark before Java 21
+      Framework.newVirtualThreadExecutor().shutdown();
+    }
+    NodeKeeper nk = new NodeKeeper(new NodeFactory(null, null));
+    String actionId = SleepAction.class.getName();
+    Map<String, AdjList> adjMap = new HashMap<String, AdjList>();
+    AdjList l = new AdjList();
+    l.addEdge(actionId, 1);
+    adjMap.put(actionId, l);
+    Map<String, Properties> nodeProps = new HashMap<String, Properties>();
+    Properties initProps = new Properties();
+    initProps.setProperty(Module.PROPERTY_MAX_HOPS, Integer.toString(HOPS_PER_WALK));
+    nodeProps.put(Module.INIT_NODE_ID, initProps);
+    Module m = new ModuleBuilder("scaling.xml", nk).adjMap(adjMap)
+      .nodeProps(nodeProps).build(actionId);
+    NodeKeeper frameworkNk = new NodeKeeper(new NodeFactory(null, null));
+    frameworkNk.addNode("scaling.xml", m);
+    framework = new Framework(frameworkNk);
+  }
+
+  @Benchmark
+  public RunResult run(Hops counter) {
+    RunResult result =
+      framework.run("scaling.xml", new Environment(), walkers, virtual);
+    counter.hops += result.getTotalHops();
+    return result;
+  }
+}
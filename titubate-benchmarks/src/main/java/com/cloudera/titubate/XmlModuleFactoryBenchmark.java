@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.titubate;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time to parse an XML module file of dummy nodes with
+ * {@link XmlModuleFactory#getModule}, by number of nodes, and to load the
+ * same module from its compiled form in a {@link ModuleCache}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class XmlModuleFactoryBenchmark {
+  @Param({"100", "1000", "10000"})
+  int numNodes;
+  @Param({"8"})
+  int fanOut;
+  @Param({"false", "true"})
+  boolean cached;
+
+  private File moduleDir;
+  private File moduleFile;
+  private File cacheDir;
+  private ModuleCache cache;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    moduleFile = File.createTempFile("titubate-bench", ".xml");
+    moduleDir = moduleFile.getParentFile();
+    SyntheticGraphs.Spec spec = new SyntheticGraphs.Spec();
+    spec.numNodes = numNodes;
+    spec.fanOut = fanOut;
+    SyntheticGraphs.writeXmlModule(moduleFile, spec);
+    if (cached) {
+      cacheDir = File.createTempFile("titubate-bench", ".cache");
+      if (!cacheDir.delete() || !cacheDir.mkdir()) {
+        throw new IOException("Failed to create " + cacheDir);
+      }
+      cache = new ModuleCache(cacheDir);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    if (!moduleFile.delete()) {
+      moduleFile.deleteOnExit();
+    }
+    if (cacheDir != null) {
+      for (File f : cacheDir.listFiles()) {
+        f.delete();
+      }
+      cacheDir.delete();
+    }
+  }
+
+  @Benchmark
+  public Module getModule() throws Exception {
+    XmlModuleFactory xmf = new XmlModuleFactory(moduleFile, moduleDir);
+    xmf.setModuleCache(cache);
+    return xmf.getModule();
+  }
+}